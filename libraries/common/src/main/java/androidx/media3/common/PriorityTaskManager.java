@@ -15,12 +15,17 @@
  */
 package androidx.media3.common;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.Clock;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /**
@@ -34,6 +39,12 @@ import java.util.PriorityQueue;
  *
  * <p>It is recommended to use predefined {@linkplain C.Priority priorities} or priority values
  * defined relative to those defaults.
+ *
+ * <p>By default tasks of lower priority are stalled for as long as a task of higher priority is
+ * registered. If {@link #setLowerPriorityBytesPerSecond(long)} is called with a non-zero rate,
+ * tasks that transfer data can instead call {@link #proceedWithByteBudget(int, int)}, which lets
+ * tasks of lower priority proceed at up to that many bytes per second in total. Bytes that are
+ * granted but not transferred should be returned with {@link #returnUnusedBytes(int, int)}.
  */
 @UnstableApi
 public final class PriorityTaskManager {
@@ -47,16 +58,60 @@ public final class PriorityTaskManager {
   }
 
   private final Object lock = new Object();
+  private final Clock clock;
 
   // Guarded by lock.
   private final PriorityQueue<@C.Priority Integer> queue;
+  private final HashMap<Integer, Long> waitTimesMs;
   private @C.Priority int highestPriority;
+  private long lowerPriorityBytesPerSecond;
+  private long availableBytes;
+  private long lastRefillTimeMs;
 
   public PriorityTaskManager() {
+    this(Clock.DEFAULT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param clock The {@link Clock} used to measure wait times and to limit the byte rate of tasks
+   *     of lower priority.
+   */
+  public PriorityTaskManager(Clock clock) {
+    this.clock = clock;
     queue = new PriorityQueue<>(10, Collections.reverseOrder());
+    waitTimesMs = new HashMap<>();
     highestPriority = Integer.MIN_VALUE;
   }
 
+  /**
+   * Sets the total rate at which tasks that aren't of the highest registered priority may transfer
+   * data using {@link #proceedWithByteBudget(int, int)}, or 0 to stall such tasks until they have
+   * the highest priority. The default is 0.
+   *
+   * @param bytesPerSecond The total rate in bytes per second, or 0.
+   */
+  public void setLowerPriorityBytesPerSecond(long bytesPerSecond) {
+    checkArgument(bytesPerSecond >= 0);
+    synchronized (lock) {
+      lowerPriorityBytesPerSecond = bytesPerSecond;
+      availableBytes = 0;
+      lastRefillTimeMs = clock.elapsedRealtime();
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Returns the rate set by {@link #setLowerPriorityBytesPerSecond(long)}, or 0 if tasks of lower
+   * priority are stalled.
+   */
+  public long getLowerPriorityBytesPerSecond() {
+    synchronized (lock) {
+      return lowerPriorityBytesPerSecond;
+    }
+  }
+
   /**
    * Register a new task. The task must call {@link #remove(int)} when done.
    *
@@ -80,9 +135,109 @@ public final class PriorityTaskManager {
    */
   public void proceed(@C.Priority int priority) throws InterruptedException {
     synchronized (lock) {
-      while (highestPriority != priority) {
-        lock.wait();
+      if (highestPriority == priority) {
+        return;
+      }
+      long startTimeMs = clock.elapsedRealtime();
+      try {
+        while (highestPriority != priority) {
+          lock.wait();
+        }
+      } finally {
+        addWaitTime(priority, clock.elapsedRealtime() - startTimeMs);
+      }
+    }
+  }
+
+  /**
+   * Blocks until the task is allowed to transfer data, and returns the number of bytes it may
+   * transfer.
+   *
+   * <p>A task of the highest registered priority may always transfer {@code maxByteCount} bytes. If
+   * a {@linkplain #setLowerPriorityBytesPerSecond(long) lower priority byte rate} is set, other
+   * tasks may transfer bytes at up to that rate in total. Otherwise, this method behaves like
+   * {@link #proceed(int)}.
+   *
+   * @param priority The {@link C.Priority} of the task.
+   * @param maxByteCount The maximum number of bytes the task wants to transfer. Must be positive.
+   * @return The number of bytes the task may transfer, between 1 and {@code maxByteCount}.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  public int proceedWithByteBudget(@C.Priority int priority, int maxByteCount)
+      throws InterruptedException {
+    checkArgument(maxByteCount > 0);
+    synchronized (lock) {
+      int byteCount = tryAcquireBytes(priority, maxByteCount);
+      if (byteCount > 0) {
+        return byteCount;
+      }
+      long startTimeMs = clock.elapsedRealtime();
+      try {
+        while (true) {
+          if (lowerPriorityBytesPerSecond == 0) {
+            lock.wait();
+          } else {
+            // Wait until enough bytes are available to avoid waking up for each byte.
+            long targetBytes = min(maxByteCount, getMaxAvailableBytes());
+            lock.wait(max(1, (targetBytes - availableBytes) * 1000 / lowerPriorityBytesPerSecond));
+          }
+          byteCount = tryAcquireBytes(priority, maxByteCount);
+          if (byteCount > 0) {
+            return byteCount;
+          }
+        }
+      } finally {
+        addWaitTime(priority, clock.elapsedRealtime() - startTimeMs);
+      }
+    }
+  }
+
+  /**
+   * A non-blocking variant of {@link #proceedWithByteBudget(int, int)}.
+   *
+   * @param priority The {@link C.Priority} of the task.
+   * @param maxByteCount The maximum number of bytes the task wants to transfer. Must be positive.
+   * @return The number of bytes the task may transfer, between 0 and {@code maxByteCount}.
+   */
+  public int proceedWithByteBudgetNonBlocking(@C.Priority int priority, int maxByteCount) {
+    checkArgument(maxByteCount > 0);
+    synchronized (lock) {
+      return tryAcquireBytes(priority, maxByteCount);
+    }
+  }
+
+  /**
+   * Returns bytes granted by {@link #proceedWithByteBudget(int, int)} or {@link
+   * #proceedWithByteBudgetNonBlocking(int, int)} that the task didn't transfer, so that they can be
+   * used by other tasks of lower priority.
+   *
+   * <p>Bytes returned by a task that currently has the highest registered priority are ignored, as
+   * that task isn't limited by the lower priority byte rate.
+   *
+   * @param priority The {@link C.Priority} of the task.
+   * @param byteCount The number of granted bytes that weren't transferred.
+   */
+  public void returnUnusedBytes(@C.Priority int priority, int byteCount) {
+    checkArgument(byteCount >= 0);
+    synchronized (lock) {
+      if (byteCount == 0 || highestPriority == priority || lowerPriorityBytesPerSecond == 0) {
+        return;
       }
+      availableBytes = min(getMaxAvailableBytes(), availableBytes + byteCount);
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Returns the total time tasks of the given priority have spent blocked in {@link
+   * #proceed(int)} and {@link #proceedWithByteBudget(int, int)}, in milliseconds.
+   *
+   * @param priority The {@link C.Priority} of the tasks.
+   */
+  public long getTotalWaitTimeMs(@C.Priority int priority) {
+    synchronized (lock) {
+      @Nullable Long waitTimeMs = waitTimesMs.get(priority);
+      return waitTimeMs != null ? waitTimeMs : 0;
     }
   }
 
@@ -124,4 +279,35 @@ public final class PriorityTaskManager {
       lock.notifyAll();
     }
   }
+
+  // Must be called while holding lock.
+  private int tryAcquireBytes(@C.Priority int priority, int maxByteCount) {
+    if (highestPriority == priority) {
+      return maxByteCount;
+    }
+    if (lowerPriorityBytesPerSecond == 0) {
+      return 0;
+    }
+    long nowMs = clock.elapsedRealtime();
+    long refilledBytes = (nowMs - lastRefillTimeMs) * lowerPriorityBytesPerSecond / 1000;
+    if (refilledBytes > 0) {
+      availableBytes = min(getMaxAvailableBytes(), availableBytes + refilledBytes);
+      lastRefillTimeMs = nowMs;
+    }
+    int byteCount = (int) min(maxByteCount, availableBytes);
+    availableBytes -= byteCount;
+    return byteCount;
+  }
+
+  // Must be called while holding lock.
+  private long getMaxAvailableBytes() {
+    // Allow bursts of up to 100ms worth of data.
+    return max(1, lowerPriorityBytesPerSecond / 10);
+  }
+
+  // Must be called while holding lock.
+  private void addWaitTime(@C.Priority int priority, long waitTimeMs) {
+    @Nullable Long totalWaitTimeMs = waitTimesMs.get(priority);
+    waitTimesMs.put(priority, (totalWaitTimeMs != null ? totalWaitTimeMs : 0) + waitTimeMs);
+  }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.common;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.test.utils.FakeClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PriorityTaskManager}. */
+@RunWith(AndroidJUnit4.class)
+public final class PriorityTaskManagerTest {
+
+  private static final int HIGH_PRIORITY = C.PRIORITY_PLAYBACK;
+  private static final int MEDIUM_PRIORITY = C.PRIORITY_PROCESSING_FOREGROUND;
+  private static final int LOW_PRIORITY = C.PRIORITY_DOWNLOAD;
+
+  private FakeClock clock;
+  private PriorityTaskManager priorityTaskManager;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    priorityTaskManager = new PriorityTaskManager(clock);
+    executorService = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void proceedNonBlocking_onlyAllowsHighestRegisteredPriority() {
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    priorityTaskManager.add(MEDIUM_PRIORITY);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(HIGH_PRIORITY)).isTrue();
+    assertThat(priorityTaskManager.proceedNonBlocking(MEDIUM_PRIORITY)).isFalse();
+    assertThat(priorityTaskManager.proceedNonBlocking(LOW_PRIORITY)).isFalse();
+
+    priorityTaskManager.remove(HIGH_PRIORITY);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(MEDIUM_PRIORITY)).isTrue();
+    assertThat(priorityTaskManager.proceedNonBlocking(LOW_PRIORITY)).isFalse();
+
+    priorityTaskManager.remove(MEDIUM_PRIORITY);
+
+    assertThat(priorityTaskManager.proceedNonBlocking(LOW_PRIORITY)).isTrue();
+  }
+
+  @Test
+  public void proceedOrThrow_withHigherPriorityTask_throws() throws Exception {
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    priorityTaskManager.proceedOrThrow(HIGH_PRIORITY);
+    assertThrows(
+        PriorityTaskManager.PriorityTooLowException.class,
+        () -> priorityTaskManager.proceedOrThrow(LOW_PRIORITY));
+  }
+
+  @Test
+  public void proceed_withHigherPriorityTask_blocksUntilHigherPriorityTaskRemoved()
+      throws Exception {
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    Future<?> proceed = executorService.submit(() -> proceed(LOW_PRIORITY));
+    Thread.sleep(50);
+    assertThat(proceed.isDone()).isFalse();
+    clock.advanceTime(100);
+    priorityTaskManager.remove(HIGH_PRIORITY);
+
+    proceed.get(10, TimeUnit.SECONDS);
+    assertThat(priorityTaskManager.getTotalWaitTimeMs(LOW_PRIORITY)).isEqualTo(100);
+  }
+
+  @Test
+  public void proceedWithByteBudget_withHighestPriority_grantsAllBytes() throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(1000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    assertThat(priorityTaskManager.proceedWithByteBudget(HIGH_PRIORITY, 100_000))
+        .isEqualTo(100_000);
+  }
+
+  @Test
+  public void proceedWithByteBudgetNonBlocking_withLowerPriority_refillsAtByteRate() {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(0);
+    clock.advanceTime(20);
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(200);
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(0);
+    // Bursts are limited to 100ms worth of data.
+    clock.advanceTime(1000);
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(1000);
+  }
+
+  @Test
+  public void proceedWithByteBudget_withLowerPriorityAndNoAvailableBytes_blocksUntilRefilled()
+      throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    Future<Integer> byteCount =
+        executorService.submit(() -> priorityTaskManager.proceedWithByteBudget(LOW_PRIORITY, 500));
+    Thread.sleep(50);
+    assertThat(byteCount.isDone()).isFalse();
+    clock.advanceTime(50);
+
+    assertThat(byteCount.get(10, TimeUnit.SECONDS)).isEqualTo(500);
+    assertThat(priorityTaskManager.getTotalWaitTimeMs(LOW_PRIORITY)).isEqualTo(50);
+  }
+
+  @Test
+  public void proceedWithByteBudget_withoutByteRate_blocksUntilHigherPriorityTaskRemoved()
+      throws Exception {
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    Future<Integer> byteCount =
+        executorService.submit(() -> priorityTaskManager.proceedWithByteBudget(LOW_PRIORITY, 500));
+    Thread.sleep(50);
+    assertThat(byteCount.isDone()).isFalse();
+    priorityTaskManager.remove(HIGH_PRIORITY);
+
+    assertThat(byteCount.get(10, TimeUnit.SECONDS)).isEqualTo(500);
+  }
+
+  @Test
+  public void returnUnusedBytes_makesBytesAvailableToLowerPriorityTasks() {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    clock.advanceTime(100);
+    int byteCount = priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000);
+
+    priorityTaskManager.returnUnusedBytes(LOW_PRIORITY, 600);
+
+    assertThat(byteCount).isEqualTo(1000);
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(600);
+  }
+
+  @Test
+  public void returnUnusedBytes_fromHighestPriorityTask_isIgnored() {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    priorityTaskManager.returnUnusedBytes(HIGH_PRIORITY, 600);
+
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void returnUnusedBytes_beyondBurstSize_isCapped() {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(LOW_PRIORITY);
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    priorityTaskManager.returnUnusedBytes(LOW_PRIORITY, 5000);
+
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(1000);
+  }
+
+  private Void proceed(int priority) throws InterruptedException {
+    priorityTaskManager.proceed(priority);
+    return null;
+  }
+}
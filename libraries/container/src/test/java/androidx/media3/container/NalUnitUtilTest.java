@@ -18,10 +18,16 @@ package androidx.media3.container;
 import static androidx.media3.test.utils.TestUtil.createByteArray;
 import static com.google.common.truth.Truth.assertThat;
 
+import androidx.media3.common.C;
 import androidx.media3.common.util.Util;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -155,6 +161,58 @@ public final class NalUnitUtilTest {
   public void unescapeModifiesBuffersWithStartCodes() {
     assertUnescapeMatchesExpected("00000301", "000001");
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
+    assertUnescapeMatchesExpected("000003000003", "00000000");
+    assertUnescapeMatchesExpected("FF00000301", "FF000001");
+    assertUnescapeMatchesExpected("FFFF000003", "FFFF0000");
+    assertUnescapeMatchesExpected("0000000301", "00000001");
+  }
+
+  @Test
+  public void unescapeStream_h264AndH265Streams_matchesByteByByteUnescaping() throws Exception {
+    for (String fileName : new String[] {"media/ts/sample_h264.ts", "media/ts/sample_h265.ts"}) {
+      byte[] stream = getVideoElementaryStream(fileName);
+      int nalUnitCount = 0;
+      int offset = NalUnitUtil.findNalUnit(stream, 0, stream.length, new boolean[3]);
+      while (offset < stream.length) {
+        int nextOffset = NalUnitUtil.findNalUnit(stream, offset + 3, stream.length, new boolean[3]);
+        byte[] nalUnit = Arrays.copyOfRange(stream, offset + 3, nextOffset);
+        byte[] expectedNalUnit = unescapeByteByByte(nalUnit);
+
+        int unescapedLength = NalUnitUtil.unescapeStream(nalUnit, nalUnit.length);
+
+        assertThat(Arrays.copyOf(nalUnit, unescapedLength)).isEqualTo(expectedNalUnit);
+        nalUnitCount++;
+        offset = nextOffset;
+      }
+      assertThat(nalUnitCount).isGreaterThan(0);
+    }
+  }
+
+  @Test
+  public void unescapeStream_fromMultipleThreads_unescapesEachBuffer() throws Exception {
+    byte[] escaped = Util.getBytesFromHexString("0000030100000302FF000003");
+    byte[] expected = Util.getBytesFromHexString("000001000002FF0000");
+    Thread[] threads = new Thread[4];
+    AtomicBoolean failed = new AtomicBoolean();
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 10_000; j++) {
+                  byte[] data = escaped.clone();
+                  int length = NalUnitUtil.unescapeStream(data, data.length);
+                  if (!Arrays.equals(Arrays.copyOf(data, length), expected)) {
+                    failed.set(true);
+                  }
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(failed.get()).isFalse();
   }
 
   @Test
@@ -268,6 +326,59 @@ public final class NalUnitUtilTest {
     assertThat(outputBitstream).isEqualTo(expectedOutputBitstream);
   }
 
+  private static byte[] unescapeByteByByte(byte[] data) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int i = 0; i < data.length; i++) {
+      if (i + 2 < data.length && data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 3) {
+        output.write(0);
+        output.write(0);
+        i += 2;
+      } else {
+        output.write(data[i]);
+      }
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Returns the payload of the video PES packets in an MPEG-TS file, which is an H.264 or H.265
+   * elementary stream for the files used by these tests.
+   */
+  private static byte[] getVideoElementaryStream(String fileName) throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    int videoPid = C.INDEX_UNSET;
+    for (int packetOffset = 0; packetOffset + 188 <= data.length; packetOffset += 188) {
+      boolean payloadUnitStart = (data[packetOffset + 1] & 0x40) != 0;
+      int pid = ((data[packetOffset + 1] & 0x1F) << 8) | (data[packetOffset + 2] & 0xFF);
+      int adaptationFieldControl = (data[packetOffset + 3] >> 4) & 0x3;
+      int payloadOffset = packetOffset + 4;
+      if ((adaptationFieldControl & 0x2) != 0) {
+        payloadOffset += 1 + (data[payloadOffset] & 0xFF);
+      }
+      if ((adaptationFieldControl & 0x1) == 0 || payloadOffset >= packetOffset + 188) {
+        continue;
+      }
+      if (payloadUnitStart
+          && data[payloadOffset] == 0
+          && data[payloadOffset + 1] == 0
+          && data[payloadOffset + 2] == 1
+          && (data[payloadOffset + 3] & 0xF0) == 0xE0) {
+        // A video PES packet header.
+        if (videoPid == C.INDEX_UNSET) {
+          videoPid = pid;
+        }
+        if (pid == videoPid) {
+          payloadOffset += 9 + (data[payloadOffset + 8] & 0xFF);
+        }
+      }
+      if (pid == videoPid) {
+        output.write(data, payloadOffset, packetOffset + 188 - payloadOffset);
+      }
+    }
+    return output.toByteArray();
+  }
+
   private static void assertDiscardToSpsMatchesExpected(String input, String expectedOutput) {
     byte[] bitstream = Util.getBytesFromHexString(input);
     byte[] expectedOutputBitstream = Util.getBytesFromHexString(expectedOutput);
@@ -16,6 +16,7 @@
 package androidx.media3.datasource;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
 import static org.junit.Assert.assertThrows;
 
 import android.graphics.Bitmap;
@@ -284,6 +285,56 @@ public class DataSourceBitmapLoaderTest {
     assertThat(bitmapFuture).isNull();
   }
 
+  @Test
+  public void decodeBitmap_withMaximumOutputDimension_subsamplesImage() throws Exception {
+    byte[] imageData =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), TEST_IMAGE_PATH);
+    Bitmap fullSizeBitmap =
+        BitmapFactory.decodeByteArray(imageData, /* offset= */ 0, imageData.length);
+    int maximumOutputDimension =
+        max(fullSizeBitmap.getWidth(), fullSizeBitmap.getHeight()) / 2 - 1;
+    DataSourceBitmapLoader bitmapLoader =
+        new DataSourceBitmapLoader.Builder(ApplicationProvider.getApplicationContext())
+            .setExecutorService(MoreExecutors.newDirectExecutorService())
+            .setDataSourceFactory(dataSourceFactory)
+            .setMaximumOutputDimension(maximumOutputDimension)
+            .build();
+
+    Bitmap bitmap = bitmapLoader.decodeBitmap(imageData).get();
+
+    assertThat(max(bitmap.getWidth(), bitmap.getHeight())).isAtMost(maximumOutputDimension);
+    assertThat(bitmap.getWidth()).isLessThan(fullSizeBitmap.getWidth() / 2);
+  }
+
+  @Test
+  public void loadBitmap_withBitmapCache_loadsSameUriOnce() throws Exception {
+    byte[] imageData =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), TEST_IMAGE_PATH);
+    BitmapCache bitmapCache = new BitmapCache();
+    DataSourceBitmapLoader bitmapLoader =
+        new DataSourceBitmapLoader.Builder(ApplicationProvider.getApplicationContext())
+            .setExecutorService(MoreExecutors.newDirectExecutorService())
+            .setDataSourceFactory(dataSourceFactory)
+            .setBitmapCache(bitmapCache)
+            .build();
+    Bitmap bitmap1;
+    Bitmap bitmap2;
+    try (MockWebServer mockWebServer = new MockWebServer()) {
+      mockWebServer.enqueue(
+          new MockResponse().setResponseCode(200).setBody(new Buffer().write(imageData)));
+      Uri uri = Uri.parse(mockWebServer.url("test_path").toString());
+
+      bitmap1 = bitmapLoader.loadBitmap(uri).get();
+      bitmap2 = bitmapLoader.loadBitmap(uri).get();
+
+      assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    }
+
+    assertThat(bitmap2).isSameInstanceAs(bitmap1);
+    assertThat(bitmapCache.getHitCount()).isEqualTo(1);
+    assertThat(bitmapCache.getMissCount()).isEqualTo(1);
+  }
+
   private static void assertException(
       ThrowingRunnable runnable, Class<? extends Exception> clazz, String messagePart) {
     ExecutionException executionException = assertThrows(ExecutionException.class, runnable);
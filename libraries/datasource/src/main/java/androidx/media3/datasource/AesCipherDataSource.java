@@ -17,6 +17,7 @@ package androidx.media3.datasource;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.min;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
@@ -27,18 +28,52 @@ import java.util.List;
 import java.util.Map;
 import javax.crypto.Cipher;
 
-/** A {@link DataSource} that decrypts the data read from an upstream source. */
+/**
+ * A {@link DataSource} that decrypts the data read from an upstream source.
+ *
+ * <p>By default each read is served by reading from the upstream source and decrypting the data
+ * in place, so small reads result in many small cipher operations. If a buffer size is passed to
+ * {@link #AesCipherDataSource(byte[], DataSource, int)}, data is instead read from upstream and
+ * decrypted in batches of up to that many bytes, and small reads are served from the decrypted
+ * batch.
+ */
 @UnstableApi
 public final class AesCipherDataSource implements DataSource {
 
+  /** The default buffer size, in bytes, for a buffered instance. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /** The AES block size, in bytes. */
+  private static final int AES_BLOCK_SIZE = 16;
+
   private final DataSource upstream;
   private final byte[] secretKey;
+  @Nullable private final byte[] decryptedBuffer;
 
   @Nullable private AesFlushingCipher cipher;
+  private int decryptedBufferPosition;
+  private int decryptedBufferLimit;
 
   public AesCipherDataSource(byte[] secretKey, DataSource upstream) {
+    this(secretKey, upstream, /* bufferSize= */ 0);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param secretKey The secret key.
+   * @param upstream The upstream {@link DataSource} from which encrypted data is read.
+   * @param bufferSize The size of the buffer into which data is read and decrypted in batches, in
+   *     bytes, or 0 to decrypt data as it's read. The size is rounded up to a whole number of AES
+   *     blocks.
+   */
+  public AesCipherDataSource(byte[] secretKey, DataSource upstream, int bufferSize) {
     this.upstream = upstream;
     this.secretKey = secretKey;
+    decryptedBuffer =
+        bufferSize > 0
+            ? new byte[(bufferSize + AES_BLOCK_SIZE - 1) / AES_BLOCK_SIZE * AES_BLOCK_SIZE]
+            : null;
   }
 
   @Override
@@ -56,6 +91,8 @@ public final class AesCipherDataSource implements DataSource {
             secretKey,
             dataSpec.key,
             dataSpec.uriPositionOffset + dataSpec.position);
+    decryptedBufferPosition = 0;
+    decryptedBufferLimit = 0;
     return dataLength;
   }
 
@@ -64,6 +101,11 @@ public final class AesCipherDataSource implements DataSource {
     if (length == 0) {
       return 0;
     }
+    @Nullable byte[] decryptedBuffer = this.decryptedBuffer;
+    if (decryptedBuffer != null
+        && (decryptedBufferPosition < decryptedBufferLimit || length < decryptedBuffer.length)) {
+      return readFromDecryptedBuffer(decryptedBuffer, buffer, offset, length);
+    }
     int read = upstream.read(buffer, offset, length);
     if (read == C.RESULT_END_OF_INPUT) {
       return C.RESULT_END_OF_INPUT;
@@ -86,6 +128,25 @@ public final class AesCipherDataSource implements DataSource {
   @Override
   public void close() throws IOException {
     cipher = null;
+    decryptedBufferPosition = 0;
+    decryptedBufferLimit = 0;
     upstream.close();
   }
+
+  private int readFromDecryptedBuffer(
+      byte[] decryptedBuffer, byte[] buffer, int offset, int length) throws IOException {
+    if (decryptedBufferPosition == decryptedBufferLimit) {
+      int read = upstream.read(decryptedBuffer, /* offset= */ 0, decryptedBuffer.length);
+      if (read == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      castNonNull(cipher).updateInPlace(decryptedBuffer, /* offset= */ 0, read);
+      decryptedBufferPosition = 0;
+      decryptedBufferLimit = read;
+    }
+    int bytesToRead = min(length, decryptedBufferLimit - decryptedBufferPosition);
+    System.arraycopy(decryptedBuffer, decryptedBufferPosition, buffer, offset, bytesToRead);
+    decryptedBufferPosition += bytesToRead;
+    return bytesToRead;
+  }
 }
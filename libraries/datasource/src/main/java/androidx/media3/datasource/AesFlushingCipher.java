@@ -15,6 +15,8 @@
  */
 package androidx.media3.datasource;
 
+import static java.lang.Math.min;
+
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
@@ -81,12 +83,16 @@ public final class AesFlushingCipher {
     // If we previously flushed the cipher by inputting zeros up to a block boundary, then we need
     // to manually transform the data that actually ended the block. See the comment below for more
     // details.
-    while (pendingXorBytes > 0) {
-      out[outOffset] = (byte) (in[inOffset] ^ flushedBlock[blockSize - pendingXorBytes]);
-      outOffset++;
-      inOffset++;
-      pendingXorBytes--;
-      length--;
+    if (pendingXorBytes > 0) {
+      int xorBytes = min(pendingXorBytes, length);
+      int flushedBlockOffset = blockSize - pendingXorBytes;
+      for (int i = 0; i < xorBytes; i++) {
+        out[outOffset + i] = (byte) (in[inOffset + i] ^ flushedBlock[flushedBlockOffset + i]);
+      }
+      outOffset += xorBytes;
+      inOffset += xorBytes;
+      pendingXorBytes -= xorBytes;
+      length -= xorBytes;
       if (length == 0) {
         return;
       }
@@ -111,9 +117,7 @@ public final class AesFlushingCipher {
     Assertions.checkState(written == blockSize);
     // The first part of xorBytes contains the flushed data, which we copy out. The remainder
     // contains the bytes that will be needed for manual transformation in a subsequent call.
-    for (int i = 0; i < bytesToFlush; i++) {
-      out[outOffset++] = flushedBlock[i];
-    }
+    System.arraycopy(flushedBlock, 0, out, outOffset, bytesToFlush);
   }
 
   private int nonFlushingUpdate(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.common.util.UnstableApi;
+import com.google.common.base.Supplier;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A memory cache of decoded {@link Bitmap} instances, bounded by the number of bytes used to store
+ * their pixels and keys.
+ *
+ * <p>Bitmaps are keyed by the URI or a SHA-256 digest of the compressed data they were decoded
+ * from, and by the {@link BitmapFactory.Options} and maximum output dimension they were decoded
+ * with. The compressed data itself is not retained. When the cache is full, the least recently used
+ * bitmaps are evicted. Concurrent requests for the same key are coalesced, so that the bitmap is
+ * only loaded once.
+ *
+ * <p>A cache can be shared between {@link DataSourceBitmapLoader} instances. Cached bitmaps are
+ * returned to all requesters, so they must not be modified or recycled.
+ */
+@UnstableApi
+public final class BitmapCache {
+
+  /** The default maximum size of the cache, in bytes. */
+  public static final long DEFAULT_MAX_SIZE_BYTES = 16 * 1024 * 1024;
+
+  private final long maxSizeBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, Bitmap> bitmaps;
+
+  @GuardedBy("this")
+  private final Map<Key, ListenableFuture<Bitmap>> pendingLoads;
+
+  @GuardedBy("this")
+  private long sizeBytes;
+
+  @GuardedBy("this")
+  private long hitCount;
+
+  @GuardedBy("this")
+  private long missCount;
+
+  /** Creates an instance with a maximum size of {@link #DEFAULT_MAX_SIZE_BYTES}. */
+  public BitmapCache() {
+    this(DEFAULT_MAX_SIZE_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxSizeBytes The maximum number of bytes used by the pixels and keys of the cached
+   *     bitmaps.
+   */
+  public BitmapCache(long maxSizeBytes) {
+    checkArgument(maxSizeBytes >= 0);
+    this.maxSizeBytes = maxSizeBytes;
+    bitmaps = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    pendingLoads = new HashMap<>();
+  }
+
+  /** Returns the maximum number of bytes used by the pixels and keys of the cached bitmaps. */
+  public long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
+
+  /** Returns the number of bytes used by the pixels and keys of the cached bitmaps. */
+  public synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  /** Returns the number of cached bitmaps. */
+  public synchronized int getBitmapCount() {
+    return bitmaps.size();
+  }
+
+  /**
+   * Returns the number of requests served without loading a bitmap, either because the bitmap was
+   * cached or because a load of the same bitmap was already in progress.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of requests that resulted in a bitmap being loaded. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Removes all cached bitmaps. Loads in progress are not affected. */
+  public synchronized void clear() {
+    bitmaps.clear();
+    sizeBytes = 0;
+  }
+
+  /**
+   * Returns a future for the bitmap decoded from {@code uri}, loading it with {@code loader} if
+   * it's neither cached nor already being loaded.
+   */
+  /* package */ ListenableFuture<Bitmap> get(
+      Uri uri,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension,
+      Supplier<ListenableFuture<Bitmap>> loader) {
+    return get(new Key(uri, /* dataDigest= */ null, options, maximumOutputDimension), loader);
+  }
+
+  /**
+   * Returns a future for the bitmap decoded from {@code data}, decoding it with {@code loader} if
+   * it's neither cached nor already being decoded.
+   */
+  /* package */ ListenableFuture<Bitmap> get(
+      byte[] data,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension,
+      Supplier<ListenableFuture<Bitmap>> loader) {
+    return get(
+        new Key(
+            /* uri= */ null, Hashing.sha256().hashBytes(data), options, maximumOutputDimension),
+        loader);
+  }
+
+  private ListenableFuture<Bitmap> get(Key key, Supplier<ListenableFuture<Bitmap>> loader) {
+    SettableFuture<Bitmap> future = SettableFuture.create();
+    synchronized (this) {
+      @Nullable Bitmap bitmap = bitmaps.get(key);
+      if (bitmap != null) {
+        hitCount++;
+        return Futures.immediateFuture(bitmap);
+      }
+      @Nullable ListenableFuture<Bitmap> pendingLoad = pendingLoads.get(key);
+      if (pendingLoad != null) {
+        hitCount++;
+        return Futures.nonCancellationPropagating(pendingLoad);
+      }
+      missCount++;
+      pendingLoads.put(key, future);
+    }
+    // Start loading outside of the lock, as the loader may run synchronously.
+    try {
+      future.setFuture(loader.get());
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        pendingLoads.remove(key);
+      }
+      future.setException(e);
+      return Futures.nonCancellationPropagating(future);
+    }
+    Futures.addCallback(
+        future,
+        new FutureCallback<Bitmap>() {
+          @Override
+          public void onSuccess(Bitmap bitmap) {
+            onLoadCompleted(key, future, bitmap);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            onLoadCompleted(key, future, /* bitmap= */ null);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return Futures.nonCancellationPropagating(future);
+  }
+
+  private synchronized void onLoadCompleted(
+      Key key, ListenableFuture<Bitmap> future, @Nullable Bitmap bitmap) {
+    if (pendingLoads.get(key) == future) {
+      pendingLoads.remove(key);
+    }
+    if (bitmap == null) {
+      return;
+    }
+    long entrySizeBytes = getSizeBytes(key, bitmap);
+    if (entrySizeBytes > maxSizeBytes) {
+      return;
+    }
+    @Nullable Bitmap previousBitmap = bitmaps.put(key, bitmap);
+    if (previousBitmap != null) {
+      sizeBytes -= getSizeBytes(key, previousBitmap);
+    }
+    sizeBytes += entrySizeBytes;
+    Iterator<Map.Entry<Key, Bitmap>> iterator = bitmaps.entrySet().iterator();
+    while (sizeBytes > maxSizeBytes) {
+      Map.Entry<Key, Bitmap> entry = iterator.next();
+      sizeBytes -= getSizeBytes(entry.getKey(), entry.getValue());
+      iterator.remove();
+    }
+  }
+
+  private static long getSizeBytes(Key key, Bitmap bitmap) {
+    return key.sizeBytes + bitmap.getAllocationByteCount();
+  }
+
+  private static final class Key {
+
+    @Nullable private final Uri uri;
+    @Nullable private final HashCode dataDigest;
+    private final List<@NullableType Object> optionValues;
+    private final int maximumOutputDimension;
+    private final int hashCode;
+
+    /** An estimate of the number of bytes used by the key. */
+    public final int sizeBytes;
+
+    public Key(
+        @Nullable Uri uri,
+        @Nullable HashCode dataDigest,
+        @Nullable BitmapFactory.Options options,
+        int maximumOutputDimension) {
+      this.uri = uri;
+      this.dataDigest = dataDigest;
+      this.maximumOutputDimension = maximumOutputDimension;
+      optionValues = getOptionValues(options);
+      int result = uri != null ? uri.hashCode() : Objects.hashCode(dataDigest);
+      result = 31 * result + optionValues.hashCode();
+      hashCode = 31 * result + maximumOutputDimension;
+      sizeBytes =
+          uri != null
+              ? 2 * uri.toString().length()
+              : dataDigest != null ? dataDigest.bits() / 8 : 0;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hashCode == other.hashCode
+          && maximumOutputDimension == other.maximumOutputDimension
+          && Objects.equals(uri, other.uri)
+          && Objects.equals(dataDigest, other.dataDigest)
+          && optionValues.equals(other.optionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    /** Returns the values of the decoding options that affect the decoded bitmap. */
+    private static List<@NullableType Object> getOptionValues(
+        @Nullable BitmapFactory.Options options) {
+      if (options == null) {
+        return Collections.emptyList();
+      }
+      return Arrays.asList(
+          options.inPreferredConfig,
+          options.inMutable,
+          options.inPremultiplied,
+          options.inScaled,
+          options.inDensity,
+          options.inTargetDensity,
+          options.inScreenDensity,
+          options.inSampleSize);
+    }
+  }
+}
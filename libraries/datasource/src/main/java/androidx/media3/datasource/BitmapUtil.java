@@ -15,11 +15,15 @@
  */
 package androidx.media3.datasource;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import androidx.annotation.Nullable;
 import androidx.exifinterface.media.ExifInterface;
+import androidx.media3.common.C;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.UnstableApi;
 import java.io.ByteArrayInputStream;
@@ -45,6 +49,34 @@ public final class BitmapUtil {
   @SuppressWarnings("nullness:argument.type.incompatible")
   public static Bitmap decode(byte[] data, int length, @Nullable BitmapFactory.Options options)
       throws IOException {
+    return decode(data, length, options, /* maximumOutputDimension= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * Decodes a {@link Bitmap} from a byte array using {@link BitmapFactory} and the {@link
+   * ExifInterface}, subsampling the image while decoding so that neither output dimension exceeds
+   * {@code maximumOutputDimension}.
+   *
+   * @param data Byte array of compressed image data.
+   * @param length The number of bytes to parse.
+   * @param options the {@link BitmapFactory.Options} to decode the {@code data} with. The {@link
+   *     BitmapFactory.Options#inSampleSize} is ignored if {@code maximumOutputDimension} is set.
+   * @param maximumOutputDimension The maximum width and height of the output, in pixels, or {@link
+   *     C#LENGTH_UNSET} to decode the image at its full size.
+   * @throws ParserException if the {@code data} could not be decoded.
+   */
+  // BitmapFactory's options parameter is null-ok.
+  @SuppressWarnings("nullness:argument.type.incompatible")
+  public static Bitmap decode(
+      byte[] data,
+      int length,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension)
+      throws IOException {
+    checkArgument(maximumOutputDimension > 0 || maximumOutputDimension == C.LENGTH_UNSET);
+    if (maximumOutputDimension != C.LENGTH_UNSET) {
+      options = getSubsamplingOptions(data, length, options, maximumOutputDimension);
+    }
     @Nullable Bitmap bitmap = BitmapFactory.decodeByteArray(data, /* offset= */ 0, length, options);
     if (bitmap == null) {
       throw ParserException.createForMalformedContainer(
@@ -72,4 +104,32 @@ public final class BitmapUtil {
     }
     return bitmap;
   }
+
+  private static BitmapFactory.Options getSubsamplingOptions(
+      byte[] data,
+      int length,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension) {
+    BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+    boundsOptions.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(data, /* offset= */ 0, length, boundsOptions);
+    int largerDimension = max(boundsOptions.outWidth, boundsOptions.outHeight);
+    // Don't modify the options passed in, as they may be used for concurrent decodes.
+    BitmapFactory.Options subsamplingOptions = new BitmapFactory.Options();
+    if (options != null) {
+      subsamplingOptions.inPreferredConfig = options.inPreferredConfig;
+      subsamplingOptions.inMutable = options.inMutable;
+      subsamplingOptions.inPremultiplied = options.inPremultiplied;
+      subsamplingOptions.inScaled = options.inScaled;
+      subsamplingOptions.inDensity = options.inDensity;
+      subsamplingOptions.inTargetDensity = options.inTargetDensity;
+      subsamplingOptions.inScreenDensity = options.inScreenDensity;
+    }
+    subsamplingOptions.inSampleSize = 1;
+    while (largerDimension > maximumOutputDimension) {
+      subsamplingOptions.inSampleSize *= 2;
+      largerDimension /= 2;
+    }
+    return subsamplingOptions;
+  }
 }
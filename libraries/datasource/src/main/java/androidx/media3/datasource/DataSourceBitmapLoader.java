@@ -15,6 +15,7 @@
  */
 package androidx.media3.datasource;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkStateNotNull;
 import static androidx.media3.common.util.Util.isBitmapFactorySupportedMimeType;
 
@@ -23,6 +24,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import androidx.annotation.Nullable;
+import androidx.media3.common.C;
 import androidx.media3.common.util.BitmapLoader;
 import androidx.media3.common.util.UnstableApi;
 import com.google.common.base.Supplier;
@@ -30,6 +32,7 @@ import com.google.common.base.Suppliers;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.IOException;
 import java.util.concurrent.Executors;
 
@@ -40,6 +43,10 @@ import java.util.concurrent.Executors;
  * <p>Loading tasks are delegated to a {@link ListeningExecutorService} defined during construction.
  * If no executor service is passed, all tasks are delegated to a single-thread executor service
  * that is shared between instances of this class.
+ *
+ * <p>Decoded bitmaps can be cached in a {@link BitmapCache} set with {@link
+ * Builder#setBitmapCache(BitmapCache)}, so that repeated requests for the same image don't decode
+ * it again.
  */
 @UnstableApi
 public final class DataSourceBitmapLoader implements BitmapLoader {
@@ -48,9 +55,113 @@ public final class DataSourceBitmapLoader implements BitmapLoader {
       Suppliers.memoize(
           () -> MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor()));
 
+  /** A builder for {@link DataSourceBitmapLoader} instances. */
+  public static final class Builder {
+
+    private final Context context;
+
+    @Nullable private ListeningExecutorService listeningExecutorService;
+    @Nullable private DataSource.Factory dataSourceFactory;
+    @Nullable private BitmapFactory.Options options;
+    private int maximumOutputDimension;
+    @Nullable private BitmapCache bitmapCache;
+
+    /**
+     * Creates a builder.
+     *
+     * @param context The context.
+     */
+    public Builder(Context context) {
+      this.context = context.getApplicationContext();
+      maximumOutputDimension = C.LENGTH_UNSET;
+    }
+
+    /**
+     * Sets the {@link ListeningExecutorService} to which loading tasks are delegated. The default
+     * is a single-thread executor service that is shared between instances of this class.
+     *
+     * @param listeningExecutorService The {@link ListeningExecutorService}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setExecutorService(ListeningExecutorService listeningExecutorService) {
+      this.listeningExecutorService = listeningExecutorService;
+      return this;
+    }
+
+    /**
+     * Sets the {@link DataSource.Factory} that creates the {@link DataSource} used to load images.
+     * The default is a {@link DefaultDataSource.Factory}.
+     *
+     * @param dataSourceFactory The {@link DataSource.Factory}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setDataSourceFactory(DataSource.Factory dataSourceFactory) {
+      this.dataSourceFactory = dataSourceFactory;
+      return this;
+    }
+
+    /**
+     * Sets the {@link BitmapFactory.Options} images are decoded with. The default is {@code null}.
+     *
+     * @param options The {@link BitmapFactory.Options}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBitmapFactoryOptions(@Nullable BitmapFactory.Options options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Sets the maximum width and height of decoded bitmaps, in pixels. Larger images are
+     * subsampled by a power of two while they're decoded. The default is {@link C#LENGTH_UNSET},
+     * meaning images are decoded at their full size.
+     *
+     * @param maximumOutputDimension The maximum output dimension, or {@link C#LENGTH_UNSET}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaximumOutputDimension(int maximumOutputDimension) {
+      checkArgument(maximumOutputDimension > 0 || maximumOutputDimension == C.LENGTH_UNSET);
+      this.maximumOutputDimension = maximumOutputDimension;
+      return this;
+    }
+
+    /**
+     * Sets the {@link BitmapCache} in which decoded bitmaps are cached, or {@code null} to not
+     * cache bitmaps. The default is {@code null}.
+     *
+     * @param bitmapCache The {@link BitmapCache}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBitmapCache(@Nullable BitmapCache bitmapCache) {
+      this.bitmapCache = bitmapCache;
+      return this;
+    }
+
+    /** Builds a {@link DataSourceBitmapLoader}. */
+    public DataSourceBitmapLoader build() {
+      return new DataSourceBitmapLoader(
+          listeningExecutorService != null
+              ? listeningExecutorService
+              : checkStateNotNull(DEFAULT_EXECUTOR_SERVICE.get()),
+          dataSourceFactory != null
+              ? dataSourceFactory
+              : new DefaultDataSource.Factory(context),
+          options,
+          maximumOutputDimension,
+          bitmapCache);
+    }
+  }
+
   private final ListeningExecutorService listeningExecutorService;
   private final DataSource.Factory dataSourceFactory;
   @Nullable private final BitmapFactory.Options options;
+  private final int maximumOutputDimension;
+  @Nullable private final BitmapCache bitmapCache;
 
   /**
    * Creates an instance that uses a {@link DefaultHttpDataSource} for image loading and delegates
@@ -84,9 +195,25 @@ public final class DataSourceBitmapLoader implements BitmapLoader {
       ListeningExecutorService listeningExecutorService,
       DataSource.Factory dataSourceFactory,
       @Nullable BitmapFactory.Options options) {
+    this(
+        listeningExecutorService,
+        dataSourceFactory,
+        options,
+        /* maximumOutputDimension= */ C.LENGTH_UNSET,
+        /* bitmapCache= */ null);
+  }
+
+  private DataSourceBitmapLoader(
+      ListeningExecutorService listeningExecutorService,
+      DataSource.Factory dataSourceFactory,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension,
+      @Nullable BitmapCache bitmapCache) {
     this.listeningExecutorService = listeningExecutorService;
     this.dataSourceFactory = dataSourceFactory;
     this.options = options;
+    this.maximumOutputDimension = maximumOutputDimension;
+    this.bitmapCache = bitmapCache;
   }
 
   @Override
@@ -96,22 +223,41 @@ public final class DataSourceBitmapLoader implements BitmapLoader {
 
   @Override
   public ListenableFuture<Bitmap> decodeBitmap(byte[] data) {
-    return listeningExecutorService.submit(() -> BitmapUtil.decode(data, data.length, options));
+    if (bitmapCache != null) {
+      return bitmapCache.get(data, options, maximumOutputDimension, () -> submitDecode(data));
+    }
+    return submitDecode(data);
   }
 
   @Override
   public ListenableFuture<Bitmap> loadBitmap(Uri uri) {
+    if (bitmapCache != null) {
+      return bitmapCache.get(uri, options, maximumOutputDimension, () -> submitLoad(uri));
+    }
+    return submitLoad(uri);
+  }
+
+  private ListenableFuture<Bitmap> submitDecode(byte[] data) {
+    return listeningExecutorService.submit(
+        () -> BitmapUtil.decode(data, data.length, options, maximumOutputDimension));
+  }
+
+  private ListenableFuture<Bitmap> submitLoad(Uri uri) {
     return listeningExecutorService.submit(
-        () -> load(dataSourceFactory.createDataSource(), uri, options));
+        () -> load(dataSourceFactory.createDataSource(), uri, options, maximumOutputDimension));
   }
 
   private static Bitmap load(
-      DataSource dataSource, Uri uri, @Nullable BitmapFactory.Options options) throws IOException {
+      DataSource dataSource,
+      Uri uri,
+      @Nullable BitmapFactory.Options options,
+      int maximumOutputDimension)
+      throws IOException {
     try {
       DataSpec dataSpec = new DataSpec(uri);
       dataSource.open(dataSpec);
       byte[] readData = DataSourceUtil.readToEnd(dataSource);
-      return BitmapUtil.decode(readData, readData.length, options);
+      return BitmapUtil.decode(readData, readData.length, options, maximumOutputDimension);
     } finally {
       dataSource.close();
     }
@@ -15,6 +15,8 @@
  */
 package androidx.media3.datasource;
 
+import static java.lang.Math.max;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
@@ -22,6 +24,7 @@ import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +37,11 @@ import java.util.Map;
  * there exists a higher priority task then {@link PriorityTaskManager.PriorityTooLowException} is
  * thrown.
  *
+ * <p>If the {@link PriorityTaskManager} has a {@linkplain
+ * PriorityTaskManager#setLowerPriorityBytesPerSecond(long) lower priority byte rate} set, calls to
+ * {@link #open(DataSpec)} always proceed, and calls to {@link #read(byte[], int, int)} block until
+ * the task is allowed to read data, reading no more than the number of bytes it's allowed to read.
+ *
  * <p>Instances of this class are intended to be used as parts of (possibly larger) tasks that are
  * registered with the {@link PriorityTaskManager}, and hence do <em>not</em> register as tasks
  * themselves.
@@ -98,14 +106,37 @@ public final class PriorityDataSource implements DataSource {
 
   @Override
   public long open(DataSpec dataSpec) throws IOException {
-    priorityTaskManager.proceedOrThrow(priority);
+    if (priorityTaskManager.getLowerPriorityBytesPerSecond() == 0) {
+      priorityTaskManager.proceedOrThrow(priority);
+    }
     return upstream.open(dataSpec);
   }
 
   @Override
   public int read(byte[] buffer, int offset, int length) throws IOException {
-    priorityTaskManager.proceedOrThrow(priority);
-    return upstream.read(buffer, offset, length);
+    if (priorityTaskManager.getLowerPriorityBytesPerSecond() == 0) {
+      priorityTaskManager.proceedOrThrow(priority);
+      return upstream.read(buffer, offset, length);
+    }
+    if (length == 0) {
+      return 0;
+    }
+    try {
+      length = priorityTaskManager.proceedWithByteBudget(priority, length);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    int bytesRead = 0;
+    try {
+      bytesRead = upstream.read(buffer, offset, length);
+      return bytesRead;
+    } finally {
+      if (bytesRead < length) {
+        // Return the bytes that weren't read, which includes all of them at the end of the input.
+        priorityTaskManager.returnUnusedBytes(priority, length - max(0, bytesRead));
+      }
+    }
   }
 
   @Override
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link DataSource} that reads from an upstream {@link DataSource} in large sequential reads,
+ * and serves smaller reads from a reusable buffer.
+ *
+ * <p>Extractors typically issue many small reads, for example to read box or element headers. On
+ * slow flash storage and high-latency network connections each of those reads has a significant
+ * fixed cost, which this class avoids. Reads that are at least as large as the buffer are passed
+ * through to the upstream {@link DataSource} directly.
+ *
+ * <p>If a {@linkplain Factory#setReadaheadExecutor(Executor) readahead executor} is set, the
+ * upstream {@link DataSource} is read on that executor into a pair of buffers, so that reading the
+ * next data overlaps with the caller consuming the previous data. In this mode {@link
+ * TransferListener} callbacks for reads are called on the executor's thread. {@link #close()}
+ * doesn't wait for an ongoing upstream read to return. Instead, the upstream {@link DataSource} is
+ * closed on the executor's thread once the read returns, and any error closing it is ignored. A
+ * subsequent {@link #open(DataSpec)} waits for this to happen.
+ *
+ * <p>The number of reads issued by the caller and to the upstream {@link DataSource} are available
+ * from the getters of this class, and are reported to an optional {@link EventListener} when the
+ * data source is closed.
+ */
+@UnstableApi
+public final class ReadaheadDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link ReadaheadDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+
+    private int bufferSize;
+    @Nullable private Executor readaheadExecutor;
+    @Nullable private EventListener eventListener;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory A {@link DataSource.Factory} that provides upstream {@link DataSource
+     *     DataSources} for {@link ReadaheadDataSource} instances created by the factory.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this.upstreamFactory = upstreamFactory;
+      bufferSize = DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * Sets the size of the readahead buffer, in bytes.
+     *
+     * <p>The default is {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @param bufferSize The size of the readahead buffer, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setBufferSize(int bufferSize) {
+      checkArgument(bufferSize > 0);
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /**
+     * Sets an {@link Executor} on which the upstream {@link DataSource} is read ahead of the
+     * caller.
+     *
+     * <p>The executor must be able to run one task concurrently for each open data source created
+     * by this factory. If the executor rejects a task, data is read on the calling thread instead.
+     *
+     * <p>The default is {@code null}, meaning that data is read on the calling thread.
+     *
+     * @param readaheadExecutor The {@link Executor}, or {@code null}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setReadaheadExecutor(@Nullable Executor readaheadExecutor) {
+      this.readaheadExecutor = readaheadExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link EventListener} to which read statistics are reported.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param eventListener The {@link EventListener}, or {@code null}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setEventListener(@Nullable EventListener eventListener) {
+      this.eventListener = eventListener;
+      return this;
+    }
+
+    @Override
+    public ReadaheadDataSource createDataSource() {
+      ReadaheadDataSource dataSource =
+          new ReadaheadDataSource(
+              upstreamFactory.createDataSource(), bufferSize, readaheadExecutor);
+      dataSource.setEventListener(eventListener);
+      return dataSource;
+    }
+  }
+
+  /** Listener of {@link ReadaheadDataSource} events. */
+  public interface EventListener {
+
+    /**
+     * Called when a {@link ReadaheadDataSource} is closed.
+     *
+     * @param readCount The number of reads issued by the caller since the data source was opened.
+     * @param upstreamReadCount The number of reads issued to the upstream {@link DataSource} since
+     *     the data source was opened.
+     * @param upstreamBytesRead The number of bytes read from the upstream {@link DataSource} since
+     *     the data source was opened.
+     */
+    void onReadsCompleted(long readCount, long upstreamReadCount, long upstreamBytesRead);
+  }
+
+  /** The default size of the readahead buffer, in bytes. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /** The number of buffers used when reading ahead on an executor. */
+  private static final int READAHEAD_BUFFER_COUNT = 2;
+
+  private final DataSource upstream;
+  private final int bufferSize;
+  @Nullable private final Executor readaheadExecutor;
+  private final Object lock;
+
+  @GuardedBy("lock")
+  private final ArrayDeque<Chunk> freeChunks;
+
+  @GuardedBy("lock")
+  private final ArrayDeque<Chunk> filledChunks;
+
+  @Nullable private EventListener eventListener;
+  @Nullable private Chunk readBuffer;
+  @Nullable private Chunk currentChunk;
+  private int currentChunkPosition;
+  private boolean readingAhead;
+  private boolean endOfInput;
+  private long readCountAtOpen;
+  private long upstreamReadCountAtOpen;
+  private long upstreamBytesReadAtOpen;
+
+  @GuardedBy("lock")
+  private boolean readaheadTaskRunning;
+
+  @GuardedBy("lock")
+  private boolean readaheadCanceled;
+
+  @GuardedBy("lock")
+  private boolean closeUpstreamAfterReadahead;
+
+  @GuardedBy("lock")
+  @Nullable
+  private Exception readaheadException;
+
+  @GuardedBy("lock")
+  private long readCount;
+
+  @GuardedBy("lock")
+  private long upstreamReadCount;
+
+  @GuardedBy("lock")
+  private long upstreamBytesRead;
+
+  /**
+   * Creates an instance that reads on the calling thread, using a buffer of {@link
+   * #DEFAULT_BUFFER_SIZE}.
+   *
+   * @param upstream The upstream {@link DataSource}.
+   */
+  public ReadaheadDataSource(DataSource upstream) {
+    this(upstream, DEFAULT_BUFFER_SIZE, /* readaheadExecutor= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param upstream The upstream {@link DataSource}.
+   * @param bufferSize The size of the readahead buffer, in bytes.
+   * @param readaheadExecutor An {@link Executor} on which the upstream {@link DataSource} is read
+   *     ahead of the caller, or {@code null} to read on the calling thread.
+   */
+  public ReadaheadDataSource(
+      DataSource upstream, int bufferSize, @Nullable Executor readaheadExecutor) {
+    checkArgument(bufferSize > 0);
+    this.upstream = checkNotNull(upstream);
+    this.bufferSize = bufferSize;
+    this.readaheadExecutor = readaheadExecutor;
+    lock = new Object();
+    freeChunks = new ArrayDeque<>();
+    filledChunks = new ArrayDeque<>();
+    if (readaheadExecutor != null) {
+      synchronized (lock) {
+        for (int i = 0; i < READAHEAD_BUFFER_COUNT; i++) {
+          freeChunks.add(new Chunk(bufferSize));
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the {@link EventListener} to which read statistics are reported.
+   *
+   * @param eventListener The {@link EventListener}, or {@code null}.
+   */
+  public void setEventListener(@Nullable EventListener eventListener) {
+    this.eventListener = eventListener;
+  }
+
+  /** Returns the total number of reads issued by the caller. */
+  public long getReadCount() {
+    synchronized (lock) {
+      return readCount;
+    }
+  }
+
+  /** Returns the total number of reads issued to the upstream {@link DataSource}. */
+  public long getUpstreamReadCount() {
+    synchronized (lock) {
+      return upstreamReadCount;
+    }
+  }
+
+  /** Returns the total number of bytes read from the upstream {@link DataSource}. */
+  public long getUpstreamBytesRead() {
+    synchronized (lock) {
+      return upstreamBytesRead;
+    }
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    currentChunk = null;
+    currentChunkPosition = 0;
+    endOfInput = false;
+    synchronized (lock) {
+      readCountAtOpen = readCount;
+      upstreamReadCountAtOpen = upstreamReadCount;
+      upstreamBytesReadAtOpen = upstreamBytesRead;
+    }
+    // The upstream data source may still be being closed by the previous readahead task.
+    awaitReadaheadFinished();
+    long length = upstream.open(dataSpec);
+    readingAhead = readaheadExecutor != null && startReadahead(readaheadExecutor);
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    synchronized (lock) {
+      readCount++;
+    }
+    if (endOfInput) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    @Nullable Chunk chunk = currentChunk;
+    if (chunk == null || currentChunkPosition == chunk.length) {
+      if (readingAhead) {
+        currentChunk = null;
+        chunk = takeFilledChunk(chunk);
+      } else {
+        if (length >= bufferSize) {
+          // The caller's buffer is at least as large as ours, so there's no need to copy.
+          return readUpstream(buffer, offset, length);
+        }
+        if (readBuffer == null) {
+          readBuffer = new Chunk(bufferSize);
+        }
+        chunk = readBuffer;
+        chunk.length = readUpstream(chunk.data, /* offset= */ 0, bufferSize);
+      }
+      currentChunk = chunk;
+      currentChunkPosition = 0;
+      if (chunk.length == C.RESULT_END_OF_INPUT) {
+        endOfInput = true;
+        return C.RESULT_END_OF_INPUT;
+      }
+    }
+    int bytesToCopy = min(length, chunk.length - currentChunkPosition);
+    System.arraycopy(chunk.data, currentChunkPosition, buffer, offset, bytesToCopy);
+    currentChunkPosition += bytesToCopy;
+    return bytesToCopy;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    boolean upstreamClosedAfterReadahead = false;
+    if (readingAhead) {
+      upstreamClosedAfterReadahead = cancelReadahead();
+      readingAhead = false;
+    }
+    currentChunk = null;
+    notifyReadsCompleted();
+    if (!upstreamClosedAfterReadahead) {
+      upstream.close();
+    }
+  }
+
+  // Internal methods.
+
+  private int readUpstream(byte[] buffer, int offset, int length) throws IOException {
+    int bytesRead = upstream.read(buffer, offset, length);
+    synchronized (lock) {
+      upstreamReadCount++;
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        upstreamBytesRead += bytesRead;
+      }
+    }
+    return bytesRead;
+  }
+
+  private boolean startReadahead(Executor readaheadExecutor) {
+    synchronized (lock) {
+      freeChunks.addAll(filledChunks);
+      filledChunks.clear();
+      readaheadCanceled = false;
+      closeUpstreamAfterReadahead = false;
+      readaheadException = null;
+      readaheadTaskRunning = true;
+    }
+    try {
+      readaheadExecutor.execute(this::readAhead);
+      return true;
+    } catch (RejectedExecutionException e) {
+      synchronized (lock) {
+        readaheadTaskRunning = false;
+      }
+      return false;
+    }
+  }
+
+  /** Reads the upstream data source into free chunks, until the end of input or cancelation. */
+  private void readAhead() {
+    @Nullable Chunk chunk = null;
+    try {
+      while (true) {
+        synchronized (lock) {
+          while (freeChunks.isEmpty() && !readaheadCanceled) {
+            lock.wait();
+          }
+          if (readaheadCanceled) {
+            return;
+          }
+          chunk = freeChunks.removeFirst();
+        }
+        chunk.length = readUpstream(chunk.data, /* offset= */ 0, bufferSize);
+        boolean endOfInput = chunk.length == C.RESULT_END_OF_INPUT;
+        synchronized (lock) {
+          filledChunks.addLast(chunk);
+          chunk = null;
+          lock.notifyAll();
+        }
+        if (endOfInput) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      synchronized (lock) {
+        readaheadException = new InterruptedIOException();
+      }
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException e) {
+      synchronized (lock) {
+        readaheadException = e;
+      }
+    } finally {
+      boolean closeUpstream;
+      synchronized (lock) {
+        if (chunk != null) {
+          freeChunks.addLast(chunk);
+        }
+        closeUpstream = closeUpstreamAfterReadahead;
+        if (!closeUpstream) {
+          readaheadTaskRunning = false;
+          lock.notifyAll();
+        }
+      }
+      if (closeUpstream) {
+        DataSourceUtil.closeQuietly(upstream);
+        synchronized (lock) {
+          readaheadTaskRunning = false;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the next chunk filled by the readahead task, blocking until it's available, after
+   * returning the {@code consumedChunk} to the readahead task.
+   */
+  private Chunk takeFilledChunk(@Nullable Chunk consumedChunk) throws IOException {
+    synchronized (lock) {
+      if (consumedChunk != null) {
+        freeChunks.addLast(consumedChunk);
+        lock.notifyAll();
+      }
+      while (filledChunks.isEmpty() && readaheadTaskRunning) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (!filledChunks.isEmpty()) {
+        return filledChunks.removeFirst();
+      }
+      @Nullable Exception readaheadException = this.readaheadException;
+      if (readaheadException instanceof IOException) {
+        throw (IOException) readaheadException;
+      }
+      throw (RuntimeException) checkNotNull(readaheadException);
+    }
+  }
+
+  /**
+   * Cancels the readahead task without waiting for it to finish.
+   *
+   * @return Whether the task is still running, in which case it closes the upstream data source
+   *     once its current upstream read returns.
+   */
+  private boolean cancelReadahead() {
+    synchronized (lock) {
+      readaheadCanceled = true;
+      lock.notifyAll();
+      if (currentChunk != null) {
+        // The canceled task won't take any further free chunks.
+        freeChunks.addLast(currentChunk);
+      }
+      closeUpstreamAfterReadahead = readaheadTaskRunning;
+      return closeUpstreamAfterReadahead;
+    }
+  }
+
+  /** Blocks until any previous readahead task has finished, including closing upstream. */
+  private void awaitReadaheadFinished() throws InterruptedIOException {
+    synchronized (lock) {
+      while (readaheadTaskRunning) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  private void notifyReadsCompleted() {
+    if (eventListener == null) {
+      return;
+    }
+    long readCount;
+    long upstreamReadCount;
+    long upstreamBytesRead;
+    synchronized (lock) {
+      readCount = this.readCount - readCountAtOpen;
+      upstreamReadCount = this.upstreamReadCount - upstreamReadCountAtOpen;
+      upstreamBytesRead = this.upstreamBytesRead - upstreamBytesReadAtOpen;
+    }
+    if (readCount > 0) {
+      eventListener.onReadsCompleted(readCount, upstreamReadCount, upstreamBytesRead);
+    }
+  }
+
+  /** A buffer holding data read from upstream. */
+  private static final class Chunk {
+
+    public final byte[] data;
+    public int length;
+
+    public Chunk(int size) {
+      data = new byte[size];
+    }
+  }
+}
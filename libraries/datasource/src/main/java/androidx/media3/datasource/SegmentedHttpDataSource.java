@@ -0,0 +1,630 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link DataSource} that reads a single HTTP resource over multiple concurrent connections, by
+ * splitting the requested range into segments that are requested with separate byte-range
+ * requests.
+ *
+ * <p>The first segment is read directly from a request made when the source is opened. Later
+ * segments are loaded in the background by further {@link HttpDataSource} instances, so that up
+ * to {@code connectionCount} requests are in progress at once, and are returned in order. To bound
+ * memory use, loading runs at most {@code 2 * connectionCount} segments ahead of the segment being
+ * read.
+ *
+ * <p>If the server doesn't support range requests, the length of the resource is unknown, or the
+ * request can't be split (for example because it's a POST request or because gzip is allowed), the
+ * data is read from a single request instead.
+ *
+ * <p>{@link TransferListener TransferListeners} added to this data source are added to each {@link
+ * HttpDataSource} that makes a request, so that they're notified of each request's transfer as its
+ * data is received. Requests for later segments are made in the background, so listeners may be
+ * notified on the threads of the loading {@link Executor}, and of several transfers at once. To
+ * avoid counting data twice, listeners should not also be added to the upstream {@link
+ * HttpDataSource.Factory}.
+ */
+@UnstableApi
+public final class SegmentedHttpDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link SegmentedHttpDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final HttpDataSource.Factory upstreamFactory;
+
+    @Nullable private Executor executor;
+    @Nullable private TransferListener transferListener;
+    private int connectionCount;
+    private int segmentLength;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory The {@link HttpDataSource.Factory} used to create the data sources
+     *     that make each request.
+     */
+    public Factory(HttpDataSource.Factory upstreamFactory) {
+      this.upstreamFactory = upstreamFactory;
+      connectionCount = DEFAULT_CONNECTION_COUNT;
+      segmentLength = DEFAULT_SEGMENT_LENGTH;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests for each opened resource.
+     *
+     * <p>The default is {@link #DEFAULT_CONNECTION_COUNT}.
+     *
+     * @param connectionCount The maximum number of concurrent requests.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setConnectionCount(int connectionCount) {
+      checkArgument(connectionCount > 0);
+      this.connectionCount = connectionCount;
+      return this;
+    }
+
+    /**
+     * Sets the length of each segment, in bytes.
+     *
+     * <p>The default is {@link #DEFAULT_SEGMENT_LENGTH}.
+     *
+     * @param segmentLength The length of each segment, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setSegmentLength(int segmentLength) {
+      checkArgument(segmentLength > 0);
+      this.segmentLength = segmentLength;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which segments are loaded. Each opened resource uses up to
+     * {@code connectionCount} tasks, each of which runs until the resource has been loaded or the
+     * data source is closed.
+     *
+     * <p>The default is {@code null}, which causes a cached thread pool that's shared by all
+     * factories to be used. Its threads are daemon threads, and exit once they have been idle for a
+     * while.
+     *
+     * @param executor The {@link Executor}, or {@code null} to use the default.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setExecutor(@Nullable Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link TransferListener} that will be used.
+     *
+     * <p>The default is {@code null}.
+     *
+     * <p>See {@link DataSource#addTransferListener(TransferListener)}.
+     *
+     * @param transferListener The listener that will be used.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setTransferListener(@Nullable TransferListener transferListener) {
+      this.transferListener = transferListener;
+      return this;
+    }
+
+    @Override
+    public SegmentedHttpDataSource createDataSource() {
+      SegmentedHttpDataSource dataSource =
+          new SegmentedHttpDataSource(
+              upstreamFactory,
+              executor != null ? executor : getDefaultExecutor(),
+              connectionCount,
+              segmentLength);
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      return dataSource;
+    }
+  }
+
+  /** The default maximum number of concurrent requests for each opened resource. */
+  public static final int DEFAULT_CONNECTION_COUNT = 4;
+
+  /** The default length of each segment, in bytes. */
+  public static final int DEFAULT_SEGMENT_LENGTH = 1024 * 1024;
+
+  private static final String THREAD_NAME = "ExoPlayer:SegmentedHttpDataSource";
+
+  @GuardedBy("SegmentedHttpDataSource.class")
+  @Nullable
+  private static ExecutorService defaultExecutor;
+
+  private final HttpDataSource.Factory upstreamFactory;
+  private final Executor executor;
+  private final int connectionCount;
+  private final int segmentLength;
+  private final List<TransferListener> transferListeners;
+
+  @Nullable private HttpDataSource primaryDataSource;
+  @Nullable private SegmentLoader segmentLoader;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
+  private long primaryBytesRemaining;
+  private long bytesRemaining;
+
+  private SegmentedHttpDataSource(
+      HttpDataSource.Factory upstreamFactory,
+      Executor executor,
+      int connectionCount,
+      int segmentLength) {
+    this.upstreamFactory = upstreamFactory;
+    this.executor = executor;
+    this.connectionCount = connectionCount;
+    this.segmentLength = segmentLength;
+    transferListeners = new ArrayList<>();
+    responseHeaders = ImmutableMap.of();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    if (!transferListeners.contains(transferListener)) {
+      transferListeners.add(transferListener);
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    try {
+      bytesRemaining = openInternal(dataSpec);
+    } catch (IOException e) {
+      closeInternal();
+      throw e;
+    }
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      length = (int) min(length, bytesRemaining);
+    }
+    int bytesRead;
+    @Nullable HttpDataSource primaryDataSource = this.primaryDataSource;
+    if (primaryDataSource != null && primaryBytesRemaining != 0) {
+      if (primaryBytesRemaining != C.LENGTH_UNSET) {
+        length = (int) min(length, primaryBytesRemaining);
+      }
+      bytesRead = primaryDataSource.read(buffer, offset, length);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (segmentLoader != null) {
+          throw new EOFException();
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+      if (primaryBytesRemaining != C.LENGTH_UNSET) {
+        primaryBytesRemaining -= bytesRead;
+      }
+    } else {
+      bytesRead = checkNotNull(segmentLoader).read(buffer, offset, length);
+    }
+    if (primaryDataSource != null && primaryBytesRemaining == 0) {
+      // The remaining data is read from the segment loader, which can now use the connection that
+      // the primary request was using.
+      this.primaryDataSource = null;
+      DataSourceUtil.closeQuietly(primaryDataSource);
+      if (segmentLoader != null) {
+        segmentLoader.startLoader(executor);
+      }
+    }
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      bytesRemaining -= bytesRead;
+    }
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      closeInternal();
+    } finally {
+      uri = null;
+      responseHeaders = ImmutableMap.of();
+    }
+  }
+
+  private long openInternal(DataSpec dataSpec) throws IOException {
+    HttpDataSource primaryDataSource =
+        createUpstreamDataSource(upstreamFactory, transferListeners);
+    this.primaryDataSource = primaryDataSource;
+    if (connectionCount == 1
+        || dataSpec.httpMethod != DataSpec.HTTP_METHOD_GET
+        || dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        || (dataSpec.length != C.LENGTH_UNSET && dataSpec.length <= segmentLength)) {
+      return openPassThrough(primaryDataSource, dataSpec);
+    }
+
+    long primaryLength =
+        dataSpec.length == C.LENGTH_UNSET ? segmentLength : min(dataSpec.length, segmentLength);
+    primaryDataSource.open(dataSpec.subrange(/* offset= */ 0, primaryLength));
+    long documentSize =
+        primaryDataSource.getResponseCode() == 206
+            ? HttpUtil.getDocumentSize(
+                getHeader(primaryDataSource.getResponseHeaders(), HttpHeaders.CONTENT_RANGE))
+            : C.LENGTH_UNSET;
+    if (documentSize == C.LENGTH_UNSET) {
+      // The request can't be split, so repeat it for the whole range.
+      primaryDataSource.close();
+      return openPassThrough(primaryDataSource, dataSpec);
+    }
+    long length = documentSize - dataSpec.position;
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      length = min(length, dataSpec.length);
+    }
+    primaryBytesRemaining = min(primaryLength, length);
+    uri = primaryDataSource.getUri();
+    responseHeaders = primaryDataSource.getResponseHeaders();
+    if (length > primaryBytesRemaining) {
+      SegmentLoader segmentLoader =
+          new SegmentLoader(
+              upstreamFactory,
+              ImmutableList.copyOf(transferListeners),
+              dataSpec,
+              /* offset= */ primaryBytesRemaining,
+              /* length= */ length - primaryBytesRemaining,
+              segmentLength,
+              /* maxBufferedSegments= */ 2 * connectionCount);
+      this.segmentLoader = segmentLoader;
+      segmentLoader.start(executor, /* loaderCount= */ connectionCount - 1);
+    }
+    return length;
+  }
+
+  private long openPassThrough(HttpDataSource primaryDataSource, DataSpec dataSpec)
+      throws IOException {
+    long length = primaryDataSource.open(dataSpec);
+    primaryBytesRemaining = C.LENGTH_UNSET;
+    uri = primaryDataSource.getUri();
+    responseHeaders = primaryDataSource.getResponseHeaders();
+    return length;
+  }
+
+  private void closeInternal() throws IOException {
+    @Nullable SegmentLoader segmentLoader = this.segmentLoader;
+    if (segmentLoader != null) {
+      segmentLoader.release();
+      this.segmentLoader = null;
+    }
+    @Nullable HttpDataSource primaryDataSource = this.primaryDataSource;
+    if (primaryDataSource != null) {
+      this.primaryDataSource = null;
+      primaryDataSource.close();
+    }
+  }
+
+  private static synchronized Executor getDefaultExecutor() {
+    @Nullable ExecutorService defaultExecutor = SegmentedHttpDataSource.defaultExecutor;
+    if (defaultExecutor == null) {
+      defaultExecutor =
+          Executors.newCachedThreadPool(
+              runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+              });
+      SegmentedHttpDataSource.defaultExecutor = defaultExecutor;
+    }
+    return defaultExecutor;
+  }
+
+  private static HttpDataSource createUpstreamDataSource(
+      HttpDataSource.Factory upstreamFactory, List<TransferListener> transferListeners) {
+    HttpDataSource dataSource = upstreamFactory.createDataSource();
+    for (int i = 0; i < transferListeners.size(); i++) {
+      dataSource.addTransferListener(transferListeners.get(i));
+    }
+    return dataSource;
+  }
+
+  @Nullable
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      List<String> values = header.getValue();
+      if (name.equalsIgnoreCase(header.getKey()) && !values.isEmpty()) {
+        return values.get(0);
+      }
+    }
+    return null;
+  }
+
+  /** Loads consecutive segments of a resource concurrently, and returns their data in order. */
+  private static final class SegmentLoader {
+
+    private final HttpDataSource.Factory upstreamFactory;
+    private final List<TransferListener> transferListeners;
+    private final DataSpec dataSpec;
+    private final int segmentLength;
+    private final int maxBufferedSegments;
+
+    @GuardedBy("this")
+    private final Segment[] segments;
+
+    @GuardedBy("this")
+    private final ArrayDeque<byte[]> freeBuffers;
+
+    @GuardedBy("this")
+    private int nextSegmentIndex;
+
+    @GuardedBy("this")
+    private int readSegmentIndex;
+
+    @GuardedBy("this")
+    private int readSegmentPosition;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    /** An error that stopped a loader before it claimed a segment. */
+    @GuardedBy("this")
+    @Nullable
+    private IOException loaderError;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory The {@link HttpDataSource.Factory} used to load segments.
+     * @param transferListeners The {@link TransferListener TransferListeners} to add to the data
+     *     sources that load segments.
+     * @param dataSpec The {@link DataSpec} of the resource.
+     * @param offset The offset in {@code dataSpec} of the first segment.
+     * @param length The total length of the segments.
+     * @param segmentLength The length of each segment.
+     * @param maxBufferedSegments The maximum number of segments that are loaded or loading.
+     */
+    public SegmentLoader(
+        HttpDataSource.Factory upstreamFactory,
+        List<TransferListener> transferListeners,
+        DataSpec dataSpec,
+        long offset,
+        long length,
+        int segmentLength,
+        int maxBufferedSegments) {
+      this.upstreamFactory = upstreamFactory;
+      this.transferListeners = transferListeners;
+      this.dataSpec = dataSpec;
+      this.segmentLength = segmentLength;
+      this.maxBufferedSegments = maxBufferedSegments;
+      int segmentCount = (int) ((length + segmentLength - 1) / segmentLength);
+      segments = new Segment[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long segmentOffset = (long) i * segmentLength;
+        segments[i] =
+            new Segment(offset + segmentOffset, (int) min(segmentLength, length - segmentOffset));
+      }
+      freeBuffers = new ArrayDeque<>();
+    }
+
+    /** Starts loading segments with the given number of concurrent requests. */
+    public void start(Executor executor, int loaderCount) throws IOException {
+      loaderCount = min(loaderCount, segments.length);
+      for (int i = 0; i < loaderCount; i++) {
+        if (!startLoader(executor)) {
+          if (i == 0) {
+            throw new IOException("Failed to start loading segments");
+          }
+          // Continue with fewer concurrent requests.
+          return;
+        }
+      }
+    }
+
+    /**
+     * Starts an additional concurrent request if there are segments that haven't been claimed,
+     * returning whether the executor accepted it.
+     */
+    public boolean startLoader(Executor executor) {
+      synchronized (this) {
+        if (released || nextSegmentIndex == segments.length) {
+          return true;
+        }
+      }
+      try {
+        executor.execute(this::loadSegments);
+        return true;
+      } catch (RejectedExecutionException e) {
+        return false;
+      }
+    }
+
+    /** Stops loading. Segments that are being loaded are abandoned. */
+    public synchronized void release() {
+      released = true;
+      notifyAll();
+    }
+
+    /**
+     * Reads data from the next segment, blocking until at least one byte is available.
+     *
+     * @throws IOException If an error occurred loading the segment.
+     */
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+      Segment segment = segments[readSegmentIndex];
+      while (segment.bytesLoaded == readSegmentPosition) {
+        if (segment.exception != null) {
+          throw segment.exception;
+        } else if (loaderError != null) {
+          throw loaderError;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      int bytesRead = min(length, segment.bytesLoaded - readSegmentPosition);
+      System.arraycopy(
+          checkNotNull(segment.data), readSegmentPosition, buffer, offset, bytesRead);
+      readSegmentPosition += bytesRead;
+      if (readSegmentPosition == segment.length) {
+        freeBuffers.add(checkNotNull(segment.data));
+        segment.data = null;
+        readSegmentIndex++;
+        readSegmentPosition = 0;
+        // A buffer is available for the next segment.
+        notifyAll();
+      }
+      return bytesRead;
+    }
+
+    private void loadSegments() {
+      @Nullable Segment segment = null;
+      try {
+        HttpDataSource upstream = createUpstreamDataSource(upstreamFactory, transferListeners);
+        while ((segment = claimSegment()) != null) {
+          try {
+            loadSegment(upstream, segment);
+          } finally {
+            DataSourceUtil.closeQuietly(upstream);
+          }
+        }
+      } catch (Throwable e) {
+        // Any failure must be reported to the reader, which would otherwise wait indefinitely for
+        // the segment.
+        IOException exception = e instanceof IOException ? (IOException) e : new IOException(e);
+        synchronized (this) {
+          if (segment != null) {
+            segment.exception = exception;
+          } else {
+            loaderError = exception;
+          }
+          notifyAll();
+        }
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
+    /**
+     * Returns the next segment to load once a buffer is available for it, or {@code null} if
+     * there are no more segments to load.
+     */
+    @Nullable
+    private synchronized Segment claimSegment() throws InterruptedIOException {
+      while (!released
+          && nextSegmentIndex < segments.length
+          && nextSegmentIndex >= readSegmentIndex + maxBufferedSegments) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (released || nextSegmentIndex == segments.length) {
+        return null;
+      }
+      Segment segment = segments[nextSegmentIndex++];
+      @Nullable byte[] data = freeBuffers.poll();
+      segment.data = data != null ? data : new byte[segmentLength];
+      return segment;
+    }
+
+    private void loadSegment(HttpDataSource upstream, Segment segment) throws IOException {
+      byte[] data = checkNotNull(segment.data);
+      upstream.open(dataSpec.subrange(segment.offset, segment.length));
+      int bytesLoaded = 0;
+      while (bytesLoaded < segment.length) {
+        synchronized (this) {
+          if (released) {
+            return;
+          }
+        }
+        int bytesRead = upstream.read(data, bytesLoaded, segment.length - bytesLoaded);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        bytesLoaded += bytesRead;
+        synchronized (this) {
+          segment.bytesLoaded = bytesLoaded;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  private static final class Segment {
+
+    /** The offset of the segment in the opened {@link DataSpec}. */
+    public final long offset;
+
+    public final int length;
+
+    /** The buffer into which the segment is loaded, or null if not loading or loaded. */
+    @Nullable public byte[] data;
+
+    public int bytesLoaded;
+    @Nullable public IOException exception;
+
+    public Segment(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
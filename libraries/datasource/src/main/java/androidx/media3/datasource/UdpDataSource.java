@@ -19,19 +19,38 @@ import static androidx.media3.common.util.Assertions.checkNotNull;
 import static java.lang.Math.min;
 
 import android.net.Uri;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.media3.common.C;
 import androidx.media3.common.PlaybackException;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
 
-/** A UDP {@link DataSource}. */
+/**
+ * A UDP {@link DataSource}.
+ *
+ * <p>By default packets are received on the loading thread when data is read, so packets may be
+ * lost if the loading thread isn't scheduled for a while. If a packet ring size is passed to {@link
+ * #UdpDataSource(int, int, int)}, packets are instead received by a dedicated thread into a ring of
+ * preallocated direct buffers, from which {@link #read} copies data without blocking for as long as
+ * packets are available. If the ring is full when a packet arrives, the packet is dropped and
+ * counted by {@link #getDroppedPacketCount()}.
+ */
 @UnstableApi
 public final class UdpDataSource extends BaseDataSource {
 
@@ -58,9 +77,14 @@ public final class UdpDataSource extends BaseDataSource {
 
   public static final int UDP_PORT_UNSET = -1;
 
+  private static final String RECEIVER_THREAD_NAME = "ExoPlayer:UdpDataSourceReceiver";
+
   private final int socketTimeoutMillis;
   private final byte[] packetBuffer;
   private final DatagramPacket packet;
+  @Nullable private final PacketReceiver packetReceiver;
+
+  @Nullable private ByteBuffer currentPacket;
 
   @Nullable private Uri uri;
   @Nullable private DatagramSocket socket;
@@ -91,10 +115,30 @@ public final class UdpDataSource extends BaseDataSource {
    *     as an infinite timeout.
    */
   public UdpDataSource(int maxPacketSize, int socketTimeoutMillis) {
+    this(maxPacketSize, socketTimeoutMillis, /* packetRingSize= */ 0);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * <p>If {@code packetRingSize} is greater than zero, packets are received by a dedicated thread
+   * using a {@link DatagramChannel}, into a ring of that many buffers of {@code maxPacketSize}
+   * bytes. Receiving from a multicast address in this mode requires API level 24. On earlier API
+   * levels, packets from multicast addresses are received on the loading thread.
+   *
+   * @param maxPacketSize The maximum datagram packet size, in bytes.
+   * @param socketTimeoutMillis The socket timeout in milliseconds. A timeout of zero is interpreted
+   *     as an infinite timeout.
+   * @param packetRingSize The number of packets that can be buffered by a dedicated receiving
+   *     thread, or zero to receive packets on the loading thread.
+   */
+  public UdpDataSource(int maxPacketSize, int socketTimeoutMillis, int packetRingSize) {
     super(/* isNetwork= */ true);
     this.socketTimeoutMillis = socketTimeoutMillis;
-    packetBuffer = new byte[maxPacketSize];
-    packet = new DatagramPacket(packetBuffer, 0, maxPacketSize);
+    packetBuffer = new byte[packetRingSize > 0 ? 0 : maxPacketSize];
+    packet = new DatagramPacket(packetBuffer, 0, packetBuffer.length);
+    packetReceiver =
+        packetRingSize > 0 ? new PacketReceiver(packetRingSize, maxPacketSize) : null;
   }
 
   @Override
@@ -106,14 +150,17 @@ public final class UdpDataSource extends BaseDataSource {
     try {
       address = InetAddress.getByName(host);
       InetSocketAddress socketAddress = new InetSocketAddress(address, port);
-      if (address.isMulticastAddress()) {
+      @Nullable PacketReceiver packetReceiver = this.packetReceiver;
+      if (packetReceiver != null && (!address.isMulticastAddress() || Util.SDK_INT >= 24)) {
+        socket = packetReceiver.open(socketAddress);
+      } else if (address.isMulticastAddress()) {
         multicastSocket = new MulticastSocket(socketAddress);
         multicastSocket.joinGroup(address);
         socket = multicastSocket;
       } else {
         socket = new DatagramSocket(socketAddress);
       }
-      socket.setSoTimeout(socketTimeoutMillis);
+      checkNotNull(socket).setSoTimeout(socketTimeoutMillis);
     } catch (SecurityException e) {
       throw new UdpDataSourceException(e, PlaybackException.ERROR_CODE_IO_NO_PERMISSION);
     } catch (IOException e) {
@@ -131,6 +178,9 @@ public final class UdpDataSource extends BaseDataSource {
     if (length == 0) {
       return 0;
     }
+    if (packetReceiver != null && packetReceiver.isOpen()) {
+      return readFromPacketReceiver(packetReceiver, buffer, offset, length);
+    }
 
     if (packetRemaining == 0) {
       // We've read all of the data from the current packet. Get another.
@@ -160,6 +210,22 @@ public final class UdpDataSource extends BaseDataSource {
     return uri;
   }
 
+  /**
+   * Returns the number of packets dropped since the source was opened because the packet ring was
+   * full, or 0 if packets aren't received into a ring.
+   */
+  public long getDroppedPacketCount() {
+    return packetReceiver == null ? 0 : packetReceiver.getDroppedPacketCount();
+  }
+
+  /**
+   * Returns the number of times since the source was opened that the packet ring became full and
+   * one or more consecutive packets were dropped, or 0 if packets aren't received into a ring.
+   */
+  public long getOverrunCount() {
+    return packetReceiver == null ? 0 : packetReceiver.getOverrunCount();
+  }
+
   @Override
   public void close() {
     uri = null;
@@ -171,12 +237,16 @@ public final class UdpDataSource extends BaseDataSource {
       }
       multicastSocket = null;
     }
+    if (packetReceiver != null) {
+      packetReceiver.close();
+    }
     if (socket != null) {
       socket.close();
       socket = null;
     }
     address = null;
     packetRemaining = 0;
+    currentPacket = null;
     if (opened) {
       opened = false;
       transferEnded();
@@ -193,4 +263,268 @@ public final class UdpDataSource extends BaseDataSource {
     }
     return socket.getLocalPort();
   }
+
+  private int readFromPacketReceiver(
+      PacketReceiver packetReceiver, byte[] buffer, int offset, int length)
+      throws UdpDataSourceException {
+    @Nullable ByteBuffer currentPacket = this.currentPacket;
+    if (currentPacket == null) {
+      // Block for the first packet only.
+      try {
+        currentPacket = packetReceiver.awaitPacket(socketTimeoutMillis);
+      } catch (SocketTimeoutException e) {
+        throw new UdpDataSourceException(
+            e, PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT);
+      } catch (IOException e) {
+        throw new UdpDataSourceException(
+            e, PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED);
+      }
+      bytesTransferred(currentPacket.remaining());
+    }
+    int bytesRead = 0;
+    while (currentPacket != null && bytesRead < length) {
+      int bytesToRead = min(currentPacket.remaining(), length - bytesRead);
+      currentPacket.get(buffer, offset + bytesRead, bytesToRead);
+      bytesRead += bytesToRead;
+      if (!currentPacket.hasRemaining()) {
+        packetReceiver.releasePacket();
+        currentPacket = packetReceiver.pollPacket();
+        if (currentPacket != null) {
+          bytesTransferred(currentPacket.remaining());
+        }
+      }
+    }
+    this.currentPacket = currentPacket;
+    return bytesRead;
+  }
+
+  /**
+   * Receives packets from a {@link DatagramChannel} on a dedicated thread into a ring of
+   * preallocated direct buffers.
+   */
+  private static final class PacketReceiver implements Runnable {
+
+    private final ByteBuffer[] packets;
+    private final ByteBuffer droppedPacket;
+
+    @GuardedBy("this")
+    @Nullable
+    private DatagramChannel channel;
+
+    @Nullable private Thread thread;
+
+    /** The number of packets received into the ring since it was opened. */
+    @GuardedBy("this")
+    private long writeIndex;
+
+    /** The number of packets released by the reader since the ring was opened. */
+    @GuardedBy("this")
+    private long readIndex;
+
+    @GuardedBy("this")
+    private long droppedPacketCount;
+
+    @GuardedBy("this")
+    private long overrunCount;
+
+    @GuardedBy("this")
+    private boolean overrunning;
+
+    @GuardedBy("this")
+    @Nullable
+    private IOException receiveException;
+
+    public PacketReceiver(int packetCount, int maxPacketSize) {
+      packets = new ByteBuffer[packetCount];
+      for (int i = 0; i < packetCount; i++) {
+        packets[i] = ByteBuffer.allocateDirect(maxPacketSize);
+      }
+      droppedPacket = ByteBuffer.allocateDirect(maxPacketSize);
+    }
+
+    /**
+     * Opens a channel bound to the given address, joining the group if it's a multicast address,
+     * and starts receiving packets.
+     *
+     * <p>Multicast addresses are only supported from API level 24.
+     *
+     * @return The socket of the channel.
+     */
+    public DatagramSocket open(InetSocketAddress socketAddress) throws IOException {
+      DatagramChannel channel = DatagramChannel.open();
+      try {
+        // DatagramChannel.bind requires API level 24, but binding the channel's socket doesn't.
+        channel.socket().bind(socketAddress);
+        InetAddress address = socketAddress.getAddress();
+        if (address.isMulticastAddress()) {
+          if (Util.SDK_INT < 24) {
+            throw new IOException("Joining a multicast group from a channel requires API 24");
+          }
+          joinGroup(channel, address);
+        }
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+      synchronized (this) {
+        this.channel = channel;
+        writeIndex = 0;
+        readIndex = 0;
+        droppedPacketCount = 0;
+        overrunCount = 0;
+        overrunning = false;
+        receiveException = null;
+      }
+      thread = new Thread(this, RECEIVER_THREAD_NAME);
+      thread.start();
+      return channel.socket();
+    }
+
+    public synchronized boolean isOpen() {
+      return channel != null;
+    }
+
+    /** Stops receiving packets, closes the channel and waits for the receiving thread to end. */
+    public void close() {
+      @Nullable DatagramChannel channel;
+      synchronized (this) {
+        channel = this.channel;
+        this.channel = null;
+        notifyAll();
+      }
+      if (channel != null) {
+        try {
+          // Unblocks the receiving thread.
+          channel.close();
+        } catch (IOException e) {
+          // Do nothing.
+        }
+      }
+      @Nullable Thread thread = this.thread;
+      this.thread = null;
+      if (thread != null) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    public synchronized long getDroppedPacketCount() {
+      return droppedPacketCount;
+    }
+
+    public synchronized long getOverrunCount() {
+      return overrunCount;
+    }
+
+    /**
+     * Returns the oldest packet in the ring, blocking until one is received.
+     *
+     * @param timeoutMs The maximum time to block, in milliseconds, or 0 to block indefinitely.
+     * @throws SocketTimeoutException If no packet was received before the timeout.
+     * @throws IOException If an error occurred receiving packets.
+     */
+    public synchronized ByteBuffer awaitPacket(int timeoutMs) throws IOException {
+      long deadlineMs = SystemClock.elapsedRealtime() + timeoutMs;
+      while (readIndex == writeIndex) {
+        if (receiveException != null) {
+          throw receiveException;
+        }
+        long remainingMs = deadlineMs - SystemClock.elapsedRealtime();
+        if (timeoutMs != 0 && remainingMs <= 0) {
+          throw new SocketTimeoutException();
+        }
+        try {
+          wait(timeoutMs == 0 ? 0 : remainingMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      return getPacket(readIndex);
+    }
+
+    /** Returns the oldest packet in the ring, or null if the ring is empty. */
+    @Nullable
+    public synchronized ByteBuffer pollPacket() {
+      return readIndex == writeIndex ? null : getPacket(readIndex);
+    }
+
+    /** Releases the oldest packet in the ring, so that its buffer can be reused. */
+    public synchronized void releasePacket() {
+      readIndex++;
+    }
+
+    @Override
+    public void run() {
+      @Nullable DatagramChannel channel;
+      synchronized (this) {
+        channel = this.channel;
+      }
+      while (channel != null) {
+        ByteBuffer packet;
+        synchronized (this) {
+          packet = writeIndex - readIndex < packets.length ? getPacket(writeIndex) : droppedPacket;
+        }
+        packet.clear();
+        try {
+          channel.receive(packet);
+        } catch (IOException e) {
+          synchronized (this) {
+            if (this.channel == channel) {
+              receiveException = e;
+              notifyAll();
+            }
+          }
+          return;
+        }
+        packet.flip();
+        synchronized (this) {
+          if (this.channel != channel) {
+            // The receiver has been closed, and possibly reopened.
+            return;
+          }
+          if (packet == droppedPacket) {
+            droppedPacketCount++;
+            if (!overrunning) {
+              overrunning = true;
+              overrunCount++;
+            }
+          } else {
+            overrunning = false;
+            writeIndex++;
+            notifyAll();
+          }
+        }
+      }
+    }
+
+    @GuardedBy("this")
+    private ByteBuffer getPacket(long index) {
+      return packets[(int) (index % packets.length)];
+    }
+
+    @RequiresApi(24)
+    private static void joinGroup(DatagramChannel channel, InetAddress group) throws IOException {
+      @Nullable
+      NetworkInterface networkInterface = channel.getOption(StandardSocketOptions.IP_MULTICAST_IF);
+      if (networkInterface == null) {
+        networkInterface = getMulticastInterface();
+      }
+      channel.join(group, networkInterface);
+    }
+
+    private static NetworkInterface getMulticastInterface() throws IOException {
+      Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
+      while (networkInterfaces.hasMoreElements()) {
+        NetworkInterface networkInterface = networkInterfaces.nextElement();
+        if (networkInterface.isUp() && networkInterface.supportsMulticast()) {
+          return networkInterface;
+        }
+      }
+      throw new IOException("No network interface supports multicast");
+    }
+  }
 }
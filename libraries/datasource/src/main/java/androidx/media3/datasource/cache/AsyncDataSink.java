@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+import android.os.ConditionVariable;
+import androidx.annotation.Nullable;
+import androidx.media3.datasource.DataSink;
+import androidx.media3.datasource.DataSpec;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link DataSink} that copies data into a ring of reusable buffers, and writes it to an
+ * underlying {@link DataSink} on an {@link Executor}.
+ *
+ * <p>Calls to {@link #write} only block if all buffers are waiting to be written, so the caller can
+ * read the next data whilst previous data is being written. An error writing to the underlying sink
+ * is thrown by a subsequent call to {@link #write} or {@link #close}. {@link #close} blocks until
+ * all data has been written, and then closes the underlying sink.
+ */
+/* package */ final class AsyncDataSink implements DataSink {
+
+  private static final Chunk END_OF_DATA = new Chunk(new byte[0]);
+
+  private final DataSink sink;
+  private final Executor executor;
+  private final Chunk[] chunks;
+  private final ArrayBlockingQueue<Chunk> freeChunks;
+  private final ArrayBlockingQueue<Chunk> filledChunks;
+  private final ConditionVariable writesFinished;
+
+  private boolean writing;
+  @Nullable private volatile IOException writeException;
+
+  /**
+   * Creates an instance.
+   *
+   * @param sink The underlying {@link DataSink}.
+   * @param executor The {@link Executor} on which data is written to {@code sink}. A task that
+   *     runs until the sink is closed is executed for each call to {@link #open}.
+   * @param bufferCount The number of buffers in the ring.
+   * @param bufferSize The size of each buffer, in bytes.
+   */
+  public AsyncDataSink(DataSink sink, Executor executor, int bufferCount, int bufferSize) {
+    checkArgument(bufferCount > 0 && bufferSize > 0);
+    this.sink = sink;
+    this.executor = executor;
+    chunks = new Chunk[bufferCount];
+    for (int i = 0; i < bufferCount; i++) {
+      chunks[i] = new Chunk(new byte[bufferSize]);
+    }
+    freeChunks = new ArrayBlockingQueue<>(bufferCount);
+    // Leave room for the end of data marker.
+    filledChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+    writesFinished = new ConditionVariable();
+  }
+
+  @Override
+  public void open(DataSpec dataSpec) throws IOException {
+    writeException = null;
+    freeChunks.clear();
+    filledChunks.clear();
+    for (Chunk chunk : chunks) {
+      freeChunks.add(chunk);
+    }
+    sink.open(dataSpec);
+    writesFinished.close();
+    try {
+      executor.execute(this::writeChunks);
+    } catch (RejectedExecutionException e) {
+      throw new IOException(e);
+    }
+    writing = true;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    while (length > 0) {
+      throwIfWriteFailed();
+      Chunk chunk;
+      try {
+        chunk = freeChunks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      chunk.length = min(length, chunk.data.length);
+      System.arraycopy(buffer, offset, chunk.data, 0, chunk.length);
+      filledChunks.add(chunk);
+      offset += chunk.length;
+      length -= chunk.length;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (writing) {
+      writing = false;
+      filledChunks.add(END_OF_DATA);
+      writesFinished.block();
+    }
+    try {
+      sink.close();
+    } finally {
+      throwIfWriteFailed();
+    }
+  }
+
+  private void writeChunks() {
+    try {
+      while (true) {
+        Chunk chunk = filledChunks.take();
+        if (chunk == END_OF_DATA) {
+          return;
+        }
+        if (writeException == null) {
+          try {
+            sink.write(chunk.data, /* offset= */ 0, chunk.length);
+          } catch (IOException e) {
+            writeException = e;
+          }
+        }
+        freeChunks.add(chunk);
+      }
+    } catch (InterruptedException e) {
+      writeException = new InterruptedIOException();
+      // Return all chunks so that the writing thread is unblocked and sees the exception.
+      @Nullable Chunk chunk;
+      while ((chunk = filledChunks.poll()) != null) {
+        if (chunk != END_OF_DATA) {
+          freeChunks.add(chunk);
+        }
+      }
+      Thread.currentThread().interrupt();
+    } finally {
+      writesFinished.open();
+    }
+  }
+
+  private void throwIfWriteFailed() throws IOException {
+    @Nullable IOException writeException = this.writeException;
+    if (writeException != null) {
+      throw writeException;
+    }
+  }
+
+  private static final class Chunk {
+
+    public final byte[] data;
+    public int length;
+
+    public Chunk(byte[] data) {
+      this.data = data;
+    }
+  }
+}
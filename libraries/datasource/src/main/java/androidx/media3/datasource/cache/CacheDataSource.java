@@ -52,6 +52,7 @@ import java.lang.annotation.Target;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -67,6 +68,7 @@ public final class CacheDataSource implements DataSource {
 
     private @MonotonicNonNull Cache cache;
     private DataSource.Factory cacheReadDataSourceFactory;
+    @Nullable private InMemorySpanCache inMemorySpanCache;
     @Nullable private DataSink.Factory cacheWriteDataSinkFactory;
     private CacheKeyFactory cacheKeyFactory;
     private boolean cacheIsReadOnly;
@@ -108,7 +110,9 @@ public final class CacheDataSource implements DataSource {
      * Sets the {@link DataSource.Factory} for {@link DataSource DataSources} for reading from the
      * cache.
      *
-     * <p>The default is a {@link FileDataSource.Factory} in its default configuration.
+     * <p>The default is a {@link FileDataSource.Factory} in its default configuration. A {@link
+     * MemoryMappedSpanDataSource.Factory} can be used instead to read cache hits through memory
+     * mappings that are shared between concurrent readers.
      *
      * @param cacheReadDataSourceFactory The {@link DataSource.Factory} for reading from the cache.
      * @return This factory.
@@ -119,6 +123,23 @@ public final class CacheDataSource implements DataSource {
       return this;
     }
 
+    /**
+     * Sets an {@link InMemorySpanCache} that holds recently read cache spans in memory, in front of
+     * the {@link DataSource DataSources} for reading from the cache.
+     *
+     * <p>The default is {@code null}, meaning that every read from the cache is served by a {@link
+     * DataSource} created by the {@link #setCacheReadDataSourceFactory cache read factory}.
+     *
+     * @param inMemorySpanCache The {@link InMemorySpanCache}, or {@code null} to read all spans
+     *     from the cache.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setInMemorySpanCache(@Nullable InMemorySpanCache inMemorySpanCache) {
+      this.inMemorySpanCache = inMemorySpanCache;
+      return this;
+    }
+
     /**
      * Sets the {@link DataSink.Factory} for generating {@link DataSink DataSinks} for writing data
      * to the cache. Passing {@code null} causes the cache to be read-only.
@@ -278,6 +299,26 @@ public final class CacheDataSource implements DataSource {
           C.PRIORITY_DOWNLOAD);
     }
 
+    /**
+     * Returns an instance suitable for downloading content, as returned by {@link
+     * #createDataSourceForDownloading()}, that writes to the cache asynchronously.
+     *
+     * @param cacheWriteExecutor The {@link Executor} on which data is written to the cache.
+     * @param bufferCount The number of buffers holding data waiting to be written.
+     * @param bufferSize The size of each buffer, in bytes.
+     * @return An instance suitable for downloading content.
+     */
+    /* package */ CacheDataSource createDataSourceForPipelinedDownloading(
+        Executor cacheWriteExecutor, int bufferCount, int bufferSize) {
+      return createDataSourceInternal(
+          upstreamDataSourceFactory != null ? upstreamDataSourceFactory.createDataSource() : null,
+          flags | FLAG_BLOCK_ON_CACHE,
+          C.PRIORITY_DOWNLOAD,
+          cacheWriteExecutor,
+          bufferCount,
+          bufferSize);
+    }
+
     /**
      * Returns an instance suitable for reading cached content as part of removing a download. The
      * created instance is equivalent to one that would be created by {@link #createDataSource()},
@@ -301,6 +342,22 @@ public final class CacheDataSource implements DataSource {
         @Nullable DataSource upstreamDataSource,
         @Flags int flags,
         @C.Priority int upstreamPriority) {
+      return createDataSourceInternal(
+          upstreamDataSource,
+          flags,
+          upstreamPriority,
+          /* cacheWriteExecutor= */ null,
+          /* bufferCount= */ 0,
+          /* bufferSize= */ 0);
+    }
+
+    private CacheDataSource createDataSourceInternal(
+        @Nullable DataSource upstreamDataSource,
+        @Flags int flags,
+        @C.Priority int upstreamPriority,
+        @Nullable Executor cacheWriteExecutor,
+        int bufferCount,
+        int bufferSize) {
       Cache cache = checkNotNull(this.cache);
       @Nullable DataSink cacheWriteDataSink;
       if (cacheIsReadOnly || upstreamDataSource == null) {
@@ -310,10 +367,19 @@ public final class CacheDataSource implements DataSource {
       } else {
         cacheWriteDataSink = new CacheDataSink.Factory().setCache(cache).createDataSink();
       }
+      if (cacheWriteDataSink != null && cacheWriteExecutor != null) {
+        cacheWriteDataSink =
+            new AsyncDataSink(cacheWriteDataSink, cacheWriteExecutor, bufferCount, bufferSize);
+      }
+      DataSource cacheReadDataSource = cacheReadDataSourceFactory.createDataSource();
+      if (inMemorySpanCache != null) {
+        cacheReadDataSource =
+            new InMemorySpanCacheDataSource(cacheReadDataSource, inMemorySpanCache);
+      }
       return new CacheDataSource(
           cache,
           upstreamDataSource,
-          cacheReadDataSourceFactory.createDataSource(),
+          cacheReadDataSource,
           cacheWriteDataSink,
           cacheKeyFactory,
           flags,
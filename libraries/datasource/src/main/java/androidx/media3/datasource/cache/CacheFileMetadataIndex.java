@@ -16,24 +16,37 @@
 package androidx.media3.datasource.cache;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.NullableType;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.database.DatabaseProvider;
 import androidx.media3.database.VersionTable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** Maintains an index of cache file metadata. */
 /* package */ final class CacheFileMetadataIndex {
 
+  private static final String TAG = "CacheFileMetadataIndex";
+  private static final String FLUSH_THREAD_NAME = "ExoPlayer:CacheFileMetadataIndex";
+  private static final long MIN_RETRY_DELAY_MS = 1000;
+  private static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+
   private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "CacheFileMetadata";
   private static final int TABLE_VERSION = 1;
 
@@ -61,8 +74,20 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           + " INTEGER NOT NULL)";
 
   private final DatabaseProvider databaseProvider;
+  private final int maxPendingUpdates;
+  private final long flushIntervalMs;
+  @Nullable private final ScheduledExecutorService flushExecutor;
+
+  /**
+   * Updates that have yet to be written to the database, keyed by file name. A {@code null} value
+   * indicates a pending removal. Replaced by an empty map while a background write is in progress.
+   */
+  private HashMap<String, @NullableType CacheFileMetadata> pendingUpdates;
 
   private @MonotonicNonNull String tableName;
+  private boolean immediateFlushQueued;
+  private boolean writingInBackground;
+  private int backgroundWriteFailureCount;
 
   /**
    * Deletes index data for the specified cache.
@@ -95,10 +120,48 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   }
 
   /**
+   * Creates an instance that writes each update to the database immediately.
+   *
    * @param databaseProvider Provides the database in which the index is stored.
    */
   public CacheFileMetadataIndex(DatabaseProvider databaseProvider) {
+    this(databaseProvider, /* maxPendingUpdates= */ 1, /* flushIntervalMs= */ 0);
+  }
+
+  /**
+   * Creates an instance that batches updates. Pending updates are written to the database in a
+   * single transaction on a background thread once {@code maxPendingUpdates} updates are pending,
+   * and at most {@code flushIntervalMs} after the oldest pending update was made. Updates can be
+   * made while a background write is in progress. A background write that fails is logged and
+   * retried with an exponentially increasing delay, during which updates remain pending. Pending
+   * updates are also written by {@link #flush()} and {@link #release()}.
+   *
+   * <p>Pending updates are lost if the process dies before they're written. This is safe because
+   * the index is only an optimization. Missing entries cause the length and last touch timestamp of
+   * a file to be read from the file system, and stale entries are removed when the cache is next
+   * initialized.
+   *
+   * @param databaseProvider Provides the database in which the index is stored.
+   * @param maxPendingUpdates The maximum number of pending updates. If 1, each update is written
+   *     immediately on the calling thread.
+   * @param flushIntervalMs The maximum time for which an update remains pending, in milliseconds.
+   */
+  public CacheFileMetadataIndex(
+      DatabaseProvider databaseProvider, int maxPendingUpdates, long flushIntervalMs) {
+    Assertions.checkArgument(maxPendingUpdates > 0 && flushIntervalMs >= 0);
     this.databaseProvider = databaseProvider;
+    this.maxPendingUpdates = maxPendingUpdates;
+    this.flushIntervalMs = flushIntervalMs;
+    flushExecutor =
+        maxPendingUpdates > 1
+            ? Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                  Thread thread = new Thread(runnable, FLUSH_THREAD_NAME);
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
+    pendingUpdates = new HashMap<>();
   }
 
   /**
@@ -110,7 +173,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @throws DatabaseIOException If an error occurs initializing the index.
    */
   @WorkerThread
-  public void initialize(long uid) throws DatabaseIOException {
+  public synchronized void initialize(long uid) throws DatabaseIOException {
     try {
       String hexUid = Long.toHexString(uid);
       tableName = getTableName(hexUid);
@@ -146,7 +209,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @throws DatabaseIOException If an error occurs loading the metadata.
    */
   @WorkerThread
-  public Map<String, CacheFileMetadata> getAll() throws DatabaseIOException {
+  public synchronized Map<String, CacheFileMetadata> getAll() throws DatabaseIOException {
+    flush();
     try (Cursor cursor = getCursor()) {
       Map<String, CacheFileMetadata> fileMetadata = new HashMap<>(cursor.getCount());
       while (cursor.moveToNext()) {
@@ -169,21 +233,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param name The name of the file.
    * @param length The file length.
    * @param lastTouchTimestamp The file last touch timestamp.
-   * @throws DatabaseIOException If an error occurs setting the metadata.
+   * @throws DatabaseIOException If an error occurs setting the metadata. Never thrown if updates
+   *     are batched, in which case they're written on a background thread.
    */
   @WorkerThread
-  public void set(String name, long length, long lastTouchTimestamp) throws DatabaseIOException {
+  public synchronized void set(String name, long length, long lastTouchTimestamp)
+      throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
-    try {
-      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      ContentValues values = new ContentValues();
-      values.put(COLUMN_NAME, name);
-      values.put(COLUMN_LENGTH, length);
-      values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
-      writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
-    } catch (SQLException e) {
-      throw new DatabaseIOException(e);
-    }
+    addPendingUpdate(name, new CacheFileMetadata(length, lastTouchTimestamp));
   }
 
   /**
@@ -192,17 +249,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * <p>This method may be slow and shouldn't normally be called on the main thread.
    *
    * @param name The name of the file whose metadata is to be removed.
-   * @throws DatabaseIOException If an error occurs removing the metadata.
+   * @throws DatabaseIOException If an error occurs removing the metadata. Never thrown if updates
+   *     are batched, in which case they're written on a background thread.
    */
   @WorkerThread
-  public void remove(String name) throws DatabaseIOException {
+  public synchronized void remove(String name) throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
-    try {
-      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      writableDatabase.delete(tableName, WHERE_NAME_EQUALS, new String[] {name});
-    } catch (SQLException e) {
-      throw new DatabaseIOException(e);
-    }
+    addPendingUpdate(name, /* metadata= */ null);
   }
 
   /**
@@ -214,14 +267,154 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @throws DatabaseIOException If an error occurs removing the metadata.
    */
   @WorkerThread
-  public void removeAll(Set<String> names) throws DatabaseIOException {
+  public synchronized void removeAll(Set<String> names) throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
+    for (String name : names) {
+      pendingUpdates.put(name, /* metadata= */ null);
+    }
+    flush();
+  }
+
+  /**
+   * Writes any pending updates to the database in a single transaction, after waiting for any
+   * background write in progress. If an error occurs, the updates remain pending and will be
+   * retried by the next flush.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws DatabaseIOException If an error occurs writing the updates.
+   */
+  @WorkerThread
+  public synchronized void flush() throws DatabaseIOException {
+    awaitBackgroundWrite();
+    if (pendingUpdates.isEmpty()) {
+      return;
+    }
+    writeUpdates(Assertions.checkNotNull(tableName), pendingUpdates);
+    pendingUpdates.clear();
+    backgroundWriteFailureCount = 0;
+  }
+
+  /**
+   * Writes any pending updates to the database and stops the background thread on which batched
+   * updates are written. Updates made after this method is called are written immediately.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws DatabaseIOException If an error occurs writing the pending updates.
+   */
+  @WorkerThread
+  public synchronized void release() throws DatabaseIOException {
+    if (flushExecutor != null) {
+      flushExecutor.shutdownNow();
+    }
+    flush();
+  }
+
+  private void addPendingUpdate(String name, @Nullable CacheFileMetadata metadata)
+      throws DatabaseIOException {
+    boolean firstPendingUpdate = pendingUpdates.isEmpty();
+    pendingUpdates.put(name, metadata);
+    if (flushExecutor == null || flushExecutor.isShutdown()) {
+      flush();
+    } else if (pendingUpdates.size() >= maxPendingUpdates) {
+      // After a failed write, wait for the scheduled retry rather than retrying immediately.
+      if (!immediateFlushQueued && backgroundWriteFailureCount == 0) {
+        immediateFlushQueued = true;
+        scheduleFlush(/* delayMs= */ 0);
+      }
+    } else if (firstPendingUpdate) {
+      scheduleFlush(flushIntervalMs);
+    }
+  }
+
+  private void scheduleFlush(long delayMs) {
+    Assertions.checkNotNull(flushExecutor)
+        .schedule(this::flushInBackground, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void flushInBackground() {
+    HashMap<String, @NullableType CacheFileMetadata> updates;
+    String tableName;
+    synchronized (this) {
+      immediateFlushQueued = false;
+      if (pendingUpdates.isEmpty()) {
+        return;
+      }
+      // Write the updates without holding the lock, so that updates can be made in the meantime.
+      updates = pendingUpdates;
+      pendingUpdates = new HashMap<>();
+      tableName = Assertions.checkNotNull(this.tableName);
+      writingInBackground = true;
+    }
+    @Nullable DatabaseIOException exception = null;
+    try {
+      writeUpdates(tableName, updates);
+    } catch (DatabaseIOException e) {
+      exception = e;
+    }
+    synchronized (this) {
+      writingInBackground = false;
+      notifyAll();
+      if (exception == null) {
+        backgroundWriteFailureCount = 0;
+        return;
+      }
+      // Updates made during the write are newer, so they replace the failed ones.
+      updates.putAll(pendingUpdates);
+      pendingUpdates = updates;
+      backgroundWriteFailureCount++;
+      if (checkNotNull(flushExecutor).isShutdown()) {
+        // The pending updates are written by release().
+        return;
+      }
+      long retryDelayMs = getRetryDelayMs(backgroundWriteFailureCount);
+      Log.w(TAG, "Failed to write file metadata, retrying in " + retryDelayMs + "ms", exception);
+      scheduleFlush(retryDelayMs);
+    }
+  }
+
+  private void awaitBackgroundWrite() {
+    boolean interrupted = false;
+    while (writingInBackground) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        // The background write doesn't take long, so wait for it to finish.
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private long getRetryDelayMs(int failureCount) {
+    long retryDelayMs = max(flushIntervalMs, MIN_RETRY_DELAY_MS);
+    for (int i = 1; i < failureCount && retryDelayMs < MAX_RETRY_DELAY_MS; i++) {
+      retryDelayMs *= 2;
+    }
+    return max(flushIntervalMs, min(retryDelayMs, MAX_RETRY_DELAY_MS));
+  }
+
+  private void writeUpdates(String tableName, Map<String, @NullableType CacheFileMetadata> updates)
+      throws DatabaseIOException {
     try {
       SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
       writableDatabase.beginTransactionNonExclusive();
       try {
-        for (String name : names) {
-          writableDatabase.delete(tableName, WHERE_NAME_EQUALS, new String[] {name});
+        for (Map.Entry<String, @NullableType CacheFileMetadata> entry : updates.entrySet()) {
+          String name = entry.getKey();
+          @Nullable CacheFileMetadata metadata = entry.getValue();
+          if (metadata == null) {
+            writableDatabase.delete(tableName, WHERE_NAME_EQUALS, new String[] {name});
+          } else {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME, name);
+            values.put(COLUMN_LENGTH, metadata.length);
+            values.put(COLUMN_LAST_TOUCH_TIMESTAMP, metadata.lastTouchTimestamp);
+            writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+          }
         }
         writableDatabase.setTransactionSuccessful();
       } finally {
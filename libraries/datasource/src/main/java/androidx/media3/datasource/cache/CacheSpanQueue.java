@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import androidx.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A queue of {@link CacheSpan CacheSpans} ordered from least to most recently added, which keeps
+ * track of the total length of the spans it contains.
+ *
+ * <p>Spans are identified by their key and position, so a touched span replaces the span it was
+ * created from.
+ */
+/* package */ final class CacheSpanQueue {
+
+  private final LinkedHashMap<SpanId, CacheSpan> spans;
+
+  private long bytes;
+
+  public CacheSpanQueue() {
+    spans = new LinkedHashMap<>();
+  }
+
+  /** Returns the total length of the spans in the queue, in bytes. */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /** Returns the number of spans in the queue. */
+  public int size() {
+    return spans.size();
+  }
+
+  /** Returns whether the queue is empty. */
+  public boolean isEmpty() {
+    return spans.isEmpty();
+  }
+
+  /**
+   * Adds a span as the most recent span in the queue, replacing any span with the same key and
+   * position.
+   */
+  public void add(CacheSpan span) {
+    SpanId spanId = new SpanId(span);
+    @Nullable CacheSpan previousSpan = spans.remove(spanId);
+    if (previousSpan != null) {
+      bytes -= previousSpan.length;
+    }
+    spans.put(spanId, span);
+    bytes += span.length;
+  }
+
+  /**
+   * Removes the span with the same key and position as {@code span}.
+   *
+   * @return Whether a span was removed.
+   */
+  public boolean remove(CacheSpan span) {
+    @Nullable CacheSpan removedSpan = spans.remove(new SpanId(span));
+    if (removedSpan == null) {
+      return false;
+    }
+    bytes -= removedSpan.length;
+    return true;
+  }
+
+  /** Returns whether the queue contains a span with the same key and position as {@code span}. */
+  public boolean contains(CacheSpan span) {
+    return spans.containsKey(new SpanId(span));
+  }
+
+  /** Returns the least recent span in the queue, or {@code null} if the queue is empty. */
+  @Nullable
+  public CacheSpan peekLeastRecent() {
+    Iterator<CacheSpan> iterator = spans.values().iterator();
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  private static final class SpanId {
+
+    public final String key;
+    public final long position;
+
+    public SpanId(CacheSpan span) {
+      key = span.key;
+      position = span.position;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SpanId other = (SpanId) obj;
+      return position == other.position && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * key.hashCode() + (int) (position ^ (position >>> 32));
+    }
+  }
+}
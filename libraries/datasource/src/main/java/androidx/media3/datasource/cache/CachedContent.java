@@ -26,7 +26,9 @@ import androidx.media3.common.C;
 import androidx.media3.common.util.Log;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.NavigableSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /** Defines the cached content for a single resource. */
 /* package */ final class CachedContent {
@@ -39,8 +41,11 @@ import java.util.TreeSet;
   /** The cache key that uniquely identifies the resource. */
   public final String key;
 
-  /** The cached spans of this content. */
-  private final TreeSet<SimpleCacheSpan> cachedSpans;
+  /**
+   * The cached spans of this content. A concurrent set is used if {@link
+   * #enableConcurrentSpanAccess()} has been called.
+   */
+  private NavigableSet<SimpleCacheSpan> cachedSpans;
 
   /** Currently locked ranges. */
   private final ArrayList<Range> lockedRanges;
@@ -66,6 +71,15 @@ import java.util.TreeSet;
     lockedRanges = new ArrayList<>();
   }
 
+  /**
+   * Allows the spans to be queried whilst they're modified on another thread, as required by a
+   * {@link SimpleCache} that allows concurrent key access. Must be called before any span is added.
+   */
+  public void enableConcurrentSpanAccess() {
+    checkState(cachedSpans.isEmpty());
+    cachedSpans = new ConcurrentSkipListSet<>();
+  }
+
   /** Returns the metadata. */
   public DefaultContentMetadata getMetadata() {
     return metadata;
@@ -142,7 +156,7 @@ import java.util.TreeSet;
   }
 
   /** Returns a set of all {@link SimpleCacheSpan}s. */
-  public TreeSet<SimpleCacheSpan> getSpans() {
+  public NavigableSet<SimpleCacheSpan> getSpans() {
     return cachedSpans;
   }
 
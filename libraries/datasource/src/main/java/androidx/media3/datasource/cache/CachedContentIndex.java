@@ -32,6 +32,7 @@ import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.AtomicFile;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseIOException;
@@ -39,24 +40,32 @@ import androidx.media3.database.DatabaseProvider;
 import androidx.media3.database.VersionTable;
 import com.google.common.collect.ImmutableSet;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -69,10 +78,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  /* package */ static final String FILE_NAME_JOURNAL = "cached_content_index.exj";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  /**
+   * Maps keys to their corresponding content. A concurrent map is used if {@link
+   * #enableConcurrentKeyAccess()} has been called.
+   */
+  private Map<String, CachedContent> keyToContent;
+
+  private boolean concurrentKeyAccess;
 
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
@@ -107,8 +123,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
-    // Atomic file backups add additional suffixes to the file name.
-    return fileName.startsWith(FILE_NAME_ATOMIC);
+    // Atomic file backups and journal compactions add additional suffixes to the file name.
+    return fileName.startsWith(FILE_NAME_ATOMIC) || isJournalFile(fileName);
+  }
+
+  /** Returns whether the file is an index journal file. */
+  /* package */ static boolean isJournalFile(String fileName) {
+    return fileName.startsWith(FILE_NAME_JOURNAL);
   }
 
   /**
@@ -186,6 +207,59 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  /**
+   * Creates an instance that stores the index in an append-only journal, so that the cost of
+   * {@link #store()} is proportional to the number of changes rather than to the size of the index.
+   *
+   * @param journalDir The directory in which the journal is stored.
+   * @param databaseProvider Provides the database from which an existing index is migrated into the
+   *     journal, or {@code null} if there's no database index to migrate.
+   */
+  public CachedContentIndex(File journalDir, @Nullable DatabaseProvider databaseProvider) {
+    this(journalDir, databaseProvider, /* syncOnStore= */ false);
+  }
+
+  /**
+   * Creates an instance that stores the index in an append-only journal, so that the cost of
+   * {@link #store()} is proportional to the number of changes rather than to the size of the index.
+   *
+   * <p>Records appended by {@link #store()} are always passed to the file system, so they survive
+   * the process dying. If {@code syncOnStore} is {@code false} they're not synced to the storage
+   * device, and so the most recent records may be lost if the device loses power. The journal
+   * remains readable in this case, since incomplete records are discarded when it's loaded.
+   *
+   * @param journalDir The directory in which the journal is stored.
+   * @param databaseProvider Provides the database from which an existing index is migrated into the
+   *     journal, or {@code null} if there's no database index to migrate.
+   * @param syncOnStore Whether each {@link #store()} syncs the journal to the storage device.
+   */
+  public CachedContentIndex(
+      File journalDir, @Nullable DatabaseProvider databaseProvider, boolean syncOnStore) {
+    keyToContent = new HashMap<>();
+    idToKey = new SparseArray<>();
+    removedIds = new SparseBooleanArray();
+    newIds = new SparseBooleanArray();
+    storage = new JournalStorage(new File(journalDir, FILE_NAME_JOURNAL), syncOnStore);
+    previousStorage = databaseProvider != null ? new DatabaseStorage(databaseProvider) : null;
+  }
+
+  /** Returns whether the index is stored in an append-only journal. */
+  /* package */ boolean isStoredInJournal() {
+    return storage instanceof JournalStorage;
+  }
+
+  /**
+   * Allows {@link #get(String)} and the spans of the content to be queried whilst the index is
+   * modified on another thread, as required by a {@link SimpleCache} that allows concurrent key
+   * access. All modifications must still be made on a single thread at a time. Must be called
+   * before {@link #initialize(long)}.
+   */
+  public void enableConcurrentKeyAccess() {
+    checkState(keyToContent.isEmpty());
+    concurrentKeyAccess = true;
+    keyToContent = new ConcurrentHashMap<>();
+  }
+
   /**
    * Loads the index data for the given cache UID.
    *
@@ -212,6 +286,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       previousStorage.delete();
       previousStorage = null;
     }
+    if (concurrentKeyAccess) {
+      for (CachedContent cachedContent : keyToContent.values()) {
+        cachedContent.enableConcurrentSpanAccess();
+      }
+    }
   }
 
   /**
@@ -339,6 +418,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private CachedContent addNew(String key) {
     int id = getNewId(idToKey);
     CachedContent cachedContent = new CachedContent(id, key);
+    if (concurrentKeyAccess) {
+      cachedContent.enableConcurrentSpanAccess();
+    }
     keyToContent.put(key, cachedContent);
     idToKey.put(id, key);
     newIds.put(id, true);
@@ -450,7 +532,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -460,17 +542,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -544,7 +626,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -554,13 +636,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -578,7 +660,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -633,7 +715,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       @Nullable DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -801,7 +883,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       checkState(pendingUpdates.size() == 0);
       try {
@@ -844,7 +926,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -864,7 +946,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
@@ -972,4 +1054,343 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return TABLE_PREFIX + hexUid;
     }
   }
+
+  /**
+   * {@link Storage} implementation that uses an append-only journal file.
+   *
+   * <p>Each change is appended to the journal as a checksummed record, so the cost of storing is
+   * proportional to the number of changes since the index was last stored. A record that fails its
+   * checksum, for example because the process died whilst it was being written, ends the journal
+   * when it's next loaded. Once the journal holds sufficiently many obsolete records, it's
+   * compacted on a background thread into a new journal containing one record per entry. Appended
+   * records are only synced to the storage device if requested, but a compacted journal is always
+   * synced before it replaces the existing one.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 4;
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final int RECORD_TYPE_UPDATE = 0;
+    private static final int RECORD_TYPE_REMOVE = 1;
+
+    /** The minimum number of records in the journal before it's compacted. */
+    private static final int MIN_COMPACTION_RECORD_COUNT = 1024;
+
+    /**
+     * The journal is compacted when the number of records exceeds this multiple of the number of
+     * entries in the index.
+     */
+    private static final int COMPACTION_RECORD_COUNT_MULTIPLIER = 2;
+
+    private final File file;
+    private final File compactionFile;
+    private final boolean syncOnStore;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+    private final ByteArrayOutputStream recordsOutputStream;
+
+    private int recordCount;
+    @Nullable private Compaction compaction;
+
+    public JournalStorage(File file, boolean syncOnStore) {
+      this.file = file;
+      this.syncOnStore = syncOnStore;
+      compactionFile = new File(file.getPath() + ".compact");
+      pendingUpdates = new SparseArray<>();
+      recordsOutputStream = new ByteArrayOutputStream();
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return file.exists();
+    }
+
+    @Override
+    public void delete() {
+      cancelCompaction();
+      file.delete();
+      pendingUpdates.clear();
+      recordCount = 0;
+    }
+
+    @Override
+    public void load(
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      checkState(pendingUpdates.size() == 0);
+      compactionFile.delete();
+      if (!file.exists()) {
+        writeSnapshot(file, compactionFile, Collections.emptyList());
+        recordCount = 0;
+        return;
+      }
+
+      long fileLength = file.length();
+      long validLength = HEADER_LENGTH;
+      recordCount = 0;
+      try (DataInputStream input =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (fileLength < HEADER_LENGTH || input.readInt() != VERSION) {
+          // The journal is from an unknown version, which will never be readable.
+          content.clear();
+          idToKey.clear();
+          writeSnapshot(file, compactionFile, Collections.emptyList());
+          return;
+        }
+        CRC32 crc = new CRC32();
+        while (fileLength - validLength >= RECORD_HEADER_LENGTH) {
+          int payloadLength = input.readInt();
+          int checksum = input.readInt();
+          if (payloadLength <= 0
+              || payloadLength > fileLength - validLength - RECORD_HEADER_LENGTH) {
+            break;
+          }
+          byte[] payload = new byte[payloadLength];
+          input.readFully(payload);
+          crc.reset();
+          crc.update(payload, 0, payloadLength);
+          if ((int) crc.getValue() != checksum || !applyRecord(payload, content, idToKey)) {
+            break;
+          }
+          validLength += RECORD_HEADER_LENGTH + payloadLength;
+          recordCount++;
+        }
+      }
+      if (validLength < fileLength) {
+        // Discard the invalid tail, so that further records are appended after the last valid one.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+          randomAccessFile.setLength(validLength);
+        }
+      }
+    }
+
+    @Override
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
+      cancelCompaction();
+      writeSnapshot(file, compactionFile, snapshot(content));
+      recordCount = content.size();
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (pendingUpdates.size() > 0) {
+        recordsOutputStream.reset();
+        DataOutputStream output = new DataOutputStream(recordsOutputStream);
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          writeRecord(pendingUpdates.keyAt(i), pendingUpdates.valueAt(i), output);
+        }
+        output.flush();
+        byte[] records = recordsOutputStream.toByteArray();
+        append(file, records, syncOnStore);
+        recordCount += pendingUpdates.size();
+        if (compaction != null) {
+          // Records written after the snapshot are re-applied to the compacted journal.
+          compaction.pendingRecords.write(records);
+          compaction.pendingRecordCount += pendingUpdates.size();
+        }
+        pendingUpdates.clear();
+      }
+      maybeFinishCompaction();
+      maybeStartCompaction(content);
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    private void maybeStartCompaction(Map<String, CachedContent> content) {
+      if (compaction != null
+          || recordCount < MIN_COMPACTION_RECORD_COUNT
+          || recordCount <= COMPACTION_RECORD_COUNT_MULTIPLIER * content.size()) {
+        return;
+      }
+      Compaction compaction = new Compaction(snapshot(content));
+      this.compaction = compaction;
+      new Thread("ExoPlayer:CacheIndexCompaction") {
+        @Override
+        public void run() {
+          try {
+            writeJournal(compactionFile, compaction.snapshot);
+          } catch (IOException e) {
+            compaction.exception = e;
+          } finally {
+            compaction.finished.open();
+          }
+        }
+      }.start();
+    }
+
+    private void maybeFinishCompaction() throws IOException {
+      @Nullable Compaction compaction = this.compaction;
+      if (compaction == null || !compaction.finished.isOpen()) {
+        return;
+      }
+      this.compaction = null;
+      if (compaction.exception != null) {
+        // The existing journal is still valid. Compaction will be retried after the next store.
+        compactionFile.delete();
+        return;
+      }
+      try {
+        // The compacted journal must be synced before it replaces the existing one.
+        append(compactionFile, compaction.pendingRecords.toByteArray(), /* sync= */ true);
+        replace(compactionFile, file);
+      } finally {
+        compactionFile.delete();
+      }
+      recordCount = compaction.snapshot.size() + compaction.pendingRecordCount;
+    }
+
+    private void cancelCompaction() {
+      @Nullable Compaction compaction = this.compaction;
+      if (compaction != null) {
+        compaction.finished.blockUninterruptible();
+        compactionFile.delete();
+        this.compaction = null;
+      }
+    }
+
+    /**
+     * Applies a record to {@code content} and {@code idToKey}, returning whether the record was
+     * valid.
+     */
+    private static boolean applyRecord(
+        byte[] payload,
+        Map<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey) {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+      try {
+        int type = input.readByte();
+        int id = input.readInt();
+        if (type != RECORD_TYPE_UPDATE && type != RECORD_TYPE_REMOVE) {
+          return false;
+        }
+        @Nullable String previousKey = idToKey.get(id);
+        if (previousKey != null) {
+          content.remove(previousKey);
+          idToKey.remove(id);
+        }
+        if (type == RECORD_TYPE_UPDATE) {
+          String key = input.readUTF();
+          DefaultContentMetadata metadata = readContentMetadata(input);
+          @Nullable
+          CachedContent previousContent = content.put(key, new CachedContent(id, key, metadata));
+          if (previousContent != null) {
+            idToKey.remove(previousContent.id);
+          }
+          idToKey.put(id, key);
+        }
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    private static void writeRecord(
+        int id, @Nullable CachedContent cachedContent, DataOutputStream output) throws IOException {
+      ByteArrayOutputStream payloadOutputStream = new ByteArrayOutputStream();
+      DataOutputStream payloadOutput = new DataOutputStream(payloadOutputStream);
+      if (cachedContent == null) {
+        payloadOutput.writeByte(RECORD_TYPE_REMOVE);
+        payloadOutput.writeInt(id);
+      } else {
+        payloadOutput.writeByte(RECORD_TYPE_UPDATE);
+        payloadOutput.writeInt(id);
+        payloadOutput.writeUTF(cachedContent.key);
+        writeContentMetadata(cachedContent.getMetadata(), payloadOutput);
+      }
+      payloadOutput.flush();
+      byte[] payload = payloadOutputStream.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(payload, 0, payload.length);
+      output.writeInt(payload.length);
+      output.writeInt((int) crc.getValue());
+      output.write(payload);
+    }
+
+    /**
+     * Returns a copy of the entries in {@code content}, which can be written whilst the index
+     * continues to be modified.
+     */
+    private static List<CachedContent> snapshot(Map<String, CachedContent> content) {
+      List<CachedContent> snapshot = new ArrayList<>(content.size());
+      for (CachedContent cachedContent : content.values()) {
+        snapshot.add(
+            new CachedContent(cachedContent.id, cachedContent.key, cachedContent.getMetadata()));
+      }
+      return snapshot;
+    }
+
+    /** Atomically replaces {@code file} with a journal containing the given entries. */
+    private static void writeSnapshot(File file, File tempFile, List<CachedContent> snapshot)
+        throws IOException {
+      try {
+        writeJournal(tempFile, snapshot);
+        replace(tempFile, file);
+      } finally {
+        tempFile.delete();
+      }
+    }
+
+    private static void writeJournal(File file, List<CachedContent> snapshot) throws IOException {
+      try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        output.writeInt(VERSION);
+        for (int i = 0; i < snapshot.size(); i++) {
+          CachedContent cachedContent = snapshot.get(i);
+          writeRecord(cachedContent.id, cachedContent, output);
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+      }
+    }
+
+    private static void append(File file, byte[] records, boolean sync) throws IOException {
+      try (FileOutputStream fileOutputStream = new FileOutputStream(file, /* append= */ true)) {
+        fileOutputStream.write(records);
+        if (sync) {
+          fileOutputStream.getFD().sync();
+        }
+      }
+    }
+
+    private static void replace(File source, File target) throws IOException {
+      if (!source.renameTo(target)) {
+        throw new IOException("Failed to rename " + source + " to " + target);
+      }
+    }
+
+    private static final class Compaction {
+
+      public final List<CachedContent> snapshot;
+      public final ByteArrayOutputStream pendingRecords;
+      public final ConditionVariable finished;
+
+      public int pendingRecordCount;
+      @Nullable public volatile IOException exception;
+
+      public Compaction(List<CachedContent> snapshot) {
+        this.snapshot = snapshot;
+        pendingRecords = new ByteArrayOutputStream();
+        finished = new ConditionVariable();
+      }
+    }
+  }
 }
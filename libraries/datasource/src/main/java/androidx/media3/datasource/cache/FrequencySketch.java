@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A count-min sketch that estimates how often {@link CacheSpan CacheSpans} have been accessed,
+ * including spans that are no longer in the cache.
+ *
+ * <p>Each span is counted by four 4-bit counters, so estimates saturate at 15. Once the number of
+ * recorded accesses reaches ten times the capacity, all counters are halved so that the sketch
+ * favors recent accesses.
+ */
+/* package */ final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAX_CAPACITY = 1 << 24;
+
+  private long[] table;
+  private int tableMask;
+  private int sampleSize;
+  private int size;
+
+  /**
+   * Creates an instance.
+   *
+   * @param capacity The expected number of distinct spans in the cache.
+   */
+  public FrequencySketch(int capacity) {
+    table = new long[0];
+    ensureCapacity(capacity);
+  }
+
+  /**
+   * Grows the sketch so that it can accurately count {@code capacity} distinct spans. Growing the
+   * sketch discards all counts.
+   */
+  public void ensureCapacity(int capacity) {
+    int tableLength = Integer.highestOneBit(max(min(capacity, MAX_CAPACITY) - 1, 1)) << 1;
+    if (table.length >= tableLength) {
+      return;
+    }
+    table = new long[tableLength];
+    tableMask = tableLength - 1;
+    sampleSize = 10 * tableLength;
+    size = 0;
+  }
+
+  /** Returns the estimated number of accesses to the span with the same key and position. */
+  public int frequency(CacheSpan span) {
+    int hash = hash(span);
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Records an access to the span with the same key and position as {@code span}. */
+  public void increment(CacheSpan span) {
+    int hash = hash(span);
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  /** Halves all counters. */
+  private void reset() {
+    int oddCount = 0;
+    for (int i = 0; i < table.length; i++) {
+      oddCount += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (oddCount >>> 2);
+  }
+
+  private int indexOf(int hash, int i) {
+    long index = (hash + SEEDS[i]) * SEEDS[i];
+    index += index >>> 32;
+    return ((int) index) & tableMask;
+  }
+
+  private static int hash(CacheSpan span) {
+    int hash = 31 * span.key.hashCode() + (int) (span.position ^ (span.position >>> 32));
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A byte-bounded, least recently used in-memory tier for the contents of {@link CacheSpan
+ * CacheSpans}.
+ *
+ * <p>The tier sits in front of any {@link Cache} implementation, and is enabled by passing it to
+ * {@link CacheDataSource.Factory#setInMemorySpanCache(InMemorySpanCache)}. Spans are keyed by
+ * their cache key, as returned by the {@link CacheKeyFactory}, and their position in the resource.
+ * A retained span is only served if it was read from the same span file that the underlying cache
+ * currently holds, so spans that are evicted from the underlying cache and later re-cached are
+ * never served stale.
+ *
+ * <p>An instance can be shared between multiple {@link CacheDataSource.Factory} instances, and
+ * this class is thread safe.
+ */
+@UnstableApi
+public final class InMemorySpanCache {
+
+  /** Listener of {@link InMemorySpanCache} events. */
+  public interface Listener {
+
+    /**
+     * Called when a span is read from memory.
+     *
+     * @param cache The source of the event.
+     * @param key The cache key of the span.
+     * @param position The position of the span in the resource.
+     * @param length The length of the span, in bytes.
+     */
+    default void onSpanHit(InMemorySpanCache cache, String key, long position, int length) {}
+
+    /**
+     * Called when a span that's not held in memory is read.
+     *
+     * @param cache The source of the event.
+     * @param key The cache key of the span.
+     * @param position The position of the span in the resource.
+     */
+    default void onSpanMiss(InMemorySpanCache cache, String key, long position) {}
+
+    /**
+     * Called when a span is evicted from memory to make room for other spans.
+     *
+     * @param cache The source of the event.
+     * @param key The cache key of the span.
+     * @param position The position of the span in the resource.
+     * @param length The length of the span, in bytes.
+     */
+    default void onSpanEvicted(InMemorySpanCache cache, String key, long position, int length) {}
+  }
+
+  private final long maxBytes;
+  private final int maxSpanBytes;
+  private final LinkedHashMap<SpanKey, SpanData> spans;
+  private final CopyOnWriteArraySet<Listener> listeners;
+
+  private long currentBytes;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Creates an instance that holds spans of up to a quarter of {@code maxBytes} each.
+   *
+   * @param maxBytes The maximum number of bytes held in memory.
+   */
+  public InMemorySpanCache(long maxBytes) {
+    this(maxBytes, (int) min(maxBytes / 4, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum number of bytes held in memory.
+   * @param maxSpanBytes The maximum length of a span that will be held in memory, in bytes. Longer
+   *     spans are always read from the underlying cache.
+   */
+  public InMemorySpanCache(long maxBytes, int maxSpanBytes) {
+    checkArgument(maxBytes >= 0 && maxSpanBytes >= 0);
+    this.maxBytes = maxBytes;
+    this.maxSpanBytes = (int) min(maxSpanBytes, maxBytes);
+    spans = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    listeners = new CopyOnWriteArraySet<>();
+  }
+
+  /**
+   * Adds a {@link Listener}.
+   *
+   * @param listener The listener to add.
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a {@link Listener}.
+   *
+   * @param listener The listener to remove.
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Returns the number of bytes currently held in memory. */
+  public synchronized long getCurrentBytes() {
+    return currentBytes;
+  }
+
+  /** Returns the number of span reads that were served from memory. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of span reads that could not be served from memory. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of spans that have been evicted from memory. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Removes all spans held in memory. Listeners are not notified of the removed spans. */
+  public synchronized void clear() {
+    spans.clear();
+    currentBytes = 0;
+  }
+
+  /**
+   * Returns whether a span of the given length can be held in memory.
+   *
+   * @param length The length of the span, in bytes.
+   */
+  /* package */ boolean canHold(long length) {
+    return length <= maxSpanBytes;
+  }
+
+  /**
+   * Returns the contents of a span held in memory, or {@code null} if the span is not held.
+   *
+   * @param key The cache key of the span.
+   * @param position The position of the span in the resource.
+   * @param fileUri The {@link Uri} of the span file currently held by the underlying cache.
+   * @return The contents of the span, which must not be modified, or {@code null}.
+   */
+  @Nullable
+  /* package */ byte[] get(String key, long position, Uri fileUri) {
+    SpanKey spanKey = new SpanKey(key, position);
+    @Nullable byte[] data;
+    synchronized (this) {
+      @Nullable SpanData spanData = spans.get(spanKey);
+      if (spanData != null && !spanData.fileUri.equals(fileUri)) {
+        // The underlying cache has replaced the span file since it was read into memory.
+        spans.remove(spanKey);
+        currentBytes -= spanData.data.length;
+        spanData = null;
+      }
+      if (spanData != null) {
+        hitCount++;
+        data = spanData.data;
+      } else {
+        missCount++;
+        data = null;
+      }
+    }
+    for (Listener listener : listeners) {
+      if (data != null) {
+        listener.onSpanHit(this, key, position, data.length);
+      } else {
+        listener.onSpanMiss(this, key, position);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Holds the contents of a span in memory, evicting the least recently used spans as necessary.
+   *
+   * @param key The cache key of the span.
+   * @param position The position of the span in the resource.
+   * @param fileUri The {@link Uri} of the span file from which the contents were read.
+   * @param data The contents of the span, which must not be modified after this call.
+   */
+  /* package */ void put(String key, long position, Uri fileUri, byte[] data) {
+    if (!canHold(data.length)) {
+      return;
+    }
+    List<Map.Entry<SpanKey, SpanData>> evictedSpans = new ArrayList<>();
+    synchronized (this) {
+      SpanKey spanKey = new SpanKey(key, position);
+      @Nullable SpanData previousSpanData = spans.put(spanKey, new SpanData(fileUri, data));
+      if (previousSpanData != null) {
+        currentBytes -= previousSpanData.data.length;
+      }
+      currentBytes += data.length;
+      Iterator<Map.Entry<SpanKey, SpanData>> iterator = spans.entrySet().iterator();
+      while (currentBytes > maxBytes && iterator.hasNext()) {
+        Map.Entry<SpanKey, SpanData> entry = iterator.next();
+        iterator.remove();
+        currentBytes -= entry.getValue().data.length;
+        evictionCount++;
+        evictedSpans.add(entry);
+      }
+    }
+    for (int i = 0; i < evictedSpans.size(); i++) {
+      Map.Entry<SpanKey, SpanData> evictedSpan = evictedSpans.get(i);
+      for (Listener listener : listeners) {
+        listener.onSpanEvicted(
+            this,
+            evictedSpan.getKey().key,
+            evictedSpan.getKey().position,
+            evictedSpan.getValue().data.length);
+      }
+    }
+  }
+
+  private static final class SpanKey {
+
+    public final String key;
+    public final long position;
+
+    public SpanKey(String key, long position) {
+      this.key = key;
+      this.position = position;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SpanKey other = (SpanKey) obj;
+      return position == other.position && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * key.hashCode() + (int) (position ^ (position >>> 32));
+    }
+  }
+
+  private static final class SpanData {
+
+    public final Uri fileUri;
+    public final byte[] data;
+
+    public SpanData(Uri fileUri, byte[] data) {
+      this.fileUri = fileUri;
+      this.data = data;
+    }
+  }
+}
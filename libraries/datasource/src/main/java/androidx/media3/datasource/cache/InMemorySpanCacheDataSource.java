@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceException;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link DataSource} for reading {@link CacheSpan CacheSpans} that serves span contents from an
+ * {@link InMemorySpanCache} where possible, falling back to an underlying {@link DataSource}.
+ *
+ * <p>Must be opened with {@link DataSpec DataSpecs} built by {@link CacheDataSource}, whose {@link
+ * DataSpec#key} is the cache key and whose {@link DataSpec#uriPositionOffset} is the position of
+ * the span in the resource. Other {@link DataSpec DataSpecs} are passed through to the underlying
+ * {@link DataSource}.
+ */
+/* package */ final class InMemorySpanCacheDataSource extends BaseDataSource {
+
+  private final DataSource upstream;
+  private final InMemorySpanCache inMemorySpanCache;
+
+  @Nullable private Uri uri;
+  @Nullable private byte[] data;
+  private int readPosition;
+  private long bytesRemaining;
+  private boolean upstreamOpened;
+  private boolean opened;
+
+  /**
+   * Creates an instance.
+   *
+   * @param upstream The {@link DataSource} for reading spans that aren't held in memory.
+   * @param inMemorySpanCache The {@link InMemorySpanCache}.
+   */
+  public InMemorySpanCacheDataSource(DataSource upstream, InMemorySpanCache inMemorySpanCache) {
+    super(/* isNetwork= */ false);
+    this.upstream = upstream;
+    this.inMemorySpanCache = inMemorySpanCache;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    transferInitializing(dataSpec);
+    @Nullable String key = dataSpec.key;
+    @Nullable byte[] data = null;
+    if (key != null) {
+      data = inMemorySpanCache.get(key, dataSpec.uriPositionOffset, dataSpec.uri);
+      if (data == null && mayHoldSpan(dataSpec.uri)) {
+        data = readSpanIntoMemory(key, dataSpec);
+      }
+    }
+
+    if (data == null) {
+      // readSpanIntoMemory may have left upstream open to serve a span too long to hold in memory.
+      if (!upstreamOpened) {
+        upstreamOpened = true;
+        bytesRemaining = upstream.open(dataSpec);
+      }
+    } else {
+      if (dataSpec.position > data.length) {
+        throw new DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+      }
+      this.data = data;
+      readPosition = (int) dataSpec.position;
+      bytesRemaining =
+          dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : data.length - readPosition;
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    int bytesRead;
+    if (upstreamOpened) {
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead =
+          bytesRemaining == C.LENGTH_UNSET ? length : (int) min(length, bytesRemaining);
+      bytesRead = upstream.read(buffer, offset, bytesToRead);
+    } else {
+      byte[] data = castNonNull(this.data);
+      int bytesToRead = min(length, data.length - readPosition);
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesToRead = (int) min(bytesToRead, bytesRemaining);
+      }
+      if (bytesToRead == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      System.arraycopy(data, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      bytesRead = bytesToRead;
+    }
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesRemaining -= bytesRead;
+      }
+      bytesTransferred(bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    data = null;
+    try {
+      if (upstreamOpened) {
+        upstreamOpened = false;
+        upstream.close();
+      }
+    } finally {
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  /**
+   * Reads the whole span file into memory and adds it to the {@link InMemorySpanCache}.
+   *
+   * <p>If the span turns out to be too long to be held in memory and {@code dataSpec} starts at the
+   * beginning of the span, {@link #upstream} is left open to serve the read instead of being opened
+   * a second time.
+   *
+   * @return The contents of the span, or {@code null} if the span is too long to be held in memory.
+   */
+  @Nullable
+  private byte[] readSpanIntoMemory(String key, DataSpec dataSpec) throws IOException {
+    DataSpec spanDataSpec = dataSpec.buildUpon().setPosition(0).setLength(C.LENGTH_UNSET).build();
+    byte[] data;
+    boolean closeUpstream = true;
+    try {
+      long spanLength = upstream.open(spanDataSpec);
+      if (spanLength == C.LENGTH_UNSET || !inMemorySpanCache.canHold(spanLength)) {
+        if (dataSpec.position == 0) {
+          closeUpstream = false;
+          upstreamOpened = true;
+          bytesRemaining = dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : spanLength;
+        }
+        return null;
+      }
+      data = DataSourceUtil.readExactly(upstream, (int) spanLength);
+    } finally {
+      if (closeUpstream) {
+        upstream.close();
+      }
+    }
+    inMemorySpanCache.put(key, dataSpec.uriPositionOffset, dataSpec.uri, data);
+    return data;
+  }
+
+  /**
+   * Returns whether the span at {@code uri} may be short enough to be held in memory. Span files
+   * are normally local, so this allows spans that are too long to be skipped without opening
+   * {@link #upstream} to find out their length.
+   */
+  private boolean mayHoldSpan(Uri uri) {
+    @Nullable String path = uri.getPath();
+    if (!"file".equals(uri.getScheme()) || path == null) {
+      return true;
+    }
+    File file = new File(path);
+    return !file.isFile() || inMemorySpanCache.canHold(file.length());
+  }
+}
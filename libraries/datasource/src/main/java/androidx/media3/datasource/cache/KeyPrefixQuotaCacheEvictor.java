@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link CacheEvictor} that limits the size of groups of cache files whose keys start with a
+ * given prefix, and otherwise delegates to another {@link CacheEvictor}.
+ *
+ * <p>Quotas can be used to stop one use of a cache from starving another. For example, if keys of
+ * downloaded content are given a distinct prefix by a {@link CacheKeyFactory}, a quota for that
+ * prefix stops downloads from evicting content cached during playback. When a group exceeds its
+ * quota, its least recently used files are evicted. Keys that match more than one prefix belong to
+ * the group with the longest prefix, and keys that match no prefix are not limited.
+ */
+@UnstableApi
+public final class KeyPrefixQuotaCacheEvictor implements CacheEvictor {
+
+  /** A builder for {@link KeyPrefixQuotaCacheEvictor} instances. */
+  public static final class Builder {
+
+    private final CacheEvictor delegate;
+    private final List<Quota> quotas;
+
+    /**
+     * Creates a builder.
+     *
+     * @param delegate The {@link CacheEvictor} that manages the cache as a whole.
+     */
+    public Builder(CacheEvictor delegate) {
+      this.delegate = delegate;
+      quotas = new ArrayList<>();
+    }
+
+    /**
+     * Adds a quota for keys that start with a given prefix.
+     *
+     * @param keyPrefix The key prefix. Must be distinct from the prefixes of other quotas.
+     * @param maxBytes The maximum total size of the cache files whose keys start with {@code
+     *     keyPrefix}, in bytes.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder addQuota(String keyPrefix, long maxBytes) {
+      for (int i = 0; i < quotas.size(); i++) {
+        checkArgument(!quotas.get(i).keyPrefix.equals(keyPrefix));
+      }
+      quotas.add(new Quota(keyPrefix, maxBytes));
+      return this;
+    }
+
+    /** Builds the {@link KeyPrefixQuotaCacheEvictor}. */
+    public KeyPrefixQuotaCacheEvictor build() {
+      return new KeyPrefixQuotaCacheEvictor(delegate, quotas);
+    }
+  }
+
+  private final CacheEvictor delegate;
+  private final List<Quota> quotas;
+
+  private KeyPrefixQuotaCacheEvictor(CacheEvictor delegate, List<Quota> quotas) {
+    this.delegate = delegate;
+    this.quotas = new ArrayList<>(quotas);
+    // Order by decreasing prefix length, so that the first matching quota has the longest prefix.
+    Collections.sort(
+        this.quotas, (lhs, rhs) -> rhs.keyPrefix.length() - lhs.keyPrefix.length());
+  }
+
+  /**
+   * Returns the total size of the cache files whose keys start with {@code keyPrefix}, or {@link
+   * C#LENGTH_UNSET} if there's no quota for the prefix. Files whose keys belong to a quota with a
+   * longer prefix are not included.
+   *
+   * @param keyPrefix The key prefix of the quota.
+   */
+  public long getQuotaBytes(String keyPrefix) {
+    for (int i = 0; i < quotas.size(); i++) {
+      Quota quota = quotas.get(i);
+      if (quota.keyPrefix.equals(keyPrefix)) {
+        return quota.spans.getBytes();
+      }
+    }
+    return C.LENGTH_UNSET;
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    // Touches are required to evict the least recently used spans of a group.
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    delegate.onCacheInitialized();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    @Nullable Quota quota = getQuota(key);
+    if (quota != null && length != C.LENGTH_UNSET) {
+      evictCache(cache, quota, length);
+    }
+    delegate.onStartFile(cache, key, position, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    @Nullable Quota quota = getQuota(span.key);
+    if (quota != null) {
+      quota.spans.add(span);
+    }
+    delegate.onSpanAdded(cache, span);
+    if (quota != null) {
+      evictCache(cache, quota, 0);
+    }
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Quota quota = getQuota(span.key);
+    if (quota != null) {
+      quota.spans.remove(span);
+    }
+    delegate.onSpanRemoved(cache, span);
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Quota quota = getQuota(newSpan.key);
+    if (quota != null) {
+      quota.spans.remove(oldSpan);
+      quota.spans.add(newSpan);
+    }
+    delegate.onSpanTouched(cache, oldSpan, newSpan);
+  }
+
+  @Nullable
+  private Quota getQuota(String key) {
+    for (int i = 0; i < quotas.size(); i++) {
+      Quota quota = quotas.get(i);
+      if (key.startsWith(quota.keyPrefix)) {
+        return quota;
+      }
+    }
+    return null;
+  }
+
+  private static void evictCache(Cache cache, Quota quota, long requiredSpace) {
+    while (quota.spans.getBytes() + requiredSpace > quota.maxBytes) {
+      @Nullable CacheSpan span = quota.spans.peekLeastRecent();
+      if (span == null) {
+        return;
+      }
+      cache.removeSpan(span);
+    }
+  }
+
+  private static final class Quota {
+
+    public final String keyPrefix;
+    public final long maxBytes;
+    public final CacheSpanQueue spans;
+
+    public Quota(String keyPrefix, long maxBytes) {
+      this.keyPrefix = keyPrefix;
+      this.maxBytes = maxBytes;
+      spans = new CacheSpanQueue();
+    }
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.FileDataSource;
+import androidx.media3.datasource.FileDataSource.FileDataSourceException;
+import androidx.media3.datasource.TransferListener;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} for reading {@link CacheSpan} files through read-only memory mappings.
+ *
+ * <p>Reads are served by copying directly from the mapped file into the caller's buffer, avoiding
+ * the intermediate copy made by {@link FileDataSource}. Mappings are
+ * kept in a bounded {@link MappingCache}, which can be shared between instances so that concurrent
+ * readers of the same span share a single mapping. Files that are too large to be mapped into a
+ * single buffer are read through a {@link FileDataSource} instead.
+ *
+ * <p>This source relies on span files being immutable once they have been committed to the cache.
+ * It should only be used to read from a {@link Cache}, for example by passing a {@link Factory} to
+ * {@link CacheDataSource.Factory#setCacheReadDataSourceFactory(DataSource.Factory)}.
+ */
+@UnstableApi
+public final class MemoryMappedSpanDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link MemoryMappedSpanDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private MappingCache mappingCache;
+    @Nullable private TransferListener listener;
+
+    /** Creates an instance with its own {@link MappingCache} of the default size. */
+    public Factory() {
+      mappingCache = new MappingCache(MappingCache.DEFAULT_MAX_MAPPED_BYTES);
+    }
+
+    /**
+     * Sets the {@link MappingCache} used by created instances.
+     *
+     * <p>The default is a cache of {@link MappingCache#DEFAULT_MAX_MAPPED_BYTES} that is shared by
+     * all instances created by this factory.
+     *
+     * @param mappingCache The {@link MappingCache}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMappingCache(MappingCache mappingCache) {
+      this.mappingCache = mappingCache;
+      return this;
+    }
+
+    /**
+     * Sets a {@link TransferListener} for {@link MemoryMappedSpanDataSource} instances created by
+     * this factory.
+     *
+     * @param listener The {@link TransferListener}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setListener(@Nullable TransferListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    @Override
+    public MemoryMappedSpanDataSource createDataSource() {
+      MemoryMappedSpanDataSource dataSource = new MemoryMappedSpanDataSource(mappingCache);
+      if (listener != null) {
+        dataSource.addTransferListener(listener);
+      }
+      return dataSource;
+    }
+  }
+
+  /**
+   * A bounded, least recently used cache of read-only file mappings.
+   *
+   * <p>Mappings of files larger than the cache size are used once and not retained. Java provides
+   * no way to unmap a file explicitly, so the address space used by a mapping that's evicted from
+   * the cache is only released once it's no longer referenced by any {@link
+   * MemoryMappedSpanDataSource} and has been garbage collected.
+   *
+   * <p>This class is thread safe.
+   */
+  public static final class MappingCache {
+
+    /** The default maximum number of bytes retained in mappings, in bytes. */
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 32 * 1024 * 1024;
+
+    private final long maxMappedBytes;
+    private final LinkedHashMap<String, MappedByteBuffer> mappings;
+
+    private long mappedBytes;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates an instance.
+     *
+     * @param maxMappedBytes The maximum total size of the retained mappings, in bytes.
+     */
+    public MappingCache(long maxMappedBytes) {
+      checkArgument(maxMappedBytes >= 0);
+      this.maxMappedBytes = maxMappedBytes;
+      mappings = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    }
+
+    /** Returns the total size of the retained mappings, in bytes. */
+    public synchronized long getMappedBytes() {
+      return mappedBytes;
+    }
+
+    /** Returns the number of times a retained mapping was reused. */
+    public synchronized long getHitCount() {
+      return hitCount;
+    }
+
+    /** Returns the number of times a file had to be mapped. */
+    public synchronized long getMissCount() {
+      return missCount;
+    }
+
+    /** Drops all retained mappings. */
+    public synchronized void clear() {
+      mappings.clear();
+      mappedBytes = 0;
+    }
+
+    /**
+     * Returns a mapping of the entire file, mapping it if a valid mapping isn't already retained.
+     *
+     * @param file The file.
+     * @return A read-only mapping of the file, or null if the file is larger than {@link
+     *     Integer#MAX_VALUE} bytes and so can't be mapped into a single buffer. The caller must not
+     *     modify the position or limit of the returned buffer, and should instead read through a
+     *     {@link ByteBuffer#duplicate()}.
+     * @throws IOException If an error occurs mapping the file.
+     */
+    @Nullable
+    /* package */ ByteBuffer getOrMap(File file) throws IOException {
+      String path = file.getAbsolutePath();
+      // The length is also used to detect retained mappings of files that have since been deleted.
+      long fileLength = file.length();
+      synchronized (this) {
+        @Nullable MappedByteBuffer mapping = mappings.get(path);
+        if (mapping != null) {
+          if (mapping.capacity() == fileLength) {
+            hitCount++;
+            return mapping;
+          }
+          mappings.remove(path);
+          mappedBytes -= mapping.capacity();
+        }
+        missCount++;
+      }
+
+      // Map the file without holding the lock, since doing so requires I/O.
+      MappedByteBuffer mapping;
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(path, "r")) {
+        FileChannel channel = randomAccessFile.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          return null;
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, /* position= */ 0, size);
+      }
+
+      synchronized (this) {
+        if (mapping.capacity() > maxMappedBytes) {
+          return mapping;
+        }
+        @Nullable MappedByteBuffer previousMapping = mappings.put(path, mapping);
+        if (previousMapping != null) {
+          mappedBytes -= previousMapping.capacity();
+        }
+        mappedBytes += mapping.capacity();
+        Iterator<Map.Entry<String, MappedByteBuffer>> iterator = mappings.entrySet().iterator();
+        while (mappedBytes > maxMappedBytes && iterator.hasNext()) {
+          MappedByteBuffer evictedMapping = iterator.next().getValue();
+          iterator.remove();
+          mappedBytes -= evictedMapping.capacity();
+        }
+      }
+      return mapping;
+    }
+  }
+
+  private final MappingCache mappingCache;
+
+  @Nullable private Uri uri;
+  @Nullable private ByteBuffer buffer;
+  @Nullable private FileDataSource fileDataSource;
+  private long bytesRemaining;
+  private boolean opened;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mappingCache The {@link MappingCache} from which to obtain file mappings.
+   */
+  public MemoryMappedSpanDataSource(MappingCache mappingCache) {
+    super(/* isNetwork= */ false);
+    this.mappingCache = mappingCache;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws FileDataSourceException {
+    Uri uri = dataSpec.uri;
+    this.uri = uri;
+    transferInitializing(dataSpec);
+    @Nullable ByteBuffer mapping;
+    try {
+      mapping = mappingCache.getOrMap(new File(checkNotNull(uri.getPath())));
+    } catch (FileNotFoundException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND);
+    } catch (SecurityException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_NO_PERMISSION);
+    } catch (IOException | RuntimeException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+    }
+    if (mapping == null) {
+      // The file is too large to map, so read it as a regular file instead.
+      FileDataSource fileDataSource = new FileDataSource();
+      this.fileDataSource = fileDataSource;
+      bytesRemaining = fileDataSource.open(dataSpec);
+    } else {
+      openMapping(mapping, dataSpec);
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws FileDataSourceException {
+    if (fileDataSource != null) {
+      int bytesRead = fileDataSource.read(buffer, offset, length);
+      if (bytesRead > 0) {
+        bytesTransferred(bytesRead);
+      }
+      return bytesRead;
+    }
+    if (length == 0) {
+      return 0;
+    }
+    ByteBuffer mappedBuffer = castNonNull(this.buffer);
+    int bytesToRead = min(mappedBuffer.remaining(), length);
+    if (bytesRemaining == 0 || bytesToRead == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    mappedBuffer.get(buffer, offset, bytesToRead);
+    bytesRemaining -= bytesToRead;
+    bytesTransferred(bytesToRead);
+    return bytesToRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws FileDataSourceException {
+    uri = null;
+    buffer = null;
+    try {
+      if (fileDataSource != null) {
+        fileDataSource.close();
+      }
+    } finally {
+      fileDataSource = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  private void openMapping(ByteBuffer mapping, DataSpec dataSpec) throws FileDataSourceException {
+    if (dataSpec.position > mapping.capacity()) {
+      throw new FileDataSourceException(
+          /* message= */ null,
+          /* cause= */ null,
+          PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+    }
+    ByteBuffer buffer = mapping.duplicate();
+    buffer.position((int) dataSpec.position);
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      buffer.limit((int) min(mapping.capacity(), dataSpec.position + dataSpec.length));
+    }
+    this.buffer = buffer;
+    bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? buffer.remaining() : dataSpec.length;
+  }
+}
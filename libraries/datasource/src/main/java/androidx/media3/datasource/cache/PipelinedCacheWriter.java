@@ -0,0 +1,532 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.C;
+import androidx.media3.common.PriorityTaskManager;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.HttpUtil;
+import androidx.media3.datasource.cache.CacheWriter.ProgressListener;
+import com.google.common.net.HttpHeaders;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caches data like {@link CacheWriter}, but overlaps reading from upstream with writing to the
+ * cache, and can split a request into multiple ranged requests that are cached concurrently.
+ *
+ * <p>Data read from upstream is copied into a small ring of reusable buffers, and written to the
+ * cache on a separate thread, so that reading the next data from upstream doesn't wait for previous
+ * data to be written. If the length of the requested data is known, it's split into up to {@link
+ * Builder#setMaxParallelRequests(int) maxParallelRequests} ranges that are each cached by a
+ * separate {@link CacheWriter}. Otherwise a first range is cached, and the remaining data is split
+ * into ranges if the length can be resolved from the {@link HttpHeaders#CONTENT_RANGE
+ * Content-Range} header of its response.
+ */
+@UnstableApi
+public final class PipelinedCacheWriter {
+
+  /** A builder for {@link PipelinedCacheWriter} instances. */
+  public static final class Builder {
+
+    private final CacheDataSource.Factory cacheDataSourceFactory;
+    private final DataSpec dataSpec;
+
+    @Nullable private Executor executor;
+    @Nullable private ProgressListener progressListener;
+    private int maxParallelRequests;
+    private long minRangeLength;
+    private int bufferCount;
+    private int bufferSize;
+
+    /**
+     * Creates a builder.
+     *
+     * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for {@link CacheDataSource
+     *     CacheDataSources} that write to the target cache. {@link
+     *     CacheDataSource.Factory#createDataSourceForDownloading()} is used to create instances.
+     * @param dataSpec Defines the data to be written.
+     */
+    public Builder(CacheDataSource.Factory cacheDataSourceFactory, DataSpec dataSpec) {
+      this.cacheDataSourceFactory = cacheDataSourceFactory;
+      this.dataSpec = dataSpec;
+      maxParallelRequests = DEFAULT_MAX_PARALLEL_REQUESTS;
+      minRangeLength = DEFAULT_MIN_RANGE_LENGTH;
+      bufferCount = DEFAULT_BUFFER_COUNT;
+      bufferSize = CacheWriter.DEFAULT_BUFFER_SIZE_BYTES;
+    }
+
+    /**
+     * Sets the {@link Executor} on which ranges are cached and data is written to the cache.
+     *
+     * <p>The executor must be able to run {@code 2 * maxParallelRequests} tasks concurrently.
+     *
+     * <p>The default is {@code null}, meaning that threads are created for each call to {@link
+     * #cache()}.
+     *
+     * @param executor The {@link Executor}, or {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setExecutor(@Nullable Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link ProgressListener}. Progress updates are never reported concurrently.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param progressListener The {@link ProgressListener}, or {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setProgressListener(@Nullable ProgressListener progressListener) {
+      this.progressListener = progressListener;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of ranged requests that are made concurrently.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_PARALLEL_REQUESTS}.
+     *
+     * @param maxParallelRequests The maximum number of concurrent requests.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxParallelRequests(int maxParallelRequests) {
+      checkArgument(maxParallelRequests > 0);
+      this.maxParallelRequests = maxParallelRequests;
+      return this;
+    }
+
+    /**
+     * Sets the minimum length of a range that's requested separately, in bytes.
+     *
+     * <p>The default is {@link #DEFAULT_MIN_RANGE_LENGTH}.
+     *
+     * @param minRangeLength The minimum range length, in bytes.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMinRangeLength(long minRangeLength) {
+      checkArgument(minRangeLength > 0);
+      this.minRangeLength = minRangeLength;
+      return this;
+    }
+
+    /**
+     * Sets the number and size of the buffers that hold data waiting to be written to the cache,
+     * for each request.
+     *
+     * <p>The default is {@link #DEFAULT_BUFFER_COUNT} buffers of {@link
+     * CacheWriter#DEFAULT_BUFFER_SIZE_BYTES}.
+     *
+     * @param bufferCount The number of buffers.
+     * @param bufferSize The size of each buffer, in bytes.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBuffers(int bufferCount, int bufferSize) {
+      checkArgument(bufferCount > 0 && bufferSize > 0);
+      this.bufferCount = bufferCount;
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /** Builds the {@link PipelinedCacheWriter}. */
+    public PipelinedCacheWriter build() {
+      return new PipelinedCacheWriter(this);
+    }
+  }
+
+  /** The default maximum number of concurrent requests. */
+  public static final int DEFAULT_MAX_PARALLEL_REQUESTS = 4;
+
+  /** The default minimum length of a range that's requested separately, in bytes. */
+  public static final long DEFAULT_MIN_RANGE_LENGTH = 4 * 1024 * 1024;
+
+  /** The default number of buffers holding data waiting to be written, for each request. */
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+
+  private static final String THREAD_NAME = "ExoPlayer:PipelinedCacheWriter";
+
+  private final CacheDataSource.Factory cacheDataSourceFactory;
+  private final DataSpec dataSpec;
+  @Nullable private final Executor executor;
+  @Nullable private final ProgressListener progressListener;
+  private final int maxParallelRequests;
+  private final long minRangeLength;
+  private final int bufferCount;
+  private final int bufferSize;
+  private final Cache cache;
+  private final String cacheKey;
+  private final List<CacheWriter> activeWriters;
+  private final List<DataSpec> ranges;
+
+  // Accessed only on the thread calling cache().
+  private final List<FutureTask<Void>> tasks;
+  private final List<FutureTask<Void>> rejectedTasks;
+  @Nullable private Executor currentExecutor;
+  @Nullable private CacheDataSource firstRangeDataSource;
+  private boolean isResolvingLength;
+
+  private long length;
+  private long bytesCached;
+  private long[] rangeBytesCached;
+
+  private volatile boolean isCanceled;
+
+  private PipelinedCacheWriter(Builder builder) {
+    cacheDataSourceFactory = builder.cacheDataSourceFactory;
+    dataSpec = builder.dataSpec;
+    executor = builder.executor;
+    progressListener = builder.progressListener;
+    maxParallelRequests = builder.maxParallelRequests;
+    minRangeLength = builder.minRangeLength;
+    bufferCount = builder.bufferCount;
+    bufferSize = builder.bufferSize;
+    cache = cacheDataSourceFactory.getCache();
+    cacheKey = cacheDataSourceFactory.getCacheKeyFactory().buildCacheKey(dataSpec);
+    activeWriters = new ArrayList<>();
+    ranges = new ArrayList<>();
+    tasks = new ArrayList<>();
+    rejectedTasks = new ArrayList<>();
+    length = C.LENGTH_UNSET;
+    rangeBytesCached = new long[0];
+  }
+
+  /**
+   * Cancels this writer's caching operation. {@link #cache} checks for cancelation frequently
+   * during execution, and throws an {@link InterruptedIOException} if it sees that the caching
+   * operation has been canceled.
+   */
+  public void cancel() {
+    isCanceled = true;
+    cancelActiveWriters();
+  }
+
+  /**
+   * Caches the requested data, skipping any that's already cached.
+   *
+   * <p>If the {@link CacheDataSource.Factory} has a {@link PriorityTaskManager}, then it's the
+   * responsibility of the caller to register with the manager, as for {@link CacheWriter#cache()}.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws IOException If an error occurs reading the data, or writing the data into the cache, or
+   *     if the operation is canceled. If canceled, an {@link InterruptedIOException} is thrown. The
+   *     method may be called again to continue the operation from where the error occurred.
+   */
+  @WorkerThread
+  public void cache() throws IOException {
+    throwIfCanceled();
+    @Nullable ExecutorService ownedExecutorService = null;
+    Executor executor = this.executor;
+    if (executor == null) {
+      ownedExecutorService =
+          Executors.newCachedThreadPool(runnable -> new Thread(runnable, THREAD_NAME));
+      executor = ownedExecutorService;
+    }
+    try {
+      synchronized (this) {
+        length = getKnownLength();
+        ranges.clear();
+        rangeBytesCached = new long[0];
+        bytesCached = cache.getCachedBytes(cacheKey, dataSpec.position, dataSpec.length);
+      }
+      if (length == 0) {
+        if (progressListener != null) {
+          progressListener.onProgress(length, bytesCached, /* newBytesCached= */ 0);
+        }
+        return;
+      }
+      cacheRanges(executor);
+    } finally {
+      if (ownedExecutorService != null) {
+        ownedExecutorService.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Returns the length of the requested data if it's known without opening the data, or {@link
+   * C#LENGTH_UNSET}.
+   */
+  private long getKnownLength() {
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      return dataSpec.length;
+    }
+    long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+    return contentLength == C.LENGTH_UNSET ? C.LENGTH_UNSET : contentLength - dataSpec.position;
+  }
+
+  private void cacheRanges(Executor executor) throws IOException {
+    tasks.clear();
+    rejectedTasks.clear();
+    currentExecutor = executor;
+    if (length == C.LENGTH_UNSET && maxParallelRequests > 1) {
+      // Cache a first range, and resolve the length from its response so that the remaining data
+      // can be split into ranges without opening the data an additional time.
+      isResolvingLength = true;
+      startRanges(splitIntoRanges(/* offset= */ 0, minRangeLength, /* maxRangeCount= */ 1));
+    } else if (length == C.LENGTH_UNSET) {
+      startRanges(splitIntoRanges(/* offset= */ 0, C.LENGTH_UNSET, /* maxRangeCount= */ 1));
+    } else {
+      startRanges(splitIntoRanges(/* offset= */ 0, length, maxParallelRequests));
+    }
+    synchronized (this) {
+      if (progressListener != null) {
+        progressListener.onProgress(length, bytesCached, /* newBytesCached= */ 0);
+      }
+    }
+
+    // Cache the first range on the calling thread. Any ranges started once the length is resolved
+    // are added to the tasks whilst it runs.
+    tasks.get(0).run();
+    for (int i = 0; i < rejectedTasks.size(); i++) {
+      rejectedTasks.get(i).run();
+    }
+
+    @Nullable IOException exception = null;
+    boolean interrupted = false;
+    for (int i = 0; i < tasks.size(); i++) {
+      while (true) {
+        try {
+          tasks.get(i).get();
+          break;
+        } catch (InterruptedException e) {
+          // Stop caching the other ranges, but wait for them to finish.
+          interrupted = true;
+          cancelActiveWriters();
+        } catch (ExecutionException e) {
+          if (exception == null) {
+            Throwable cause = e.getCause();
+            exception = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            cancelActiveWriters();
+          }
+          break;
+        }
+      }
+    }
+    synchronized (activeWriters) {
+      activeWriters.clear();
+    }
+    tasks.clear();
+    rejectedTasks.clear();
+    currentExecutor = null;
+    firstRangeDataSource = null;
+    isResolvingLength = false;
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Splits the data of the given length, starting at the given offset into the requested data, into
+   * up to {@code maxRangeCount} ranges. Data of unknown length is returned as a single range.
+   */
+  private List<DataSpec> splitIntoRanges(long offset, long length, int maxRangeCount) {
+    List<DataSpec> ranges = new ArrayList<>();
+    if (length == C.LENGTH_UNSET) {
+      ranges.add(dataSpec.subrange(offset));
+      return ranges;
+    }
+    long rangeLength = max(minRangeLength, Util.ceilDivide(length, maxRangeCount));
+    long endOffset = offset + length;
+    for (long rangeOffset = offset; rangeOffset < endOffset; rangeOffset += rangeLength) {
+      ranges.add(dataSpec.subrange(rangeOffset, min(rangeLength, endOffset - rangeOffset)));
+    }
+    return ranges;
+  }
+
+  /**
+   * Starts caching the given ranges, leaving the very first range of the request to be run on the
+   * calling thread. Must only be called on the thread calling {@link #cache()}.
+   */
+  private void startRanges(List<DataSpec> newRanges) {
+    Executor executor = checkNotNull(currentExecutor);
+    for (int i = 0; i < newRanges.size(); i++) {
+      boolean isFirstRange = tasks.isEmpty();
+      CacheDataSource dataSource = createDataSource(executor);
+      if (isFirstRange && isResolvingLength) {
+        firstRangeDataSource = dataSource;
+      }
+      CacheWriter writer = addRange(newRanges.get(i), dataSource);
+      FutureTask<Void> task =
+          new FutureTask<>(
+              () -> {
+                writer.cache();
+                if (isFirstRange && isResolvingLength) {
+                  // The length couldn't be resolved, so cache the remaining data as a single range.
+                  isResolvingLength = false;
+                  addRange(dataSpec.subrange(minRangeLength), createDataSource(executor)).cache();
+                }
+                return null;
+              });
+      tasks.add(task);
+      if (!isFirstRange) {
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException e) {
+          rejectedTasks.add(task);
+        }
+      }
+    }
+  }
+
+  /** Adds a range of the request, returning the {@link CacheWriter} that caches it. */
+  private CacheWriter addRange(DataSpec range, CacheDataSource dataSource) {
+    int rangeIndex;
+    synchronized (this) {
+      rangeIndex = ranges.size();
+      ranges.add(range);
+      // Data cached before the range is added is already included in bytesCached.
+      rangeBytesCached = Arrays.copyOf(rangeBytesCached, ranges.size());
+      rangeBytesCached[rangeIndex] = cache.getCachedBytes(cacheKey, range.position, range.length);
+    }
+    CacheWriter writer =
+        new CacheWriter(
+            dataSource,
+            range,
+            /* temporaryBuffer= */ null,
+            (requestLength, bytesCached, newBytesCached) ->
+                onRangeProgress(rangeIndex, requestLength, bytesCached, newBytesCached));
+    synchronized (activeWriters) {
+      activeWriters.add(writer);
+    }
+    if (isCanceled) {
+      cancelActiveWriters();
+    }
+    return writer;
+  }
+
+  private CacheDataSource createDataSource(Executor executor) {
+    return cacheDataSourceFactory.createDataSourceForPipelinedDownloading(
+        executor, bufferCount, bufferSize);
+  }
+
+  private void onRangeProgress(
+      int rangeIndex, long requestLength, long bytesCached, long newBytesCached) {
+    if (rangeIndex == 0 && isResolvingLength) {
+      // The first range is cached on the thread calling cache().
+      maybeResolveLength(requestLength);
+    }
+    synchronized (this) {
+      DataSpec range = ranges.get(rangeIndex);
+      if (range.length == C.LENGTH_UNSET || range.position + range.length == getEndPosition()) {
+        // The range extends to the end of the request, whose length may be resolved whilst caching.
+        length =
+            requestLength == C.LENGTH_UNSET
+                ? C.LENGTH_UNSET
+                : range.position - dataSpec.position + requestLength;
+      }
+      this.bytesCached += bytesCached - rangeBytesCached[rangeIndex];
+      rangeBytesCached[rangeIndex] = bytesCached;
+      if (progressListener != null) {
+        progressListener.onProgress(length, this.bytesCached, newBytesCached);
+      }
+    }
+  }
+
+  /**
+   * Resolves the length of the requested data from the response to the first range, and starts
+   * caching the remaining data in separate ranges if it's resolved.
+   */
+  private void maybeResolveLength(long firstRangeLength) {
+    long resolvedLength;
+    if (firstRangeLength != C.LENGTH_UNSET && firstRangeLength < minRangeLength) {
+      // The first range ended early, so it holds all of the data.
+      resolvedLength = firstRangeLength;
+    } else {
+      long documentSize =
+          HttpUtil.getDocumentSize(
+              getHeader(
+                  checkNotNull(firstRangeDataSource).getResponseHeaders(),
+                  HttpHeaders.CONTENT_RANGE));
+      if (documentSize == C.LENGTH_UNSET) {
+        return;
+      }
+      resolvedLength = documentSize - dataSpec.position;
+    }
+    isResolvingLength = false;
+    synchronized (this) {
+      length = resolvedLength;
+    }
+    if (resolvedLength > minRangeLength) {
+      startRanges(
+          splitIntoRanges(
+              /* offset= */ minRangeLength,
+              resolvedLength - minRangeLength,
+              /* maxRangeCount= */ maxParallelRequests - 1));
+    }
+  }
+
+  private long getEndPosition() {
+    return length == C.LENGTH_UNSET ? C.INDEX_UNSET : dataSpec.position + length;
+  }
+
+  @Nullable
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      List<String> values = header.getValue();
+      if (name.equalsIgnoreCase(header.getKey()) && !values.isEmpty()) {
+        return values.get(0);
+      }
+    }
+    return null;
+  }
+
+  private void cancelActiveWriters() {
+    synchronized (activeWriters) {
+      for (int i = 0; i < activeWriters.size(); i++) {
+        activeWriters.get(i).cancel();
+      }
+    }
+  }
+
+  private void throwIfCanceled() throws InterruptedIOException {
+    if (isCanceled) {
+      throw new InterruptedIOException();
+    }
+  }
+}
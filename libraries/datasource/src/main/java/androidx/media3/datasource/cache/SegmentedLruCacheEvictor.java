@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * Evicts cache files using a segmented least recently used policy.
+ *
+ * <p>Newly added cache files enter a probationary segment, and are promoted to a protected segment
+ * when they're accessed again. Files are evicted from the probationary segment first, so a scan
+ * that adds many files that are never accessed again, such as a download, can't evict files that
+ * are accessed repeatedly. When the protected segment exceeds its share of the cache, its least
+ * recently used files are demoted back to the probationary segment.
+ */
+@UnstableApi
+public final class SegmentedLruCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that's reserved for the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final CacheSpanQueue probation;
+  private final CacheSpanQueue protectedSpans;
+
+  /**
+   * Creates an instance that reserves {@link #DEFAULT_PROTECTED_FRACTION} of the cache for the
+   * protected segment.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLruCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of the cache that's reserved for the protected segment,
+   *     between 0 and 1.
+   */
+  public SegmentedLruCacheEvictor(long maxBytes, float protectedFraction) {
+    checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    probation = new CacheSpanQueue();
+    protectedSpans = new CacheSpanQueue();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    probation.add(span);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (!probation.remove(span)) {
+      protectedSpans.remove(span);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    if (!probation.remove(oldSpan) && !protectedSpans.remove(oldSpan)) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    protectedSpans.add(newSpan);
+    // Demote the least recently used protected spans, keeping the span that was just touched.
+    while (protectedSpans.getBytes() > maxProtectedBytes && protectedSpans.size() > 1) {
+      CacheSpan demotedSpan = checkNotNull(protectedSpans.peekLeastRecent());
+      protectedSpans.remove(demotedSpan);
+      probation.add(demotedSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (probation.getBytes() + protectedSpans.getBytes() + requiredSpace > maxBytes) {
+      @Nullable CacheSpan span = probation.peekLeastRecent();
+      if (span == null) {
+        span = protectedSpans.peekLeastRecent();
+      }
+      if (span == null) {
+        return;
+      }
+      cache.removeSpan(span);
+    }
+  }
+}
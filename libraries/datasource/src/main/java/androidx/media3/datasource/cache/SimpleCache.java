@@ -16,6 +16,7 @@
 package androidx.media3.datasource.cache;
 
 import android.os.ConditionVariable;
+import android.util.SparseIntArray;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.C;
@@ -25,17 +26,24 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.database.DatabaseProvider;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -46,10 +54,179 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
+ *
+ * <p>By default all operations are serialized on a single cache lock. A cache built with {@link
+ * Builder#setConcurrentKeyAccess} set to {@code true} instead guards the state of each key with one
+ * of a number of striped key locks, so that reads and writes of different keys can proceed in
+ * parallel. In this mode the cache lock is only held briefly to update the shared index, to
+ * notify {@link Listener Listeners} and to call the {@link CacheEvictor}. Listener and evictor
+ * callbacks are still invoked with the cache lock held, and may call back into the cache.
+ *
+ * <p>The cache directory is loaded on a dedicated thread when the cache is constructed. A cache
+ * built with {@link Builder#setParallelInitialization} instead loads the directory in parallel on
+ * an {@link Executor}, and operations on a key can proceed as soon as the shard of keys to which it
+ * belongs has been loaded.
  */
 @UnstableApi
 public final class SimpleCache implements Cache {
 
+  /** A builder for {@link SimpleCache} instances. */
+  public static final class Builder {
+
+    private final File cacheDir;
+    private final CacheEvictor evictor;
+    private final DatabaseProvider databaseProvider;
+
+    private boolean concurrentKeyAccess;
+    private boolean useJournalIndex;
+    private boolean syncJournalIndexOnStore;
+    private int fileMetadataMaxPendingUpdates;
+    private long fileMetadataFlushIntervalMs;
+    @Nullable private Executor initializationExecutor;
+    private int initializationShardCount;
+
+    /**
+     * Creates a builder.
+     *
+     * @param cacheDir A dedicated cache directory. The cache will delete any unrecognized files
+     *     from the directory. Hence the directory cannot be used to store other files.
+     * @param evictor The evictor to be used. For download use cases where cache eviction should not
+     *     occur, use {@link NoOpCacheEvictor}.
+     * @param databaseProvider Provides the database in which cache metadata is stored.
+     */
+    public Builder(File cacheDir, CacheEvictor evictor, DatabaseProvider databaseProvider) {
+      this.cacheDir = cacheDir;
+      this.evictor = evictor;
+      this.databaseProvider = databaseProvider;
+      fileMetadataMaxPendingUpdates = 1;
+    }
+
+    /**
+     * Sets whether operations on different keys are allowed to proceed in parallel. If {@code
+     * false}, all operations are serialized on a single cache lock.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param concurrentKeyAccess Whether operations on different keys may proceed in parallel.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setConcurrentKeyAccess(boolean concurrentKeyAccess) {
+      this.concurrentKeyAccess = concurrentKeyAccess;
+      return this;
+    }
+
+    /**
+     * Sets whether the index of cached content is stored in an append-only journal in the cache
+     * directory, rather than in the database. Storing the index then takes time proportional to
+     * the number of changes rather than to the number of keys in the cache, which is beneficial
+     * for caches holding a large number of keys. An existing database index is migrated into the
+     * journal when the cache is initialized. The journal is not migrated back into the database if
+     * this option is later disabled, in which case the cached content is discarded.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param useJournalIndex Whether to store the index of cached content in a journal.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setUseJournalIndex(boolean useJournalIndex) {
+      this.useJournalIndex = useJournalIndex;
+      return this;
+    }
+
+    /**
+     * Sets whether the journal index is synced to the storage device each time the index is
+     * stored. Has no effect unless {@link #setUseJournalIndex(boolean)} is enabled.
+     *
+     * <p>Without syncing, changes to the index survive the process dying, but the most recent
+     * changes may be lost if the device loses power. The content whose index records are lost is
+     * then removed from the cache when it's next initialized. Syncing prevents this, at the cost of
+     * a blocking write to the storage device each time the index is stored, which is done whilst
+     * holding the cache lock.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param syncJournalIndexOnStore Whether to sync the journal each time the index is stored.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setSyncJournalIndexOnStore(boolean syncJournalIndexOnStore) {
+      this.syncJournalIndexOnStore = syncJournalIndexOnStore;
+      return this;
+    }
+
+    /**
+     * Sets how updates to the metadata of cache files are batched. Updates are written to the
+     * database in a single transaction on a background thread once {@code maxPendingUpdates}
+     * updates are pending, at most {@code flushIntervalMs} after the oldest pending update, and
+     * when the cache is released. Batching reduces the cost of committing and touching many small
+     * files. A background write that fails is logged and retried, rather than failing a later cache
+     * operation.
+     *
+     * <p>Updates that are pending if the process dies are lost. This is safe, since the lengths and
+     * last touch timestamps of the affected files are then read from the file system when the cache
+     * is next initialized.
+     *
+     * <p>The default is to write each update immediately.
+     *
+     * @param maxPendingUpdates The maximum number of pending updates.
+     * @param flushIntervalMs The maximum time for which an update remains pending, in
+     *     milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setFileMetadataBatching(int maxPendingUpdates, long flushIntervalMs) {
+      this.fileMetadataMaxPendingUpdates = maxPendingUpdates;
+      this.fileMetadataFlushIntervalMs = flushIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets an {@link Executor} on which the cache directory is loaded in parallel when the cache is
+     * initialized.
+     *
+     * <p>Keys are partitioned into {@code shardCount} shards. Once the cache directory has been
+     * listed, the files of each shard are loaded as a separate task, and operations on a key can
+     * proceed as soon as the shard containing the key has been loaded, rather than waiting for the
+     * whole cache to be loaded. Operations that span all keys, such as {@link #getKeys()}, still
+     * wait for the whole cache to be loaded.
+     *
+     * <p>The default is {@code null}, meaning that the cache is loaded on a single thread.
+     *
+     * @param initializationExecutor The {@link Executor}, or {@code null} to load the cache on a
+     *     single thread.
+     * @param shardCount The number of shards into which keys are partitioned. Ignored if {@code
+     *     initializationExecutor} is {@code null}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setParallelInitialization(
+        @Nullable Executor initializationExecutor, int shardCount) {
+      Assertions.checkArgument(initializationExecutor == null || shardCount > 0);
+      this.initializationExecutor = initializationExecutor;
+      this.initializationShardCount = shardCount;
+      return this;
+    }
+
+    /** Builds the {@link SimpleCache}. */
+    public SimpleCache build() {
+      CachedContentIndex contentIndex =
+          useJournalIndex
+              ? new CachedContentIndex(cacheDir, databaseProvider, syncJournalIndexOnStore)
+              : new CachedContentIndex(databaseProvider);
+      return new SimpleCache(
+          cacheDir,
+          evictor,
+          contentIndex,
+          new CacheFileMetadataIndex(
+              databaseProvider, fileMetadataMaxPendingUpdates, fileMetadataFlushIntervalMs),
+          concurrentKeyAccess,
+          initializationExecutor,
+          initializationShardCount);
+    }
+  }
+
   private static final String TAG = "SimpleCache";
 
   /**
@@ -62,6 +239,9 @@ public final class SimpleCache implements Cache {
 
   private static final String UID_FILE_SUFFIX = ".uid";
 
+  /** The number of key locks used if concurrent key access is enabled. */
+  private static final int CONCURRENT_KEY_LOCK_COUNT = 32;
+
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
   private final File cacheDir;
@@ -72,10 +252,38 @@ public final class SimpleCache implements Cache {
   private final Random random;
   private final boolean touchCacheSpans;
 
+  /**
+   * Locks guarding the state of individual keys, indexed by key hash. Contains only the cache
+   * itself if concurrent key access is disabled. Where both are needed, a key lock must always be
+   * acquired before the cache lock.
+   */
+  private final Object[] keyLocks;
+
+  /** Opened once initialization has finished. */
+  private final ConditionVariable initializationComplete;
+
+  /**
+   * The executor on which the cache directory is loaded, or {@code null} if it's loaded on the
+   * initialization thread.
+   */
+  @Nullable private final Executor initializationExecutor;
+
+  /**
+   * Opened once each shard of keys has been loaded, if the cache directory is loaded in parallel.
+   * Contains a single entry that's opened once initialization has finished otherwise.
+   */
+  private final ConditionVariable[] shardsLoaded;
+
+  /**
+   * Whether the thread holding the cache lock is loading cache files. Callbacks invoked whilst
+   * loading may access keys whose shard hasn't been opened yet.
+   */
+  private boolean loadingFiles;
+
   private long uid;
   private long totalSpace;
-  private boolean released;
-  private @MonotonicNonNull CacheException initializationException;
+  private volatile boolean released;
+  private volatile @MonotonicNonNull CacheException initializationException;
 
   /**
    * Returns whether {@code cacheFolder} is locked by a {@link SimpleCache} instance. To unlock the
@@ -212,6 +420,33 @@ public final class SimpleCache implements Cache {
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
       @Nullable CacheFileMetadataIndex fileIndex) {
+    this(cacheDir, evictor, contentIndex, fileIndex, /* concurrentKeyAccess= */ false);
+  }
+
+  /* package */ SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      CachedContentIndex contentIndex,
+      @Nullable CacheFileMetadataIndex fileIndex,
+      boolean concurrentKeyAccess) {
+    this(
+        cacheDir,
+        evictor,
+        contentIndex,
+        fileIndex,
+        concurrentKeyAccess,
+        /* initializationExecutor= */ null,
+        /* initializationShardCount= */ 1);
+  }
+
+  /* package */ SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      CachedContentIndex contentIndex,
+      @Nullable CacheFileMetadataIndex fileIndex,
+      boolean concurrentKeyAccess,
+      @Nullable Executor initializationExecutor,
+      int initializationShardCount) {
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -223,6 +458,22 @@ public final class SimpleCache implements Cache {
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    if (concurrentKeyAccess) {
+      contentIndex.enableConcurrentKeyAccess();
+      keyLocks = new Object[CONCURRENT_KEY_LOCK_COUNT];
+      for (int i = 0; i < keyLocks.length; i++) {
+        keyLocks[i] = new Object();
+      }
+    } else {
+      keyLocks = new Object[] {this};
+    }
+    initializationComplete = new ConditionVariable();
+    this.initializationExecutor = initializationExecutor;
+    shardsLoaded =
+        new ConditionVariable[initializationExecutor != null ? initializationShardCount : 1];
+    for (int i = 0; i < shardsLoaded.length; i++) {
+      shardsLoaded[i] = new ConditionVariable();
+    }
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -232,8 +483,17 @@ public final class SimpleCache implements Cache {
       public void run() {
         synchronized (SimpleCache.this) {
           conditionVariable.open();
-          initialize();
-          SimpleCache.this.evictor.onCacheInitialized();
+          if (SimpleCache.this.initializationExecutor != null) {
+            startParallelInitialization(SimpleCache.this.initializationExecutor);
+          } else {
+            loadingFiles = true;
+            try {
+              initialize();
+            } finally {
+              loadingFiles = false;
+              completeInitialization();
+            }
+          }
         }
       }
     }.start();
@@ -245,46 +505,64 @@ public final class SimpleCache implements Cache {
    *
    * @throws CacheException If an error occurred during initialization.
    */
-  public synchronized void checkInitialization() throws CacheException {
+  public void checkInitialization() throws CacheException {
+    initializationComplete.block();
     if (initializationException != null) {
       throw initializationException;
     }
   }
 
   @Override
-  public synchronized long getUid() {
-    return uid;
+  public long getUid() {
+    awaitInitialization();
+    synchronized (this) {
+      return uid;
+    }
   }
 
   @Override
-  public synchronized void release() {
-    if (released) {
-      return;
-    }
-    listeners.clear();
-    removeStaleSpans();
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      Log.e(TAG, "Storing index file failed", e);
-    } finally {
-      unlockFolder(cacheDir);
-      released = true;
+  public void release() {
+    awaitInitialization();
+    synchronized (this) {
+      if (released) {
+        return;
+      }
+      listeners.clear();
+      removeStaleSpans();
+      if (fileIndex != null) {
+        try {
+          fileIndex.release();
+        } catch (IOException e) {
+          Log.e(TAG, "Storing file metadata failed", e);
+        }
+      }
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index file failed", e);
+      } finally {
+        unlockFolder(cacheDir);
+        released = true;
+      }
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    Assertions.checkState(!released);
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
     Assertions.checkNotNull(key);
     Assertions.checkNotNull(listener);
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+    synchronized (getKeyLock(key)) {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        ArrayList<Listener> listenersForKey = listeners.get(key);
+        if (listenersForKey == null) {
+          listenersForKey = new ArrayList<>();
+          listeners.put(key, listenersForKey);
+        }
+        listenersForKey.add(listener);
+        return getCachedSpans(key);
+      }
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
@@ -302,98 +580,125 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
-    Assertions.checkState(!released);
-    return new HashSet<>(contentIndex.getKeys());
+  public Set<String> getKeys() {
+    awaitInitialization();
+    synchronized (this) {
+      Assertions.checkState(!released);
+      return new HashSet<>(contentIndex.getKeys());
+    }
   }
 
   @Override
-  public synchronized long getCacheSpace() {
-    Assertions.checkState(!released);
-    return totalSpace;
+  public long getCacheSpace() {
+    awaitInitialization();
+    synchronized (this) {
+      Assertions.checkState(!released);
+      return totalSpace;
+    }
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+  public CacheSpan startReadWrite(String key, long position, long length)
       throws InterruptedException, CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
+    Object keyLock = getKeyLock(key);
+    synchronized (keyLock) {
+      Assertions.checkState(!released);
+      throwIfInitializationFailed();
 
-    while (true) {
-      CacheSpan span = startReadWriteNonBlocking(key, position, length);
-      if (span != null) {
-        return span;
-      } else {
-        // Lock not available. We'll be woken up when a span is added, or when a locked span is
-        // released. We'll be able to make progress when either:
-        // 1. A span is added for the requested key that covers the requested position, in which
-        //    case a read can be started.
-        // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
+      while (true) {
+        CacheSpan span = startReadWriteNonBlocking(key, position, length);
+        if (span != null) {
+          return span;
+        } else {
+          // Lock not available. We'll be woken up when a span is added, or when a locked span is
+          // released. We'll be able to make progress when either:
+          // 1. A span is added for the requested key that covers the requested position, in which
+          //    case a read can be started.
+          // 2. The lock for the requested key is released, in which case a write can be started.
+          keyLock.wait();
+        }
       }
     }
   }
 
   @Override
   @Nullable
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position, long length)
+  public CacheSpan startReadWriteNonBlocking(String key, long position, long length)
       throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
-
-    SimpleCacheSpan span = getSpan(key, position, length);
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      throwIfInitializationFailed();
+
+      while (true) {
+        SimpleCacheSpan span = getSpan(key, position, length);
+
+        if (span.isCached) {
+          // Read case.
+          @Nullable SimpleCacheSpan touchedSpan = touchSpan(key, span);
+          if (touchedSpan == null) {
+            // The span was evicted concurrently. Try again.
+            continue;
+          }
+          return touchedSpan;
+        }
 
-    if (span.isCached) {
-      // Read case.
-      return touchSpan(key, span);
-    }
+        synchronized (this) {
+          CachedContent cachedContent = contentIndex.getOrAdd(key);
+          if (cachedContent.lockRange(position, span.length)) {
+            // Write case.
+            return span;
+          }
+        }
 
-    CachedContent cachedContent = contentIndex.getOrAdd(key);
-    if (cachedContent.lockRange(position, span.length)) {
-      // Write case.
-      return span;
+        // Lock not available.
+        return null;
+      }
     }
-
-    // Lock not available.
-    return null;
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
-
-    CachedContent cachedContent = contentIndex.get(key);
-    Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isFullyLocked(position, length));
-    if (!cacheDir.exists()) {
-      // The cache directory has been deleted from underneath us. Recreate it, and remove in-memory
-      // spans corresponding to cache files that no longer exist.
-      createCacheDirectories(cacheDir);
-      removeStaleSpans();
-    }
-    evictor.onStartFile(this, key, position, length);
-    // Randomly distribute files into subdirectories with a uniform distribution.
-    File cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
-    if (!cacheSubDir.exists()) {
-      createCacheDirectories(cacheSubDir);
+  public File startFile(String key, long position, long length) throws CacheException {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      throwIfInitializationFailed();
+
+      CachedContent cachedContent = contentIndex.get(key);
+      Assertions.checkNotNull(cachedContent);
+      Assertions.checkState(cachedContent.isFullyLocked(position, length));
+      File cacheSubDir;
+      synchronized (this) {
+        if (!cacheDir.exists()) {
+          // The cache directory has been deleted from underneath us. Recreate it, and remove
+          // in-memory spans corresponding to cache files that no longer exist.
+          createCacheDirectories(cacheDir);
+          removeStaleSpans();
+        }
+        evictor.onStartFile(this, key, position, length);
+        // Randomly distribute files into subdirectories with a uniform distribution.
+        cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
+        if (!cacheSubDir.exists()) {
+          createCacheDirectories(cacheSubDir);
+        }
+      }
+      long lastTouchTimestamp = System.currentTimeMillis();
+      return SimpleCacheSpan.getCacheFile(
+          cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
     }
-    long lastTouchTimestamp = System.currentTimeMillis();
-    return SimpleCacheSpan.getCacheFile(
-        cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
   }
 
   @Override
-  public synchronized void commitFile(File file, long length) throws CacheException {
+  public void commitFile(File file, long length) throws CacheException {
     Assertions.checkState(!released);
     if (!file.exists()) {
       return;
@@ -403,125 +708,264 @@ public final class SimpleCache implements Cache {
       return;
     }
 
-    SimpleCacheSpan span =
-        Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
-    Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
-
-    // Check if the span conflicts with the set content length
-    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
-    if (contentLength != C.LENGTH_UNSET) {
-      Assertions.checkState((span.position + span.length) <= contentLength);
+    SimpleCacheSpan span;
+    synchronized (this) {
+      span = Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
     }
+    Object keyLock = getKeyLock(span.key);
+    synchronized (keyLock) {
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+      Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
+
+      // Check if the span conflicts with the set content length
+      long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+      if (contentLength != C.LENGTH_UNSET) {
+        Assertions.checkState((span.position + span.length) <= contentLength);
+      }
 
-    if (fileIndex != null) {
-      String fileName = file.getName();
-      try {
-        fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
-      } catch (IOException e) {
-        throw new CacheException(e);
+      if (fileIndex != null) {
+        String fileName = file.getName();
+        try {
+          fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
+        } catch (IOException e) {
+          throw new CacheException(e);
+        }
       }
+      synchronized (this) {
+        addSpan(span);
+        try {
+          contentIndex.store();
+        } catch (IOException e) {
+          throw new CacheException(e);
+        }
+      }
+      keyLock.notifyAll();
     }
-    addSpan(span);
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      throw new CacheException(e);
+  }
+
+  @Override
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    Object keyLock = getKeyLock(holeSpan.key);
+    synchronized (keyLock) {
+      Assertions.checkState(!released);
+      synchronized (this) {
+        CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
+        cachedContent.unlockRange(holeSpan.position);
+        contentIndex.maybeRemove(cachedContent.key);
+      }
+      keyLock.notifyAll();
     }
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
-    cachedContent.unlockRange(holeSpan.position);
-    contentIndex.maybeRemove(cachedContent.key);
-    notifyAll();
+  public void removeResource(String key) {
+    synchronized (getKeyLock(key)) {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        for (CacheSpan span : getCachedSpans(key)) {
+          removeSpanInternal(span);
+        }
+      }
+    }
   }
 
   @Override
-  public synchronized void removeResource(String key) {
-    Assertions.checkState(!released);
-    for (CacheSpan span : getCachedSpans(key)) {
-      removeSpanInternal(span);
+  public void removeSpan(CacheSpan span) {
+    synchronized (getKeyLock(span.key)) {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        removeSpanInternal(span);
+      }
     }
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
-    Assertions.checkState(!released);
-    removeSpanInternal(span);
+  public boolean isCached(String key, long position, long length) {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    }
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
-    Assertions.checkState(!released);
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+  public long getCachedLength(String key, long position, long length) {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      if (length == C.LENGTH_UNSET) {
+        length = Long.MAX_VALUE;
+      }
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    }
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
-    Assertions.checkState(!released);
-    if (length == C.LENGTH_UNSET) {
-      length = Long.MAX_VALUE;
+  public long getCachedBytes(String key, long position, long length) {
+    synchronized (getKeyLock(key)) {
+      long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
+      if (endPosition < 0) {
+        // The calculation rolled over (length is probably Long.MAX_VALUE).
+        endPosition = Long.MAX_VALUE;
+      }
+      long currentPosition = position;
+      long cachedBytes = 0;
+      while (currentPosition < endPosition) {
+        long maxRemainingLength = endPosition - currentPosition;
+        long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
+        if (blockLength > 0) {
+          cachedBytes += blockLength;
+        } else {
+          // There's a hole of length -blockLength.
+          blockLength = -blockLength;
+        }
+        currentPosition += blockLength;
+      }
+      return cachedBytes;
     }
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
-    long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
-    if (endPosition < 0) {
-      // The calculation rolled over (length is probably Long.MAX_VALUE).
-      endPosition = Long.MAX_VALUE;
-    }
-    long currentPosition = position;
-    long cachedBytes = 0;
-    while (currentPosition < endPosition) {
-      long maxRemainingLength = endPosition - currentPosition;
-      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
-      if (blockLength > 0) {
-        cachedBytes += blockLength;
-      } else {
-        // There's a hole of length -blockLength.
-        blockLength = -blockLength;
+  public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations)
+      throws CacheException {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      throwIfInitializationFailed();
+
+      synchronized (this) {
+        contentIndex.applyContentMetadataMutations(key, mutations);
+        try {
+          contentIndex.store();
+        } catch (IOException e) {
+          throw new CacheException(e);
+        }
       }
-      currentPosition += blockLength;
     }
-    return cachedBytes;
   }
 
   @Override
-  public synchronized void applyContentMetadataMutations(
-      String key, ContentMetadataMutations mutations) throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
+  public ContentMetadata getContentMetadata(String key) {
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(!released);
+      return contentIndex.getContentMetadata(key);
+    }
+  }
+
+  /**
+   * Returns the lock guarding the state of {@code key}. Blocks until the key has been loaded, which
+   * is when initialization has finished unless the cache directory is loaded in parallel.
+   *
+   * <p>The cache lock is returned without blocking if the calling thread already holds it, for
+   * example when called from a {@link Listener} or {@link CacheEvictor} callback. This is safe
+   * because all modifications to the state of a key are made whilst holding the cache lock, and is
+   * necessary to preserve the lock ordering. Waiting for the key to be loaded isn't possible in
+   * this case, because loading requires the cache lock. Callbacks must therefore only access keys
+   * that have been loaded, such as the key of the span for which they're invoked. This is checked,
+   * except whilst cache files are being loaded.
+   */
+  private Object getKeyLock(String key) {
+    ConditionVariable shardLoaded = shardsLoaded[getIndex(key, shardsLoaded.length)];
+    if (Thread.holdsLock(this)) {
+      Assertions.checkState(loadingFiles || shardLoaded.isOpen());
+      return this;
+    }
+    shardLoaded.block();
+    return keyLocks.length == 1 ? this : keyLocks[getIndex(key, keyLocks.length)];
+  }
+
+  /** Blocks until initialization has finished, unless the calling thread holds the cache lock. */
+  private void awaitInitialization() {
+    if (!Thread.holdsLock(this)) {
+      initializationComplete.block();
+    }
+  }
+
+  private void throwIfInitializationFailed() throws CacheException {
+    if (initializationException != null) {
+      throw initializationException;
+    }
+  }
+
+  /**
+   * Notifies the evictor that the cache has been initialized, and unblocks operations waiting for
+   * initialization. Must be called whilst holding the cache lock.
+   */
+  private void completeInitialization() {
+    evictor.onCacheInitialized();
+    for (ConditionVariable shardLoaded : shardsLoaded) {
+      shardLoaded.open();
+    }
+    initializationComplete.open();
+  }
+
+  /** Ensures that the cache's in-memory representation has been initialized. */
+  private void initialize() {
+    @Nullable File[] files = initializeIndices();
+    if (files == null) {
+      return;
+    }
+
+    try {
+      if (fileIndex != null) {
+        Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
+        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
+        fileIndex.removeAll(fileMetadata.keySet());
+      } else {
+        loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
+      }
+    } catch (IOException e) {
+      String message = "Failed to initialize cache indices: " + cacheDir;
+      Log.e(TAG, message, e);
+      initializationException = new CacheException(message, e);
+      return;
+    }
 
-    contentIndex.applyContentMetadataMutations(key, mutations);
+    contentIndex.removeEmpty();
     try {
       contentIndex.store();
     } catch (IOException e) {
-      throw new CacheException(e);
+      Log.e(TAG, "Storing index file failed", e);
     }
   }
 
-  @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
-    Assertions.checkState(!released);
-    return contentIndex.getContentMetadata(key);
+  /**
+   * Starts initializing the cache's in-memory representation, with the cache directory being
+   * loaded in parallel on {@code executor}. Must be called whilst holding the cache lock.
+   */
+  private void startParallelInitialization(Executor executor) {
+    @Nullable File[] files = initializeIndices();
+    @Nullable Map<String, CacheFileMetadata> fileMetadata = null;
+    if (files != null && fileIndex != null) {
+      try {
+        fileMetadata = new ConcurrentHashMap<>(fileIndex.getAll());
+      } catch (IOException e) {
+        String message = "Failed to initialize cache indices: " + cacheDir;
+        Log.e(TAG, message, e);
+        initializationException = new CacheException(message, e);
+        files = null;
+      }
+    }
+    if (files == null) {
+      completeInitialization();
+      return;
+    }
+    new ParallelLoader(executor, files, fileMetadata).start();
   }
 
-  /** Ensures that the cache's in-memory representation has been initialized. */
-  private void initialize() {
+  /**
+   * Creates the cache directory if necessary, loads the UID and initializes the indices.
+   *
+   * @return The files in the cache directory, or {@code null} if initialization failed.
+   */
+  @Nullable
+  private File[] initializeIndices() {
     if (!cacheDir.exists()) {
       try {
         createCacheDirectories(cacheDir);
       } catch (CacheException e) {
         initializationException = e;
-        return;
+        return null;
       }
     }
 
@@ -530,7 +974,7 @@ public final class SimpleCache implements Cache {
       String message = "Failed to list cache directory files: " + cacheDir;
       Log.e(TAG, message);
       initializationException = new CacheException(message);
-      return;
+      return null;
     }
 
     uid = loadUid(files);
@@ -541,7 +985,7 @@ public final class SimpleCache implements Cache {
         String message = "Failed to create cache UID: " + cacheDir;
         Log.e(TAG, message, e);
         initializationException = new CacheException(message, e);
-        return;
+        return null;
       }
     }
 
@@ -549,25 +993,30 @@ public final class SimpleCache implements Cache {
       contentIndex.initialize(uid);
       if (fileIndex != null) {
         fileIndex.initialize(uid);
-        Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
-        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
-        fileIndex.removeAll(fileMetadata.keySet());
-      } else {
-        loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
       }
     } catch (IOException e) {
       String message = "Failed to initialize cache indices: " + cacheDir;
       Log.e(TAG, message, e);
       initializationException = new CacheException(message, e);
-      return;
+      return null;
     }
+    return files;
+  }
 
-    contentIndex.removeEmpty();
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      Log.e(TAG, "Storing index file failed", e);
+  /**
+   * Returns whether a file in the root of the cache directory holds index or UID data rather than
+   * cached content. A journal left behind by a cache that previously stored its index in a journal
+   * is deleted, since it's no longer kept up to date.
+   */
+  private boolean isIndexOrUidFile(File file) {
+    String fileName = file.getName();
+    if (CachedContentIndex.isJournalFile(fileName) && !contentIndex.isStoredInJournal()) {
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete unused index journal: " + file);
+      }
+      return true;
     }
+    return CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX);
   }
 
   /**
@@ -599,8 +1048,7 @@ public final class SimpleCache implements Cache {
       if (isRoot && fileName.indexOf('.') == -1) {
         loadDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata);
       } else {
-        if (isRoot
-            && (CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX))) {
+        if (isRoot && isIndexOrUidFile(file)) {
           // Skip expected UID and index files in the root directory.
           continue;
         }
@@ -628,10 +1076,14 @@ public final class SimpleCache implements Cache {
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
    *
+   * <p>Must be called whilst holding the key lock of {@code key}.
+   *
    * @param key The key of the span being touched.
    * @param span The span being touched.
-   * @return The updated span.
+   * @return The updated span, or {@code null} if the span was removed from the cache by a thread
+   *     that was not holding the key lock.
    */
+  @Nullable
   private SimpleCacheSpan touchSpan(String key, SimpleCacheSpan span) {
     if (!touchCacheSpans) {
       return span;
@@ -651,11 +1103,18 @@ public final class SimpleCache implements Cache {
       // updating the file index. Hence we only update the file if we don't have a file index.
       updateFile = true;
     }
-    SimpleCacheSpan newSpan =
-        Assertions.checkNotNull(contentIndex.get(key))
-            .setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
-    notifySpanTouched(span, newSpan);
-    return newSpan;
+    synchronized (this) {
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      if (cachedContent == null || !cachedContent.getSpans().contains(span)) {
+        // The span was evicted before the cache lock was acquired. Any file index entry written
+        // above is stale, and will be removed next time the cache is initialized.
+        return null;
+      }
+      SimpleCacheSpan newSpan =
+          cachedContent.setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+      notifySpanTouched(span, newSpan);
+      return newSpan;
+    }
   }
 
   /**
@@ -677,7 +1136,9 @@ public final class SimpleCache implements Cache {
       if (span.isCached && Assertions.checkNotNull(span.file).length() != span.length) {
         // The file has been modified or deleted underneath us. It's likely that other files will
         // have been modified too, so scan the whole in-memory representation.
-        removeStaleSpans();
+        synchronized (this) {
+          removeStaleSpans();
+        }
         continue;
       }
       return span;
@@ -763,6 +1224,224 @@ public final class SimpleCache implements Cache {
     evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
+  private static int getIndex(String key, int count) {
+    return (key.hashCode() & Integer.MAX_VALUE) % count;
+  }
+
+  /**
+   * Loads the cache directory in parallel, partitioning the cache files into shards by the key to
+   * which they belong.
+   *
+   * <p>The root directory and each of its subdirectories are first listed as separate tasks. Once
+   * all directories have been listed, files in a legacy format are upgraded and loaded whilst
+   * holding the cache lock, and the files of each shard are then loaded as separate tasks. Each
+   * shard is opened for use as soon as it has been loaded.
+   */
+  private final class ParallelLoader {
+
+    private final Executor executor;
+    private final File[] rootFiles;
+    @Nullable private final Map<String, CacheFileMetadata> fileMetadata;
+    private final SparseIntArray shardIndicesById;
+    private final List<List<String>> shardKeys;
+    private final List<ConcurrentLinkedQueue<File>> shardFiles;
+    private final ConcurrentLinkedQueue<File> legacyFiles;
+    private final AtomicInteger pendingTaskCount;
+
+    /**
+     * Creates an instance. Must be called whilst holding the cache lock, after the indices have
+     * been initialized.
+     *
+     * @param executor The {@link Executor} on which tasks are run.
+     * @param rootFiles The files belonging to the root directory.
+     * @param fileMetadata A thread safe, mutable map containing cache file metadata, keyed by file
+     *     name, or null if no file metadata is available.
+     */
+    public ParallelLoader(
+        Executor executor,
+        File[] rootFiles,
+        @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+      this.executor = executor;
+      this.rootFiles = rootFiles;
+      this.fileMetadata = fileMetadata;
+      shardIndicesById = new SparseIntArray();
+      shardKeys = new ArrayList<>(shardsLoaded.length);
+      shardFiles = new ArrayList<>(shardsLoaded.length);
+      for (int i = 0; i < shardsLoaded.length; i++) {
+        shardKeys.add(new ArrayList<>());
+        shardFiles.add(new ConcurrentLinkedQueue<>());
+      }
+      for (CachedContent cachedContent : contentIndex.getAll()) {
+        int shardIndex = getIndex(cachedContent.key, shardsLoaded.length);
+        shardIndicesById.put(cachedContent.id, shardIndex);
+        shardKeys.get(shardIndex).add(cachedContent.key);
+      }
+      legacyFiles = new ConcurrentLinkedQueue<>();
+      pendingTaskCount = new AtomicInteger();
+    }
+
+    /** Starts loading. Must be called whilst holding the cache lock. */
+    public void start() {
+      List<File> directories = new ArrayList<>();
+      for (File file : rootFiles) {
+        String fileName = file.getName();
+        if (fileName.indexOf('.') == -1) {
+          directories.add(file);
+        } else if (!isIndexOrUidFile(file)) {
+          // Skip expected UID and index files in the root directory.
+          addFile(file);
+        }
+      }
+      if (directories.isEmpty()) {
+        onDirectoriesListed();
+        return;
+      }
+      pendingTaskCount.set(directories.size());
+      for (File directory : directories) {
+        execute(() -> listDirectory(directory));
+      }
+    }
+
+    private void listDirectory(File directory) {
+      try {
+        @Nullable File[] files = directory.listFiles();
+        if (files == null || files.length == 0) {
+          // As in loadDirectory, deleting is either the desired result or a no-op.
+          directory.delete();
+          return;
+        }
+        for (File file : files) {
+          addFile(file);
+        }
+      } finally {
+        if (pendingTaskCount.decrementAndGet() == 0) {
+          onDirectoriesListed();
+        }
+      }
+    }
+
+    private void addFile(File file) {
+      int id = SimpleCacheSpan.getCacheFileId(file.getName());
+      if (id == C.INDEX_UNSET) {
+        legacyFiles.add(file);
+        return;
+      }
+      int shardIndex = shardIndicesById.get(id, C.INDEX_UNSET);
+      if (shardIndex == C.INDEX_UNSET) {
+        // The id is not present in the content index.
+        file.delete();
+      } else {
+        shardFiles.get(shardIndex).add(file);
+      }
+    }
+
+    private void onDirectoriesListed() {
+      synchronized (SimpleCache.this) {
+        // Upgrading legacy files may add keys to any shard, so it must happen before any shard is
+        // opened.
+        loadingFiles = true;
+        try {
+          for (File file : legacyFiles) {
+            loadFile(file, C.LENGTH_UNSET, C.TIME_UNSET);
+          }
+        } finally {
+          loadingFiles = false;
+        }
+      }
+      pendingTaskCount.set(shardsLoaded.length);
+      for (int i = 0; i < shardsLoaded.length; i++) {
+        int shardIndex = i;
+        execute(() -> loadShard(shardIndex));
+      }
+    }
+
+    private void loadShard(int shardIndex) {
+      try {
+        List<File> files = new ArrayList<>(shardFiles.get(shardIndex));
+        long[] lengths = new long[files.size()];
+        long[] lastTouchTimestamps = new long[files.size()];
+        // Query the file system without holding the cache lock.
+        for (int i = 0; i < files.size(); i++) {
+          File file = files.get(i);
+          @Nullable
+          CacheFileMetadata metadata =
+              fileMetadata != null ? fileMetadata.remove(file.getName()) : null;
+          if (metadata != null) {
+            lengths[i] = metadata.length;
+            lastTouchTimestamps[i] = metadata.lastTouchTimestamp;
+          } else {
+            lengths[i] = file.length();
+            lastTouchTimestamps[i] = C.TIME_UNSET;
+          }
+        }
+        synchronized (SimpleCache.this) {
+          loadingFiles = true;
+          try {
+            for (int i = 0; i < files.size(); i++) {
+              loadFile(files.get(i), lengths[i], lastTouchTimestamps[i]);
+            }
+            for (String key : shardKeys.get(shardIndex)) {
+              contentIndex.maybeRemove(key);
+            }
+          } finally {
+            loadingFiles = false;
+          }
+        }
+      } finally {
+        // Open the shard whilst holding the cache lock, so that callbacks see it as loaded as soon
+        // as its files have been loaded.
+        synchronized (SimpleCache.this) {
+          shardsLoaded[shardIndex].open();
+        }
+        if (pendingTaskCount.decrementAndGet() == 0) {
+          onShardsLoaded();
+        }
+      }
+    }
+
+    private void loadFile(File file, long length, long lastTouchTimestamp) {
+      @Nullable
+      SimpleCacheSpan span =
+          SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
+      if (span != null) {
+        addSpan(span);
+      } else {
+        file.delete();
+      }
+    }
+
+    private void onShardsLoaded() {
+      synchronized (SimpleCache.this) {
+        try {
+          if (fileIndex != null && fileMetadata != null) {
+            try {
+              fileIndex.removeAll(fileMetadata.keySet());
+            } catch (IOException e) {
+              // The cache is already in use, so don't fail initialization. Stale entries will be
+              // removed next time the cache is initialized.
+              Log.w(TAG, "Failed to remove unused file metadata", e);
+            }
+          }
+          try {
+            contentIndex.store();
+          } catch (IOException e) {
+            Log.e(TAG, "Storing index file failed", e);
+          }
+        } finally {
+          completeInitialization();
+        }
+      }
+    }
+
+    private void execute(Runnable task) {
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+    }
+  }
+
   /**
    * Loads the cache UID from the files belonging to the root directory.
    *
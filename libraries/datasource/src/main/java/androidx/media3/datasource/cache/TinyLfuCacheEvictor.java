@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * Evicts cache files using the W-TinyLFU policy, which admits files into the main part of the cache
+ * only if they're accessed more frequently than the files they would replace.
+ *
+ * <p>Newly added cache files enter a small admission window that's managed in least recently used
+ * order. When the window exceeds its share of the cache and the cache is full, the least recently
+ * used file in the window competes with the next file to be evicted from the main part of the
+ * cache, and the one that has been accessed less frequently is evicted. Access frequencies are
+ * estimated by a compact count-min sketch, which also remembers files that have been evicted. The
+ * main part of the cache is managed as a segmented least recently used cache, as in {@link
+ * SegmentedLruCacheEvictor}.
+ *
+ * <p>Because files that are only accessed once rarely win admission, a scan that adds many such
+ * files, such as a download, can't evict files that are accessed repeatedly.
+ */
+@UnstableApi
+public final class TinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that's reserved for the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+
+  /** The default expected average length of a cache file, in bytes. */
+  public static final long DEFAULT_EXPECTED_SPAN_LENGTH = 512 * 1024;
+
+  private static final float PROTECTED_FRACTION =
+      SegmentedLruCacheEvictor.DEFAULT_PROTECTED_FRACTION;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxProtectedBytes;
+  private final CacheSpanQueue window;
+  private final CacheSpanQueue probation;
+  private final CacheSpanQueue protectedSpans;
+  private final FrequencySketch sketch;
+
+  /**
+   * Creates an instance with the default window fraction and expected span length.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public TinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, DEFAULT_EXPECTED_SPAN_LENGTH);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowFraction The fraction of the cache that's reserved for the admission window,
+   *     between 0 and 1.
+   * @param expectedSpanLength The expected average length of a cache file, in bytes, used to size
+   *     the frequency sketch. The sketch grows if the cache holds more files than expected.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, float windowFraction, long expectedSpanLength) {
+    checkArgument(windowFraction >= 0 && windowFraction <= 1 && expectedSpanLength > 0);
+    this.maxBytes = maxBytes;
+    maxWindowBytes = (long) (maxBytes * windowFraction);
+    maxProtectedBytes = (long) ((maxBytes - maxWindowBytes) * PROTECTED_FRACTION);
+    window = new CacheSpanQueue();
+    probation = new CacheSpanQueue();
+    protectedSpans = new CacheSpanQueue();
+    sketch = new FrequencySketch((int) max(1, min(maxBytes / expectedSpanLength, 1 << 24)));
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    sketch.increment(span);
+    window.add(span);
+    sketch.ensureCapacity(window.size() + probation.size() + protectedSpans.size());
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (!window.remove(span) && !probation.remove(span)) {
+      protectedSpans.remove(span);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    if (window.remove(oldSpan)) {
+      sketch.increment(newSpan);
+      window.add(newSpan);
+    } else if (probation.remove(oldSpan) || protectedSpans.remove(oldSpan)) {
+      sketch.increment(newSpan);
+      protectedSpans.add(newSpan);
+      // Demote the least recently used protected spans, keeping the span that was just touched.
+      while (protectedSpans.getBytes() > maxProtectedBytes && protectedSpans.size() > 1) {
+        CacheSpan demotedSpan = checkNotNull(protectedSpans.peekLeastRecent());
+        protectedSpans.remove(demotedSpan);
+        probation.add(demotedSpan);
+      }
+    } else {
+      onSpanAdded(cache, newSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    // A span of requiredSpace bytes is about to enter the window. Otherwise the most recently added
+    // span stays in the window.
+    int minWindowSize = requiredSpace > 0 ? 0 : 1;
+    // While the cache has room, spans that overflow the window move to the main part of the cache
+    // without competing for admission.
+    while (window.size() > minWindowSize
+        && window.getBytes() + requiredSpace > maxWindowBytes
+        && getTotalBytes() + requiredSpace <= maxBytes) {
+      CacheSpan span = checkNotNull(window.peekLeastRecent());
+      window.remove(span);
+      probation.add(span);
+    }
+    while (getTotalBytes() + requiredSpace > maxBytes) {
+      @Nullable
+      CacheSpan candidate =
+          window.size() > minWindowSize && window.getBytes() + requiredSpace > maxWindowBytes
+              ? window.peekLeastRecent()
+              : null;
+      @Nullable CacheSpan victim = probation.peekLeastRecent();
+      if (victim == null) {
+        victim = protectedSpans.peekLeastRecent();
+      }
+      if (victim == null) {
+        // Only the window holds spans.
+        victim = window.peekLeastRecent();
+        if (victim == null) {
+          return;
+        }
+        cache.removeSpan(victim);
+      } else if (candidate == null) {
+        // The window is within its share of the cache, so the main part of the cache shrinks.
+        cache.removeSpan(victim);
+      } else if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+        // The candidate is admitted in place of the victim.
+        cache.removeSpan(victim);
+        window.remove(candidate);
+        probation.add(candidate);
+      } else {
+        cache.removeSpan(candidate);
+      }
+    }
+  }
+
+  private long getTotalBytes() {
+    return window.getBytes() + probation.getBytes() + protectedSpans.getBytes();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AesCipherDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class AesCipherDataSourceTest {
+
+  private static final byte[] KEY = Util.getUtf8Bytes("testKey:12345678");
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 100_000);
+  private static final byte[] ENCRYPTED_DATA = encrypt(DATA);
+
+  @Test
+  public void read_unbuffered_decryptsData() throws Exception {
+    AesCipherDataSource dataSource =
+        new AesCipherDataSource(KEY, new ByteArrayDataSource(ENCRYPTED_DATA));
+
+    byte[] data = readToEnd(dataSource, new DataSpec(Uri.EMPTY), /* chunkSize= */ 4096);
+
+    assertThat(data).isEqualTo(DATA);
+  }
+
+  @Test
+  public void read_bufferedWithVariousChunkSizes_decryptsData() throws Exception {
+    for (int chunkSize : new int[] {1, 7, 16, 1000, 4096, 8192, 65536, 100_000}) {
+      AesCipherDataSource dataSource =
+          new AesCipherDataSource(
+              KEY, new ByteArrayDataSource(ENCRYPTED_DATA), /* bufferSize= */ 10_000);
+
+      byte[] data = readToEnd(dataSource, new DataSpec(Uri.EMPTY), chunkSize);
+
+      assertThat(data).isEqualTo(DATA);
+    }
+  }
+
+  @Test
+  public void read_bufferedFromUnalignedPosition_decryptsData() throws Exception {
+    AesCipherDataSource dataSource =
+        new AesCipherDataSource(
+            KEY, new ByteArrayDataSource(ENCRYPTED_DATA), AesCipherDataSource.DEFAULT_BUFFER_SIZE);
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(Uri.EMPTY).setPosition(12_345).setLength(50_000).build();
+
+    byte[] data = readToEnd(dataSource, dataSpec, /* chunkSize= */ 1000);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(DATA, 12_345, 62_345));
+  }
+
+  @Test
+  public void read_bufferedAfterReopen_decryptsData() throws Exception {
+    AesCipherDataSource dataSource =
+        new AesCipherDataSource(
+            KEY, new ByteArrayDataSource(ENCRYPTED_DATA), /* bufferSize= */ 10_000);
+    dataSource.open(new DataSpec(Uri.EMPTY));
+    dataSource.read(new byte[10], /* offset= */ 0, /* length= */ 10);
+    dataSource.close();
+
+    byte[] data =
+        readToEnd(
+            dataSource,
+            new DataSpec.Builder().setUri(Uri.EMPTY).setPosition(100).build(),
+            /* chunkSize= */ 4096);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(DATA, 100, DATA.length));
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, DataSpec dataSpec, int chunkSize)
+      throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[chunkSize];
+    try {
+      dataSource.open(dataSpec);
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, /* offset= */ 0, chunkSize))
+          != C.RESULT_END_OF_INPUT) {
+        outputStream.write(buffer, /* off= */ 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return outputStream.toByteArray();
+  }
+
+  private static byte[] encrypt(byte[] data) {
+    byte[] encryptedData = data.clone();
+    new AesFlushingCipher(Cipher.ENCRYPT_MODE, KEY, /* nonce= */ null, /* offset= */ 0)
+        .updateInPlace(encryptedData, /* offset= */ 0, encryptedData.length);
+    return encryptedData;
+  }
+}
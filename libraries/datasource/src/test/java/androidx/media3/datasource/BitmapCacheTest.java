@@ -0,0 +1,333 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.robolectric.annotation.GraphicsMode.Mode.NATIVE;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.GraphicsMode;
+
+/** Unit tests for {@link BitmapCache}. */
+@RunWith(AndroidJUnit4.class)
+@GraphicsMode(value = NATIVE)
+public final class BitmapCacheTest {
+
+  private static final Uri URI_1 = Uri.parse("https://test.test/1.jpg");
+  private static final Uri URI_2 = Uri.parse("https://test.test/2.jpg");
+  private static final Uri URI_3 = Uri.parse("https://test.test/3.jpg");
+
+  @Test
+  public void get_sameUriTwice_loadsOnce() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    Bitmap bitmap = createBitmap();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    Bitmap bitmap1 =
+        bitmapCache
+            .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap))
+            .get();
+    Bitmap bitmap2 =
+        bitmapCache
+            .get(
+                URI_1,
+                /* options= */ null,
+                C.LENGTH_UNSET,
+                () -> countingLoad(loadCount, createBitmap()))
+            .get();
+
+    assertThat(bitmap1).isSameInstanceAs(bitmap);
+    assertThat(bitmap2).isSameInstanceAs(bitmap);
+    assertThat(loadCount.get()).isEqualTo(1);
+    assertThat(bitmapCache.getHitCount()).isEqualTo(1);
+    assertThat(bitmapCache.getMissCount()).isEqualTo(1);
+    assertThat(bitmapCache.getSizeBytes()).isEqualTo(getEntrySizeBytes(URI_1, bitmap));
+  }
+
+  @Test
+  public void get_sameDataTwice_loadsOnce() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    bitmapCache
+        .get(
+            new byte[] {1, 2, 3},
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(
+            new byte[] {1, 2, 3},
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(
+            new byte[] {1, 2, 4},
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+
+    assertThat(loadCount.get()).isEqualTo(2);
+    assertThat(bitmapCache.getBitmapCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_data_countsDigestRatherThanDataAgainstMaxSize() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    Bitmap bitmap = createBitmap();
+
+    bitmapCache
+        .get(
+            new byte[10_000],
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> Futures.immediateFuture(bitmap))
+        .get();
+
+    // The data is keyed by its 32 byte SHA-256 digest.
+    assertThat(bitmapCache.getSizeBytes()).isEqualTo(bitmap.getAllocationByteCount() + 32);
+  }
+
+  @Test
+  public void get_differentMaximumOutputDimension_loadsAgain() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    bitmapCache
+        .get(
+            URI_1,
+            /* options= */ null,
+            /* maximumOutputDimension= */ 100,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(
+            URI_1,
+            /* options= */ null,
+            /* maximumOutputDimension= */ 200,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+
+    assertThat(loadCount.get()).isEqualTo(2);
+    assertThat(bitmapCache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_differentOptions_loadsAgain() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    AtomicInteger loadCount = new AtomicInteger();
+    BitmapFactory.Options options1 = new BitmapFactory.Options();
+    options1.inPreferredConfig = Bitmap.Config.RGB_565;
+    BitmapFactory.Options options2 = new BitmapFactory.Options();
+    options2.inPreferredConfig = Bitmap.Config.RGB_565;
+    BitmapFactory.Options options3 = new BitmapFactory.Options();
+    options3.inPreferredConfig = Bitmap.Config.RGB_565;
+    options3.inMutable = true;
+
+    bitmapCache
+        .get(URI_1, options1, C.LENGTH_UNSET, () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(URI_1, options2, C.LENGTH_UNSET, () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(URI_1, options3, C.LENGTH_UNSET, () -> countingLoad(loadCount, createBitmap()))
+        .get();
+    bitmapCache
+        .get(
+            URI_1,
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> countingLoad(loadCount, createBitmap()))
+        .get();
+
+    assertThat(loadCount.get()).isEqualTo(3);
+    assertThat(bitmapCache.getBitmapCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void get_whileLoadPending_coalescesRequests() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    SettableFuture<Bitmap> pendingLoad = SettableFuture.create();
+    AtomicInteger loadCount = new AtomicInteger();
+    Bitmap bitmap = createBitmap();
+
+    ListenableFuture<Bitmap> future1 =
+        bitmapCache.get(
+            URI_1,
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> {
+              loadCount.incrementAndGet();
+              return pendingLoad;
+            });
+    ListenableFuture<Bitmap> future2 =
+        bitmapCache.get(
+            URI_1,
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> countingLoad(loadCount, createBitmap()));
+    assertThat(future1.isDone()).isFalse();
+    assertThat(future2.isDone()).isFalse();
+    pendingLoad.set(bitmap);
+
+    assertThat(future1.get()).isSameInstanceAs(bitmap);
+    assertThat(future2.get()).isSameInstanceAs(bitmap);
+    assertThat(loadCount.get()).isEqualTo(1);
+    assertThat(bitmapCache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_cancelCoalescedRequest_doesNotCancelOtherRequest() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    SettableFuture<Bitmap> pendingLoad = SettableFuture.create();
+    Bitmap bitmap = createBitmap();
+
+    ListenableFuture<Bitmap> future1 =
+        bitmapCache.get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> pendingLoad);
+    ListenableFuture<Bitmap> future2 =
+        bitmapCache.get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> pendingLoad);
+    future1.cancel(/* mayInterruptIfRunning= */ false);
+    pendingLoad.set(bitmap);
+
+    assertThat(future1.isCancelled()).isTrue();
+    assertThat(future2.get()).isSameInstanceAs(bitmap);
+  }
+
+  @Test
+  public void get_failedLoad_isNotCached() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    Bitmap bitmap = createBitmap();
+
+    ListenableFuture<Bitmap> future1 =
+        bitmapCache.get(
+            URI_1,
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> Futures.immediateFailedFuture(new IOException()));
+    Bitmap bitmap2 =
+        bitmapCache
+            .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> Futures.immediateFuture(bitmap))
+            .get();
+
+    ExecutionException exception = assertThrows(ExecutionException.class, future1::get);
+    assertThat(exception).hasCauseThat().isInstanceOf(IOException.class);
+    assertThat(bitmap2).isSameInstanceAs(bitmap);
+    assertThat(bitmapCache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_loaderThrows_failsRequestAndAllowsRetry() throws Exception {
+    BitmapCache bitmapCache = new BitmapCache();
+    Bitmap bitmap = createBitmap();
+
+    ListenableFuture<Bitmap> future1 =
+        bitmapCache.get(
+            URI_1,
+            /* options= */ null,
+            C.LENGTH_UNSET,
+            () -> {
+              throw new IllegalStateException();
+            });
+    Bitmap bitmap2 =
+        bitmapCache
+            .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> Futures.immediateFuture(bitmap))
+            .get();
+
+    ExecutionException exception = assertThrows(ExecutionException.class, future1::get);
+    assertThat(exception).hasCauseThat().isInstanceOf(IllegalStateException.class);
+    assertThat(bitmap2).isSameInstanceAs(bitmap);
+    assertThat(bitmapCache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_exceedingMaxSize_evictsLeastRecentlyUsedBitmap() throws Exception {
+    Bitmap bitmap1 = createBitmap();
+    Bitmap bitmap2 = createBitmap();
+    Bitmap bitmap3 = createBitmap();
+    BitmapCache bitmapCache =
+        new BitmapCache(/* maxSizeBytes= */ 2 * getEntrySizeBytes(URI_1, bitmap1));
+    AtomicInteger loadCount = new AtomicInteger();
+
+    bitmapCache
+        .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap1))
+        .get();
+    bitmapCache
+        .get(URI_2, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap2))
+        .get();
+    // Access the first bitmap, so that the second is the least recently used.
+    bitmapCache
+        .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap1))
+        .get();
+    bitmapCache
+        .get(URI_3, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap3))
+        .get();
+    bitmapCache
+        .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap1))
+        .get();
+    bitmapCache
+        .get(URI_2, /* options= */ null, C.LENGTH_UNSET, () -> countingLoad(loadCount, bitmap2))
+        .get();
+
+    assertThat(loadCount.get()).isEqualTo(4);
+    assertThat(bitmapCache.getBitmapCount()).isEqualTo(2);
+    assertThat(bitmapCache.getSizeBytes()).isEqualTo(bitmapCache.getMaxSizeBytes());
+  }
+
+  @Test
+  public void get_bitmapLargerThanMaxSize_isNotCached() throws Exception {
+    Bitmap bitmap = createBitmap();
+    BitmapCache bitmapCache =
+        new BitmapCache(/* maxSizeBytes= */ bitmap.getAllocationByteCount() - 1);
+
+    bitmapCache
+        .get(URI_1, /* options= */ null, C.LENGTH_UNSET, () -> Futures.immediateFuture(bitmap))
+        .get();
+
+    assertThat(bitmapCache.getBitmapCount()).isEqualTo(0);
+    assertThat(bitmapCache.getSizeBytes()).isEqualTo(0);
+  }
+
+  private static ListenableFuture<Bitmap> countingLoad(AtomicInteger loadCount, Bitmap bitmap) {
+    loadCount.incrementAndGet();
+    return Futures.immediateFuture(bitmap);
+  }
+
+  private static long getEntrySizeBytes(Uri uri, Bitmap bitmap) {
+    return bitmap.getAllocationByteCount() + 2L * uri.toString().length();
+  }
+
+  private static Bitmap createBitmap() {
+    return Bitmap.createBitmap(/* width= */ 10, /* height= */ 10, Bitmap.Config.ARGB_8888);
+  }
+}
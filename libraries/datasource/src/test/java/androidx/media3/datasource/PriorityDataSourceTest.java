@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.PriorityTaskManager;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PriorityDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class PriorityDataSourceTest {
+
+  private static final int HIGH_PRIORITY = C.PRIORITY_PLAYBACK;
+  private static final int LOW_PRIORITY = C.PRIORITY_DOWNLOAD;
+
+  private FakeClock clock;
+  private PriorityTaskManager priorityTaskManager;
+  private FakeDataSet fakeDataSet;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    priorityTaskManager = new PriorityTaskManager(clock);
+    fakeDataSet = new FakeDataSet().setRandomData("test_data", 10_000);
+  }
+
+  @Test
+  public void read_withHigherPriorityTask_throws() throws Exception {
+    priorityTaskManager.add(LOW_PRIORITY);
+    PriorityDataSource dataSource = createDataSource(LOW_PRIORITY);
+    dataSource.open(new DataSpec(Uri.parse("test_data")));
+    priorityTaskManager.add(HIGH_PRIORITY);
+
+    assertThrows(
+        PriorityTaskManager.PriorityTooLowException.class,
+        () -> dataSource.read(new byte[100], /* offset= */ 0, /* length= */ 100));
+  }
+
+  @Test
+  public void read_withHigherPriorityTaskAndByteRate_readsAtLimitedRate() throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    priorityTaskManager.add(LOW_PRIORITY);
+    PriorityDataSource dataSource = createDataSource(LOW_PRIORITY);
+    dataSource.open(new DataSpec(Uri.parse("test_data")));
+    byte[] buffer = new byte[5000];
+
+    clock.advanceTime(1000);
+    // Bursts are limited to 100ms worth of data.
+    int bytesRead1 = dataSource.read(buffer, /* offset= */ 0, buffer.length);
+    clock.advanceTime(50);
+    int bytesRead2 = dataSource.read(buffer, /* offset= */ 0, buffer.length);
+
+    assertThat(bytesRead1).isEqualTo(1000);
+    assertThat(bytesRead2).isEqualTo(500);
+    dataSource.close();
+  }
+
+  @Test
+  public void read_withHighestPriorityAndByteRate_isNotLimited() throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    priorityTaskManager.add(LOW_PRIORITY);
+    PriorityDataSource dataSource = createDataSource(HIGH_PRIORITY);
+    dataSource.open(new DataSpec(Uri.parse("test_data")));
+
+    int bytesRead = dataSource.read(new byte[5000], /* offset= */ 0, /* length= */ 5000);
+
+    assertThat(bytesRead).isEqualTo(5000);
+    dataSource.close();
+  }
+
+  @Test
+  public void read_withByteRateAndNoAvailableBytes_blocksAndRecordsWaitTime() throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    priorityTaskManager.add(LOW_PRIORITY);
+    PriorityDataSource dataSource = createDataSource(LOW_PRIORITY);
+    dataSource.open(new DataSpec(Uri.parse("test_data")));
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    Future<Integer> bytesRead =
+        executorService.submit(
+            () -> dataSource.read(new byte[5000], /* offset= */ 0, /* length= */ 5000));
+    Thread.sleep(50);
+    assertThat(bytesRead.isDone()).isFalse();
+    clock.advanceTime(200);
+
+    assertThat(bytesRead.get(10, TimeUnit.SECONDS)).isEqualTo(1000);
+    assertThat(priorityTaskManager.getTotalWaitTimeMs(LOW_PRIORITY)).isEqualTo(200);
+    assertThat(priorityTaskManager.getTotalWaitTimeMs(HIGH_PRIORITY)).isEqualTo(0);
+    executorService.shutdown();
+    dataSource.close();
+  }
+
+  @Test
+  public void read_withByteRateAndShortRead_returnsUnreadBytes() throws Exception {
+    priorityTaskManager.setLowerPriorityBytesPerSecond(10_000);
+    priorityTaskManager.add(HIGH_PRIORITY);
+    priorityTaskManager.add(LOW_PRIORITY);
+    PriorityDataSource dataSource = createDataSource(LOW_PRIORITY);
+    dataSource.open(new DataSpec(Uri.parse("test_data"), /* position= */ 9_900, C.LENGTH_UNSET));
+    byte[] buffer = new byte[5000];
+
+    clock.advanceTime(1000);
+    // Only 100 of the 1000 granted bytes remain to be read.
+    int bytesRead = dataSource.read(buffer, /* offset= */ 0, buffer.length);
+    dataSource.close();
+
+    assertThat(bytesRead).isEqualTo(100);
+    assertThat(priorityTaskManager.proceedWithByteBudgetNonBlocking(LOW_PRIORITY, 5000))
+        .isEqualTo(900);
+  }
+
+  private PriorityDataSource createDataSource(int priority) {
+    return new PriorityDataSource(new FakeDataSource(fakeDataSet), priorityTaskManager, priority);
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ReadaheadDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class ReadaheadDataSourceTest {
+
+  private static final Uri URI = Uri.parse("test://data.test");
+  private static final int DATA_LENGTH = 100_000;
+  private static final int BUFFER_SIZE = 10_000;
+
+  private byte[] data;
+  private FakeDataSet fakeDataSet;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    fakeDataSet = new FakeDataSet().newData(URI).appendReadData(data).endData();
+    executorService = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+  }
+
+  @Test
+  public void smallReads_areServedFromLargeUpstreamReads() throws Exception {
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(
+            new FakeDataSource(fakeDataSet), BUFFER_SIZE, /* readaheadExecutor= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 8);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(dataSource.getReadCount()).isEqualTo(DATA_LENGTH / 8 + 1);
+    // One read for each buffer, and one for the end of input.
+    assertThat(dataSource.getUpstreamReadCount()).isEqualTo(DATA_LENGTH / BUFFER_SIZE + 1);
+    assertThat(dataSource.getUpstreamBytesRead()).isEqualTo(DATA_LENGTH);
+  }
+
+  @Test
+  public void readsLargerThanBuffer_arePassedThrough() throws Exception {
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(
+            new FakeDataSource(fakeDataSet), BUFFER_SIZE, /* readaheadExecutor= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 2 * BUFFER_SIZE);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(dataSource.getUpstreamReadCount()).isEqualTo(dataSource.getReadCount());
+  }
+
+  @Test
+  public void smallReads_withReadaheadExecutor_returnAllData() throws Exception {
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(new FakeDataSource(fakeDataSet), BUFFER_SIZE, executorService);
+
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 8);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(dataSource.getUpstreamReadCount()).isEqualTo(DATA_LENGTH / BUFFER_SIZE + 1);
+  }
+
+  @Test
+  public void reopen_withReadaheadExecutor_readsFromNewPosition() throws Exception {
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(new FakeDataSource(fakeDataSet), BUFFER_SIZE, executorService);
+    dataSource.open(new DataSpec(URI));
+    dataSource.read(new byte[8], /* offset= */ 0, /* length= */ 8);
+    dataSource.close();
+
+    dataSource.open(new DataSpec.Builder().setUri(URI).setPosition(50_000).build());
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 100);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 50_000, DATA_LENGTH));
+  }
+
+  @Test
+  public void upstreamError_withReadaheadExecutor_isThrownFromRead() throws Exception {
+    fakeDataSet =
+        new FakeDataSet()
+            .newData(URI)
+            .appendReadData(TestUtil.buildTestData(BUFFER_SIZE))
+            .appendReadError(new IOException("test"))
+            .endData();
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(new FakeDataSource(fakeDataSet), BUFFER_SIZE, executorService);
+    dataSource.open(new DataSpec(URI));
+    byte[] buffer = new byte[BUFFER_SIZE];
+
+    assertThat(dataSource.read(buffer, /* offset= */ 0, BUFFER_SIZE)).isEqualTo(BUFFER_SIZE);
+    IOException exception =
+        assertThrows(
+            IOException.class, () -> dataSource.read(buffer, /* offset= */ 0, BUFFER_SIZE));
+    dataSource.close();
+
+    assertThat(exception).hasMessageThat().isEqualTo("test");
+  }
+
+  @Test
+  public void close_withReadaheadBlockedInUpstreamRead_closesUpstreamOnceReadReturns()
+      throws Exception {
+    ConditionVariable upstreamReadStarted = new ConditionVariable();
+    ConditionVariable allowUpstreamRead = new ConditionVariable();
+    fakeDataSet =
+        new FakeDataSet()
+            .newData(URI)
+            .appendReadAction(
+                () -> {
+                  upstreamReadStarted.open();
+                  allowUpstreamRead.blockUninterruptible();
+                })
+            .appendReadData(data)
+            .endData();
+    FakeDataSource upstream = new FakeDataSource(fakeDataSet);
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(upstream, BUFFER_SIZE, executorService);
+    dataSource.open(new DataSpec(URI));
+    upstreamReadStarted.block();
+
+    dataSource.close();
+    boolean upstreamOpenedAfterClose = upstream.isOpened();
+    allowUpstreamRead.open();
+    // Reopening waits for the readahead task to close upstream.
+    dataSource.open(new DataSpec.Builder().setUri(URI).setPosition(50_000).build());
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 8);
+    dataSource.close();
+
+    assertThat(upstreamOpenedAfterClose).isTrue();
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 50_000, DATA_LENGTH));
+  }
+
+  @Test
+  public void rejectedReadaheadExecutor_readsOnCallingThread() throws Exception {
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource(
+            new FakeDataSource(fakeDataSet),
+            BUFFER_SIZE,
+            runnable -> {
+              throw new RejectedExecutionException();
+            });
+
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = readInChunks(dataSource, /* chunkSize= */ 8);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+  }
+
+  @Test
+  public void close_reportsReadsSinceOpenToEventListener() throws Exception {
+    List<long[]> reportedReads = new ArrayList<>();
+    ReadaheadDataSource dataSource =
+        new ReadaheadDataSource.Factory(() -> new FakeDataSource(fakeDataSet))
+            .setBufferSize(BUFFER_SIZE)
+            .setEventListener(
+                (readCount, upstreamReadCount, upstreamBytesRead) ->
+                    reportedReads.add(
+                        new long[] {readCount, upstreamReadCount, upstreamBytesRead}))
+            .createDataSource();
+    byte[] buffer = new byte[100];
+
+    dataSource.open(new DataSpec(URI));
+    dataSource.read(buffer, /* offset= */ 0, /* length= */ 100);
+    dataSource.read(buffer, /* offset= */ 0, /* length= */ 100);
+    dataSource.close();
+    dataSource.open(new DataSpec(URI));
+    dataSource.read(buffer, /* offset= */ 0, /* length= */ 100);
+    dataSource.close();
+
+    assertThat(reportedReads).hasSize(2);
+    assertThat(reportedReads.get(0)).asList().containsExactly(2L, 1L, (long) BUFFER_SIZE).inOrder();
+    assertThat(reportedReads.get(1)).asList().containsExactly(1L, 1L, (long) BUFFER_SIZE).inOrder();
+  }
+
+  private static byte[] readInChunks(DataSource dataSource, int chunkSize) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[chunkSize];
+    while (true) {
+      int bytesRead = dataSource.read(buffer, /* offset= */ 0, chunkSize);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return outputStream.toByteArray();
+      }
+      outputStream.write(buffer, /* off= */ 0, bytesRead);
+    }
+  }
+}
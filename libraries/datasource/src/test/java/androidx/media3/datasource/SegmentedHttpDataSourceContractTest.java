@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import android.net.Uri;
+import androidx.media3.test.utils.DataSourceContractTest;
+import androidx.media3.test.utils.HttpDataSourceTestEnv;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.runner.RunWith;
+
+/** {@link DataSource} contract tests for {@link SegmentedHttpDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedHttpDataSourceContractTest extends DataSourceContractTest {
+
+  @Rule public HttpDataSourceTestEnv httpDataSourceTestEnv = new HttpDataSourceTestEnv();
+
+  @Override
+  protected DataSource createDataSource() {
+    // Use short segments so that the 20 byte test resources are split.
+    return new SegmentedHttpDataSource.Factory(new DefaultHttpDataSource.Factory())
+        .setConnectionCount(3)
+        .setSegmentLength(4)
+        .createDataSource();
+  }
+
+  @Override
+  protected ImmutableList<TestResource> getTestResources() {
+    return httpDataSourceTestEnv.getServedResources();
+  }
+
+  @Override
+  protected Uri getNotFoundUri() {
+    return Uri.parse(httpDataSourceTestEnv.getNonexistentUrl());
+  }
+}
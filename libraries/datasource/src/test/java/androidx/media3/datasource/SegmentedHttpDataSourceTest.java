@@ -0,0 +1,240 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.test.utils.TestUtil;
+import androidx.media3.test.utils.WebServerDispatcher;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentedHttpDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentedHttpDataSourceTest {
+
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 100);
+  private static final WebServerDispatcher.Resource RANGE_SUPPORTED =
+      new WebServerDispatcher.Resource.Builder()
+          .setPath("/supports/range-requests")
+          .setData(DATA)
+          .supportsRangeRequests(true)
+          .build();
+  private static final WebServerDispatcher.Resource RANGE_NOT_SUPPORTED =
+      new WebServerDispatcher.Resource.Builder()
+          .setPath("/doesnt/support/range-requests")
+          .setData(DATA)
+          .supportsRangeRequests(false)
+          .build();
+
+  private MockWebServer mockWebServer;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() throws Exception {
+    mockWebServer = new MockWebServer();
+    mockWebServer.setDispatcher(
+        WebServerDispatcher.forResources(ImmutableList.of(RANGE_SUPPORTED, RANGE_NOT_SUPPORTED)));
+    mockWebServer.start();
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executorService.shutdown();
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void read_withRangeSupport_readsSegmentsWithRangeRequests() throws Exception {
+    DataSource dataSource = createDataSource(/* connectionCount= */ 3, /* segmentLength= */ 16);
+
+    byte[] data = readToEnd(dataSource, new DataSpec(getUri(RANGE_SUPPORTED)));
+
+    assertThat(data).isEqualTo(DATA);
+    int requestCount = mockWebServer.getRequestCount();
+    assertThat(requestCount).isEqualTo(7);
+    Set<String> rangeHeaders = new HashSet<>();
+    for (int i = 0; i < requestCount; i++) {
+      rangeHeaders.add(mockWebServer.takeRequest().getHeader("Range"));
+    }
+    assertThat(rangeHeaders)
+        .containsExactly(
+            "bytes=0-15",
+            "bytes=16-31",
+            "bytes=32-47",
+            "bytes=48-63",
+            "bytes=64-79",
+            "bytes=80-95",
+            "bytes=96-99");
+  }
+
+  @Test
+  public void read_withSubrange_readsSubrange() throws Exception {
+    DataSource dataSource = createDataSource(/* connectionCount= */ 2, /* segmentLength= */ 16);
+
+    byte[] data =
+        readToEnd(
+            dataSource,
+            new DataSpec(getUri(RANGE_SUPPORTED), /* position= */ 10, /* length= */ 50));
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(DATA, 10, 60));
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void read_withoutRangeSupport_readsSingleRequest() throws Exception {
+    DataSource dataSource = createDataSource(/* connectionCount= */ 3, /* segmentLength= */ 16);
+
+    byte[] data = readToEnd(dataSource, new DataSpec(getUri(RANGE_NOT_SUPPORTED)));
+
+    assertThat(data).isEqualTo(DATA);
+    // The first request is made for the first segment, and is repeated for the whole resource.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void read_withSmallReorderBuffer_readsAllData() throws Exception {
+    // The loader can run at most four segments ahead of the segment being read.
+    DataSource dataSource = createDataSource(/* connectionCount= */ 2, /* segmentLength= */ 4);
+
+    byte[] data = readToEnd(dataSource, new DataSpec(getUri(RANGE_SUPPORTED)));
+
+    assertThat(data).isEqualTo(DATA);
+  }
+
+  @Test
+  public void read_notifiesTransferListenerOfEachRequest() throws Exception {
+    DataSource dataSource = createDataSource(/* connectionCount= */ 4, /* segmentLength= */ 8);
+    CountingTransferListener transferListener = new CountingTransferListener();
+    dataSource.addTransferListener(transferListener);
+
+    readToEnd(dataSource, new DataSpec(getUri(RANGE_SUPPORTED)));
+
+    assertThat(transferListener.transferCount.get()).isEqualTo(mockWebServer.getRequestCount());
+    assertThat(transferListener.bytesTransferred.get()).isEqualTo(DATA.length);
+  }
+
+  @Test
+  public void close_beforeEnd_allowsReopening() throws Exception {
+    DataSource dataSource = createDataSource(/* connectionCount= */ 4, /* segmentLength= */ 8);
+    dataSource.open(new DataSpec(getUri(RANGE_SUPPORTED)));
+    dataSource.read(new byte[20], /* offset= */ 0, /* length= */ 20);
+    dataSource.close();
+
+    byte[] data = readToEnd(dataSource, new DataSpec(getUri(RANGE_SUPPORTED)));
+
+    assertThat(data).isEqualTo(DATA);
+  }
+
+  @Test
+  public void read_withUnexpectedLoaderFailure_throwsInsteadOfBlocking() throws Exception {
+    DataSource dataSource =
+        new SegmentedHttpDataSource.Factory(new FailingAfterFirstDataSourceFactory())
+            .setConnectionCount(2)
+            .setSegmentLength(16)
+            .setExecutor(executorService)
+            .createDataSource();
+
+    IOException exception =
+        assertThrows(
+            IOException.class, () -> readToEnd(dataSource, new DataSpec(getUri(RANGE_SUPPORTED))));
+
+    assertThat(exception).hasCauseThat().isInstanceOf(IllegalStateException.class);
+  }
+
+  private DataSource createDataSource(int connectionCount, int segmentLength) {
+    return new SegmentedHttpDataSource.Factory(new DefaultHttpDataSource.Factory())
+        .setConnectionCount(connectionCount)
+        .setSegmentLength(segmentLength)
+        .setExecutor(executorService)
+        .createDataSource();
+  }
+
+  private Uri getUri(WebServerDispatcher.Resource resource) {
+    return Uri.parse(mockWebServer.url(resource.getPath()).toString());
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, DataSpec dataSpec) throws Exception {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  /** Creates a working data source for the first request, and then fails unexpectedly. */
+  private static final class FailingAfterFirstDataSourceFactory implements HttpDataSource.Factory {
+
+    private final HttpDataSource.Factory upstreamFactory = new DefaultHttpDataSource.Factory();
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    @Override
+    public HttpDataSource createDataSource() {
+      if (createdCount.getAndIncrement() == 0) {
+        return upstreamFactory.createDataSource();
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    public HttpDataSource.Factory setDefaultRequestProperties(
+        Map<String, String> defaultRequestProperties) {
+      return this;
+    }
+  }
+
+  /** Counts transfers, which are reported on the threads that load segments. */
+  private static final class CountingTransferListener implements TransferListener {
+
+    private final AtomicInteger transferCount = new AtomicInteger();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      transferCount.incrementAndGet();
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      this.bytesTransferred.addAndGet(bytesTransferred);
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+  }
+}
@@ -42,7 +42,7 @@ public class UdpDataSourceContractTest extends DataSourceContractTest {
 
   @Before
   public void setUp() {
-    udpDataSource = new UdpDataSource();
+    udpDataSource = createUdpDataSource();
     data = TestUtil.buildTestData(/* length= */ 256);
     PacketTrasmitterTransferListener transferListener = new PacketTrasmitterTransferListener(data);
     udpDataSource.addTransferListener(transferListener);
@@ -53,6 +53,11 @@ public class UdpDataSourceContractTest extends DataSourceContractTest {
     return udpDataSource;
   }
 
+  /** Creates the {@link UdpDataSource} under test. */
+  protected UdpDataSource createUdpDataSource() {
+    return new UdpDataSource();
+  }
+
   @Override
   protected boolean unboundedReadsAreIndefinite() {
     return true;
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.runner.RunWith;
+
+/**
+ * {@link DataSource} contract tests for {@link UdpDataSource} receiving packets into a packet ring.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UdpDataSourcePacketRingContractTest extends UdpDataSourceContractTest {
+
+  @Override
+  protected UdpDataSource createUdpDataSource() {
+    return new UdpDataSource(
+        UdpDataSource.DEFAULT_MAX_PACKET_SIZE,
+        UdpDataSource.DEFAULT_SOCKET_TIMEOUT_MILLIS,
+        /* packetRingSize= */ 16);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link UdpDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class UdpDataSourceTest {
+
+  private static final int PACKET_LENGTH = 100;
+
+  private DatagramSocket senderSocket;
+
+  @Before
+  public void setUp() throws Exception {
+    senderSocket = new DatagramSocket();
+  }
+
+  @After
+  public void tearDown() {
+    senderSocket.close();
+  }
+
+  @Test
+  public void read_withPacketRing_readsAllPackets() throws Exception {
+    UdpDataSource dataSource =
+        new UdpDataSource(
+            UdpDataSource.DEFAULT_MAX_PACKET_SIZE,
+            UdpDataSource.DEFAULT_SOCKET_TIMEOUT_MILLIS,
+            /* packetRingSize= */ 16);
+    byte[] data = TestUtil.buildTestData(/* length= */ 8 * PACKET_LENGTH);
+    dataSource.open(new DataSpec(Uri.parse("udp://localhost:0")));
+    sendPackets(data, dataSource.getLocalPort());
+
+    byte[] buffer = new byte[data.length];
+    int bytesRead = 0;
+    while (bytesRead < buffer.length) {
+      bytesRead += dataSource.read(buffer, bytesRead, buffer.length - bytesRead);
+    }
+    dataSource.close();
+
+    assertThat(buffer).isEqualTo(data);
+    assertThat(dataSource.getDroppedPacketCount()).isEqualTo(0);
+    assertThat(dataSource.getOverrunCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_withFullPacketRing_dropsNewPackets() throws Exception {
+    UdpDataSource dataSource =
+        new UdpDataSource(
+            UdpDataSource.DEFAULT_MAX_PACKET_SIZE,
+            UdpDataSource.DEFAULT_SOCKET_TIMEOUT_MILLIS,
+            /* packetRingSize= */ 2);
+    byte[] data = TestUtil.buildTestData(/* length= */ 8 * PACKET_LENGTH);
+    dataSource.open(new DataSpec(Uri.parse("udp://localhost:0")));
+    sendPackets(data, dataSource.getLocalPort());
+    waitForDroppedPacketCount(dataSource, /* droppedPacketCount= */ 6);
+
+    byte[] buffer = new byte[data.length];
+    int bytesRead = dataSource.read(buffer, /* offset= */ 0, buffer.length);
+    long droppedPacketCount = dataSource.getDroppedPacketCount();
+    long overrunCount = dataSource.getOverrunCount();
+    dataSource.close();
+
+    assertThat(bytesRead).isEqualTo(2 * PACKET_LENGTH);
+    assertThat(Arrays.copyOf(buffer, bytesRead))
+        .isEqualTo(Arrays.copyOf(data, /* newLength= */ 2 * PACKET_LENGTH));
+    assertThat(droppedPacketCount).isEqualTo(6);
+    assertThat(overrunCount).isEqualTo(1);
+  }
+
+  private void sendPackets(byte[] data, int port) throws Exception {
+    for (int offset = 0; offset < data.length; offset += PACKET_LENGTH) {
+      senderSocket.send(
+          new DatagramPacket(
+              data, offset, PACKET_LENGTH, InetAddress.getByName("localhost"), port));
+    }
+  }
+
+  private static void waitForDroppedPacketCount(UdpDataSource dataSource, int droppedPacketCount)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && dataSource.getDroppedPacketCount() < droppedPacketCount; i++) {
+      Thread.sleep(10);
+    }
+  }
+}
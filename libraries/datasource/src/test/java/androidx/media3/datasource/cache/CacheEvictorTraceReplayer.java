@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays traces of cache span accesses against a {@link CacheEvictor}, simulating the cache that
+ * it manages, and reports the resulting hit ratio.
+ */
+/* package */ final class CacheEvictorTraceReplayer {
+
+  /** A trace of cache span accesses. */
+  public static final class Trace {
+
+    private final List<CacheSpan> accesses;
+
+    public Trace() {
+      accesses = new ArrayList<>();
+    }
+
+    /** Adds an access to the span of the given key, position and length. */
+    public Trace add(String key, long position, long length) {
+      accesses.add(new CacheSpan(key, position, length));
+      return this;
+    }
+
+    /** Adds accesses to {@code count} spans of {@code key} with consecutive positions. */
+    public Trace addSequential(String key, int count, long spanLength) {
+      for (int i = 0; i < count; i++) {
+        add(key, i * spanLength, spanLength);
+      }
+      return this;
+    }
+  }
+
+  private final CacheEvictor evictor;
+  private final Cache cache;
+  private final Map<String, CacheSpan> cachedSpans;
+
+  private long timestamp;
+  private int hitCount;
+  private int missCount;
+
+  public CacheEvictorTraceReplayer(CacheEvictor evictor) {
+    this.evictor = evictor;
+    cachedSpans = new HashMap<>();
+    cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              if (cachedSpans.remove(getSpanId(span)) != null) {
+                evictor.onSpanRemoved(cache, span);
+              }
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    evictor.onCacheInitialized();
+  }
+
+  /** Replays a trace, returning the hit ratio of its accesses. */
+  public double replay(Trace trace) {
+    int initialHitCount = hitCount;
+    int initialMissCount = missCount;
+    for (CacheSpan access : trace.accesses) {
+      String spanId = getSpanId(access);
+      @Nullable CacheSpan cachedSpan = cachedSpans.get(spanId);
+      CacheSpan newSpan =
+          new CacheSpan(
+              access.key, access.position, access.length, ++timestamp, /* file= */ null);
+      if (cachedSpan != null) {
+        hitCount++;
+        cachedSpans.put(spanId, newSpan);
+        evictor.onSpanTouched(cache, cachedSpan, newSpan);
+      } else {
+        missCount++;
+        evictor.onStartFile(cache, access.key, access.position, access.length);
+        cachedSpans.put(spanId, newSpan);
+        evictor.onSpanAdded(cache, newSpan);
+      }
+    }
+    int accessCount = hitCount - initialHitCount + missCount - initialMissCount;
+    return accessCount == 0 ? 0 : (double) (hitCount - initialHitCount) / accessCount;
+  }
+
+  /** Returns whether the simulated cache holds the span of the given key and position. */
+  public boolean isCached(String key, long position) {
+    return cachedSpans.containsKey(key + ":" + position);
+  }
+
+  /** Returns the total length of the spans in the simulated cache. */
+  public long getCacheSpace() {
+    long cacheSpace = 0;
+    for (CacheSpan span : cachedSpans.values()) {
+      cacheSpace += span.length;
+    }
+    return cacheSpace;
+  }
+
+  private static String getSpanId(CacheSpan span) {
+    return span.key + ":" + span.position;
+  }
+}
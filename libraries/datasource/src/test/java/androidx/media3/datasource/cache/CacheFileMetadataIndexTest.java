@@ -16,8 +16,10 @@
 package androidx.media3.datasource.cache;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import androidx.media3.database.DatabaseIOException;
+import androidx.media3.database.DatabaseProvider;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.HashSet;
@@ -29,6 +31,8 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public class CacheFileMetadataIndexTest {
 
+  private static final int BATCH_MAX_PENDING_UPDATES = 3;
+
   @Test
   public void initiallyEmpty() throws DatabaseIOException {
     CacheFileMetadataIndex index = newInitializedIndex();
@@ -126,10 +130,137 @@ public class CacheFileMetadataIndexTest {
     assertThat(metadata.lastTouchTimestamp).isEqualTo(123);
   }
 
+  @Test
+  public void batched_writesUpdatesOnceMaxPendingUpdatesReached() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CacheFileMetadataIndex index =
+        newInitializedBatchedIndex(databaseProvider, /* flushIntervalMs= */ 60_000);
+    CacheFileMetadataIndex reader = newInitializedIndex(databaseProvider);
+
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    Map<String, CacheFileMetadata> allBeforeFlush = reader.getAll();
+    index.set("name3", /* length= */ 456, /* lastTouchTimestamp= */ 789);
+
+    assertThat(allBeforeFlush).isEmpty();
+    awaitFileCount(reader, /* fileCount= */ 3);
+    assertThat(reader.getAll().keySet()).containsExactly("name1", "name2", "name3");
+    index.release();
+  }
+
+  @Test
+  public void batched_writesUpdatesOnceFlushIntervalElapsed_withoutFurtherUpdates()
+      throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CacheFileMetadataIndex index =
+        newInitializedBatchedIndex(databaseProvider, /* flushIntervalMs= */ 1000);
+    CacheFileMetadataIndex reader = newInitializedIndex(databaseProvider);
+
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    Map<String, CacheFileMetadata> allBeforeFlush = reader.getAll();
+
+    assertThat(allBeforeFlush).isEmpty();
+    awaitFileCount(reader, /* fileCount= */ 1);
+    assertThat(reader.getAll().keySet()).containsExactly("name1");
+    index.release();
+  }
+
+  @Test
+  public void batched_getAll_includesPendingUpdates() throws DatabaseIOException {
+    CacheFileMetadataIndex index =
+        newInitializedBatchedIndex(
+            TestUtil.getInMemoryDatabaseProvider(), /* flushIntervalMs= */ 60_000);
+
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name1", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.remove("name2");
+
+    Map<String, CacheFileMetadata> all = index.getAll();
+    assertThat(all.keySet()).containsExactly("name1");
+    CacheFileMetadata metadata = all.get("name1");
+    assertThat(metadata.length).isEqualTo(789);
+    assertThat(metadata.lastTouchTimestamp).isEqualTo(123);
+    index.release();
+  }
+
+  @Test
+  public void batched_release_writesPendingUpdates() throws DatabaseIOException {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CacheFileMetadataIndex index =
+        newInitializedBatchedIndex(databaseProvider, /* flushIntervalMs= */ 60_000);
+
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.release();
+
+    assertThat(newInitializedIndex(databaseProvider).getAll().keySet()).containsExactly("name1");
+  }
+
+  @Test
+  public void batched_failedBackgroundWrite_doesNotFailUpdatesAndIsReportedByFlush()
+      throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CacheFileMetadataIndex index =
+        newInitializedBatchedIndex(databaseProvider, /* flushIntervalMs= */ 60_000);
+    databaseProvider
+        .getWritableDatabase()
+        .execSQL(
+            "DROP TABLE "
+                + DatabaseProvider.TABLE_PREFIX
+                + "CacheFileMetadata"
+                + Long.toHexString(/* uid= */ 1234));
+
+    for (int i = 0; i < 2 * BATCH_MAX_PENDING_UPDATES; i++) {
+      index.set("name" + i, /* length= */ i + 1, /* lastTouchTimestamp= */ i);
+    }
+
+    assertThrows(DatabaseIOException.class, index::flush);
+    // Releasing stops the background thread, even though the pending updates can't be written.
+    assertThrows(DatabaseIOException.class, index::release);
+  }
+
+  @Test
+  public void batched_set10000Files_writesAllMetadata() throws DatabaseIOException {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CacheFileMetadataIndex index =
+        new CacheFileMetadataIndex(
+            databaseProvider, /* maxPendingUpdates= */ 100, /* flushIntervalMs= */ 1000);
+    index.initialize(/* uid= */ 1234);
+
+    for (int i = 0; i < 10_000; i++) {
+      index.set("name" + i, /* length= */ i + 1, /* lastTouchTimestamp= */ i);
+    }
+    index.release();
+
+    Map<String, CacheFileMetadata> all = newInitializedIndex(databaseProvider).getAll();
+    assertThat(all).hasSize(10_000);
+    assertThat(all.get("name9999").length).isEqualTo(10_000);
+  }
+
   private static CacheFileMetadataIndex newInitializedIndex() throws DatabaseIOException {
+    return newInitializedIndex(TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  private static CacheFileMetadataIndex newInitializedIndex(DatabaseProvider databaseProvider)
+      throws DatabaseIOException {
+    CacheFileMetadataIndex index = new CacheFileMetadataIndex(databaseProvider);
+    index.initialize(/* uid= */ 1234);
+    return index;
+  }
+
+  private static CacheFileMetadataIndex newInitializedBatchedIndex(
+      DatabaseProvider databaseProvider, long flushIntervalMs) throws DatabaseIOException {
     CacheFileMetadataIndex index =
-        new CacheFileMetadataIndex(TestUtil.getInMemoryDatabaseProvider());
+        new CacheFileMetadataIndex(databaseProvider, BATCH_MAX_PENDING_UPDATES, flushIntervalMs);
     index.initialize(/* uid= */ 1234);
     return index;
   }
+
+  private static void awaitFileCount(CacheFileMetadataIndex reader, int fileCount)
+      throws Exception {
+    long deadlineMs = System.currentTimeMillis() + 10_000;
+    while (reader.getAll().size() < fileCount && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+  }
 }
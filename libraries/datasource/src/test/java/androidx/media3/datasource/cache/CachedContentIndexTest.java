@@ -18,11 +18,13 @@ package androidx.media3.datasource.cache;
 import static androidx.media3.test.utils.TestUtil.createTestFile;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
+import static java.lang.Math.max;
 
 import android.net.Uri;
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.Util;
+import androidx.media3.database.DatabaseProvider;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -30,6 +32,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.Set;
 import org.junit.After;
@@ -281,6 +284,119 @@ public class CachedContentIndexTest {
     assertStoredAndLoadedEqual(newLegacyInstance(), newLegacyInstance());
   }
 
+  @Test
+  public void journalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void journalStoreAndLoad_afterRemoval_doesNotLoadRemovedContent() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    int id1 = index.assignIdForKey("key1");
+    index.assignIdForKey("key2");
+    index.store();
+    index.maybeRemove("key2");
+    index.store();
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1");
+    assertThat(index2.getKeyForId(id1)).isEqualTo("key1");
+  }
+
+  @Test
+  public void journalLoad_withPartiallyWrittenRecord_discardsRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("key1");
+    index.store();
+    index.assignIdForKey("key2");
+    index.store();
+    // Simulate the process dying whilst the last record was being written.
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+      randomAccessFile.setLength(journalFile.length() - 3);
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    index2.assignIdForKey("key3");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1", "key3");
+    assertThat(index3.getKeys()).containsExactly("key1", "key3");
+  }
+
+  @Test
+  public void journalInitialize_withDatabaseIndex_migratesIndex() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CachedContentIndex databaseIndex = new CachedContentIndex(databaseProvider);
+    databaseIndex.initialize(/* uid= */ 0);
+    databaseIndex.assignIdForKey("key1");
+    databaseIndex.store();
+
+    CachedContentIndex index = new CachedContentIndex(cacheDir, databaseProvider);
+    index.initialize(/* uid= */ 0);
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir, databaseProvider);
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index.getKeys()).containsExactly("key1");
+    assertThat(index2.getKeys()).containsExactly("key1");
+  }
+
+  @Test
+  public void journalStore_withSyncOnStore_persistsIndex() throws Exception {
+    CachedContentIndex index =
+        new CachedContentIndex(cacheDir, /* databaseProvider= */ null, /* syncOnStore= */ true);
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("key1");
+    index.assignIdForKey("key2");
+    index.store();
+    index.maybeRemove("key2");
+    index.store();
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key1");
+  }
+
+  @Test
+  public void journalStore_withManyObsoleteRecords_compactsJournal() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("persistent");
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long uncompactedLength = 0;
+    // Write enough records for compaction to start after the last iteration's first store.
+    for (int i = 0; i < 512; i++) {
+      String key = "key" + i;
+      index.assignIdForKey(key);
+      index.store();
+      uncompactedLength = max(uncompactedLength, journalFile.length());
+      index.maybeRemove(key);
+      index.store();
+      uncompactedLength = max(uncompactedLength, journalFile.length());
+    }
+
+    // Compaction happens on a background thread, and is applied by a subsequent store.
+    long deadlineMs = System.currentTimeMillis() + 10_000;
+    while (journalFile.length() >= uncompactedLength / 100
+        && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+      index.store();
+    }
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(journalFile.length()).isLessThan(uncompactedLength / 100);
+    assertThat(index2.getKeys()).containsExactly("persistent");
+  }
+
   @Test
   public void legacyLoadV1() throws Exception {
     CachedContentIndex index = newLegacyInstance();
@@ -465,6 +581,10 @@ public class CachedContentIndexTest {
     return new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider());
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return new CachedContentIndex(cacheDir, /* databaseProvider= */ null);
+  }
+
   private CachedContentIndex newLegacyInstance() {
     return newLegacyInstance(null);
   }
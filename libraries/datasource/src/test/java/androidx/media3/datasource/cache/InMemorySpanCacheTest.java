@@ -0,0 +1,204 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.FileDataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link InMemorySpanCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class InMemorySpanCacheTest {
+
+  private static final Uri FILE_URI_1 = Uri.parse("file:///span1");
+  private static final Uri FILE_URI_2 = Uri.parse("file:///span2");
+
+  private File tempFolder;
+  private SimpleCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void get_afterPut_returnsDataAndCountsHit() {
+    InMemorySpanCache inMemorySpanCache = new InMemorySpanCache(/* maxBytes= */ 100);
+    byte[] data = TestUtil.buildTestData(10);
+
+    inMemorySpanCache.put("key", /* position= */ 0, FILE_URI_1, data);
+
+    assertThat(inMemorySpanCache.get("key", /* position= */ 0, FILE_URI_1)).isEqualTo(data);
+    assertThat(inMemorySpanCache.get("key", /* position= */ 10, FILE_URI_1)).isNull();
+    assertThat(inMemorySpanCache.getHitCount()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getMissCount()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(10);
+  }
+
+  @Test
+  public void get_withDifferentFileUri_returnsNullAndDropsSpan() {
+    InMemorySpanCache inMemorySpanCache = new InMemorySpanCache(/* maxBytes= */ 100);
+    inMemorySpanCache.put("key", /* position= */ 0, FILE_URI_1, TestUtil.buildTestData(10));
+
+    assertThat(inMemorySpanCache.get("key", /* position= */ 0, FILE_URI_2)).isNull();
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_exceedingMaxBytes_evictsLeastRecentlyUsedSpans() {
+    InMemorySpanCache inMemorySpanCache =
+        new InMemorySpanCache(/* maxBytes= */ 30, /* maxSpanBytes= */ 10);
+    List<Long> evictedPositions = new ArrayList<>();
+    inMemorySpanCache.addListener(
+        new InMemorySpanCache.Listener() {
+          @Override
+          public void onSpanEvicted(
+              InMemorySpanCache cache, String key, long position, int length) {
+            evictedPositions.add(position);
+          }
+        });
+    inMemorySpanCache.put("key", /* position= */ 0, FILE_URI_1, TestUtil.buildTestData(10));
+    inMemorySpanCache.put("key", /* position= */ 10, FILE_URI_1, TestUtil.buildTestData(10));
+    inMemorySpanCache.put("key", /* position= */ 20, FILE_URI_1, TestUtil.buildTestData(10));
+    // Make the first span the most recently used.
+    inMemorySpanCache.get("key", /* position= */ 0, FILE_URI_1);
+
+    inMemorySpanCache.put("key", /* position= */ 30, FILE_URI_1, TestUtil.buildTestData(10));
+
+    assertThat(evictedPositions).containsExactly(10L);
+    assertThat(inMemorySpanCache.getEvictionCount()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(30);
+    assertThat(inMemorySpanCache.get("key", /* position= */ 0, FILE_URI_1)).isNotNull();
+    assertThat(inMemorySpanCache.get("key", /* position= */ 10, FILE_URI_1)).isNull();
+  }
+
+  @Test
+  public void put_spanLongerThanMaxSpanBytes_isNotHeld() {
+    InMemorySpanCache inMemorySpanCache =
+        new InMemorySpanCache(/* maxBytes= */ 100, /* maxSpanBytes= */ 10);
+
+    inMemorySpanCache.put("key", /* position= */ 0, FILE_URI_1, TestUtil.buildTestData(11));
+
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void cacheDataSource_repeatedRead_isServedFromMemory() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    FakeDataSet fakeDataSet = new FakeDataSet().setData("test_data", data);
+    InMemorySpanCache inMemorySpanCache = new InMemorySpanCache(/* maxBytes= */ 1000);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet))
+            .setInMemorySpanCache(inMemorySpanCache);
+    DataSpec dataSpec = new DataSpec(Uri.parse("test_data"));
+    // Populate the disk cache.
+    readFully(cacheDataSourceFactory.createDataSource(), dataSpec);
+
+    byte[] firstRead = readFully(cacheDataSourceFactory.createDataSource(), dataSpec);
+    byte[] secondRead =
+        readFully(cacheDataSourceFactory.createDataSource(), dataSpec.subrange(/* offset= */ 50));
+
+    assertThat(firstRead).isEqualTo(data);
+    assertThat(secondRead).isEqualTo(Arrays.copyOfRange(data, 50, data.length));
+    assertThat(inMemorySpanCache.getMissCount()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getHitCount()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(100);
+  }
+
+  @Test
+  public void cacheDataSource_spanLongerThanMaxSpanBytes_opensSpanFileOnce() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    FakeDataSet fakeDataSet = new FakeDataSet().setData("test_data", data);
+    InMemorySpanCache inMemorySpanCache =
+        new InMemorySpanCache(/* maxBytes= */ 1000, /* maxSpanBytes= */ 10);
+    AtomicInteger spanFileOpenCount = new AtomicInteger();
+    TransferListener openCountingListener =
+        new TransferListener() {
+          @Override
+          public void onTransferInitializing(
+              DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+          @Override
+          public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+            spanFileOpenCount.incrementAndGet();
+          }
+
+          @Override
+          public void onBytesTransferred(
+              DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {}
+
+          @Override
+          public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+        };
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet))
+            .setCacheReadDataSourceFactory(
+                new FileDataSource.Factory().setListener(openCountingListener))
+            .setInMemorySpanCache(inMemorySpanCache);
+    DataSpec dataSpec = new DataSpec(Uri.parse("test_data"));
+    // Populate the disk cache.
+    readFully(cacheDataSourceFactory.createDataSource(), dataSpec);
+    spanFileOpenCount.set(0);
+
+    byte[] readData = readFully(cacheDataSourceFactory.createDataSource(), dataSpec);
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(spanFileOpenCount.get()).isEqualTo(1);
+    assertThat(inMemorySpanCache.getCurrentBytes()).isEqualTo(0);
+  }
+
+  private static byte[] readFully(CacheDataSource dataSource, DataSpec dataSpec) throws Exception {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.datasource.cache.CacheEvictorTraceReplayer.Trace;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link KeyPrefixQuotaCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class KeyPrefixQuotaCacheEvictorTest {
+
+  private static final long SPAN_LENGTH = 10;
+
+  @Test
+  public void addSpans_exceedingQuota_evictsLeastRecentlyUsedSpansOfQuota() {
+    KeyPrefixQuotaCacheEvictor evictor =
+        new KeyPrefixQuotaCacheEvictor.Builder(
+                new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 300))
+            .addQuota("download:", /* maxBytes= */ 50)
+            .build();
+    CacheEvictorTraceReplayer replayer = new CacheEvictorTraceReplayer(evictor);
+    replayer.replay(new Trace().addSequential("live", /* count= */ 10, SPAN_LENGTH));
+
+    replayer.replay(new Trace().addSequential("download:1", /* count= */ 8, SPAN_LENGTH));
+
+    assertThat(evictor.getQuotaBytes("download:")).isEqualTo(50);
+    assertThat(replayer.isCached("download:1", /* position= */ 20)).isFalse();
+    assertThat(replayer.isCached("download:1", /* position= */ 30)).isTrue();
+    assertThat(replayer.isCached("live", /* position= */ 0)).isTrue();
+    assertThat(replayer.getCacheSpace()).isEqualTo(150);
+  }
+
+  @Test
+  public void replayScans_withQuotaForScans_retainsOtherSpans() {
+    KeyPrefixQuotaCacheEvictor evictor =
+        new KeyPrefixQuotaCacheEvictor.Builder(
+                new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 300))
+            .addQuota("download", /* maxBytes= */ 100)
+            .build();
+    CacheEvictorTraceReplayer replayer = new CacheEvictorTraceReplayer(evictor);
+    Trace hotSet = new Trace().addSequential("live", /* count= */ 20, SPAN_LENGTH);
+    replayer.replay(hotSet);
+
+    for (int round = 0; round < 10; round++) {
+      replayer.replay(new Trace().addSequential("download" + round, /* count= */ 40, SPAN_LENGTH));
+      assertThat(replayer.replay(hotSet)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void getQuotaBytes_withOverlappingPrefixes_countsSpansOfLongestPrefix() {
+    KeyPrefixQuotaCacheEvictor evictor =
+        new KeyPrefixQuotaCacheEvictor.Builder(
+                new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 300))
+            .addQuota("a", /* maxBytes= */ 100)
+            .addQuota("ab", /* maxBytes= */ 20)
+            .build();
+    CacheEvictorTraceReplayer replayer = new CacheEvictorTraceReplayer(evictor);
+
+    replayer.replay(
+        new Trace()
+            .addSequential("a1", /* count= */ 3, SPAN_LENGTH)
+            .addSequential("ab1", /* count= */ 3, SPAN_LENGTH));
+
+    assertThat(evictor.getQuotaBytes("a")).isEqualTo(30);
+    assertThat(evictor.getQuotaBytes("ab")).isEqualTo(20);
+    assertThat(evictor.getQuotaBytes("b")).isEqualTo(C.LENGTH_UNSET);
+  }
+}
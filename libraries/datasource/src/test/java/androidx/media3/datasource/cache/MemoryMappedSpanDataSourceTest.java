@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemoryMappedSpanDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemoryMappedSpanDataSourceTest {
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void read_fileTooLargeToMap_readsFile() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 20);
+    long position = Integer.MAX_VALUE - 10L;
+    File file = tempFolder.newFile();
+    // Only the written range is allocated, since the rest of the file is sparse.
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.seek(position);
+      randomAccessFile.write(data);
+    }
+    MemoryMappedSpanDataSource.MappingCache mappingCache =
+        new MemoryMappedSpanDataSource.MappingCache(/* maxMappedBytes= */ 1024);
+    MemoryMappedSpanDataSource dataSource = new MemoryMappedSpanDataSource(mappingCache);
+
+    long length =
+        dataSource.open(
+            new DataSpec.Builder().setUri(Uri.fromFile(file)).setPosition(position).build());
+    byte[] readData;
+    try {
+      readData = DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+
+    assertThat(length).isEqualTo(data.length);
+    assertThat(readData).isEqualTo(data);
+    assertThat(mappingCache.getMappedBytes()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.test.utils.CacheAsserts.assertCachedData;
+import static androidx.media3.test.utils.CacheAsserts.assertDataCached;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.media3.test.utils.WebServerDispatcher;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PipelinedCacheWriter}. */
+@RunWith(AndroidJUnit4.class)
+public final class PipelinedCacheWriterTest {
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void cache_withKnownLength_cachesRangesConcurrently() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 1000);
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                createCacheDataSourceFactory(fakeDataSet),
+                new DataSpec(Uri.parse("test_data"), /* position= */ 0, /* length= */ 1000))
+            .setExecutor(executorService)
+            .setMaxParallelRequests(4)
+            .setMinRangeLength(100)
+            .setBuffers(/* bufferCount= */ 2, /* bufferSize= */ 16)
+            .setProgressListener(progressRecorder)
+            .build();
+
+    writer.cache();
+
+    assertCachedData(cache, fakeDataSet);
+    assertThat(cache.getCachedSpans("test_data")).hasSize(4);
+    assertThat(progressRecorder.requestLength).isEqualTo(1000);
+    assertThat(progressRecorder.bytesCached).isEqualTo(1000);
+    assertThat(progressRecorder.newBytesCachedSum).isEqualTo(1000);
+  }
+
+  @Test
+  public void cache_withLengthInContentRangeHeader_cachesRemainingRangesConcurrently()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.setDispatcher(
+        WebServerDispatcher.forResources(
+            ImmutableList.of(
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/test_data")
+                    .setData(data)
+                    .supportsRangeRequests(true)
+                    .build())));
+    mockWebServer.start();
+    DataSpec dataSpec = new DataSpec(Uri.parse(mockWebServer.url("/test_data").toString()));
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                new CacheDataSource.Factory()
+                    .setCache(cache)
+                    .setUpstreamDataSourceFactory(new DefaultHttpDataSource.Factory()),
+                dataSpec)
+            .setExecutor(executorService)
+            .setMaxParallelRequests(4)
+            .setMinRangeLength(100)
+            .setProgressListener(progressRecorder)
+            .build();
+
+    try {
+      writer.cache();
+    } finally {
+      mockWebServer.shutdown();
+    }
+
+    assertDataCached(cache, dataSpec, data);
+    // The length is resolved from the response to the first range, without an additional request.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+    assertThat(cache.getCachedSpans(dataSpec.uri.toString())).hasSize(4);
+    assertThat(progressRecorder.requestLength).isEqualTo(1000);
+    assertThat(progressRecorder.bytesCached).isEqualTo(1000);
+  }
+
+  @Test
+  public void cache_withUnresolvableLength_cachesRemainingDataAsSingleRange() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .newData("test_data")
+            .setSimulateUnknownLength(true)
+            .appendReadData(TestUtil.buildTestData(1000))
+            .endData();
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                createCacheDataSourceFactory(fakeDataSet), new DataSpec(Uri.parse("test_data")))
+            .setExecutor(executorService)
+            .setMinRangeLength(100)
+            .setBuffers(/* bufferCount= */ 2, /* bufferSize= */ 16)
+            .setProgressListener(progressRecorder)
+            .build();
+
+    writer.cache();
+
+    assertCachedData(cache, fakeDataSet);
+    assertThat(cache.getCachedSpans("test_data")).hasSize(2);
+    assertThat(progressRecorder.requestLength).isEqualTo(1000);
+    assertThat(progressRecorder.bytesCached).isEqualTo(1000);
+  }
+
+  @Test
+  public void cache_withPartiallyCachedData_cachesRemainingData() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 1000);
+    CacheDataSource.Factory cacheDataSourceFactory = createCacheDataSourceFactory(fakeDataSet);
+    new CacheWriter(
+            cacheDataSourceFactory.createDataSource(),
+            new DataSpec(Uri.parse("test_data"), /* position= */ 300, /* length= */ 200),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                cacheDataSourceFactory, new DataSpec(Uri.parse("test_data")))
+            .setMaxParallelRequests(3)
+            .setMinRangeLength(100)
+            .setProgressListener(progressRecorder)
+            .build();
+
+    writer.cache();
+
+    assertCachedData(cache, fakeDataSet);
+    assertThat(progressRecorder.initialBytesCached).isEqualTo(200);
+    assertThat(progressRecorder.newBytesCachedSum).isEqualTo(800);
+  }
+
+  @Test
+  public void cache_withNoRemainingData_reportsZeroLength() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    CacheDataSource.Factory cacheDataSourceFactory = createCacheDataSourceFactory(fakeDataSet);
+    new CacheWriter(
+            cacheDataSourceFactory.createDataSource(),
+            new DataSpec(Uri.parse("test_data")),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                cacheDataSourceFactory,
+                new DataSpec(Uri.parse("test_data"), /* position= */ 100, C.LENGTH_UNSET))
+            .setExecutor(executorService)
+            .setProgressListener(progressRecorder)
+            .build();
+
+    writer.cache();
+
+    assertThat(progressRecorder.requestLength).isEqualTo(0);
+    assertThat(progressRecorder.bytesCached).isEqualTo(0);
+  }
+
+  @Test
+  public void cache_afterCancel_throwsInterruptedIOException() {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 1000);
+    PipelinedCacheWriter writer =
+        new PipelinedCacheWriter.Builder(
+                createCacheDataSourceFactory(fakeDataSet), new DataSpec(Uri.parse("test_data")))
+            .setExecutor(executorService)
+            .build();
+
+    writer.cancel();
+
+    assertThrows(InterruptedIOException.class, writer::cache);
+    assertThat(cache.getCachedBytes("test_data", 0, C.LENGTH_UNSET)).isEqualTo(0);
+  }
+
+  private CacheDataSource.Factory createCacheDataSourceFactory(FakeDataSet fakeDataSet) {
+    return new CacheDataSource.Factory()
+        .setCache(cache)
+        .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet));
+  }
+
+  private static final class ProgressRecorder implements CacheWriter.ProgressListener {
+
+    private long requestLength = C.LENGTH_UNSET;
+    private long initialBytesCached = C.LENGTH_UNSET;
+    private long bytesCached;
+    private long newBytesCachedSum;
+
+    @Override
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+      if (initialBytesCached == C.LENGTH_UNSET) {
+        initialBytesCached = bytesCached;
+      }
+      this.requestLength = requestLength;
+      this.bytesCached = bytesCached;
+      newBytesCachedSum += newBytesCached;
+    }
+  }
+}
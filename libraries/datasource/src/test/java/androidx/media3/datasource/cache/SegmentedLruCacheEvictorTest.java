@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.datasource.cache.CacheEvictorTraceReplayer.Trace;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentedLruCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentedLruCacheEvictorTest {
+
+  private static final long MAX_BYTES = 300;
+  private static final long SPAN_LENGTH = 10;
+
+  @Test
+  public void replayScans_retainsRepeatedlyAccessedSpans() {
+    double lruHitRatio = replayScans(new LeastRecentlyUsedCacheEvictor(MAX_BYTES));
+    double segmentedLruHitRatio = replayScans(new SegmentedLruCacheEvictor(MAX_BYTES));
+    double tinyLfuHitRatio = replayScans(new TinyLfuCacheEvictor(MAX_BYTES));
+
+    // Each scan is larger than the cache, so evicts the whole hot set.
+    assertThat(lruHitRatio).isEqualTo(0);
+    assertThat(segmentedLruHitRatio).isEqualTo(1);
+    assertThat(tinyLfuHitRatio).isAtLeast(0.9);
+  }
+
+  @Test
+  public void touchSpan_exceedingProtectedSegment_demotesLeastRecentlyUsedSpan() {
+    CacheEvictorTraceReplayer replayer =
+        new CacheEvictorTraceReplayer(
+            new SegmentedLruCacheEvictor(/* maxBytes= */ 40, /* protectedFraction= */ 0.5f));
+    Trace trace = new Trace().addSequential("key", /* count= */ 3, SPAN_LENGTH);
+    replayer.replay(trace);
+    // Promote all three spans, which demotes the first.
+    replayer.replay(trace);
+
+    // The demoted span is evicted before the new span that's been added since.
+    replayer.replay(new Trace().addSequential("other", /* count= */ 2, SPAN_LENGTH));
+
+    assertThat(replayer.isCached("key", /* position= */ 0)).isFalse();
+    assertThat(replayer.isCached("key", /* position= */ 10)).isTrue();
+    assertThat(replayer.isCached("key", /* position= */ 20)).isTrue();
+    assertThat(replayer.isCached("other", /* position= */ 10)).isTrue();
+    assertThat(replayer.getCacheSpace()).isEqualTo(40);
+  }
+
+  /**
+   * Replays rounds in which a hot set of spans that has been accessed twice is accessed again after
+   * a scan of spans that are never accessed again, and returns the hit ratio of the hot set.
+   */
+  private static double replayScans(CacheEvictor evictor) {
+    CacheEvictorTraceReplayer replayer = new CacheEvictorTraceReplayer(evictor);
+    Trace hotSet = new Trace().addSequential("live", /* count= */ 20, SPAN_LENGTH);
+    replayer.replay(hotSet);
+    replayer.replay(hotSet);
+    double hitRatioSum = 0;
+    int rounds = 20;
+    for (int round = 0; round < rounds; round++) {
+      replayer.replay(new Trace().addSequential("download" + round, /* count= */ 40, SPAN_LENGTH));
+      hitRatioSum += replayer.replay(hotSet);
+    }
+    return hitRatioSum / rounds;
+  }
+}
@@ -16,7 +16,9 @@
 package androidx.media3.datasource.cache;
 
 import static androidx.media3.common.C.LENGTH_UNSET;
+import static androidx.media3.common.util.Assertions.checkNotNull;
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.doAnswer;
 
@@ -32,8 +34,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -629,10 +640,312 @@ public class SimpleCacheTest {
         () -> simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET));
   }
 
+  @Test
+  public void concurrentKeyAccess_readOtherKeyWhileCacheLockHeld_doesNotBlock() throws Exception {
+    AtomicBoolean blockOnSpanAdded = new AtomicBoolean();
+    CountDownLatch evictorBlocked = new CountDownLatch(1);
+    CountDownLatch unblockEvictor = new CountDownLatch(1);
+    CacheEvictor blockingEvictor =
+        new CacheEvictor() {
+          @Override
+          public boolean requiresCacheSpanTouches() {
+            return false;
+          }
+
+          @Override
+          public void onCacheInitialized() {}
+
+          @Override
+          public void onStartFile(Cache cache, String key, long position, long length) {}
+
+          @Override
+          public void onSpanAdded(Cache cache, CacheSpan span) {
+            if (blockOnSpanAdded.get()) {
+              evictorBlocked.countDown();
+              try {
+                unblockEvictor.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+
+          @Override
+          public void onSpanRemoved(Cache cache, CacheSpan span) {}
+
+          @Override
+          public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {}
+        };
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, blockingEvictor, databaseProvider)
+            .setConcurrentKeyAccess(true)
+            .build();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    // Block a commit for KEY_1 inside the evictor callback, with the cache lock held.
+    blockOnSpanAdded.set(true);
+    Future<?> blockedWrite =
+        executorService.submit(
+            () -> {
+              CacheSpan span = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+              addCache(simpleCache, KEY_1, 0, 15);
+              simpleCache.releaseHoleSpan(span);
+              return null;
+            });
+    evictorBlocked.await();
+    Future<NavigableSet<CacheSpan>> otherKeyRead =
+        executorService.submit(
+            () -> {
+              assertThat(simpleCache.isCached(KEY_2, 0, 15)).isTrue();
+              assertThat(simpleCache.getCachedBytes(KEY_2, 0, LENGTH_UNSET)).isEqualTo(15);
+              return simpleCache.getCachedSpans(KEY_2);
+            });
+
+    NavigableSet<CacheSpan> otherKeySpans = otherKeyRead.get(10, SECONDS);
+    unblockEvictor.countDown();
+    blockedWrite.get(10, SECONDS);
+    executorService.shutdown();
+
+    assertThat(otherKeySpans).hasSize(1);
+    assertCachedDataReadCorrect(otherKeySpans.first());
+    assertThat(simpleCache.isCached(KEY_1, 0, 15)).isTrue();
+  }
+
+  @Test
+  public void concurrentKeyAccess_multiThreadedStress_matchesSingleLock() throws Exception {
+    SimpleCache singleLockCache =
+        new SimpleCache.Builder(
+                new File(testDir, "single"),
+                new LeastRecentlyUsedCacheEvictor(Long.MAX_VALUE),
+                databaseProvider)
+            .setConcurrentKeyAccess(false)
+            .build();
+    SimpleCache concurrentCache =
+        new SimpleCache.Builder(
+                new File(testDir, "concurrent"),
+                new LeastRecentlyUsedCacheEvictor(Long.MAX_VALUE),
+                databaseProvider)
+            .setConcurrentKeyAccess(true)
+            .build();
+
+    runStressWorkload(singleLockCache);
+    runStressWorkload(concurrentCache);
+
+    assertThat(concurrentCache.getKeys()).isEqualTo(singleLockCache.getKeys());
+    assertThat(concurrentCache.getCacheSpace()).isEqualTo(singleLockCache.getCacheSpace());
+    for (String key : concurrentCache.getKeys()) {
+      NavigableSet<CacheSpan> spans = concurrentCache.getCachedSpans(key);
+      assertThat(spans).hasSize(singleLockCache.getCachedSpans(key).size());
+      for (CacheSpan span : spans) {
+        assertCachedDataReadCorrect(span);
+      }
+    }
+  }
+
+  @Test
+  public void newInstance_withJournalIndexDisabledAfterUse_deletesJournal() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor(), databaseProvider)
+            .setUseJournalIndex(true)
+            .build();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    assertThat(journalFile.exists()).isTrue();
+
+    simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor(), databaseProvider).build();
+
+    assertThat(journalFile.exists()).isFalse();
+    assertThat(simpleCache.getKeys()).isEmpty();
+    simpleCache.release();
+  }
+
+  @Test
+  public void parallelInitialization_withExistingCacheDirectory_loadsCachedData() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    for (int i = 0; i < 20; i++) {
+      addCache(simpleCache, "key" + i, 0, 15);
+      addCache(simpleCache, "key" + i, 15, 15);
+    }
+    long cacheSpace = simpleCache.getCacheSpace();
+    simpleCache.release();
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor(), databaseProvider)
+            .setParallelInitialization(executorService, /* shardCount= */ 8)
+            .build();
+
+    assertThat(simpleCache.getKeys()).hasSize(20);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(cacheSpace);
+    for (int i = 0; i < 20; i++) {
+      NavigableSet<CacheSpan> spans = simpleCache.getCachedSpans("key" + i);
+      assertThat(spans).hasSize(2);
+      for (CacheSpan span : spans) {
+        assertCachedDataReadCorrect(span);
+      }
+    }
+    simpleCache.release();
+    executorService.shutdown();
+  }
+
+  @Test
+  public void parallelInitialization_keyInLoadedShard_isAccessibleBeforeOtherShardsLoad()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.release();
+    int directoryCount = 0;
+    for (File file : cacheDir.listFiles()) {
+      if (file.isDirectory()) {
+        directoryCount++;
+      }
+    }
+    LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+    simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor(), databaseProvider)
+            .setParallelInitialization(tasks::add, /* shardCount= */ 2)
+            .build();
+    // Run the directory listing tasks, after which the shard loading tasks are submitted in order.
+    for (int i = 0; i < directoryCount; i++) {
+      checkNotNull(tasks.poll(10, SECONDS)).run();
+    }
+    Runnable[] shardTasks = new Runnable[2];
+    for (int i = 0; i < 2; i++) {
+      shardTasks[i] = checkNotNull(tasks.poll(10, SECONDS));
+    }
+    int key1ShardIndex = (KEY_1.hashCode() & Integer.MAX_VALUE) % 2;
+    int key2ShardIndex = (KEY_2.hashCode() & Integer.MAX_VALUE) % 2;
+    assertThat(key1ShardIndex).isNotEqualTo(key2ShardIndex);
+    shardTasks[key1ShardIndex].run();
+    SimpleCache cache = simpleCache;
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    Future<NavigableSet<CacheSpan>> key2Spans =
+        executorService.submit(() -> cache.getCachedSpans(KEY_2));
+
+    NavigableSet<CacheSpan> key1Spans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(key2Spans.isDone()).isFalse();
+    shardTasks[key2ShardIndex].run();
+
+    assertThat(key1Spans).hasSize(1);
+    assertCachedDataReadCorrect(key1Spans.first());
+    assertThat(key2Spans.get(10, SECONDS)).hasSize(1);
+    assertCachedDataReadCorrect(key2Spans.get().first());
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_1, KEY_2);
+    executorService.shutdown();
+  }
+
+  @Test
+  public void parallelInitialization_callbackAccessingKeyInUnloadedShard_throws() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.release();
+    int directoryCount = 0;
+    for (File file : cacheDir.listFiles()) {
+      if (file.isDirectory()) {
+        directoryCount++;
+      }
+    }
+    LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    simpleCache =
+        new SimpleCache.Builder(cacheDir, new NoOpCacheEvictor(), databaseProvider)
+            .setParallelInitialization(tasks::add, /* shardCount= */ 2)
+            .build();
+    for (int i = 0; i < directoryCount; i++) {
+      checkNotNull(tasks.poll(10, SECONDS)).run();
+    }
+    Runnable[] shardTasks = new Runnable[2];
+    for (int i = 0; i < 2; i++) {
+      shardTasks[i] = checkNotNull(tasks.poll(10, SECONDS));
+    }
+    int key1ShardIndex = (KEY_1.hashCode() & Integer.MAX_VALUE) % 2;
+    shardTasks[key1ShardIndex].run();
+    AtomicReference<Exception> callbackException = new AtomicReference<>();
+    simpleCache.addListener(
+        KEY_1,
+        new Cache.Listener() {
+          @Override
+          public void onSpanAdded(Cache cache, CacheSpan span) {
+            try {
+              cache.getCachedSpans(KEY_2);
+            } catch (IllegalStateException e) {
+              callbackException.set(e);
+            }
+          }
+
+          @Override
+          public void onSpanRemoved(Cache cache, CacheSpan span) {}
+
+          @Override
+          public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {}
+        });
+
+    addCache(simpleCache, KEY_1, 15, 15);
+
+    assertThat(callbackException.get()).isInstanceOf(IllegalStateException.class);
+    shardTasks[1 - key1ShardIndex].run();
+    assertThat(simpleCache.getCachedSpans(KEY_2)).hasSize(1);
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
   }
 
+  /**
+   * Runs a workload in which each of a number of threads writes spans for its own keys and reads
+   * back both its own and other threads' keys.
+   */
+  private static void runStressWorkload(SimpleCache simpleCache) throws Exception {
+    int threadCount = 8;
+    int keysPerThread = 4;
+    int spansPerKey = 8;
+    int spanLength = 16;
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < threadCount; thread++) {
+      int threadIndex = thread;
+      futures.add(
+          executorService.submit(
+              () -> {
+                Random random = new Random(threadIndex);
+                for (int span = 0; span < spansPerKey; span++) {
+                  for (int keyIndex = 0; keyIndex < keysPerThread; keyIndex++) {
+                    String key = "key-" + threadIndex + "-" + keyIndex;
+                    int position = span * spanLength;
+                    CacheSpan holeSpan = simpleCache.startReadWrite(key, position, spanLength);
+                    assertThat(holeSpan.isCached).isFalse();
+                    addCache(simpleCache, key, position, spanLength);
+                    simpleCache.releaseHoleSpan(holeSpan);
+                    assertCachedDataReadCorrect(
+                        simpleCache.startReadWrite(key, position, spanLength));
+
+                    String otherKey =
+                        "key-" + random.nextInt(threadCount) + "-" + random.nextInt(keysPerThread);
+                    long cachedBytes = simpleCache.getCachedBytes(otherKey, 0, LENGTH_UNSET);
+                    assertThat(cachedBytes % spanLength).isEqualTo(0);
+                    for (CacheSpan otherSpan : simpleCache.getCachedSpans(otherKey)) {
+                      assertThat(otherSpan.isCached).isTrue();
+                    }
+                  }
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get(60, SECONDS);
+    }
+    executorService.shutdown();
+  }
+
   private static void addCache(SimpleCache simpleCache, String key, int position, int length)
       throws IOException {
     File file = simpleCache.startFile(key, position, length);
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.datasource.cache.CacheEvictorTraceReplayer.Trace;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TinyLfuCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class TinyLfuCacheEvictorTest {
+
+  private static final long MAX_BYTES = 300;
+  private static final long SPAN_LENGTH = 10;
+
+  @Test
+  public void replayScansAfterSingleAccess_retainsSpansAccessedOnEveryRound() {
+    double lruHitRatio = replayScans(new LeastRecentlyUsedCacheEvictor(MAX_BYTES));
+    double segmentedLruHitRatio = replayScans(new SegmentedLruCacheEvictor(MAX_BYTES));
+    double tinyLfuHitRatio = replayScans(new TinyLfuCacheEvictor(MAX_BYTES));
+
+    assertThat(lruHitRatio).isEqualTo(0);
+    // Spans accessed once are never promoted from the probationary segment.
+    assertThat(segmentedLruHitRatio).isEqualTo(0);
+    // Only the first round misses.
+    assertThat(tinyLfuHitRatio).isAtLeast(0.85);
+  }
+
+  @Test
+  public void replayTrace_neverExceedsMaxBytes() {
+    CacheEvictorTraceReplayer replayer =
+        new CacheEvictorTraceReplayer(new TinyLfuCacheEvictor(MAX_BYTES));
+    for (int round = 0; round < 10; round++) {
+      replayer.replay(
+          new Trace()
+              .addSequential("live", /* count= */ 20, SPAN_LENGTH)
+              .addSequential("download" + round, /* count= */ 40, SPAN_LENGTH)
+              .add("large" + round, /* position= */ 0, /* length= */ 100));
+      assertThat(replayer.getCacheSpace()).isAtMost(MAX_BYTES);
+    }
+  }
+
+  @Test
+  public void addSpan_largerThanCache_isEvicted() {
+    CacheEvictorTraceReplayer replayer =
+        new CacheEvictorTraceReplayer(new TinyLfuCacheEvictor(MAX_BYTES));
+    replayer.replay(new Trace().addSequential("live", /* count= */ 20, SPAN_LENGTH));
+
+    replayer.replay(new Trace().add("large", /* position= */ 0, MAX_BYTES + 1));
+
+    assertThat(replayer.isCached("large", /* position= */ 0)).isFalse();
+    assertThat(replayer.getCacheSpace()).isEqualTo(0);
+  }
+
+  /**
+   * Replays rounds in which a hot set of spans is accessed once after a scan of spans that are
+   * never accessed again, and returns the hit ratio of the hot set.
+   */
+  private static double replayScans(CacheEvictor evictor) {
+    CacheEvictorTraceReplayer replayer = new CacheEvictorTraceReplayer(evictor);
+    Trace hotSet = new Trace().addSequential("live", /* count= */ 20, SPAN_LENGTH);
+    replayer.replay(hotSet);
+    double hitRatioSum = 0;
+    int rounds = 20;
+    for (int round = 0; round < rounds; round++) {
+      replayer.replay(new Trace().addSequential("download" + round, /* count= */ 40, SPAN_LENGTH));
+      hitRatioSum += replayer.replay(hotSet);
+    }
+    return hitRatioSum / rounds;
+  }
+}
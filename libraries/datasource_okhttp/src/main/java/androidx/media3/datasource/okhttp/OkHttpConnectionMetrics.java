@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.okhttp;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+
+/**
+ * An {@link EventListener.Factory} that counts new and reused connections, and measures the time
+ * to first byte of responses, for the calls made by an {@link OkHttpClient}.
+ *
+ * <p>To use it, set an instance with {@link
+ * OkHttpClient.Builder#eventListenerFactory(EventListener.Factory)} and pass the client to {@link
+ * OkHttpDataSource.Factory}. The reuse of connections is configured on the client:
+ *
+ * <ul>
+ *   <li>Its {@link ConnectionPool} sets the maximum number of idle connections, and how long they
+ *       are kept.
+ *   <li>Its {@link Dispatcher} limits the number of concurrent requests to each host, with {@link
+ *       Dispatcher#setMaxRequestsPerHost(int)}. {@link OkHttpDataSource} makes asynchronous calls,
+ *       so this limit applies to its requests.
+ * </ul>
+ *
+ * <p>Share the client between data sources, so that they share its connection pool.
+ */
+@UnstableApi
+public final class OkHttpConnectionMetrics implements EventListener.Factory {
+
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private long newConnectionCount;
+
+  @GuardedBy("this")
+  private long reusedConnectionCount;
+
+  @GuardedBy("this")
+  private long responseCount;
+
+  @GuardedBy("this")
+  private long totalTimeToFirstByteMs;
+
+  /** Creates an instance. */
+  public OkHttpConnectionMetrics() {
+    this(Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ OkHttpConnectionMetrics(Clock clock) {
+    this.clock = clock;
+  }
+
+  @Override
+  public EventListener create(Call call) {
+    return new CallEventListener();
+  }
+
+  /** Returns the number of connections that have been established. */
+  public synchronized long getNewConnectionCount() {
+    return newConnectionCount;
+  }
+
+  /** Returns the number of times that a pooled connection has been reused for a request. */
+  public synchronized long getReusedConnectionCount() {
+    return reusedConnectionCount;
+  }
+
+  /** Returns the number of calls that have received a response. */
+  public synchronized long getResponseCount() {
+    return responseCount;
+  }
+
+  /**
+   * Returns the mean time to first byte of the calls that have received a response, in
+   * milliseconds, or {@link C#TIME_UNSET} if no call has received a response.
+   *
+   * <p>The time to first byte of a call is measured from the start of the call until the first
+   * byte of its first response is received, including any time spent establishing a connection.
+   */
+  public synchronized long getAverageTimeToFirstByteMs() {
+    return responseCount == 0 ? C.TIME_UNSET : totalTimeToFirstByteMs / responseCount;
+  }
+
+  private synchronized void onConnectionAcquired(boolean newConnection) {
+    if (newConnection) {
+      newConnectionCount++;
+    } else {
+      reusedConnectionCount++;
+    }
+  }
+
+  private synchronized void onFirstResponseHeadersStart(long timeToFirstByteMs) {
+    responseCount++;
+    totalTimeToFirstByteMs += timeToFirstByteMs;
+  }
+
+  /** Listens to the events of a single call. Events of a call are not delivered concurrently. */
+  private final class CallEventListener extends EventListener {
+
+    private long callStartTimeMs;
+    private boolean connecting;
+    private boolean receivedResponse;
+
+    @Override
+    public void callStart(Call call) {
+      callStartTimeMs = clock.elapsedRealtime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+      connecting = true;
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+      onConnectionAcquired(/* newConnection= */ connecting);
+      connecting = false;
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+      if (!receivedResponse) {
+        receivedResponse = true;
+        onFirstResponseHeadersStart(clock.elapsedRealtime() - callStartTimeMs);
+      }
+    }
+  }
+}
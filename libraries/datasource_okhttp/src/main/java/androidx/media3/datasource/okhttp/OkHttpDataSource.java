@@ -64,6 +64,9 @@ import okhttp3.ResponseBody;
  * <p>Note: HTTP request headers will be set using all parameters passed via (in order of decreasing
  * priority) the {@code dataSpec}, {@link #setRequestProperty} and the default parameters used to
  * construct the instance.
+ *
+ * <p>Connections are pooled by the {@link OkHttpClient}. Their reuse can be measured with {@link
+ * OkHttpConnectionMetrics}.
  */
 public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
 
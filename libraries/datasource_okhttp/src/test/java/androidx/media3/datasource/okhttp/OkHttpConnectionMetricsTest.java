@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.okhttp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link OkHttpConnectionMetrics}. */
+@RunWith(AndroidJUnit4.class)
+public final class OkHttpConnectionMetricsTest {
+
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 100);
+
+  private MockWebServer mockWebServer;
+
+  @Before
+  public void setUp() throws Exception {
+    mockWebServer = new MockWebServer();
+    mockWebServer.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void readResponsesToEnd_countsReusedConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(DATA)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(DATA)));
+    OkHttpConnectionMetrics connectionMetrics = new OkHttpConnectionMetrics();
+    DataSource dataSource =
+        createDataSource(
+            new OkHttpClient.Builder().eventListenerFactory(connectionMetrics).build());
+
+    byte[] data1 = readToEnd(dataSource, "/path1");
+    byte[] data2 = readToEnd(dataSource, "/path2");
+
+    assertThat(data1).isEqualTo(DATA);
+    assertThat(data2).isEqualTo(DATA);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+    assertThat(connectionMetrics.getNewConnectionCount()).isEqualTo(1);
+    assertThat(connectionMetrics.getReusedConnectionCount()).isEqualTo(1);
+    assertThat(connectionMetrics.getResponseCount()).isEqualTo(2);
+    assertThat(connectionMetrics.getAverageTimeToFirstByteMs()).isNotEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void connectionPoolWithoutIdleConnections_countsNewConnections() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(DATA)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(DATA)));
+    OkHttpConnectionMetrics connectionMetrics = new OkHttpConnectionMetrics();
+    DataSource dataSource =
+        createDataSource(
+            new OkHttpClient.Builder()
+                .connectionPool(
+                    new ConnectionPool(
+                        /* maxIdleConnections= */ 0, /* keepAliveDuration= */ 1, MINUTES))
+                .eventListenerFactory(connectionMetrics)
+                .build());
+
+    readToEnd(dataSource, "/path1");
+    readToEnd(dataSource, "/path2");
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(connectionMetrics.getNewConnectionCount()).isEqualTo(2);
+    assertThat(connectionMetrics.getReusedConnectionCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void noResponse_averageTimeToFirstByteIsUnset() {
+    OkHttpConnectionMetrics connectionMetrics = new OkHttpConnectionMetrics();
+
+    assertThat(connectionMetrics.getResponseCount()).isEqualTo(0);
+    assertThat(connectionMetrics.getAverageTimeToFirstByteMs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  private static DataSource createDataSource(OkHttpClient okHttpClient) {
+    return new OkHttpDataSource.Factory(okHttpClient).createDataSource();
+  }
+
+  private byte[] readToEnd(DataSource dataSource, String path) throws IOException {
+    dataSource.open(new DataSpec.Builder().setUri(mockWebServer.url(path).toString()).build());
+    try {
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
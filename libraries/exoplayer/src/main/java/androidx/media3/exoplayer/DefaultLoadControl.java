@@ -34,6 +34,7 @@ import androidx.media3.exoplayer.source.TrackGroupArray;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.exoplayer.upstream.TargetBufferSizeAllocator;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.HashMap;
 
@@ -110,7 +111,7 @@ public class DefaultLoadControl implements LoadControl {
   /** Builder for {@link DefaultLoadControl}. */
   public static final class Builder {
 
-    @Nullable private DefaultAllocator allocator;
+    @Nullable private TargetBufferSizeAllocator allocator;
     private int minBufferMs;
     private int maxBufferMs;
     private int bufferForPlaybackMs;
@@ -134,14 +135,20 @@ public class DefaultLoadControl implements LoadControl {
     }
 
     /**
-     * Sets the {@link DefaultAllocator} used by the loader.
+     * Sets the {@link TargetBufferSizeAllocator} used by the loader. The default is a {@link
+     * DefaultAllocator}.
      *
-     * @param allocator The {@link DefaultAllocator}.
+     * <p>A {@link androidx.media3.exoplayer.upstream.DirectBufferAllocator} holds buffered media in
+     * direct memory rather than on the Java heap. It should only be used if all media sources used
+     * with the player buffer samples in {@link androidx.media3.exoplayer.source.SampleQueue
+     * SampleQueues}, as its allocations aren't backed by arrays.
+     *
+     * @param allocator The {@link TargetBufferSizeAllocator}.
      * @return This builder, for convenience.
      * @throws IllegalStateException If {@link #build()} has already been called.
      */
     @CanIgnoreReturnValue
-    public Builder setAllocator(DefaultAllocator allocator) {
+    public Builder setAllocator(TargetBufferSizeAllocator allocator) {
       checkState(!buildCalled);
       this.allocator = allocator;
       return this;
@@ -258,7 +265,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private final DefaultAllocator allocator;
+  private final TargetBufferSizeAllocator allocator;
 
   private final long minBufferUs;
   private final long maxBufferUs;
@@ -287,7 +294,7 @@ public class DefaultLoadControl implements LoadControl {
   }
 
   protected DefaultLoadControl(
-      DefaultAllocator allocator,
+      TargetBufferSizeAllocator allocator,
       int minBufferMs,
       int maxBufferMs,
       int bufferForPlaybackMs,
@@ -25,8 +25,10 @@ import androidx.media3.extractor.DefaultExtractorInput;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.SniffFailure;
 import androidx.media3.extractor.mp3.Mp3Extractor;
 import com.google.common.base.Joiner;
@@ -34,6 +36,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +48,7 @@ import java.util.Map;
 public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor {
 
   private final ExtractorsFactory extractorsFactory;
+  private final byte[] signaturePrefix;
 
   @Nullable private Extractor extractor;
   @Nullable private ExtractorInput extractorInput;
@@ -56,6 +60,7 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
    */
   public BundledExtractorsAdapter(ExtractorsFactory extractorsFactory) {
     this.extractorsFactory = extractorsFactory;
+    signaturePrefix = new byte[SignatureSniffer.PREFIX_LENGTH];
   }
 
   @Override
@@ -78,7 +83,7 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     if (extractors.length == 1) {
       this.extractor = extractors[0];
     } else {
-      for (Extractor extractor : extractors) {
+      for (Extractor extractor : getExtractorsToSniff(extractors, extractorInput)) {
         try {
           if (extractor.sniff(extractorInput)) {
             this.extractor = extractor;
@@ -111,6 +116,45 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     extractor.init(output);
   }
 
+  /**
+   * Returns the extractors that may be able to read the stream, in the order in which they should
+   * be sniffed.
+   *
+   * <p>The prefix of the stream is peeked once and matched against the signatures of the
+   * extractors that implement {@link SignatureSniffer}. Extractors whose signature matches come
+   * first, followed by extractors whose signature is unknown or that don't have one, in their
+   * original order. Extractors whose signature doesn't match are omitted.
+   */
+  private List<Extractor> getExtractorsToSniff(Extractor[] extractors, ExtractorInput input)
+      throws IOException {
+    int prefixLength;
+    try {
+      prefixLength =
+          ExtractorUtil.peekToLength(
+              input, signaturePrefix, /* offset= */ 0, SignatureSniffer.PREFIX_LENGTH);
+    } finally {
+      input.resetPeekPosition();
+    }
+    List<Extractor> matchingExtractors = new ArrayList<>();
+    List<Extractor> otherExtractors = new ArrayList<>();
+    for (Extractor extractor : extractors) {
+      Extractor underlyingExtractor = extractor.getUnderlyingImplementation();
+      @SignatureSniffer.SignatureResult
+      int signatureResult =
+          underlyingExtractor instanceof SignatureSniffer
+              ? ((SignatureSniffer) underlyingExtractor)
+                  .sniffSignature(signaturePrefix, prefixLength)
+              : SignatureSniffer.SIGNATURE_UNKNOWN;
+      if (signatureResult == SignatureSniffer.SIGNATURE_MATCH) {
+        matchingExtractors.add(extractor);
+      } else if (signatureResult == SignatureSniffer.SIGNATURE_UNKNOWN) {
+        otherExtractors.add(extractor);
+      }
+    }
+    matchingExtractors.addAll(otherExtractors);
+    return matchingExtractors;
+  }
+
   @Override
   public void release() {
     if (extractor != null) {
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.database.DatabaseIOException;
+import androidx.media3.database.DatabaseProvider;
+import androidx.media3.database.VersionTable;
+import androidx.media3.extractor.SeekIndex;
+import java.io.IOException;
+
+/**
+ * A {@link SeekIndexStore} that persists indices in a database provided by a {@link
+ * DatabaseProvider}.
+ *
+ * <p>Each index is written in a single row, so it's recommended to limit the number of streams
+ * whose indices are stored by calling {@link #trim(int)} from time to time.
+ */
+@UnstableApi
+public final class DatabaseSeekIndexStore implements SeekIndexStore {
+
+  private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "SeekIndices";
+
+  @VisibleForTesting /* package */ static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_KEY = "id";
+  private static final String COLUMN_DATA = "data";
+
+  private static final int COLUMN_INDEX_DATA = 0;
+
+  private static final String WHERE_KEY_EQUALS = COLUMN_KEY + " = ?";
+
+  private static final String[] COLUMNS_DATA = new String[] {COLUMN_DATA};
+
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_KEY
+          + " TEXT PRIMARY KEY NOT NULL,"
+          + COLUMN_DATA
+          + " BLOB NOT NULL)";
+
+  private final String name;
+  private final String tableName;
+  private final DatabaseProvider databaseProvider;
+  private final Object initializationLock;
+
+  @GuardedBy("initializationLock")
+  private boolean initialized;
+
+  /**
+   * Creates an instance that stores indices in a table named for the empty string.
+   *
+   * <p>Use {@link #DatabaseSeekIndexStore(DatabaseProvider, String)} to store indices of different
+   * players in separate tables.
+   *
+   * @param databaseProvider Provides the database in which indices are stored.
+   */
+  public DatabaseSeekIndexStore(DatabaseProvider databaseProvider) {
+    this(databaseProvider, /* name= */ "");
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param databaseProvider Provides the database in which indices are stored.
+   * @param name The name of the store. This is used to determine the name of the database table
+   *     in which indices are stored.
+   */
+  public DatabaseSeekIndexStore(DatabaseProvider databaseProvider, String name) {
+    this.name = name;
+    this.databaseProvider = databaseProvider;
+    tableName = TABLE_PREFIX + name;
+    initializationLock = new Object();
+  }
+
+  @Override
+  @WorkerThread
+  @Nullable
+  public SeekIndex get(String key) throws IOException {
+    ensureInitialized();
+    try (Cursor cursor =
+        databaseProvider
+            .getReadableDatabase()
+            .query(
+                tableName,
+                COLUMNS_DATA,
+                WHERE_KEY_EQUALS,
+                new String[] {key},
+                /* groupBy= */ null,
+                /* having= */ null,
+                /* orderBy= */ null)) {
+      if (!cursor.moveToFirst()) {
+        return null;
+      }
+      return SeekIndex.fromByteArray(cursor.getBlob(COLUMN_INDEX_DATA));
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  @Override
+  @WorkerThread
+  public void put(String key, SeekIndex seekIndex) throws DatabaseIOException {
+    ensureInitialized();
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_KEY, key);
+    values.put(COLUMN_DATA, seekIndex.toByteArray());
+    try {
+      databaseProvider
+          .getWritableDatabase()
+          .replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /**
+   * Removes the indices of all but the {@code maxEntryCount} most recently stored streams.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param maxEntryCount The maximum number of indices to keep.
+   * @throws DatabaseIOException If an error occurs removing the indices.
+   */
+  @WorkerThread
+  public void trim(int maxEntryCount) throws DatabaseIOException {
+    ensureInitialized();
+    // Replacing a row inserts a new row, so the most recently stored rows have the largest rowids.
+    try {
+      databaseProvider
+          .getWritableDatabase()
+          .execSQL(
+              "DELETE FROM "
+                  + tableName
+                  + " WHERE "
+                  + COLUMN_KEY
+                  + " NOT IN (SELECT "
+                  + COLUMN_KEY
+                  + " FROM "
+                  + tableName
+                  + " ORDER BY rowid DESC LIMIT "
+                  + maxEntryCount
+                  + ")");
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private void ensureInitialized() throws DatabaseIOException {
+    synchronized (initializationLock) {
+      if (initialized) {
+        return;
+      }
+      try {
+        SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+        int version =
+            VersionTable.getVersion(readableDatabase, VersionTable.FEATURE_SEEK_INDEX, name);
+        if (version != TABLE_VERSION) {
+          SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+          writableDatabase.beginTransactionNonExclusive();
+          try {
+            VersionTable.setVersion(
+                writableDatabase, VersionTable.FEATURE_SEEK_INDEX, name, TABLE_VERSION);
+            writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+            writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+            writableDatabase.setTransactionSuccessful();
+          } finally {
+            writableDatabase.endTransaction();
+          }
+        }
+        initialized = true;
+      } catch (SQLException e) {
+        throw new DatabaseIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.SeekIndex;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link SeekIndexStore} that holds the indices of the most recently used streams in memory.
+ *
+ * <p>Indices are stored as returned by {@link SeekIndex#toByteArray()}, so that an index that's
+ * still being populated by one period isn't shared with another period.
+ */
+@UnstableApi
+public final class InMemorySeekIndexStore implements SeekIndexStore {
+
+  /** The default maximum number of stored indices. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 64;
+
+  private final LinkedHashMap<String, byte[]> entries;
+
+  /** Creates an instance that stores up to {@link #DEFAULT_MAX_ENTRY_COUNT} indices. */
+  public InMemorySeekIndexStore() {
+    this(DEFAULT_MAX_ENTRY_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxEntryCount The maximum number of stored indices. The indices of the least recently
+   *     used streams are evicted when this number is exceeded.
+   */
+  public InMemorySeekIndexStore(int maxEntryCount) {
+    checkArgument(maxEntryCount > 0);
+    entries =
+        new LinkedHashMap<String, byte[]>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > maxEntryCount;
+          }
+        };
+  }
+
+  @Override
+  @Nullable
+  public SeekIndex get(String key) {
+    @Nullable byte[] data;
+    synchronized (entries) {
+      data = entries.get(key);
+    }
+    if (data == null) {
+      return null;
+    }
+    try {
+      return SeekIndex.fromByteArray(data);
+    } catch (IOException e) {
+      // Never happens, since the data was serialized by this class.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void put(String key, SeekIndex seekIndex) {
+    byte[] data = seekIndex.toByteArray();
+    synchronized (entries) {
+      entries.put(key, data);
+    }
+  }
+}
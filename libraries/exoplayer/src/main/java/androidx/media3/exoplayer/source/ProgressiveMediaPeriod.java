@@ -54,11 +54,13 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
 import androidx.media3.exoplayer.upstream.Loader.Loadable;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.DiscardingTrackOutput;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorOutput;
 import androidx.media3.extractor.ForwardingSeekMap;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndex;
 import androidx.media3.extractor.SeekMap;
 import androidx.media3.extractor.SeekMap.SeekPoints;
 import androidx.media3.extractor.SeekMap.Unseekable;
@@ -69,6 +71,7 @@ import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -125,6 +128,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final Runnable maybeFinishPrepareRunnable;
   private final Runnable onContinueLoadingRequestedRunnable;
   private final Handler handler;
+  @Nullable private final SeekIndexStore seekIndexStore;
 
   @Nullable private Callback callback;
   @Nullable private IcyHeaders icyHeaders;
@@ -145,6 +149,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private boolean notifyDiscontinuity;
   private int enabledTrackCount;
   private boolean isLengthKnown;
+  @Nullable private String seekIndexKey;
+  @Nullable private SeekIndex seekIndex;
+  private int storedSeekIndexModificationCount;
 
   private long lastSeekPositionUs;
   private long pendingResetPositionUs;
@@ -171,6 +178,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
    * @param singleSampleDurationUs The duration of media with a single sample in microseconds.
+   * @param downloadExecutor An optional {@link ReleasableExecutor} to load the media on, or null
+   *     to load it on a dedicated thread.
+   * @param seekIndexStore An optional {@link SeekIndexStore} to persist the {@link SeekIndex} of
+   *     the media stream in, or null.
    */
   // maybeFinishPrepare is not posted to the handler until initialization completes.
   @SuppressWarnings({"nullness:argument", "nullness:methodref.receiver.bound"})
@@ -186,7 +197,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Allocator allocator,
       @Nullable String customCacheKey,
       int continueLoadingCheckIntervalBytes,
-      long singleSampleDurationUs) {
+      long singleSampleDurationUs,
+      @Nullable ReleasableExecutor downloadExecutor,
+      @Nullable SeekIndexStore seekIndexStore) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.drmSessionManager = drmSessionManager;
@@ -197,9 +210,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("ProgressiveMediaPeriod");
+    loader =
+        downloadExecutor != null
+            ? new Loader(downloadExecutor)
+            : new Loader("ProgressiveMediaPeriod");
     this.progressiveMediaExtractor = progressiveMediaExtractor;
     this.singleSampleDurationUs = singleSampleDurationUs;
+    this.seekIndexStore = seekIndexStore;
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = this::maybeFinishPrepare;
     onContinueLoadingRequestedRunnable =
@@ -711,6 +728,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     handler.post(() -> setSeekMap(seekMap));
   }
 
+  @Override
+  @Nullable
+  public SeekIndex getSeekIndex() {
+    return seekIndex;
+  }
+
   // Icy metadata. Called by the loading thread.
 
   /* package */ TrackOutput icyTrack() {
@@ -730,6 +753,56 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     handler.post(() -> isLengthKnown = true);
   }
 
+  /** Loads the {@link SeekIndex} of the stream if not yet loaded. Called by the loading thread. */
+  private void maybeLoadSeekIndex(long contentLength, Map<String, List<String>> responseHeaders) {
+    if (seekIndexStore == null || seekIndexKey != null) {
+      return;
+    }
+    String seekIndexKey = buildSeekIndexKey(contentLength, responseHeaders);
+    @Nullable SeekIndex storedSeekIndex = null;
+    try {
+      storedSeekIndex = seekIndexStore.get(seekIndexKey);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to load seek index", e);
+    }
+    SeekIndex seekIndex = storedSeekIndex != null ? storedSeekIndex : new SeekIndex();
+    storedSeekIndexModificationCount = seekIndex.getModificationCount();
+    this.seekIndexKey = seekIndexKey;
+    this.seekIndex = seekIndex;
+  }
+
+  /** Stores the {@link SeekIndex} of the stream, if it changed. Called by the loading thread. */
+  private void maybeStoreSeekIndex() {
+    @Nullable SeekIndex seekIndex = this.seekIndex;
+    if (seekIndexStore == null || seekIndex == null) {
+      return;
+    }
+    int modificationCount = seekIndex.getModificationCount();
+    if (modificationCount == storedSeekIndexModificationCount) {
+      return;
+    }
+    try {
+      seekIndexStore.put(checkNotNull(seekIndexKey), seekIndex);
+      storedSeekIndexModificationCount = modificationCount;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to store seek index", e);
+    }
+  }
+
+  private String buildSeekIndexKey(long contentLength, Map<String, List<String>> responseHeaders) {
+    StringBuilder key =
+        new StringBuilder(customCacheKey != null ? customCacheKey : uri.toString())
+            .append('|')
+            .append(contentLength);
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      if ("ETag".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        key.append('|').append(header.getValue().get(0));
+        break;
+      }
+    }
+    return key.toString();
+  }
+
   private TrackOutput prepareTrackOutput(TrackId id) {
     int trackCount = sampleQueues.length;
     for (int i = 0; i < trackCount; i++) {
@@ -1049,6 +1122,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           if (length != C.LENGTH_UNSET) {
             length += position;
             onLengthKnown();
+            maybeLoadSeekIndex(length, dataSource.getResponseHeaders());
           }
           icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
           DataSource extractorDataSource = dataSource;
@@ -1090,8 +1164,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         } finally {
           if (result == Extractor.RESULT_SEEK) {
             result = Extractor.RESULT_CONTINUE;
-          } else if (progressiveMediaExtractor.getCurrentInputPosition() != C.INDEX_UNSET) {
-            positionHolder.position = progressiveMediaExtractor.getCurrentInputPosition();
+          } else {
+            if (progressiveMediaExtractor.getCurrentInputPosition() != C.INDEX_UNSET) {
+              positionHolder.position = progressiveMediaExtractor.getCurrentInputPosition();
+            }
+            // The load is ending, so store what the extractor learned about seeking in the stream.
+            maybeStoreSeekIndex();
           }
           DataSourceUtil.closeQuietly(dataSource);
         }
@@ -27,6 +27,7 @@ import androidx.media3.common.Timeline;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.ReadaheadDataSource;
 import androidx.media3.datasource.TransferListener;
 import androidx.media3.exoplayer.drm.DefaultDrmSessionManagerProvider;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
@@ -34,9 +35,12 @@ import androidx.media3.exoplayer.drm.DrmSessionManagerProvider;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.SharedLoaderExecutor;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.DefaultExtractorsFactory;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorsFactory;
+import com.google.common.base.Supplier;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
 /**
@@ -64,6 +68,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     private DrmSessionManagerProvider drmSessionManagerProvider;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private int continueLoadingCheckIntervalBytes;
+    @Nullable private Supplier<ReleasableExecutor> downloadExecutorSupplier;
+    @Nullable private SeekIndexStore seekIndexStore;
 
     /**
      * Creates a new factory for {@link ProgressiveMediaSource}s.
@@ -76,6 +82,10 @@ public final class ProgressiveMediaSource extends BaseMediaSource
      *   <li>{@link DefaultLoadErrorHandlingPolicy}
      * </ul>
      *
+     * <p>Extractors read the media in many small reads. To read slow storage or high-latency
+     * network sources in larger reads, wrap the {@code dataSourceFactory} in a {@link
+     * ReadaheadDataSource.Factory}.
+     *
      * @param dataSourceFactory A factory for {@linkplain DataSource data sources} to read the
      *     media.
      */
@@ -184,6 +194,40 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a supplier for the {@link ReleasableExecutor} used to load the media of each period.
+     *
+     * <p>By default, each period loads its media on a new dedicated thread. A supplier returning
+     * executors from a {@link SharedLoaderExecutor} allows the periods of many sources to reuse a
+     * pool of threads instead.
+     *
+     * @param downloadExecutorSupplier A supplier for a {@link ReleasableExecutor}. A new executor
+     *     is requested for each period, and released when the period is released.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setDownloadExecutor(Supplier<ReleasableExecutor> downloadExecutorSupplier) {
+      this.downloadExecutorSupplier = downloadExecutorSupplier;
+      return this;
+    }
+
+    /**
+     * Sets the {@link SeekIndexStore} used to persist the seek knowledge that extractors gather
+     * whilst playing a stream, so that seeking in the same stream is faster when it's played
+     * again. The default value is {@code null}, meaning that seek knowledge isn't persisted.
+     *
+     * <p>Indices are only stored for streams of known length, and are keyed by the custom cache
+     * key or URI of the stream together with its length and any {@code ETag} response header.
+     *
+     * @param seekIndexStore The {@link SeekIndexStore}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setSeekIndexStore(@Nullable SeekIndexStore seekIndexStore) {
+      this.seekIndexStore = seekIndexStore;
+      return this;
+    }
+
     @CanIgnoreReturnValue
     @Override
     public Factory setDrmSessionManagerProvider(
@@ -213,7 +257,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
           progressiveMediaExtractorFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          continueLoadingCheckIntervalBytes);
+          continueLoadingCheckIntervalBytes,
+          downloadExecutorSupplier,
+          seekIndexStore);
     }
 
     @Override
@@ -233,6 +279,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy;
   private final int continueLoadingCheckIntervalBytes;
+  @Nullable private final Supplier<ReleasableExecutor> downloadExecutorSupplier;
+  @Nullable private final SeekIndexStore seekIndexStore;
   private boolean timelineIsPlaceholder;
   private long timelineDurationUs;
   private boolean timelineIsSeekable;
@@ -248,13 +296,17 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       ProgressiveMediaExtractor.Factory progressiveMediaExtractorFactory,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable Supplier<ReleasableExecutor> downloadExecutorSupplier,
+      @Nullable SeekIndexStore seekIndexStore) {
     this.mediaItem = mediaItem;
     this.dataSourceFactory = dataSourceFactory;
     this.progressiveMediaExtractorFactory = progressiveMediaExtractorFactory;
     this.drmSessionManager = drmSessionManager;
     this.loadableLoadErrorHandlingPolicy = loadableLoadErrorHandlingPolicy;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.downloadExecutorSupplier = downloadExecutorSupplier;
+    this.seekIndexStore = seekIndexStore;
     this.timelineIsPlaceholder = true;
     this.timelineDurationUs = C.TIME_UNSET;
   }
@@ -312,7 +364,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
         allocator,
         localConfiguration.customCacheKey,
         continueLoadingCheckIntervalBytes,
-        Util.msToUs(localConfiguration.imageDurationMs));
+        Util.msToUs(localConfiguration.imageDurationMs),
+        downloadExecutorSupplier != null ? downloadExecutorSupplier.get() : null,
+        seekIndexStore);
   }
 
   @Override
@@ -40,10 +40,16 @@ import java.util.Arrays;
 
   private static final int INITIAL_SCRATCH_SIZE = 32;
 
+  /** The maximum size of the array used to stage data written to direct buffer allocations. */
+  private static final int MAX_WRITE_SCRATCH_SIZE = 16 * 1024;
+
   private final Allocator allocator;
   private final int allocationLength;
   private final ParsableByteArray scratch;
 
+  // Lazily created, and accessed only by the loading thread.
+  @Nullable private byte[] writeScratch;
+
   // References into the linked list of allocations.
   private AllocationNode firstAllocationNode;
   private AllocationNode readAllocationNode;
@@ -174,11 +180,23 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+    int bytesAppended;
+    if (writeBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      // DataReader only reads into arrays, so stage the data before copying it to the buffer.
+      byte[] writeScratch = getWriteScratch();
+      bytesAppended = input.read(writeScratch, /* offset= */ 0, min(length, writeScratch.length));
+      if (bytesAppended != C.RESULT_END_OF_INPUT) {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(writeScratch, /* offset= */ 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -192,10 +210,16 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        buffer.readBytes(writeBuffer, bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -203,6 +227,13 @@ import java.util.Arrays;
 
   // Private methods.
 
+  private byte[] getWriteScratch() {
+    if (writeScratch == null) {
+      writeScratch = new byte[min(allocationLength, MAX_WRITE_SCRATCH_SIZE)];
+    }
+    return writeScratch;
+  }
+
   /**
    * Clears allocation nodes starting from {@code fromNode}.
    *
@@ -405,7 +436,16 @@ import java.util.Arrays;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
       Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        target.put(allocation.data, offset, toCopy);
+      } else {
+        readBuffer.clear();
+        readBuffer.position(offset);
+        readBuffer.limit(offset + toCopy);
+        target.put(readBuffer);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -431,12 +471,15 @@ import java.util.Arrays;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
       Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        System.arraycopy(allocation.data, offset, target, length - remaining, toCopy);
+      } else {
+        readBuffer.clear();
+        readBuffer.position(offset);
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -478,6 +521,18 @@ import java.util.Arrays;
      */
     @Nullable public AllocationNode next;
 
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used by the loading thread, or
+     * {@code null} if the allocation isn't backed by a buffer.
+     */
+    @Nullable public ByteBuffer writeBuffer;
+
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used by the consuming thread,
+     * or {@code null} if the allocation isn't backed by a buffer.
+     */
+    @Nullable public ByteBuffer readBuffer;
+
     /**
      * @param startPosition See {@link #startPosition}.
      * @param allocationLength The length of the {@link Allocation} with which this node will be
@@ -508,11 +563,16 @@ import java.util.Arrays;
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      if (allocation.buffer != null) {
+        // Each thread needs its own view, as they set the position independently.
+        writeBuffer = allocation.buffer.duplicate();
+        readBuffer = allocation.buffer.duplicate();
+      }
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} or {@link
+     * Allocation#buffer} that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -528,6 +588,8 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      writeBuffer = null;
+      readBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.SeekIndex;
+import java.io.IOException;
+
+/**
+ * Stores the {@link SeekIndex} of progressive streams, so that seek knowledge gathered whilst a
+ * stream is played can be reused when the same stream is played again.
+ *
+ * <p>Methods are called on the loading thread, and may be called concurrently for different
+ * streams.
+ */
+@UnstableApi
+public interface SeekIndexStore {
+
+  /**
+   * Returns the stored {@link SeekIndex} for a stream, or {@code null} if none is stored.
+   *
+   * @param key The key of the stream, which identifies the content of the stream.
+   * @return The stored {@link SeekIndex}, or {@code null}.
+   * @throws IOException If an error occurs loading the index.
+   */
+  @WorkerThread
+  @Nullable
+  SeekIndex get(String key) throws IOException;
+
+  /**
+   * Stores the {@link SeekIndex} for a stream, replacing any index already stored for it.
+   *
+   * @param key The key of the stream, which identifies the content of the stream.
+   * @param seekIndex The {@link SeekIndex} to store.
+   * @throws IOException If an error occurs storing the index.
+   */
+  @WorkerThread
+  void put(String key, SeekIndex seekIndex) throws IOException;
+}
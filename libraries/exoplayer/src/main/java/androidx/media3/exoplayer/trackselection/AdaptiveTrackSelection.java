@@ -29,6 +29,7 @@ import androidx.media3.common.util.Log;
 import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
 import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
 import androidx.media3.exoplayer.source.chunk.MediaChunk;
 import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
@@ -319,6 +320,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   private @C.SelectionReason int reason;
   private long lastBufferEvaluationMs;
   @Nullable private MediaChunk lastBufferEvaluationMediaChunk;
+  @Nullable private DataSpec latestChunkDataSpec;
   private long latestBitrateEstimate;
 
   /**
@@ -442,6 +444,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       MediaChunkIterator[] mediaChunkIterators) {
     long nowMs = clock.elapsedRealtime();
     long chunkDurationUs = getNextChunkDurationUs(mediaChunkIterators, queue);
+    updateLatestChunkDataSpec(queue);
 
     // Make initial selection
     if (reason == C.SELECTION_REASON_UNKNOWN) {
@@ -508,6 +511,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     }
     lastBufferEvaluationMs = nowMs;
     lastBufferEvaluationMediaChunk = queue.isEmpty() ? null : Iterables.getLast(queue);
+    updateLatestChunkDataSpec(queue);
 
     if (queue.isEmpty()) {
       return 0;
@@ -687,10 +691,27 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
             (fractionBetweenCheckpoints * (next.allocatedBandwidth - previous.allocatedBandwidth));
   }
 
+  private void updateLatestChunkDataSpec(List<? extends MediaChunk> queue) {
+    // Keep the previous value for an empty queue, as the next chunk is likely to be loaded from the
+    // same host.
+    if (!queue.isEmpty()) {
+      latestChunkDataSpec = Iterables.getLast(queue).dataSpec;
+    }
+  }
+
   private long getTotalAllocatableBandwidth(long chunkDurationUs) {
-    latestBitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    // Prefer the estimates for the host that chunks are loaded from, if the meter distinguishes
+    // between hosts.
+    @Nullable DataSpec latestChunkDataSpec = this.latestChunkDataSpec;
+    latestBitrateEstimate =
+        latestChunkDataSpec != null
+            ? bandwidthMeter.getBitrateEstimate(latestChunkDataSpec)
+            : bandwidthMeter.getBitrateEstimate();
     long cautiousBandwidthEstimate = (long) (latestBitrateEstimate * bandwidthFraction);
-    long timeToFirstByteEstimateUs = bandwidthMeter.getTimeToFirstByteEstimateUs();
+    long timeToFirstByteEstimateUs =
+        latestChunkDataSpec != null
+            ? bandwidthMeter.getTimeToFirstByteEstimateUs(latestChunkDataSpec)
+            : bandwidthMeter.getTimeToFirstByteEstimateUs();
     if (timeToFirstByteEstimateUs == C.TIME_UNSET || chunkDurationUs == C.TIME_UNSET) {
       return (long) (cautiousBandwidthEstimate / playbackSpeed);
     }
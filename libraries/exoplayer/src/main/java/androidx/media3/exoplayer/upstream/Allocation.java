@@ -15,10 +15,13 @@
  */
 package androidx.media3.exoplayer.upstream;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
 
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  *
  * <p>The allocation's length is obtained by calling {@link
  * Allocator#getIndividualAllocationLength()} on the {@link Allocator} from which it was obtained.
@@ -29,10 +32,21 @@ public final class Allocation {
   /**
    * The array containing the allocated space. The allocated space might not be at the start of the
    * array, and so {@link #offset} must be used when indexing into it.
+   *
+   * <p>Empty if the allocated space is in {@link #buffer}.
    */
   public final byte[] data;
 
-  /** The offset of the allocated space in {@link #data}. */
+  /**
+   * The direct buffer containing the allocated space, or null if the allocated space is in {@link
+   * #data}. The allocated space might not be at the start of the buffer, and so {@link #offset}
+   * must be used when indexing into it. The buffer's position and limit must not be modified, as it
+   * may be shared with other allocations, so callers should operate on a {@link
+   * ByteBuffer#duplicate() duplicate}.
+   */
+  @Nullable public final ByteBuffer buffer;
+
+  /** The offset of the allocated space in {@link #data} or {@link #buffer}. */
   public final int offset;
 
   /**
@@ -42,5 +56,16 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    buffer = null;
+  }
+
+  /**
+   * @param buffer The direct buffer containing the allocated space.
+   * @param offset The offset of the allocated space in {@code buffer}.
+   */
+  public Allocation(ByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.offset = offset;
+    data = Util.EMPTY_BYTE_ARRAY;
   }
 }
@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -114,6 +115,31 @@ public interface BandwidthMeter {
     return C.TIME_UNSET;
   }
 
+  /**
+   * Returns the estimated bitrate for a transfer of the given {@link DataSpec}.
+   *
+   * <p>Implementations may keep separate estimates for different hosts, for example when media and
+   * ads are served from different CDNs. The default implementation returns {@link
+   * #getBitrateEstimate()}.
+   *
+   * @param dataSpec The {@link DataSpec} of the transfer, typically the most recently loaded one.
+   */
+  default long getBitrateEstimate(DataSpec dataSpec) {
+    return getBitrateEstimate();
+  }
+
+  /**
+   * Returns the estimated time to first byte for a transfer of the given {@link DataSpec}, in
+   * microseconds, or {@link C#TIME_UNSET} if no estimate is available.
+   *
+   * <p>The default implementation returns {@link #getTimeToFirstByteEstimateUs()}.
+   *
+   * @param dataSpec The {@link DataSpec} of the transfer, typically the most recently loaded one.
+   */
+  default long getTimeToFirstByteEstimateUs(DataSpec dataSpec) {
+    return getTimeToFirstByteEstimateUs();
+  }
+
   /**
    * Returns the {@link TransferListener} that this instance uses to gather bandwidth information
    * from data transfers. May be null if the implementation does not listen to data transfers.
@@ -17,6 +17,7 @@ package androidx.media3.exoplayer.upstream;
 
 import static java.lang.Math.max;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.NullableType;
@@ -24,15 +25,23 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import java.util.Arrays;
 
-/** Default implementation of {@link Allocator}. */
+/**
+ * Default implementation of {@link Allocator}.
+ *
+ * <p>By default all methods synchronize on the allocator. An instance created with {@code
+ * useLockFreePool} set to {@code true} instead keeps available allocations in a lock-free queue,
+ * so that loading threads allocating and the playback thread releasing don't contend for a lock on
+ * each allocation.
+ */
 @UnstableApi
-public final class DefaultAllocator implements Allocator {
+public final class DefaultAllocator implements TargetBufferSizeAllocator {
 
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
   @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final LockFreeAllocationPool lockFreeAllocationPool;
 
   private int targetBufferSize;
   private int allocatedCount;
@@ -64,6 +73,31 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(
       boolean trimOnReset, int individualAllocationSize, int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* useLockFreePool= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances. If set to false, trimming can
+   *     be forced by calling {@link #setTargetBufferSize(int)} manually when required.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useLockFreePool Whether to keep available allocations in a lock-free pool, rather than
+   *     synchronizing on the allocator.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useLockFreePool) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
@@ -79,14 +113,27 @@ public final class DefaultAllocator implements Allocator {
     } else {
       initialAllocationBlock = null;
     }
+    if (useLockFreePool) {
+      lockFreeAllocationPool =
+          new LockFreeAllocationPool(
+              individualAllocationSize,
+              initialAllocationBlock,
+              Arrays.copyOf(availableAllocations, initialAllocationCount, Allocation[].class));
+      availableAllocations = new Allocation[0];
+      availableCount = 0;
+    } else {
+      lockFreeAllocationPool = null;
+    }
   }
 
+  @Override
   public synchronized void reset() {
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
   }
 
+  @Override
   public synchronized void setTargetBufferSize(int targetBufferSize) {
     boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
     this.targetBufferSize = targetBufferSize;
@@ -96,34 +143,63 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-      if (allocatedCount > availableAllocations.length) {
-        // Make availableAllocations be large enough to contain all allocations made by this
-        // allocator so that release() does not need to grow the availableAllocations array. See
-        // [Internal ref: b/209801945].
-        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
-      }
+  public Allocation allocate() {
+    if (lockFreeAllocationPool != null) {
+      return lockFreeAllocationPool.allocate();
     }
-    return allocation;
+    return allocateSynchronized();
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    if (lockFreeAllocationPool != null) {
+      lockFreeAllocationPool.release(allocation);
+      return;
+    }
+    releaseSynchronized(allocation);
+  }
+
+  @Override
+  public void release(@Nullable AllocationNode allocationNode) {
+    if (lockFreeAllocationPool != null) {
+      lockFreeAllocationPool.release(allocationNode);
+      return;
+    }
+    releaseSynchronized(allocationNode);
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
+  public synchronized void trim() {
+    if (lockFreeAllocationPool != null) {
+      lockFreeAllocationPool.trim(targetBufferSize);
+      return;
+    }
+    trimSynchronized();
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    if (lockFreeAllocationPool != null) {
+      return lockFreeAllocationPool.getAllocatedCount() * individualAllocationSize;
+    }
+    synchronized (this) {
+      return allocatedCount * individualAllocationSize;
+    }
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private synchronized void releaseSynchronized(Allocation allocation) {
     availableAllocations[availableCount++] = allocation;
     allocatedCount--;
     // Wake up threads waiting for the allocated size to drop.
     notifyAll();
   }
 
-  @Override
-  public synchronized void release(@Nullable AllocationNode allocationNode) {
+  private synchronized void releaseSynchronized(@Nullable AllocationNode allocationNode) {
     while (allocationNode != null) {
       availableAllocations[availableCount++] = allocationNode.getAllocation();
       allocatedCount--;
@@ -133,8 +209,26 @@ public final class DefaultAllocator implements Allocator {
     notifyAll();
   }
 
-  @Override
-  public synchronized void trim() {
+  private synchronized Allocation allocateSynchronized() {
+    allocatedCount++;
+    Allocation allocation;
+    if (availableCount > 0) {
+      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
+      availableAllocations[availableCount] = null;
+    } else {
+      allocation = new Allocation(new byte[individualAllocationSize], 0);
+      if (allocatedCount > availableAllocations.length) {
+        // Make availableAllocations be large enough to contain all allocations made by this
+        // allocator so that release() does not need to grow the availableAllocations array. See
+        // [Internal ref: b/209801945].
+        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
+      }
+    }
+    return allocation;
+  }
+
+  @GuardedBy("this")
+  private void trimSynchronized() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
     int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
     if (targetAvailableCount >= availableCount) {
@@ -174,14 +268,4 @@ public final class DefaultAllocator implements Allocator {
     Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
     availableCount = targetAvailableCount;
   }
-
-  @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
-  }
-
-  @Override
-  public int getIndividualAllocationLength() {
-    return individualAllocationSize;
-  }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * An {@link Allocator} whose {@link Allocation allocations} are backed by direct {@link
+ * ByteBuffer} memory rather than by Java heap arrays.
+ *
+ * <p>Memory is allocated in blocks, each containing a fixed number of allocations. Blocks are
+ * only freed by {@link #trim()} once none of their allocations are in use. The block of an
+ * allocation is identified by its {@link Allocation#buffer}, so no per-allocation bookkeeping is
+ * needed when allocating and releasing.
+ *
+ * <p>The allocations have an empty {@link Allocation#data} array, and so can only be used by
+ * components that support {@link Allocation#buffer}, such as {@link
+ * androidx.media3.exoplayer.source.SampleQueue}.
+ */
+@UnstableApi
+public final class DirectBufferAllocator implements TargetBufferSizeAllocator {
+
+  /** The default number of allocations in each block of memory. */
+  public static final int DEFAULT_ALLOCATIONS_PER_BLOCK = 32;
+
+  private final boolean trimOnReset;
+  private final int individualAllocationSize;
+  private final int allocationsPerBlock;
+  private final ArrayList<ByteBuffer> blocks;
+
+  private ArrayList<Allocation> availableAllocations;
+  private int targetBufferSize;
+  private int allocatedCount;
+
+  /**
+   * Constructs an instance with {@link #DEFAULT_ALLOCATIONS_PER_BLOCK} allocations per block.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances. If set to false, trimming can
+   *     be forced by calling {@link #setTargetBufferSize(int)} manually when required.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public DirectBufferAllocator(boolean trimOnReset, int individualAllocationSize) {
+    this(trimOnReset, individualAllocationSize, DEFAULT_ALLOCATIONS_PER_BLOCK);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances. If set to false, trimming can
+   *     be forced by calling {@link #setTargetBufferSize(int)} manually when required.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param allocationsPerBlock The number of allocations in each block of direct memory.
+   */
+  public DirectBufferAllocator(
+      boolean trimOnReset, int individualAllocationSize, int allocationsPerBlock) {
+    checkArgument(individualAllocationSize > 0);
+    checkArgument(allocationsPerBlock > 0);
+    this.trimOnReset = trimOnReset;
+    this.individualAllocationSize = individualAllocationSize;
+    this.allocationsPerBlock = allocationsPerBlock;
+    blocks = new ArrayList<>();
+    availableAllocations = new ArrayList<>();
+  }
+
+  @Override
+  public synchronized void reset() {
+    if (trimOnReset) {
+      setTargetBufferSize(0);
+    }
+  }
+
+  @Override
+  public synchronized void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+    this.targetBufferSize = targetBufferSize;
+    if (targetBufferSizeReduced) {
+      trim();
+    }
+  }
+
+  /** Returns the number of bytes of direct memory held by the allocator. */
+  public synchronized long getTotalBytesReserved() {
+    return (long) blocks.size() * allocationsPerBlock * individualAllocationSize;
+  }
+
+  @Override
+  public synchronized Allocation allocate() {
+    if (availableAllocations.isEmpty()) {
+      addBlock();
+    }
+    allocatedCount++;
+    return availableAllocations.remove(availableAllocations.size() - 1);
+  }
+
+  @Override
+  public synchronized void release(Allocation allocation) {
+    releaseInternal(allocation);
+  }
+
+  @Override
+  public synchronized void release(@Nullable AllocationNode allocationNode) {
+    while (allocationNode != null) {
+      releaseInternal(allocationNode.getAllocation());
+      allocationNode = allocationNode.next();
+    }
+  }
+
+  @Override
+  public synchronized void trim() {
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
+    int availableCount = availableAllocations.size();
+    if (targetAvailableCount >= availableCount) {
+      // We're already at or below the target.
+      return;
+    }
+    // Only blocks that have no allocations in use can be freed.
+    int[] blockAvailableCounts = new int[blocks.size()];
+    for (int i = 0; i < availableAllocations.size(); i++) {
+      blockAvailableCounts[getBlockIndex(availableAllocations.get(i))]++;
+    }
+    ArrayList<ByteBuffer> freedBlocks = new ArrayList<>();
+    for (int i = blocks.size() - 1; i >= 0 && availableCount > targetAvailableCount; i--) {
+      if (blockAvailableCounts[i] == allocationsPerBlock) {
+        freedBlocks.add(blocks.remove(i));
+        availableCount -= allocationsPerBlock;
+      }
+    }
+    if (freedBlocks.isEmpty()) {
+      return;
+    }
+    ArrayList<Allocation> remainingAllocations = new ArrayList<>(availableCount);
+    for (int i = 0; i < availableAllocations.size(); i++) {
+      Allocation allocation = availableAllocations.get(i);
+      if (!containsBlock(freedBlocks, checkNotNull(allocation.buffer))) {
+        remainingAllocations.add(allocation);
+      }
+    }
+    availableAllocations = remainingAllocations;
+  }
+
+  @Override
+  public synchronized int getTotalBytesAllocated() {
+    return allocatedCount * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private void releaseInternal(Allocation allocation) {
+    availableAllocations.add(allocation);
+    allocatedCount--;
+  }
+
+  private void addBlock() {
+    ByteBuffer blockBuffer =
+        ByteBuffer.allocateDirect(allocationsPerBlock * individualAllocationSize);
+    blocks.add(blockBuffer);
+    // Add allocations in reverse order, so that they're allocated in memory order.
+    for (int i = allocationsPerBlock - 1; i >= 0; i--) {
+      availableAllocations.add(new Allocation(blockBuffer, i * individualAllocationSize));
+    }
+  }
+
+  private int getBlockIndex(Allocation allocation) {
+    ByteBuffer blockBuffer = checkNotNull(allocation.buffer);
+    for (int i = 0; i < blocks.size(); i++) {
+      // Compare by identity, as ByteBuffer.equals compares the remaining content.
+      if (blocks.get(i) == blockBuffer) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException();
+  }
+
+  private static boolean containsBlock(ArrayList<ByteBuffer> blocks, ByteBuffer blockBuffer) {
+    for (int i = 0; i < blocks.size(); i++) {
+      if (blocks.get(i) == blockBuffer) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -31,12 +31,14 @@ import androidx.media3.common.util.Log;
 import androidx.media3.common.util.TraceUtil;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Manages the background loading of {@link Loadable}s. */
@@ -204,7 +206,7 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  private final ReleasableExecutor downloadExecutor;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
@@ -214,8 +216,24 @@ public final class Loader implements LoaderErrorThrower {
    *     component using the loader.
    */
   public Loader(String threadNameSuffix) {
-    this.downloadExecutorService =
-        Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix);
+    this(
+        ReleasableExecutor.from(
+            Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix),
+            ExecutorService::shutdown));
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * <p>The executor must run the tasks passed to it one at a time, in the order in which they were
+   * passed. It may be backed by a thread pool that is shared with other loaders, for example one
+   * provided by {@link SharedLoaderExecutor#createLoaderExecutor()}.
+   *
+   * @param downloadExecutor A {@link ReleasableExecutor} to run the loads on. The executor is
+   *     released when the loader is {@linkplain #release() released}.
+   */
+  public Loader(ReleasableExecutor downloadExecutor) {
+    this.downloadExecutor = downloadExecutor;
   }
 
   /**
@@ -297,9 +315,16 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      ReleaseTask releaseTask = new ReleaseTask(callback);
+      try {
+        downloadExecutor.execute(releaseTask);
+      } catch (RejectedExecutionException e) {
+        // The executor can no longer run tasks, for example because it's backed by a shared
+        // executor that has already been released. Call the callback on this thread instead.
+        releaseTask.run();
+      }
     }
-    downloadExecutorService.shutdown();
+    downloadExecutor.release();
   }
 
   // LoaderErrorThrower implementation.
@@ -516,7 +541,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.Util;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of {@link Allocation allocations} for {@link DefaultAllocator} that doesn't lock.
+ *
+ * <p>Available allocations are kept in a lock-free queue, and the allocated and available counts
+ * are atomic, so that allocations can be made and released on different threads without
+ * contention.
+ */
+/* package */ final class LockFreeAllocationPool {
+
+  private final int individualAllocationSize;
+  @Nullable private final byte[] initialAllocationBlock;
+  private final AtomicInteger allocatedCount;
+  private final AtomicInteger availableCount;
+  private final ConcurrentLinkedQueue<Allocation> availableAllocations;
+
+  /**
+   * Creates an instance.
+   *
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationBlock A block backing allocations created up front, or null.
+   * @param initialAllocations The allocations created up front.
+   */
+  public LockFreeAllocationPool(
+      int individualAllocationSize,
+      @Nullable byte[] initialAllocationBlock,
+      Allocation[] initialAllocations) {
+    this.individualAllocationSize = individualAllocationSize;
+    this.initialAllocationBlock = initialAllocationBlock;
+    allocatedCount = new AtomicInteger();
+    availableCount = new AtomicInteger(initialAllocations.length);
+    availableAllocations = new ConcurrentLinkedQueue<>();
+    for (Allocation allocation : initialAllocations) {
+      availableAllocations.add(allocation);
+    }
+  }
+
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    @Nullable Allocation allocation = availableAllocations.poll();
+    if (allocation == null) {
+      return new Allocation(new byte[individualAllocationSize], 0);
+    }
+    availableCount.decrementAndGet();
+    return allocation;
+  }
+
+  public void release(Allocation allocation) {
+    availableAllocations.add(allocation);
+    availableCount.incrementAndGet();
+    allocatedCount.decrementAndGet();
+  }
+
+  public void release(@Nullable Allocator.AllocationNode allocationNode) {
+    int releasedCount = 0;
+    while (allocationNode != null) {
+      availableAllocations.add(allocationNode.getAllocation());
+      releasedCount++;
+      allocationNode = allocationNode.next();
+    }
+    availableCount.addAndGet(releasedCount);
+    allocatedCount.addAndGet(-releasedCount);
+  }
+
+  /**
+   * Discards available allocations beyond those needed to reach the target buffer size.
+   * Allocations backed by the initial allocation block are never discarded.
+   */
+  public void trim(int targetBufferSize) {
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount.get());
+    int excessCount = availableCount.get() - targetAvailableCount;
+    @Nullable ArrayList<Allocation> retainedAllocations = null;
+    for (int i = 0; i < excessCount; i++) {
+      @Nullable Allocation allocation = availableAllocations.poll();
+      if (allocation == null) {
+        break;
+      }
+      availableCount.decrementAndGet();
+      if (allocation.data == initialAllocationBlock) {
+        if (retainedAllocations == null) {
+          retainedAllocations = new ArrayList<>();
+        }
+        retainedAllocations.add(allocation);
+      }
+    }
+    if (retainedAllocations != null) {
+      availableAllocations.addAll(retainedAllocations);
+      availableCount.addAndGet(retainedAllocations.size());
+    }
+  }
+
+  public int getAllocatedCount() {
+    return allocatedCount.get();
+  }
+}
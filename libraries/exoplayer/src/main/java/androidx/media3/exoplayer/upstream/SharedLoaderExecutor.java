@@ -0,0 +1,218 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor shared by multiple {@link Loader loaders}, so that threads are reused between loads
+ * rather than each loader creating its own thread.
+ *
+ * <p>Each loader obtains its own {@link ReleasableExecutor} from {@link #createLoaderExecutor()}.
+ * The tasks of a single loader run one at a time and in order, as they would on a dedicated
+ * thread.
+ *
+ * <p>This executor doesn't limit the number of threads. Loads such as those of {@link
+ * androidx.media3.exoplayer.source.ProgressiveMediaSource} block their thread while the player's
+ * buffer is full, so a load can't wait for a thread that another load is using. A task is
+ * therefore run on an idle thread if there is one, and on a new thread otherwise, so there are as
+ * many threads as loads that run at the same time. Threads that have been idle for {@link
+ * #DEFAULT_KEEP_ALIVE_TIME_MS} are terminated.
+ */
+@UnstableApi
+public final class SharedLoaderExecutor {
+
+  /** The default duration for which idle threads are kept alive. */
+  public static final long DEFAULT_KEEP_ALIVE_TIME_MS = 10_000;
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:SharedLoader:";
+
+  private final ExecutorService executorService;
+  private final AtomicInteger createdThreadCount;
+
+  /**
+   * Creates an instance backed by a pool of platform threads.
+   *
+   * @param threadNameSuffix A name suffix for the pool's threads.
+   * @return The shared executor.
+   */
+  public static SharedLoaderExecutor create(String threadNameSuffix) {
+    AtomicInteger createdThreadCount = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable ->
+            new Thread(
+                runnable,
+                THREAD_NAME_PREFIX + threadNameSuffix + ":" + createdThreadCount.incrementAndGet());
+    ThreadPoolExecutor threadPoolExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ 0,
+            /* maximumPoolSize= */ Integer.MAX_VALUE,
+            DEFAULT_KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            threadFactory);
+    return new SharedLoaderExecutor(threadPoolExecutor, createdThreadCount);
+  }
+
+  /**
+   * Creates an instance that runs each task on a new virtual thread, if the runtime supports them.
+   *
+   * <p>Virtual threads are cheap to create and don't occupy a platform thread while blocked.
+   *
+   * @return The shared executor, or null if the runtime doesn't support virtual threads.
+   */
+  @Nullable
+  public static SharedLoaderExecutor createForVirtualThreads() {
+    ExecutorService executorService;
+    try {
+      executorService =
+          (ExecutorService)
+              Executors.class
+                  .getMethod("newVirtualThreadPerTaskExecutor")
+                  .invoke(/* obj= */ null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+    return new SharedLoaderExecutor(executorService, new AtomicInteger());
+  }
+
+  private SharedLoaderExecutor(ExecutorService executorService, AtomicInteger createdThreadCount) {
+    this.executorService = executorService;
+    this.createdThreadCount = createdThreadCount;
+  }
+
+  /**
+   * Returns a new {@link ReleasableExecutor} for a single {@link Loader}.
+   *
+   * <p>Releasing the returned executor doesn't release this shared executor.
+   */
+  public ReleasableExecutor createLoaderExecutor() {
+    return new SerialExecutor();
+  }
+
+  /** Returns the number of platform threads that have been created by this executor. */
+  public int getCreatedThreadCount() {
+    return createdThreadCount.get();
+  }
+
+  /**
+   * Releases the shared executor. Tasks that have already been passed to a loader executor may
+   * still be run, but no further tasks may be passed.
+   */
+  public void release() {
+    executorService.shutdown();
+  }
+
+  /** Runs the tasks of a single loader on the shared executor, one at a time. */
+  private final class SerialExecutor implements ReleasableExecutor {
+
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @GuardedBy("this")
+    private boolean running;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    public SerialExecutor() {
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      if (released) {
+        throw new RejectedExecutionException();
+      }
+      pendingTasks.add(command);
+      if (!running) {
+        try {
+          scheduleNextTask();
+        } catch (RejectedExecutionException e) {
+          running = false;
+          pendingTasks.clear();
+          throw e;
+        }
+      }
+    }
+
+    @Override
+    public synchronized void release() {
+      released = true;
+    }
+
+    @GuardedBy("this")
+    private void scheduleNextTask() {
+      @Nullable Runnable task = pendingTasks.peek();
+      running = task != null;
+      if (task == null) {
+        return;
+      }
+      executorService.execute(() -> runTasks(task));
+      pendingTasks.remove();
+    }
+
+    /**
+     * Runs {@code firstTask}, followed by any tasks passed in the meantime, on the calling thread.
+     * Running them on the same thread rather than passing each to the shared executor means that a
+     * loader doesn't need another thread whilst its thread is finishing a task.
+     */
+    private void runTasks(Runnable firstTask) {
+      @Nullable Runnable task = firstTask;
+      try {
+        while (task != null) {
+          // Don't let an interrupt of a canceled task affect the next one, as a thread pool would.
+          Thread.interrupted();
+          task.run();
+          task = pollNextTask();
+        }
+      } finally {
+        if (task != null) {
+          onTaskFailed();
+        }
+      }
+    }
+
+    @Nullable
+    private synchronized Runnable pollNextTask() {
+      @Nullable Runnable task = pendingTasks.poll();
+      running = task != null;
+      return task;
+    }
+
+    private synchronized void onTaskFailed() {
+      // The task threw, which terminates the thread. Run the remaining tasks on another thread.
+      try {
+        scheduleNextTask();
+      } catch (RejectedExecutionException e) {
+        running = false;
+        pendingTasks.clear();
+      }
+    }
+  }
+}
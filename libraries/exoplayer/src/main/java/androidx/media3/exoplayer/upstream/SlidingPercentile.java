@@ -16,9 +16,7 @@
 package androidx.media3.exoplayer.upstream;
 
 import androidx.media3.common.util.UnstableApi;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum weight is
@@ -30,6 +28,9 @@ import java.util.Comparator;
  * rate observations. This is an alternative to sliding mean and exponential averaging which suffer
  * from susceptibility to outliers and slow adaptation to step functions.
  *
+ * <p>Samples are stored in primitive arrays, so adding samples and computing percentiles doesn't
+ * allocate once the arrays have grown to fit the window.
+ *
  * <p>See the following Wikipedia articles:
  *
  * <ul>
@@ -40,42 +41,35 @@ import java.util.Comparator;
 @UnstableApi
 public class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = (a, b) -> a.index - b.index;
-  private static final Comparator<Sample> VALUE_COMPARATOR =
-      (a, b) -> Float.compare(a.value, b.value);
-
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
-
-  private static final int MAX_RECYCLED_SAMPLES = 5;
+  private static final int INITIAL_CAPACITY = 16;
 
   private final int maxWeight;
-  private final ArrayList<Sample> samples;
 
-  private final Sample[] recycledSamples;
+  // The samples, in a circular buffer in the order in which they were added.
+  private int[] weights;
+  private float[] values;
+  private int oldestSlot;
+  private int sampleCount;
+
+  // The slots of the samples in the circular buffer, ordered by value.
+  private int[] slotsByValue;
 
-  private int currentSortOrder;
-  private int nextSampleIndex;
   private int totalWeight;
-  private int recycledSampleCount;
 
   /**
    * @param maxWeight The maximum weight.
    */
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
-    recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    weights = new int[INITIAL_CAPACITY];
+    values = new float[INITIAL_CAPACITY];
+    slotsByValue = new int[INITIAL_CAPACITY];
   }
 
   /** Resets the sliding percentile. */
   public void reset() {
-    samples.clear();
-    currentSortOrder = SORT_ORDER_NONE;
-    nextSampleIndex = 0;
+    oldestSlot = 0;
+    sampleCount = 0;
     totalWeight = 0;
   }
 
@@ -86,27 +80,32 @@ public class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
-    Sample newSample =
-        recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount] : new Sample();
-    newSample.index = nextSampleIndex++;
-    newSample.weight = weight;
-    newSample.value = value;
-    samples.add(newSample);
+    if (sampleCount == weights.length) {
+      grow();
+    }
+    int slot = (oldestSlot + sampleCount) % weights.length;
+    weights[slot] = weight;
+    values[slot] = value;
+    // Insert after any samples with an equal value, as a stable sort would.
+    int insertionIndex = findInsertionIndex(value);
+    System.arraycopy(
+        slotsByValue,
+        insertionIndex,
+        slotsByValue,
+        insertionIndex + 1,
+        sampleCount - insertionIndex);
+    slotsByValue[insertionIndex] = slot;
+    sampleCount++;
     totalWeight += weight;
 
     while (totalWeight > maxWeight) {
       int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
-      if (oldestSample.weight <= excessWeight) {
-        totalWeight -= oldestSample.weight;
-        samples.remove(0);
-        if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
-          recycledSamples[recycledSampleCount++] = oldestSample;
-        }
+      int oldestWeight = weights[oldestSlot];
+      if (oldestWeight <= excessWeight) {
+        totalWeight -= oldestWeight;
+        removeOldestSample();
       } else {
-        oldestSample.weight -= excessWeight;
+        weights[oldestSlot] = oldestWeight - excessWeight;
         totalWeight -= excessWeight;
       }
     }
@@ -119,40 +118,73 @@ public class SlidingPercentile {
    * @return The requested percentile value or {@link Float#NaN} if no samples have been added.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
     float desiredWeight = percentile * totalWeight;
     int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
+    for (int i = 0; i < sampleCount; i++) {
+      int slot = slotsByValue[i];
+      accumulatedWeight += weights[slot];
       if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+        return values[slot];
       }
     }
     // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
+    return sampleCount == 0 ? Float.NaN : values[slotsByValue[sampleCount - 1]];
   }
 
-  /** Sorts the samples by index. */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  /** Returns the index in {@link #slotsByValue} after the samples valued at most {@code value}. */
+  private int findInsertionIndex(float value) {
+    int low = 0;
+    int high = sampleCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Float.compare(values[slotsByValue[mid]], value) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
     }
+    return low;
   }
 
-  /** Sorts the samples by value. */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private void removeOldestSample() {
+    float value = values[oldestSlot];
+    // Find the first sample with an equal value, then the oldest sample amongst those.
+    int low = 0;
+    int high = sampleCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Float.compare(values[slotsByValue[mid]], value) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
     }
+    int index = low;
+    while (slotsByValue[index] != oldestSlot) {
+      index++;
+    }
+    System.arraycopy(slotsByValue, index + 1, slotsByValue, index, sampleCount - index - 1);
+    sampleCount--;
+    oldestSlot = (oldestSlot + 1) % weights.length;
   }
 
-  private static class Sample {
-
-    public int index;
-    public int weight;
-    public float value;
+  /** Doubles the capacity, moving the oldest sample to slot zero. */
+  private void grow() {
+    int capacity = weights.length;
+    int newCapacity = capacity * 2;
+    int[] newWeights = new int[newCapacity];
+    float[] newValues = new float[newCapacity];
+    int headLength = capacity - oldestSlot;
+    System.arraycopy(weights, oldestSlot, newWeights, 0, headLength);
+    System.arraycopy(weights, 0, newWeights, headLength, oldestSlot);
+    System.arraycopy(values, oldestSlot, newValues, 0, headLength);
+    System.arraycopy(values, 0, newValues, headLength, oldestSlot);
+    for (int i = 0; i < sampleCount; i++) {
+      slotsByValue[i] = (slotsByValue[i] - oldestSlot + capacity) % capacity;
+    }
+    weights = newWeights;
+    values = newValues;
+    slotsByValue = Arrays.copyOf(slotsByValue, newCapacity);
+    oldestSlot = 0;
   }
 }
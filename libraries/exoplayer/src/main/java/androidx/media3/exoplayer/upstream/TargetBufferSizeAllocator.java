@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * An {@link Allocator} that retains available allocations up to a target buffer size, so that a
+ * {@link androidx.media3.exoplayer.LoadControl} can bound the memory it holds.
+ */
+@UnstableApi
+public interface TargetBufferSizeAllocator extends Allocator {
+
+  /**
+   * Resets the allocator, freeing available memory if the allocator was configured to do so.
+   * Called when the allocator is no longer used by any player.
+   */
+  void reset();
+
+  /**
+   * Sets the target buffer size, in bytes. Available allocations beyond the target are freed when
+   * the target is reduced, and by subsequent calls to {@link #trim()}.
+   *
+   * @param targetBufferSize The target buffer size, in bytes.
+   */
+  void setTargetBufferSize(int targetBufferSize);
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream.experimental;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import android.content.Context;
+import android.os.Handler;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.NetworkTypeObserver;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import androidx.media3.exoplayer.upstream.TimeToFirstByteEstimator;
+import com.google.common.base.Supplier;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An experimental {@link BandwidthMeter} that additionally keeps separate bandwidth and time to
+ * first byte estimates for each host.
+ *
+ * <p>When media and ads are served from different CDNs, a single estimate across all transfers
+ * mixes their throughput. This meter exposes the estimates for the host of a given {@link
+ * DataSpec} through {@link #getBitrateEstimate(DataSpec)} and {@link
+ * #getTimeToFirstByteEstimateUs(DataSpec)}, falling back to the estimates of a combined meter
+ * while there's no estimate for the host yet.
+ *
+ * <p>The number of hosts for which estimates are kept is bounded. When the limit is exceeded, the
+ * estimates of the least recently used host without ongoing transfers are discarded.
+ */
+@UnstableApi
+public final class PerHostBandwidthMeter implements BandwidthMeter, TransferListener {
+
+  /** Returns the key of a transfer, for which estimates are kept separately. */
+  public interface KeyFunction {
+
+    /**
+     * Returns the key for a transfer, or null if the transfer should only contribute to the
+     * combined estimate.
+     *
+     * @param dataSpec The {@link DataSpec} of the transfer.
+     */
+    @Nullable
+    String getKey(DataSpec dataSpec);
+  }
+
+  /** The default maximum number of hosts for which estimates are kept. */
+  public static final int DEFAULT_MAX_HOST_COUNT = 16;
+
+  /** A {@link KeyFunction} returning the host of the {@link DataSpec#uri}. */
+  public static final KeyFunction HOST_KEY_FUNCTION = dataSpec -> dataSpec.uri.getHost();
+
+  /** Builder for a per-host bandwidth meter. */
+  public static final class Builder {
+
+    private final Context context;
+
+    @Nullable private BandwidthMeter combinedBandwidthMeter;
+    private Supplier<BandwidthEstimator> bandwidthEstimatorSupplier;
+    private Supplier<TimeToFirstByteEstimator> timeToFirstByteEstimatorSupplier;
+    private KeyFunction keyFunction;
+    private int maxHostCount;
+
+    /**
+     * Creates a builder with default parameters.
+     *
+     * @param context A context.
+     */
+    public Builder(Context context) {
+      this.context = context.getApplicationContext();
+      bandwidthEstimatorSupplier =
+          () -> new SplitParallelSampleBandwidthEstimator.Builder().build();
+      timeToFirstByteEstimatorSupplier =
+          () ->
+              new PercentileTimeToFirstByteEstimator(
+                  ExperimentalBandwidthMeter.DEFAULT_TIME_TO_FIRST_BYTE_SAMPLES,
+                  ExperimentalBandwidthMeter.DEFAULT_TIME_TO_FIRST_BYTE_PERCENTILE);
+      keyFunction = HOST_KEY_FUNCTION;
+      maxHostCount = DEFAULT_MAX_HOST_COUNT;
+    }
+
+    /**
+     * Sets the {@link BandwidthMeter} providing the combined estimates across all hosts, which are
+     * used when there's no estimate for a host. Its {@link BandwidthMeter#getTransferListener()
+     * transfer listener} is notified of all transfers.
+     *
+     * <p>By default, an {@link ExperimentalBandwidthMeter} with default parameters is used.
+     *
+     * @param combinedBandwidthMeter The combined {@link BandwidthMeter}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setCombinedBandwidthMeter(BandwidthMeter combinedBandwidthMeter) {
+      this.combinedBandwidthMeter = combinedBandwidthMeter;
+      return this;
+    }
+
+    /**
+     * Sets a supplier for the {@link BandwidthEstimator} of each host. By default, each host uses a
+     * {@link SplitParallelSampleBandwidthEstimator} with default parameters.
+     *
+     * @param bandwidthEstimatorSupplier A supplier returning a new {@link BandwidthEstimator} for
+     *     each call.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBandwidthEstimatorSupplier(
+        Supplier<BandwidthEstimator> bandwidthEstimatorSupplier) {
+      this.bandwidthEstimatorSupplier = bandwidthEstimatorSupplier;
+      return this;
+    }
+
+    /**
+     * Sets a supplier for the {@link TimeToFirstByteEstimator} of each host. By default, each host
+     * uses a {@link PercentileTimeToFirstByteEstimator} with the same parameters as {@link
+     * ExperimentalBandwidthMeter}.
+     *
+     * @param timeToFirstByteEstimatorSupplier A supplier returning a new {@link
+     *     TimeToFirstByteEstimator} for each call.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setTimeToFirstByteEstimatorSupplier(
+        Supplier<TimeToFirstByteEstimator> timeToFirstByteEstimatorSupplier) {
+      this.timeToFirstByteEstimatorSupplier = timeToFirstByteEstimatorSupplier;
+      return this;
+    }
+
+    /**
+     * Sets the {@link KeyFunction} determining which transfers share an estimate. The default is
+     * {@link #HOST_KEY_FUNCTION}.
+     *
+     * @param keyFunction The {@link KeyFunction}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setKeyFunction(KeyFunction keyFunction) {
+      this.keyFunction = keyFunction;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of hosts for which estimates are kept. The default is {@link
+     * #DEFAULT_MAX_HOST_COUNT}.
+     *
+     * @param maxHostCount The maximum number of hosts.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxHostCount(int maxHostCount) {
+      checkArgument(maxHostCount > 0);
+      this.maxHostCount = maxHostCount;
+      return this;
+    }
+
+    /**
+     * Builds the bandwidth meter.
+     *
+     * @return A bandwidth meter with the configured properties.
+     */
+    public PerHostBandwidthMeter build() {
+      return new PerHostBandwidthMeter(
+          context,
+          combinedBandwidthMeter != null
+              ? combinedBandwidthMeter
+              : new ExperimentalBandwidthMeter.Builder(context).build(),
+          bandwidthEstimatorSupplier,
+          timeToFirstByteEstimatorSupplier,
+          keyFunction,
+          maxHostCount);
+    }
+  }
+
+  private final BandwidthMeter combinedBandwidthMeter;
+  @Nullable private final TransferListener combinedTransferListener;
+  private final Supplier<BandwidthEstimator> bandwidthEstimatorSupplier;
+  private final Supplier<TimeToFirstByteEstimator> timeToFirstByteEstimatorSupplier;
+  private final KeyFunction keyFunction;
+  private final int maxHostCount;
+
+  @GuardedBy("this") // Used in TransferListener methods that are called on a background thread.
+  private final LinkedHashMap<String, HostEstimate> hostEstimates;
+
+  @GuardedBy("this")
+  private @C.NetworkType int networkType;
+
+  private PerHostBandwidthMeter(
+      Context context,
+      BandwidthMeter combinedBandwidthMeter,
+      Supplier<BandwidthEstimator> bandwidthEstimatorSupplier,
+      Supplier<TimeToFirstByteEstimator> timeToFirstByteEstimatorSupplier,
+      KeyFunction keyFunction,
+      int maxHostCount) {
+    this.combinedBandwidthMeter = combinedBandwidthMeter;
+    this.combinedTransferListener = combinedBandwidthMeter.getTransferListener();
+    this.bandwidthEstimatorSupplier = bandwidthEstimatorSupplier;
+    this.timeToFirstByteEstimatorSupplier = timeToFirstByteEstimatorSupplier;
+    this.keyFunction = keyFunction;
+    this.maxHostCount = maxHostCount;
+    hostEstimates =
+        new LinkedHashMap<>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+    networkType = C.NETWORK_TYPE_UNKNOWN;
+    NetworkTypeObserver.getInstance(context).register(/* listener= */ this::onNetworkTypeChanged);
+  }
+
+  /** Returns the number of hosts for which estimates are currently kept. */
+  public synchronized int getHostCount() {
+    return hostEstimates.size();
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return combinedBandwidthMeter.getBitrateEstimate();
+  }
+
+  @Override
+  public long getTimeToFirstByteEstimateUs() {
+    return combinedBandwidthMeter.getTimeToFirstByteEstimateUs();
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate(DataSpec dataSpec) {
+    @Nullable HostEstimate hostEstimate = getHostEstimate(dataSpec);
+    long bandwidthEstimate =
+        hostEstimate != null
+            ? hostEstimate.bandwidthEstimator.getBandwidthEstimate()
+            : BandwidthEstimator.ESTIMATE_NOT_AVAILABLE;
+    return bandwidthEstimate != BandwidthEstimator.ESTIMATE_NOT_AVAILABLE
+        ? bandwidthEstimate
+        : combinedBandwidthMeter.getBitrateEstimate(dataSpec);
+  }
+
+  @Override
+  public synchronized long getTimeToFirstByteEstimateUs(DataSpec dataSpec) {
+    @Nullable HostEstimate hostEstimate = getHostEstimate(dataSpec);
+    long timeToFirstByteEstimateUs =
+        hostEstimate != null
+            ? hostEstimate.timeToFirstByteEstimator.getTimeToFirstByteEstimateUs()
+            : C.TIME_UNSET;
+    return timeToFirstByteEstimateUs != C.TIME_UNSET
+        ? timeToFirstByteEstimateUs
+        : combinedBandwidthMeter.getTimeToFirstByteEstimateUs(dataSpec);
+  }
+
+  @Override
+  public TransferListener getTransferListener() {
+    return this;
+  }
+
+  @Override
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    combinedBandwidthMeter.addEventListener(eventHandler, eventListener);
+  }
+
+  @Override
+  public void removeEventListener(EventListener eventListener) {
+    combinedBandwidthMeter.removeEventListener(eventListener);
+  }
+
+  @Override
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (combinedTransferListener != null) {
+      combinedTransferListener.onTransferInitializing(source, dataSpec, isNetwork);
+    }
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    @Nullable HostEstimate hostEstimate = getOrCreateHostEstimate(dataSpec);
+    if (hostEstimate != null) {
+      hostEstimate.timeToFirstByteEstimator.onTransferInitializing(dataSpec);
+      hostEstimate.bandwidthEstimator.onTransferInitializing(source);
+    }
+  }
+
+  @Override
+  public synchronized void onTransferStart(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (combinedTransferListener != null) {
+      combinedTransferListener.onTransferStart(source, dataSpec, isNetwork);
+    }
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    @Nullable HostEstimate hostEstimate = getOrCreateHostEstimate(dataSpec);
+    if (hostEstimate != null) {
+      hostEstimate.activeTransferCount++;
+      hostEstimate.timeToFirstByteEstimator.onTransferStart(dataSpec);
+      hostEstimate.bandwidthEstimator.onTransferStart(source);
+    }
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    if (combinedTransferListener != null) {
+      combinedTransferListener.onBytesTransferred(source, dataSpec, isNetwork, bytesTransferred);
+    }
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    @Nullable HostEstimate hostEstimate = getHostEstimate(dataSpec);
+    if (hostEstimate != null && hostEstimate.activeTransferCount > 0) {
+      hostEstimate.bandwidthEstimator.onBytesTransferred(source, bytesTransferred);
+    }
+  }
+
+  @Override
+  public synchronized void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (combinedTransferListener != null) {
+      combinedTransferListener.onTransferEnd(source, dataSpec, isNetwork);
+    }
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    @Nullable HostEstimate hostEstimate = getHostEstimate(dataSpec);
+    if (hostEstimate != null && hostEstimate.activeTransferCount > 0) {
+      hostEstimate.bandwidthEstimator.onTransferEnd(source);
+      hostEstimate.activeTransferCount--;
+    }
+  }
+
+  private synchronized void onNetworkTypeChanged(@C.NetworkType int networkType) {
+    if (this.networkType == networkType) {
+      return;
+    }
+    boolean isInitialNetworkType = this.networkType == C.NETWORK_TYPE_UNKNOWN;
+    this.networkType = networkType;
+    if (isInitialNetworkType
+        || networkType == C.NETWORK_TYPE_OFFLINE
+        || networkType == C.NETWORK_TYPE_UNKNOWN
+        || networkType == C.NETWORK_TYPE_OTHER) {
+      return;
+    }
+    // Estimates for the previous network no longer apply. Fall back to the combined meter, which
+    // resets to an initial estimate for the new network type, until new samples are available.
+    for (HostEstimate hostEstimate : hostEstimates.values()) {
+      hostEstimate.bandwidthEstimator.onNetworkTypeChange(
+          /* newBandwidthEstimate= */ BandwidthEstimator.ESTIMATE_NOT_AVAILABLE);
+      hostEstimate.timeToFirstByteEstimator.reset();
+    }
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private HostEstimate getHostEstimate(DataSpec dataSpec) {
+    @Nullable String key = keyFunction.getKey(dataSpec);
+    return key != null ? hostEstimates.get(key) : null;
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private HostEstimate getOrCreateHostEstimate(DataSpec dataSpec) {
+    @Nullable String key = keyFunction.getKey(dataSpec);
+    if (key == null) {
+      return null;
+    }
+    @Nullable HostEstimate hostEstimate = hostEstimates.get(key);
+    if (hostEstimate == null) {
+      hostEstimate =
+          new HostEstimate(
+              bandwidthEstimatorSupplier.get(), timeToFirstByteEstimatorSupplier.get());
+      hostEstimates.put(key, hostEstimate);
+      maybeEvictHostEstimates(/* retainedKey= */ key);
+    }
+    return hostEstimate;
+  }
+
+  @GuardedBy("this")
+  private void maybeEvictHostEstimates(String retainedKey) {
+    Iterator<Map.Entry<String, HostEstimate>> iterator = hostEstimates.entrySet().iterator();
+    while (hostEstimates.size() > maxHostCount && iterator.hasNext()) {
+      Map.Entry<String, HostEstimate> entry = iterator.next();
+      // Estimators with ongoing transfers are kept, as they expect to be notified when they end.
+      if (entry.getValue().activeTransferCount == 0 && !entry.getKey().equals(retainedKey)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static boolean isTransferAtFullNetworkSpeed(DataSpec dataSpec, boolean isNetwork) {
+    return isNetwork && !dataSpec.isFlagSet(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED);
+  }
+
+  private static final class HostEstimate {
+
+    public final BandwidthEstimator bandwidthEstimator;
+    public final TimeToFirstByteEstimator timeToFirstByteEstimator;
+
+    public int activeTransferCount;
+
+    public HostEstimate(
+        BandwidthEstimator bandwidthEstimator, TimeToFirstByteEstimator timeToFirstByteEstimator) {
+      this.bandwidthEstimator = bandwidthEstimator;
+      this.timeToFirstByteEstimator = timeToFirstByteEstimator;
+    }
+  }
+}
@@ -16,6 +16,8 @@
 package androidx.media3.exoplayer;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import androidx.media3.common.C;
 import androidx.media3.common.Format;
@@ -32,6 +34,8 @@ import androidx.media3.exoplayer.source.TrackGroupArray;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
 import androidx.media3.exoplayer.trackselection.FixedTrackSelection;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.exoplayer.upstream.DirectBufferAllocator;
+import androidx.media3.exoplayer.upstream.TargetBufferSizeAllocator;
 import androidx.media3.test.utils.FakeRenderer;
 import androidx.media3.test.utils.FakeTimeline;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -791,6 +795,47 @@ public class DefaultLoadControlTest {
     assertThat(loadControl.calculateTotalTargetBufferBytes()).isEqualTo(0);
   }
 
+  @Test
+  public void withDirectBufferAllocator_releasingLastPlayerFreesDirectMemory() {
+    DirectBufferAllocator directBufferAllocator =
+        new DirectBufferAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    loadControl = builder.setAllocator(directBufferAllocator).build();
+    loadControl.onPrepared(playerId);
+    loadControl.onTracksSelected(
+        playerId,
+        timeline,
+        mediaPeriodId,
+        new Renderer[0],
+        /* trackGroups= */ null,
+        /* trackSelections= */ null);
+    directBufferAllocator.release(directBufferAllocator.allocate());
+    assertThat(loadControl.getAllocator()).isSameInstanceAs(directBufferAllocator);
+    assertThat(directBufferAllocator.getTotalBytesReserved()).isGreaterThan(0);
+
+    loadControl.onReleased(playerId);
+
+    assertThat(directBufferAllocator.getTotalBytesReserved()).isEqualTo(0);
+  }
+
+  @Test
+  public void withCustomAllocator_updatesTargetBufferSizeAndResets() {
+    TargetBufferSizeAllocator customAllocator = mock(TargetBufferSizeAllocator.class);
+    loadControl = builder.setAllocator(customAllocator).build();
+    loadControl.onPrepared(playerId);
+    loadControl.onTracksSelected(
+        playerId,
+        timeline,
+        mediaPeriodId,
+        new Renderer[0],
+        TrackGroupArray.EMPTY,
+        new ExoTrackSelection[0]);
+    verify(customAllocator).setTargetBufferSize(loadControl.calculateTotalTargetBufferBytes());
+
+    loadControl.onReleased(playerId);
+
+    verify(customAllocator).reset();
+  }
+
   private void build() {
     builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
     loadControl = builder.build();
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.datasource.ByteArrayDataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.extractor.DefaultExtractorsFactory;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorInput;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorsFactory;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
+import androidx.media3.extractor.SniffFailure;
+import androidx.media3.extractor.amr.AmrExtractor;
+import androidx.media3.extractor.avi.AviExtractor;
+import androidx.media3.extractor.bmp.BmpExtractor;
+import androidx.media3.extractor.flac.FlacExtractor;
+import androidx.media3.extractor.flv.FlvExtractor;
+import androidx.media3.extractor.jpeg.JpegExtractor;
+import androidx.media3.extractor.mkv.MatroskaExtractor;
+import androidx.media3.extractor.mp3.Mp3Extractor;
+import androidx.media3.extractor.mp4.Mp4Extractor;
+import androidx.media3.extractor.ogg.OggExtractor;
+import androidx.media3.extractor.png.PngExtractor;
+import androidx.media3.extractor.ts.Ac3Extractor;
+import androidx.media3.extractor.ts.Ac4Extractor;
+import androidx.media3.extractor.ts.AdtsExtractor;
+import androidx.media3.extractor.ts.PsExtractor;
+import androidx.media3.extractor.ts.TsExtractor;
+import androidx.media3.extractor.wav.WavExtractor;
+import androidx.media3.extractor.webp.WebpExtractor;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+
+/**
+ * Tests for {@link BundledExtractorsAdapter}.
+ *
+ * <p>Each test file is read from the start until the first sample is output, without a file
+ * extension or MIME type, so that all the default extractors have to be considered. The number of
+ * extractors sniffed before the first sample is compared with the number sniffed when trying the
+ * extractors one after the other.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public final class BundledExtractorsAdapterTest {
+
+  private static final Uri URI_WITHOUT_EXTENSION = Uri.parse("https://example.com/media");
+
+  @ParameterizedRobolectricTestRunner.Parameters(name = "{0}")
+  public static ImmutableList<Object[]> params() {
+    return ImmutableList.of(
+        new Object[] {"flv/sample.flv", FlvExtractor.class},
+        new Object[] {"flac/bear.flac", FlacExtractor.class},
+        new Object[] {"flac/bear_with_id3.flac", FlacExtractor.class},
+        new Object[] {"wav/sample.wav", WavExtractor.class},
+        new Object[] {"wav/sample_rf64.wav", WavExtractor.class},
+        new Object[] {"mp4/sample.mp4", Mp4Extractor.class},
+        new Object[] {"amr/sample_nb.amr", AmrExtractor.class},
+        new Object[] {"amr/sample_wb.amr", AmrExtractor.class},
+        new Object[] {"ts/elephants_dream.mpg", PsExtractor.class},
+        new Object[] {"ogg/bear_flac.ogg", OggExtractor.class},
+        new Object[] {"ogg/bear.opus", OggExtractor.class},
+        new Object[] {"ts/bbb_2500ms.ts", TsExtractor.class},
+        new Object[] {"mkv/sample.mkv", MatroskaExtractor.class},
+        new Object[] {"ts/sample.adts", AdtsExtractor.class},
+        new Object[] {"ts/sample.ac3", Ac3Extractor.class},
+        new Object[] {"ts/sample.ac4", Ac4Extractor.class},
+        new Object[] {"mp3/bear-vbr-xing-header.mp3", Mp3Extractor.class},
+        new Object[] {"avi/sample.avi", AviExtractor.class},
+        new Object[] {"jpeg/pixel-motion-photo-shortened.jpg", JpegExtractor.class},
+        new Object[] {"png/media3test.png", PngExtractor.class},
+        new Object[] {"webp/ic_launcher_round.webp", WebpExtractor.class},
+        new Object[] {"bmp/non-motion-photo-shortened-cropped.bmp", BmpExtractor.class});
+  }
+
+  @ParameterizedRobolectricTestRunner.Parameter(0)
+  public String fileName;
+
+  @ParameterizedRobolectricTestRunner.Parameter(1)
+  public Class<? extends Extractor> expectedExtractorClass;
+
+  @Test
+  public void readToFirstSample_selectsExpectedExtractor() throws IOException {
+    SniffCountingExtractorsFactory extractorsFactory = new SniffCountingExtractorsFactory();
+
+    FakeExtractorOutput output = readToFirstSample(extractorsFactory, getData());
+
+    assertThat(getSampleCount(output)).isGreaterThan(0);
+    assertThat(extractorsFactory.initializedExtractor).isNotNull();
+    assertThat(extractorsFactory.initializedExtractor.getUnderlyingImplementation())
+        .isInstanceOf(expectedExtractorClass);
+  }
+
+  @Test
+  public void readToFirstSample_sniffsNoMoreExtractorsThanSniffingInOrder() throws IOException {
+    byte[] data = getData();
+    SniffCountingExtractorsFactory extractorsFactory = new SniffCountingExtractorsFactory();
+
+    readToFirstSample(extractorsFactory, data);
+
+    int sniffCountInOrder = sniffInOrder(data);
+    if (SignatureSniffer.class.isAssignableFrom(expectedExtractorClass)) {
+      // The signature matches before any extractor is sniffed.
+      assertThat(extractorsFactory.sniffCount).isEqualTo(1);
+    } else {
+      assertThat(extractorsFactory.sniffCount).isAtMost(sniffCountInOrder);
+    }
+  }
+
+  private byte[] getData() throws IOException {
+    return TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/" + fileName);
+  }
+
+  private static FakeExtractorOutput readToFirstSample(
+      ExtractorsFactory extractorsFactory, byte[] data) throws IOException {
+    BundledExtractorsAdapter adapter = new BundledExtractorsAdapter(extractorsFactory);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+    long length = dataSource.open(new DataSpec(URI_WITHOUT_EXTENSION));
+    adapter.init(
+        dataSource,
+        URI_WITHOUT_EXTENSION,
+        /* responseHeaders= */ ImmutableMap.of(),
+        /* position= */ 0,
+        length,
+        output);
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (getSampleCount(output) == 0 && result != Extractor.RESULT_END_OF_INPUT) {
+      result = adapter.read(positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        long position = positionHolder.position;
+        dataSource.close();
+        dataSource.open(
+            new DataSpec.Builder().setUri(URI_WITHOUT_EXTENSION).setPosition(position).build());
+        adapter.init(
+            dataSource,
+            URI_WITHOUT_EXTENSION,
+            /* responseHeaders= */ ImmutableMap.of(),
+            position,
+            length,
+            output);
+      }
+    }
+    dataSource.close();
+    adapter.release();
+    return output;
+  }
+
+  /** Returns the number of extractors sniffed when sniffing them one after the other. */
+  private static int sniffInOrder(byte[] data) throws IOException {
+    Extractor[] extractors =
+        new DefaultExtractorsFactory()
+            .createExtractors(URI_WITHOUT_EXTENSION, /* responseHeaders= */ ImmutableMap.of());
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    for (int i = 0; i < extractors.length; i++) {
+      try {
+        if (extractors[i].sniff(input)) {
+          return i + 1;
+        }
+      } catch (EOFException e) {
+        // Do nothing.
+      } finally {
+        input.resetPeekPosition();
+      }
+    }
+    return extractors.length;
+  }
+
+  private static int getSampleCount(FakeExtractorOutput output) {
+    int sampleCount = 0;
+    for (int i = 0; i < output.numberOfTracks; i++) {
+      sampleCount += output.trackOutputs.valueAt(i).getSampleCount();
+    }
+    return sampleCount;
+  }
+
+  /**
+   * Creates the default extractors, counting how many times they're sniffed and recording which
+   * one is initialized.
+   */
+  private static final class SniffCountingExtractorsFactory implements ExtractorsFactory {
+
+    private final DefaultExtractorsFactory defaultExtractorsFactory;
+
+    public int sniffCount;
+    @Nullable public Extractor initializedExtractor;
+
+    public SniffCountingExtractorsFactory() {
+      defaultExtractorsFactory = new DefaultExtractorsFactory();
+    }
+
+    @Override
+    public Extractor[] createExtractors() {
+      return createExtractors(Uri.EMPTY, ImmutableMap.of());
+    }
+
+    @Override
+    public Extractor[] createExtractors(Uri uri, Map<String, List<String>> responseHeaders) {
+      Extractor[] extractors = defaultExtractorsFactory.createExtractors(uri, responseHeaders);
+      for (int i = 0; i < extractors.length; i++) {
+        extractors[i] = new SniffCountingExtractor(extractors[i]);
+      }
+      return extractors;
+    }
+
+    private final class SniffCountingExtractor implements Extractor {
+
+      private final Extractor extractor;
+
+      public SniffCountingExtractor(Extractor extractor) {
+        this.extractor = extractor;
+      }
+
+      @Override
+      public boolean sniff(ExtractorInput input) throws IOException {
+        sniffCount++;
+        return extractor.sniff(input);
+      }
+
+      @Override
+      public List<SniffFailure> getSniffFailureDetails() {
+        return extractor.getSniffFailureDetails();
+      }
+
+      @Override
+      public void init(ExtractorOutput output) {
+        initializedExtractor = this;
+        extractor.init(output);
+      }
+
+      @Override
+      public @ReadResult int read(ExtractorInput input, PositionHolder seekPosition)
+          throws IOException {
+        return extractor.read(input, seekPosition);
+      }
+
+      @Override
+      public void seek(long position, long timeUs) {
+        extractor.seek(position, timeUs);
+      }
+
+      @Override
+      public void release() {
+        extractor.release();
+      }
+
+      @Override
+      public Extractor getUnderlyingImplementation() {
+        return extractor.getUnderlyingImplementation();
+      }
+    }
+  }
+}
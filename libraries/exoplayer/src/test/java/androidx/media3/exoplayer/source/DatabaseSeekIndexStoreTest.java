@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.database.VersionTable;
+import androidx.media3.extractor.SeekIndex;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DatabaseSeekIndexStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class DatabaseSeekIndexStoreTest {
+
+  private StandaloneDatabaseProvider databaseProvider;
+  private DatabaseSeekIndexStore seekIndexStore;
+
+  @Before
+  public void setUp() {
+    databaseProvider = new StandaloneDatabaseProvider(ApplicationProvider.getApplicationContext());
+    seekIndexStore = new DatabaseSeekIndexStore(databaseProvider);
+  }
+
+  @After
+  public void tearDown() {
+    databaseProvider.close();
+  }
+
+  @Test
+  public void get_withoutStoredIndex_returnsNull() throws IOException {
+    assertThat(seekIndexStore.get("key")).isNull();
+  }
+
+  @Test
+  public void put_thenGetFromNewInstance_returnsStoredIndex() throws IOException {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndex.setValue("value", /* value= */ 123);
+    seekIndex.addSeekPoint(/* timestamp= */ 1000, /* position= */ 188);
+
+    seekIndexStore.put("key", seekIndex);
+    SeekIndex storedSeekIndex = new DatabaseSeekIndexStore(databaseProvider).get("key");
+
+    assertThat(storedSeekIndex).isNotNull();
+    assertThat(storedSeekIndex.getValue("value", C.TIME_UNSET)).isEqualTo(123);
+    assertThat(storedSeekIndex.getSeekPointCount()).isEqualTo(1);
+    assertThat(storedSeekIndex.getTimestamp(0)).isEqualTo(1000);
+    assertThat(storedSeekIndex.getPosition(0)).isEqualTo(188);
+  }
+
+  @Test
+  public void put_replacesStoredIndex() throws IOException {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndexStore.put("key", seekIndex);
+
+    seekIndex.addSeekPoint(/* timestamp= */ 1000, /* position= */ 188);
+    seekIndexStore.put("key", seekIndex);
+
+    assertThat(seekIndexStore.get("key").getSeekPointCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void put_setsVersion() throws IOException {
+    seekIndexStore.put("key", new SeekIndex());
+
+    assertThat(
+            VersionTable.getVersion(
+                databaseProvider.getReadableDatabase(),
+                VersionTable.FEATURE_SEEK_INDEX,
+                /* instanceUid= */ ""))
+        .isEqualTo(DatabaseSeekIndexStore.TABLE_VERSION);
+  }
+
+  @Test
+  public void trim_removesIndicesOfLeastRecentlyStoredStreams() throws IOException {
+    seekIndexStore.put("key1", new SeekIndex());
+    seekIndexStore.put("key2", new SeekIndex());
+    seekIndexStore.put("key1", new SeekIndex());
+
+    seekIndexStore.trim(/* maxEntryCount= */ 1);
+
+    assertThat(seekIndexStore.get("key1")).isNotNull();
+    assertThat(seekIndexStore.get("key2")).isNull();
+  }
+}
@@ -46,6 +46,7 @@ import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.exoplayer.upstream.DirectBufferAllocator;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.test.utils.FakeCryptoConfig;
 import androidx.media3.test.utils.TestUtil;
@@ -408,6 +409,35 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectBufferAllocator() {
+    DirectBufferAllocator directBufferAllocator =
+        new DirectBufferAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE);
+    sampleQueue = new SampleQueue(directBufferAllocator, mockDrmSessionManager, eventDispatcher);
+
+    writeTestData();
+    assertThat(directBufferAllocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE * 10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+
+    assertThat(directBufferAllocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void readEncryptedSections_withDirectBufferAllocator() {
+    when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
+    sampleQueue =
+        new SampleQueue(
+            new DirectBufferAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE),
+            mockDrmSessionManager,
+            eventDispatcher);
+    writeTestDataWithEncryptedSections();
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_ENCRYPTED_WITH_EXO_MEDIA_CRYPTO_TYPE);
+    assertReadEncryptedSample(/* sampleIndex= */ 0);
+    assertReadEncryptedSample(/* sampleIndex= */ 1);
+  }
+
   @Test
   public void readMultiSamplesTwice() {
     writeTestData();
@@ -16,6 +16,7 @@
 package androidx.media3.exoplayer.trackselection;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -58,6 +59,11 @@ public final class AdaptiveTrackSelectionTest {
     initMocks(this);
     fakeClock = new FakeClock(0);
     when(mockBandwidthMeter.getTimeToFirstByteEstimateUs()).thenReturn(C.TIME_UNSET);
+    // Mocks don't call default methods, so delegate the per-DataSpec estimates explicitly.
+    when(mockBandwidthMeter.getBitrateEstimate(any(DataSpec.class)))
+        .thenAnswer(invocation -> mockBandwidthMeter.getBitrateEstimate());
+    when(mockBandwidthMeter.getTimeToFirstByteEstimateUs(any(DataSpec.class)))
+        .thenAnswer(invocation -> mockBandwidthMeter.getTimeToFirstByteEstimateUs());
   }
 
   @Test
@@ -177,6 +183,33 @@ public final class AdaptiveTrackSelectionTest {
     assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
   }
 
+  @Test
+  public void updateSelectedTrack_usesBitrateEstimateForDataSpecOfLatestChunk() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    FakeMediaChunk chunk =
+        new FakeMediaChunk(format3, /* startTimeUs= */ 0, /* endTimeUs= */ 2_000_000);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    when(mockBandwidthMeter.getBitrateEstimate(chunk.dataSpec)).thenReturn(500L);
+    AdaptiveTrackSelection adaptiveTrackSelection =
+        prepareAdaptiveTrackSelectionWithBandwidthFraction(trackGroup, /* bandwidthFraction= */ 1f);
+
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ ImmutableList.of(chunk),
+        createMediaChunkIterators(trackGroup, TEST_CHUNK_DURATION_US));
+
+    // The initial selection uses the combined estimate, but the estimate for the DataSpec of the
+    // latest chunk is lower.
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+    assertThat(adaptiveTrackSelection.getLatestBitrateEstimate()).isEqualTo(500L);
+  }
+
   @Test
   public void updateSelectedTrack_liveStream_switchesUpWhenBufferedFractionToLiveEdgeReached() {
     Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocateAndRelease_withLockFreePool_updatesTotalBytesAllocated() {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 0);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    int totalBytesAllocatedAfterAllocate = allocator.getTotalBytesAllocated();
+    allocator.release(allocation1);
+    int totalBytesAllocatedAfterRelease = allocator.getTotalBytesAllocated();
+    allocator.release(allocation2);
+
+    assertThat(totalBytesAllocatedAfterAllocate).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(totalBytesAllocatedAfterRelease).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_withLockFreePool_reusesReleasedAllocation() {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 0);
+    Allocation allocation = allocator.allocate();
+
+    allocator.release(allocation);
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void allocate_withLockFreePool_reusesAllocationsReleasedOnOtherThread() throws Exception {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 0);
+    int allocationCount = 16;
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      allocations.add(allocator.allocate());
+    }
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    executorService
+        .submit(
+            () -> {
+              for (Allocation allocation : allocations) {
+                allocator.release(allocation);
+              }
+            })
+        .get();
+    executorService.shutdown();
+    List<Allocation> reusedAllocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      Allocation allocation = allocator.allocate();
+      if (allocations.contains(allocation)) {
+        reusedAllocations.add(allocation);
+      }
+    }
+
+    assertThat(reusedAllocations).hasSize(allocationCount);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(allocationCount * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void trim_withLockFreePool_discardsAllocationsExceptInitialAllocations() {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 2);
+    int allocationCount = 16;
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      allocations.add(allocator.allocate());
+    }
+    for (Allocation allocation : allocations) {
+      allocator.release(allocation);
+    }
+
+    allocator.trim();
+    int reusedAllocationCount = 0;
+    int initialAllocationCount = 0;
+    for (int i = 0; i < allocationCount; i++) {
+      Allocation allocation = allocator.allocate();
+      if (allocations.contains(allocation)) {
+        reusedAllocationCount++;
+      }
+      if (allocation.data.length > ALLOCATION_SIZE) {
+        initialAllocationCount++;
+      }
+    }
+
+    assertThat(reusedAllocationCount).isEqualTo(2);
+    assertThat(initialAllocationCount).isEqualTo(2);
+  }
+
+  @Test
+  public void setTargetBufferSize_withLockFreePool_keepsAllocationsUpToTarget() {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 0);
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      allocations.add(allocator.allocate());
+    }
+    allocator.setTargetBufferSize(10 * ALLOCATION_SIZE);
+    for (Allocation allocation : allocations) {
+      allocator.release(allocation);
+    }
+
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    int reusedAllocationCount = 0;
+    for (int i = 0; i < 10; i++) {
+      if (allocations.contains(allocator.allocate())) {
+        reusedAllocationCount++;
+      }
+    }
+
+    assertThat(reusedAllocationCount).isEqualTo(4);
+  }
+
+  @Test
+  public void allocateAndRelease_withLockFreePoolOnManyThreads_endsWithNoAllocatedBytes()
+      throws Exception {
+    DefaultAllocator allocator = createLockFreeAllocator(/* initialAllocationCount= */ 0);
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      futures.add(
+          executorService.submit(
+              () -> {
+                Allocation[] allocations = new Allocation[20];
+                for (int j = 0; j < 1000; j++) {
+                  for (int k = 0; k < allocations.length; k++) {
+                    allocations[k] = allocator.allocate();
+                  }
+                  for (Allocation allocation : allocations) {
+                    allocator.release(allocation);
+                  }
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executorService.shutdown();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  private static DefaultAllocator createLockFreeAllocator(int initialAllocationCount) {
+    return new DefaultAllocator(
+        /* trimOnReset= */ true,
+        ALLOCATION_SIZE,
+        initialAllocationCount,
+        /* useLockFreePool= */ true);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DirectBufferAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DirectBufferAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int ALLOCATIONS_PER_BLOCK = 4;
+
+  @Test
+  public void allocate_returnsDirectBufferAllocationsInMemoryOrder() {
+    DirectBufferAllocator allocator = createAllocator();
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.data).isEmpty();
+    assertThat(allocation1.buffer.isDirect()).isTrue();
+    assertThat(allocation2.buffer).isSameInstanceAs(allocation1.buffer);
+    assertThat(allocation1.offset).isEqualTo(0);
+    assertThat(allocation2.offset).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesReserved())
+        .isEqualTo(ALLOCATIONS_PER_BLOCK * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void trim_onlyFreesBlocksWithNoAllocationsInUse() {
+    DirectBufferAllocator allocator = createAllocator();
+    Allocation[] allocations = new Allocation[2 * ALLOCATIONS_PER_BLOCK];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    // Release all allocations except one in the first block.
+    for (int i = 1; i < allocations.length; i++) {
+      allocator.release(allocations[i]);
+    }
+
+    allocator.trim();
+
+    assertThat(allocator.getTotalBytesReserved())
+        .isEqualTo(ALLOCATIONS_PER_BLOCK * ALLOCATION_SIZE);
+    // The remaining allocations are all in the first block.
+    for (int i = 1; i < ALLOCATIONS_PER_BLOCK; i++) {
+      assertThat(allocator.allocate().buffer).isSameInstanceAs(allocations[0].buffer);
+    }
+  }
+
+  @Test
+  public void trim_keepsBlocksNeededForTargetBufferSize() {
+    DirectBufferAllocator allocator = createAllocator();
+    allocator.setTargetBufferSize(ALLOCATIONS_PER_BLOCK * ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[2 * ALLOCATIONS_PER_BLOCK];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    for (Allocation allocation : allocations) {
+      allocator.release(allocation);
+    }
+
+    allocator.trim();
+
+    assertThat(allocator.getTotalBytesReserved())
+        .isEqualTo(ALLOCATIONS_PER_BLOCK * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void reset_withTrimOnReset_freesAllBlocks() {
+    DirectBufferAllocator allocator = createAllocator();
+    allocator.setTargetBufferSize(ALLOCATIONS_PER_BLOCK * ALLOCATION_SIZE);
+    allocator.release(allocator.allocate());
+
+    allocator.reset();
+
+    assertThat(allocator.getTotalBytesReserved()).isEqualTo(0);
+  }
+
+  private static DirectBufferAllocator createAllocator() {
+    return new DirectBufferAllocator(
+        /* trimOnReset= */ true, ALLOCATION_SIZE, ALLOCATIONS_PER_BLOCK);
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.test.utils.robolectric.RobolectricUtil.runMainLooperUntil;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedLoaderExecutor}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedLoaderExecutorTest {
+
+  private List<String> loadOrder;
+  private SharedLoaderExecutor sharedLoaderExecutor;
+
+  @Before
+  public void setUp() {
+    loadOrder = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  @After
+  public void tearDown() {
+    if (sharedLoaderExecutor != null) {
+      sharedLoaderExecutor.release();
+    }
+  }
+
+  @Test
+  public void manySequentialLoaders_reuseSharedThreads() throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    int loaderCount = 16;
+    TestCallback callback = new TestCallback();
+    for (int i = 0; i < loaderCount; i++) {
+      Loader loader = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+      TestLoadable loadable = new TestLoadable("load" + i);
+      loader.startLoading(loadable, callback, /* defaultMinRetryCount= */ 0);
+      int expectedCompletedCount = i + 1;
+      runMainLooperUntil(() -> callback.completedCount.get() == expectedCompletedCount);
+      loader.release();
+      runMainLooperUntilIdle(checkNotNull(loadable.loadThread));
+    }
+
+    assertThat(loadOrder).hasSize(loaderCount);
+    assertThat(sharedLoaderExecutor.getCreatedThreadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void blockedLoad_doesNotDelayLoadOfOtherLoader() throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    Loader loader1 = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    Loader loader2 = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    TestLoadable blockingLoadable = new TestLoadable("loader1");
+    blockingLoadable.loadAllowed.close();
+    TestCallback callback1 = new TestCallback();
+    TestCallback callback2 = new TestCallback();
+
+    loader1.startLoading(blockingLoadable, callback1, /* defaultMinRetryCount= */ 0);
+    loader2.startLoading(new TestLoadable("loader2"), callback2, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback2.completedCount.get() == 1);
+    blockingLoadable.loadAllowed.open();
+    runMainLooperUntil(() -> callback1.completedCount.get() == 1);
+    loader1.release();
+    loader2.release();
+
+    assertThat(loadOrder).containsExactly("loader1", "loader2");
+    assertThat(sharedLoaderExecutor.getCreatedThreadCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void cancelLoading_cancelsLoadAndLeavesThreadUsable() throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    Loader loader = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    TestLoadable blockingLoadable = new TestLoadable("blocking");
+    blockingLoadable.loadAllowed.close();
+    TestCallback callback = new TestCallback();
+
+    loader.startLoading(blockingLoadable, callback, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> loadOrder.size() == 1);
+    loader.cancelLoading();
+    runMainLooperUntil(() -> callback.canceledCount.get() == 1);
+    TestLoadable nextLoadable = new TestLoadable("next");
+    loader.startLoading(nextLoadable, callback, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback.completedCount.get() == 1);
+    loader.release();
+
+    assertThat(blockingLoadable.canceled.get()).isTrue();
+    assertThat(nextLoadable.interruptedWhenLoadStarted).isFalse();
+  }
+
+  @Test
+  public void release_withCallback_callsCallbackAfterLoadExits() throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    Loader loader = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    TestLoadable blockingLoadable = new TestLoadable("blocking");
+    blockingLoadable.loadAllowed.close();
+    AtomicBoolean loadExitedBeforeReleaseCallback = new AtomicBoolean();
+    CountDownLatch releaseCallbackCalled = new CountDownLatch(1);
+
+    loader.startLoading(blockingLoadable, new TestCallback(), /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> loadOrder.size() == 1);
+    loader.release(
+        () -> {
+          loadExitedBeforeReleaseCallback.set(blockingLoadable.loadExited.get());
+          releaseCallbackCalled.countDown();
+        });
+
+    assertThat(releaseCallbackCalled.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(loadExitedBeforeReleaseCallback.get()).isTrue();
+  }
+
+  @Test
+  public void release_afterSharedExecutorReleased_callsCallback() throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    Loader loader = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    CountDownLatch releaseCallbackCalled = new CountDownLatch(1);
+
+    sharedLoaderExecutor.release();
+    loader.release(releaseCallbackCalled::countDown);
+
+    assertThat(releaseCallbackCalled.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void release_whileLoadingAfterSharedExecutorReleased_callsCallbackAfterLoadExits()
+      throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    Loader loader = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    TestLoadable blockingLoadable = new TestLoadable("blocking");
+    blockingLoadable.loadAllowed.close();
+    AtomicBoolean loadExitedBeforeReleaseCallback = new AtomicBoolean();
+    CountDownLatch releaseCallbackCalled = new CountDownLatch(1);
+
+    loader.startLoading(blockingLoadable, new TestCallback(), /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> loadOrder.size() == 1);
+    sharedLoaderExecutor.release();
+    loader.release(
+        () -> {
+          loadExitedBeforeReleaseCallback.set(blockingLoadable.loadExited.get());
+          releaseCallbackCalled.countDown();
+        });
+
+    assertThat(releaseCallbackCalled.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(loadExitedBeforeReleaseCallback.get()).isTrue();
+  }
+
+  @Test
+  public void createLoaderExecutor_afterLoaderRelease_sharedExecutorRemainsUsable()
+      throws Exception {
+    sharedLoaderExecutor = SharedLoaderExecutor.create("test");
+    TestCallback callback = new TestCallback();
+    Loader loader1 = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    TestLoadable loadable1 = new TestLoadable("load1");
+    loader1.startLoading(loadable1, callback, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback.completedCount.get() == 1);
+    loader1.release();
+    runMainLooperUntilIdle(checkNotNull(loadable1.loadThread));
+
+    Loader loader2 = new Loader(sharedLoaderExecutor.createLoaderExecutor());
+    loader2.startLoading(new TestLoadable("load2"), callback, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback.completedCount.get() == 2);
+    loader2.release();
+
+    assertThat(loadOrder).containsExactly("load1", "load2").inOrder();
+    assertThat(sharedLoaderExecutor.getCreatedThreadCount()).isEqualTo(1);
+  }
+
+  /** Runs the main looper until {@code thread} is idle in the shared executor's thread pool. */
+  private static void runMainLooperUntilIdle(Thread thread) throws TimeoutException {
+    runMainLooperUntil(() -> thread.getState() == Thread.State.TIMED_WAITING);
+  }
+
+  private final class TestLoadable implements Loader.Loadable {
+
+    public final ConditionVariable loadAllowed;
+    public final AtomicBoolean canceled;
+    public final AtomicBoolean loadExited;
+    public volatile boolean interruptedWhenLoadStarted;
+    @Nullable public volatile Thread loadThread;
+
+    private final String name;
+
+    public TestLoadable(String name) {
+      this.name = name;
+      loadAllowed = new ConditionVariable();
+      loadAllowed.open();
+      canceled = new AtomicBoolean();
+      loadExited = new AtomicBoolean();
+    }
+
+    @Override
+    public void cancelLoad() {
+      canceled.set(true);
+      loadAllowed.open();
+    }
+
+    @Override
+    public void load() throws IOException {
+      interruptedWhenLoadStarted = Thread.currentThread().isInterrupted();
+      loadThread = Thread.currentThread();
+      loadOrder.add(name);
+      loadAllowed.blockUninterruptible();
+      loadExited.set(true);
+    }
+  }
+
+  private static class TestCallback implements Loader.Callback<TestLoadable> {
+
+    public final AtomicInteger completedCount;
+    public final AtomicInteger canceledCount;
+
+    public TestCallback() {
+      completedCount = new AtomicInteger();
+      canceledCount = new AtomicInteger();
+    }
+
+    @Override
+    public void onLoadCompleted(
+        TestLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      completedCount.incrementAndGet();
+    }
+
+    @Override
+    public void onLoadCanceled(
+        TestLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      canceledCount.incrementAndGet();
+    }
+
+    @Override
+    public LoadErrorAction onLoadError(
+        TestLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SlidingPercentile}. */
+@RunWith(AndroidJUnit4.class)
+public final class SlidingPercentileTest {
+
+  @Test
+  public void getPercentile_withoutSamples_returnsNaN() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+
+    assertThat(slidingPercentile.getPercentile(0.5f)).isNaN();
+  }
+
+  @Test
+  public void getPercentile_returnsWeightedPercentile() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 100);
+
+    slidingPercentile.addSample(/* weight= */ 1, /* value= */ 30);
+    slidingPercentile.addSample(/* weight= */ 3, /* value= */ 10);
+    slidingPercentile.addSample(/* weight= */ 1, /* value= */ 20);
+
+    assertThat(slidingPercentile.getPercentile(0.2f)).isEqualTo(10);
+    assertThat(slidingPercentile.getPercentile(0.6f)).isEqualTo(10);
+    assertThat(slidingPercentile.getPercentile(0.8f)).isEqualTo(20);
+    assertThat(slidingPercentile.getPercentile(1f)).isEqualTo(30);
+  }
+
+  @Test
+  public void addSample_exceedingMaxWeight_reducesWeightOfOldestSamples() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 4);
+
+    slidingPercentile.addSample(/* weight= */ 2, /* value= */ 10);
+    slidingPercentile.addSample(/* weight= */ 2, /* value= */ 20);
+    slidingPercentile.addSample(/* weight= */ 1, /* value= */ 30);
+
+    // The oldest sample only has a weight of 1 left.
+    assertThat(slidingPercentile.getPercentile(0.25f)).isEqualTo(10);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isEqualTo(20);
+
+    slidingPercentile.addSample(/* weight= */ 2, /* value= */ 30);
+
+    // The oldest sample has been removed, and the second oldest has a weight of 1 left.
+    assertThat(slidingPercentile.getPercentile(0.25f)).isEqualTo(20);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isEqualTo(30);
+  }
+
+  @Test
+  public void reset_removesAllSamples() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+    slidingPercentile.addSample(/* weight= */ 1, /* value= */ 10);
+
+    slidingPercentile.reset();
+    slidingPercentile.addSample(/* weight= */ 1, /* value= */ 20);
+
+    assertThat(slidingPercentile.getPercentile(0.01f)).isEqualTo(20);
+  }
+
+  @Test
+  public void randomSamples_matchReferenceImplementation() {
+    Random random = new Random(/* seed= */ 0);
+    for (int i = 0; i < 100; i++) {
+      int maxWeight = 1 + random.nextInt(2000);
+      SlidingPercentile slidingPercentile = new SlidingPercentile(maxWeight);
+      ReferenceSlidingPercentile referenceSlidingPercentile =
+          new ReferenceSlidingPercentile(maxWeight);
+      for (int j = 0; j < 500; j++) {
+        int weight = random.nextInt(100);
+        // Use a small range of values for some samples, to include samples with equal values.
+        float value = random.nextBoolean() ? random.nextInt(10) : random.nextFloat() * 10_000_000;
+        slidingPercentile.addSample(weight, value);
+        referenceSlidingPercentile.addSample(weight, value);
+        float percentile = 0.01f + random.nextFloat() * 0.99f;
+
+        assertThat(slidingPercentile.getPercentile(percentile))
+            .isEqualTo(referenceSlidingPercentile.getPercentile(percentile));
+      }
+    }
+  }
+
+  /** A straightforward implementation that sorts a copy of the samples for each query. */
+  private static final class ReferenceSlidingPercentile {
+
+    private final int maxWeight;
+    private final List<float[]> samples;
+
+    public ReferenceSlidingPercentile(int maxWeight) {
+      this.maxWeight = maxWeight;
+      samples = new ArrayList<>();
+    }
+
+    public void addSample(int weight, float value) {
+      samples.add(new float[] {weight, value});
+      int totalWeight = getTotalWeight();
+      while (totalWeight > maxWeight) {
+        int excessWeight = totalWeight - maxWeight;
+        float[] oldestSample = samples.get(0);
+        if (oldestSample[0] <= excessWeight) {
+          totalWeight -= (int) oldestSample[0];
+          samples.remove(0);
+        } else {
+          oldestSample[0] -= excessWeight;
+          totalWeight -= excessWeight;
+        }
+      }
+    }
+
+    public float getPercentile(float percentile) {
+      List<float[]> sortedSamples = new ArrayList<>(samples);
+      sortedSamples.sort((a, b) -> Float.compare(a[1], b[1]));
+      float desiredWeight = percentile * getTotalWeight();
+      int accumulatedWeight = 0;
+      for (float[] sample : sortedSamples) {
+        accumulatedWeight += (int) sample[0];
+        if (accumulatedWeight >= desiredWeight) {
+          return sample[1];
+        }
+      }
+      return sortedSamples.isEmpty() ? Float.NaN : sortedSamples.get(sortedSamples.size() - 1)[1];
+    }
+
+    private int getTotalWeight() {
+      int totalWeight = 0;
+      for (float[] sample : samples) {
+        totalWeight += (int) sample[0];
+      }
+      return totalWeight;
+    }
+  }
+}
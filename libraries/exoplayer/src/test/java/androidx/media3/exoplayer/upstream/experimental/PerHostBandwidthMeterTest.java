@@ -0,0 +1,249 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream.experimental;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.media3.common.util.NetworkTypeObserver;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PerHostBandwidthMeter}. */
+@RunWith(AndroidJUnit4.class)
+public final class PerHostBandwidthMeterTest {
+
+  private static final String MEDIA_HOST = "media.example";
+  private static final String AD_HOST = "ads.example";
+
+  /** Media chunks of 1 MB, transferred at 8 Mbps after 50 ms. */
+  private static final Transfer MEDIA_TRANSFER =
+      new Transfer(
+          MEDIA_HOST,
+          /* timeToFirstByteMs= */ 50,
+          /* bytesTransferred= */ 1_000_000,
+          /* transferDurationMs= */ 1_000);
+
+  /** Ad chunks of 250 KB, transferred at 1 Mbps after 400 ms. */
+  private static final Transfer AD_TRANSFER =
+      new Transfer(
+          AD_HOST,
+          /* timeToFirstByteMs= */ 400,
+          /* bytesTransferred= */ 250_000,
+          /* transferDurationMs= */ 2_000);
+
+  private Context context;
+  private FakeClock fakeClock;
+
+  @Before
+  public void setUp() {
+    NetworkTypeObserver.resetForTests();
+    context = ApplicationProvider.getApplicationContext();
+    fakeClock = new FakeClock(/* initialTimeMs= */ 0);
+  }
+
+  @Test
+  public void replayInterleavedHosts_perHostEstimatesMatchEachHost() {
+    BandwidthMeter combinedBandwidthMeter = createCombinedBandwidthMeter();
+    PerHostBandwidthMeter perHostBandwidthMeter =
+        createPerHostBandwidthMeter(combinedBandwidthMeter);
+
+    replay(createInterleavedTrace(/* transferCount= */ 20), perHostBandwidthMeter);
+
+    DataSpec mediaDataSpec = createDataSpec(MEDIA_HOST);
+    DataSpec adDataSpec = createDataSpec(AD_HOST);
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(mediaDataSpec)).isEqualTo(8_000_000);
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(adDataSpec)).isEqualTo(1_000_000);
+    assertThat(perHostBandwidthMeter.getTimeToFirstByteEstimateUs(mediaDataSpec))
+        .isEqualTo(50_000);
+    assertThat(perHostBandwidthMeter.getTimeToFirstByteEstimateUs(adDataSpec)).isEqualTo(400_000);
+    // The combined estimate mixes both hosts, so it's wrong for either of them.
+    long combinedBitrateEstimate = perHostBandwidthMeter.getBitrateEstimate();
+    assertThat(combinedBitrateEstimate).isEqualTo(combinedBandwidthMeter.getBitrateEstimate());
+    assertThat(combinedBitrateEstimate).isGreaterThan(1_500_000);
+    assertThat(combinedBitrateEstimate).isLessThan(7_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_forUnknownHost_returnsCombinedEstimate() {
+    BandwidthMeter combinedBandwidthMeter = createCombinedBandwidthMeter();
+    PerHostBandwidthMeter perHostBandwidthMeter =
+        createPerHostBandwidthMeter(combinedBandwidthMeter);
+
+    replay(ImmutableList.of(MEDIA_TRANSFER, AD_TRANSFER), perHostBandwidthMeter);
+
+    DataSpec otherDataSpec = createDataSpec("other.example");
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(otherDataSpec))
+        .isEqualTo(combinedBandwidthMeter.getBitrateEstimate());
+    assertThat(perHostBandwidthMeter.getTimeToFirstByteEstimateUs(otherDataSpec))
+        .isEqualTo(combinedBandwidthMeter.getTimeToFirstByteEstimateUs());
+  }
+
+  @Test
+  public void transfersNotAtFullNetworkSpeed_areIgnoredForHost() {
+    PerHostBandwidthMeter perHostBandwidthMeter =
+        createPerHostBandwidthMeter(createCombinedBandwidthMeter());
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(Uri.parse("https://" + MEDIA_HOST + "/media"))
+            .setFlags(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            .build();
+
+    perHostBandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    perHostBandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    perHostBandwidthMeter.onBytesTransferred(
+        dataSource, dataSpec, /* isNetwork= */ true, /* bytesTransferred= */ 1000);
+    perHostBandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(perHostBandwidthMeter.getHostCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void moreHostsThanMaxHostCount_evictsLeastRecentlyUsedHosts() {
+    PerHostBandwidthMeter perHostBandwidthMeter =
+        new PerHostBandwidthMeter.Builder(context)
+            .setCombinedBandwidthMeter(createCombinedBandwidthMeter())
+            .setBandwidthEstimatorSupplier(this::createBandwidthEstimator)
+            .setMaxHostCount(2)
+            .build();
+
+    replay(
+        ImmutableList.of(
+            MEDIA_TRANSFER,
+            AD_TRANSFER,
+            new Transfer(
+                "other.example",
+                /* timeToFirstByteMs= */ 10,
+                /* bytesTransferred= */ 490_000,
+                /* transferDurationMs= */ 1_000)),
+        perHostBandwidthMeter);
+
+    assertThat(perHostBandwidthMeter.getHostCount()).isEqualTo(2);
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(createDataSpec("other.example")))
+        .isEqualTo(3_920_000);
+    // The media host was used least recently, so it falls back to the combined estimate.
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(createDataSpec(MEDIA_HOST)))
+        .isEqualTo(perHostBandwidthMeter.getBitrateEstimate());
+  }
+
+  @Test
+  public void maxHostCountExceeded_keepsHostsWithOngoingTransfers() {
+    PerHostBandwidthMeter perHostBandwidthMeter =
+        new PerHostBandwidthMeter.Builder(context)
+            .setCombinedBandwidthMeter(createCombinedBandwidthMeter())
+            .setBandwidthEstimatorSupplier(this::createBandwidthEstimator)
+            .setMaxHostCount(1)
+            .build();
+    DataSource mediaDataSource = new FakeDataSource();
+    DataSpec mediaDataSpec = createDataSpec(MEDIA_HOST);
+
+    perHostBandwidthMeter.onTransferInitializing(
+        mediaDataSource, mediaDataSpec, /* isNetwork= */ true);
+    perHostBandwidthMeter.onTransferStart(mediaDataSource, mediaDataSpec, /* isNetwork= */ true);
+    replay(ImmutableList.of(AD_TRANSFER), perHostBandwidthMeter);
+    perHostBandwidthMeter.onBytesTransferred(
+        mediaDataSource, mediaDataSpec, /* isNetwork= */ true, /* bytesTransferred= */ 250_000);
+    fakeClock.advanceTime(1_000);
+    perHostBandwidthMeter.onTransferEnd(mediaDataSource, mediaDataSpec, /* isNetwork= */ true);
+
+    assertThat(perHostBandwidthMeter.getHostCount()).isEqualTo(2);
+    // The media transfer overlapped with the ad transfer, so its sample spans 3.4 seconds.
+    assertThat(perHostBandwidthMeter.getBitrateEstimate(mediaDataSpec)).isEqualTo(588_235);
+  }
+
+  private BandwidthMeter createCombinedBandwidthMeter() {
+    return new ExperimentalBandwidthMeter.Builder(context)
+        .setBandwidthEstimator(createBandwidthEstimator())
+        .setTimeToFirstByteEstimator(createTimeToFirstByteEstimator())
+        .build();
+  }
+
+  private PerHostBandwidthMeter createPerHostBandwidthMeter(BandwidthMeter combinedBandwidthMeter) {
+    return new PerHostBandwidthMeter.Builder(context)
+        .setCombinedBandwidthMeter(combinedBandwidthMeter)
+        .setBandwidthEstimatorSupplier(this::createBandwidthEstimator)
+        .setTimeToFirstByteEstimatorSupplier(this::createTimeToFirstByteEstimator)
+        .build();
+  }
+
+  private BandwidthEstimator createBandwidthEstimator() {
+    return new SplitParallelSampleBandwidthEstimator.Builder().setClock(fakeClock).build();
+  }
+
+  private PercentileTimeToFirstByteEstimator createTimeToFirstByteEstimator() {
+    return new PercentileTimeToFirstByteEstimator(
+        /* numberOfSamples= */ 20, /* percentile= */ 0.5f, fakeClock);
+  }
+
+  /**
+   * Replays a trace of sequential transfers to a {@link TransferListener}, advancing {@link
+   * #fakeClock} by the time to first byte and transfer duration of each transfer.
+   */
+  private void replay(ImmutableList<Transfer> trace, TransferListener transferListener) {
+    DataSource dataSource = new FakeDataSource();
+    for (Transfer transfer : trace) {
+      DataSpec dataSpec = createDataSpec(transfer.host);
+      transferListener.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      fakeClock.advanceTime(transfer.timeToFirstByteMs);
+      transferListener.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      transferListener.onBytesTransferred(
+          dataSource, dataSpec, /* isNetwork= */ true, transfer.bytesTransferred);
+      fakeClock.advanceTime(transfer.transferDurationMs);
+      transferListener.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+  }
+
+  private static ImmutableList<Transfer> createInterleavedTrace(int transferCount) {
+    ImmutableList.Builder<Transfer> trace = ImmutableList.builder();
+    for (int i = 0; i < transferCount; i++) {
+      trace.add(i % 2 == 0 ? MEDIA_TRANSFER : AD_TRANSFER);
+    }
+    return trace.build();
+  }
+
+  private static DataSpec createDataSpec(String host) {
+    return new DataSpec(Uri.parse("https://" + host + "/chunk"));
+  }
+
+  /** A recorded transfer. */
+  private static final class Transfer {
+
+    public final String host;
+    public final long timeToFirstByteMs;
+    public final int bytesTransferred;
+    public final long transferDurationMs;
+
+    public Transfer(
+        String host, long timeToFirstByteMs, int bytesTransferred, long transferDurationMs) {
+      this.host = host;
+      this.timeToFirstByteMs = timeToFirstByteMs;
+      this.bytesTransferred = bytesTransferred;
+      this.transferDurationMs = transferDurationMs;
+    }
+  }
+}
@@ -99,6 +99,8 @@ public abstract class BinarySearchSeeker {
 
   private final int minimumSearchRange;
 
+  @Nullable private SeekIndex seekIndex;
+
   /**
    * Constructs an instance.
    *
@@ -147,6 +149,19 @@ public abstract class BinarySearchSeeker {
     return seekMap;
   }
 
+  /**
+   * Sets a {@link SeekIndex} in which the timestamps found by searches are recorded, and which is
+   * used to narrow the range of subsequent searches.
+   *
+   * <p>Seek points in the index are timestamps in the units returned by the {@link
+   * SeekTimestampConverter}, and the byte positions at which they were found.
+   *
+   * @param seekIndex The {@link SeekIndex}, or {@code null} to not use an index.
+   */
+  public final void setSeekIndex(@Nullable SeekIndex seekIndex) {
+    this.seekIndex = seekIndex;
+  }
+
   /**
    * Sets the target time in microseconds within the stream to seek to.
    *
@@ -157,6 +172,9 @@ public abstract class BinarySearchSeeker {
       return;
     }
     seekOperationParams = createSeekParamsForTargetTimeUs(timeUs);
+    if (seekIndex != null) {
+      narrowSeekOperationParams(seekOperationParams, seekIndex);
+    }
   }
 
   /** Returns whether the last operation set by {@link #setSeekTargetUs(long)} is still pending. */
@@ -200,10 +218,12 @@ public abstract class BinarySearchSeeker {
         case TimestampSearchResult.TYPE_POSITION_OVERESTIMATED:
           seekOperationParams.updateSeekCeiling(
               timestampSearchResult.timestampToUpdate, timestampSearchResult.bytePositionToUpdate);
+          maybeAddSeekPoint(timestampSearchResult);
           break;
         case TimestampSearchResult.TYPE_POSITION_UNDERESTIMATED:
           seekOperationParams.updateSeekFloor(
               timestampSearchResult.timestampToUpdate, timestampSearchResult.bytePositionToUpdate);
+          maybeAddSeekPoint(timestampSearchResult);
           break;
         case TimestampSearchResult.TYPE_TARGET_TIMESTAMP_FOUND:
           skipInputUntilPosition(input, timestampSearchResult.bytePositionToUpdate);
@@ -253,6 +273,44 @@ public abstract class BinarySearchSeeker {
     return false;
   }
 
+  private void maybeAddSeekPoint(TimestampSearchResult timestampSearchResult) {
+    if (seekIndex != null) {
+      seekIndex.addSeekPoint(
+          timestampSearchResult.timestampToUpdate, timestampSearchResult.bytePositionToUpdate);
+    }
+  }
+
+  /**
+   * Narrows the search range of a seek operation to the closest timestamps found by previous
+   * searches. A timestamp found at a position bounds the search in the same way regardless of
+   * whether it was found as a floor or a ceiling, since the search only compares it with the
+   * target.
+   */
+  private static void narrowSeekOperationParams(
+      SeekOperationParams seekOperationParams, SeekIndex seekIndex) {
+    long targetTimePosition = seekOperationParams.getTargetTimePosition();
+    int floorIndex = seekIndex.getFloorSeekPointIndex(targetTimePosition);
+    if (floorIndex != C.INDEX_UNSET) {
+      long timestamp = seekIndex.getTimestamp(floorIndex);
+      long position = seekIndex.getPosition(floorIndex);
+      if (timestamp > seekOperationParams.floorTimePosition
+          && position > seekOperationParams.floorBytePosition
+          && position < seekOperationParams.ceilingBytePosition) {
+        seekOperationParams.updateSeekFloor(timestamp, position);
+      }
+    }
+    int ceilingIndex = floorIndex + 1;
+    if (ceilingIndex < seekIndex.getSeekPointCount()) {
+      long timestamp = seekIndex.getTimestamp(ceilingIndex);
+      long position = seekIndex.getPosition(ceilingIndex);
+      if (timestamp < seekOperationParams.ceilingTimePosition
+          && position > seekOperationParams.floorBytePosition
+          && position < seekOperationParams.ceilingBytePosition) {
+        seekOperationParams.updateSeekCeiling(timestamp, position);
+      }
+    }
+  }
+
   protected final int seekToPosition(
       ExtractorInput input, long position, PositionHolder seekPositionHolder) {
     if (position == input.getPosition()) {
@@ -15,6 +15,7 @@
  */
 package androidx.media3.extractor;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.UnstableApi;
 
@@ -69,4 +70,16 @@ public interface ExtractorOutput {
    * @param seekMap The extracted {@link SeekMap}.
    */
   void seekMap(SeekMap seekMap);
+
+  /**
+   * Returns a {@link SeekIndex} in which the {@link Extractor} can record knowledge about seeking
+   * in the stream, and which may hold knowledge recorded when the same stream was previously
+   * extracted. Returns {@code null} if seek knowledge isn't retained.
+   *
+   * <p>The default implementation returns {@code null}.
+   */
+  @Nullable
+  default SeekIndex getSeekIndex() {
+    return null;
+  }
 }
@@ -122,5 +122,29 @@ public final class ExtractorUtil {
     }
   }
 
+  /**
+   * Matches {@code signature} against the bytes of {@code prefix} starting at {@code offset}.
+   *
+   * @param prefix The prefix of a stream, as passed to {@link SignatureSniffer#sniffSignature}.
+   * @param prefixLength The length of the prefix.
+   * @param offset The offset in the stream at which the signature is expected.
+   * @param signature The expected signature.
+   * @return {@link SignatureSniffer#SIGNATURE_MISMATCH} if any byte of the signature in the prefix
+   *     differs, {@link SignatureSniffer#SIGNATURE_MATCH} if the whole signature is in the prefix
+   *     and matches, or {@link SignatureSniffer#SIGNATURE_UNKNOWN} if the prefix is too short.
+   */
+  public static @SignatureSniffer.SignatureResult int matchSignature(
+      byte[] prefix, int prefixLength, int offset, byte[] signature) {
+    for (int i = 0; i < signature.length; i++) {
+      if (offset + i >= prefixLength) {
+        return SignatureSniffer.SIGNATURE_UNKNOWN;
+      }
+      if (prefix[offset + i] != signature[i]) {
+        return SignatureSniffer.SIGNATURE_MISMATCH;
+      }
+    }
+    return SignatureSniffer.SIGNATURE_MATCH;
+  }
+
   private ExtractorUtil() {}
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Knowledge about seeking in a stream, that an {@link Extractor} records whilst extracting the
+ * stream and can reuse when the same stream is extracted again.
+ *
+ * <p>An index holds:
+ *
+ * <ul>
+ *   <li>Seek points, each being a timestamp and the byte position at which that timestamp was
+ *       found. Timestamps are in the units used by the extractor that populates the index, which
+ *       aren't necessarily microseconds.
+ *   <li>Named values, for example values read from the end of the stream to determine its
+ *       duration.
+ * </ul>
+ *
+ * <p>Instances are obtained from {@link ExtractorOutput#getSeekIndex()}. All methods are thread
+ * safe, so that an index can be persisted whilst it's being populated. Indices passed to or
+ * returned from methods are invalidated when seek points are added.
+ */
+@UnstableApi
+public final class SeekIndex {
+
+  /** The maximum number of seek points held by an index. Further seek points are ignored. */
+  public static final int MAX_SEEK_POINT_COUNT = 4096;
+
+  private static final int VERSION = 1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Map<String, Long> values;
+
+  private long[] timestamps;
+  private long[] positions;
+  private int seekPointCount;
+  private int modificationCount;
+
+  /** Creates an empty index. */
+  public SeekIndex() {
+    values = new HashMap<>();
+    timestamps = new long[INITIAL_CAPACITY];
+    positions = new long[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Returns the value with the given name, or {@code defaultValue} if it isn't set.
+   *
+   * @param name The name of the value.
+   * @param defaultValue The value to return if the value isn't set.
+   * @return The value.
+   */
+  public synchronized long getValue(String name, long defaultValue) {
+    @Nullable Long value = values.get(name);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Sets the value with the given name.
+   *
+   * @param name The name of the value. Extractors should prefix names with their class name.
+   * @param value The value.
+   */
+  public synchronized void setValue(String name, long value) {
+    @Nullable Long previousValue = values.put(name, value);
+    if (previousValue == null || previousValue != value) {
+      modificationCount++;
+    }
+  }
+
+  /**
+   * Adds a seek point, unless the index already has a seek point with the same timestamp, or holds
+   * {@link #MAX_SEEK_POINT_COUNT} seek points.
+   *
+   * @param timestamp The timestamp of the seek point.
+   * @param position The byte position of the seek point.
+   */
+  public synchronized void addSeekPoint(long timestamp, long position) {
+    int index = Arrays.binarySearch(timestamps, /* fromIndex= */ 0, seekPointCount, timestamp);
+    if (index >= 0 || seekPointCount == MAX_SEEK_POINT_COUNT) {
+      return;
+    }
+    index = -index - 1;
+    if (seekPointCount == timestamps.length) {
+      timestamps = Arrays.copyOf(timestamps, seekPointCount * 2);
+      positions = Arrays.copyOf(positions, seekPointCount * 2);
+    }
+    System.arraycopy(timestamps, index, timestamps, index + 1, seekPointCount - index);
+    System.arraycopy(positions, index, positions, index + 1, seekPointCount - index);
+    timestamps[index] = timestamp;
+    positions[index] = position;
+    seekPointCount++;
+    modificationCount++;
+  }
+
+  /** Returns the number of seek points. */
+  public synchronized int getSeekPointCount() {
+    return seekPointCount;
+  }
+
+  /**
+   * Returns the index of the seek point with the largest timestamp less than or equal to {@code
+   * timestamp}, or {@link C#INDEX_UNSET} if there's no such seek point.
+   */
+  public synchronized int getFloorSeekPointIndex(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, /* fromIndex= */ 0, seekPointCount, timestamp);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /** Returns the timestamp of the seek point at {@code index}. */
+  public synchronized long getTimestamp(int index) {
+    checkArgument(index >= 0 && index < seekPointCount);
+    return timestamps[index];
+  }
+
+  /** Returns the byte position of the seek point at {@code index}. */
+  public synchronized long getPosition(int index) {
+    checkArgument(index >= 0 && index < seekPointCount);
+    return positions[index];
+  }
+
+  /**
+   * Returns a count that's incremented each time the index is modified, which can be used to
+   * determine whether the index needs to be persisted again.
+   */
+  public synchronized int getModificationCount() {
+    return modificationCount;
+  }
+
+  /** Serializes the index, so that it can be restored with {@link #fromByteArray(byte[])}. */
+  public synchronized byte[] toByteArray() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+    try {
+      dataOutputStream.writeInt(VERSION);
+      dataOutputStream.writeInt(values.size());
+      for (Map.Entry<String, Long> entry : values.entrySet()) {
+        dataOutputStream.writeUTF(entry.getKey());
+        dataOutputStream.writeLong(entry.getValue());
+      }
+      dataOutputStream.writeInt(seekPointCount);
+      for (int i = 0; i < seekPointCount; i++) {
+        dataOutputStream.writeLong(timestamps[i]);
+        dataOutputStream.writeLong(positions[i]);
+      }
+      dataOutputStream.flush();
+    } catch (IOException e) {
+      // Never happens.
+      throw new IllegalStateException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Restores an index serialized by {@link #toByteArray()}.
+   *
+   * @param data The serialized index.
+   * @return The restored index.
+   * @throws IOException If the data isn't a valid serialized index.
+   */
+  public static SeekIndex fromByteArray(byte[] data) throws IOException {
+    DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+    int version = dataInputStream.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported seek index version: " + version);
+    }
+    SeekIndex seekIndex = new SeekIndex();
+    int valueCount = dataInputStream.readInt();
+    for (int i = 0; i < valueCount; i++) {
+      seekIndex.values.put(dataInputStream.readUTF(), dataInputStream.readLong());
+    }
+    int seekPointCount = dataInputStream.readInt();
+    if (seekPointCount < 0 || seekPointCount > MAX_SEEK_POINT_COUNT) {
+      throw new IOException("Invalid seek point count: " + seekPointCount);
+    }
+    seekIndex.timestamps = new long[max(seekPointCount, INITIAL_CAPACITY)];
+    seekIndex.positions = new long[seekIndex.timestamps.length];
+    long previousTimestamp = Long.MIN_VALUE;
+    for (int i = 0; i < seekPointCount; i++) {
+      long timestamp = dataInputStream.readLong();
+      if (i > 0 && timestamp <= previousTimestamp) {
+        throw new IOException("Seek points not in timestamp order");
+      }
+      seekIndex.timestamps[i] = timestamp;
+      seekIndex.positions[i] = dataInputStream.readLong();
+      previousTimestamp = timestamp;
+    }
+    seekIndex.seekPointCount = seekPointCount;
+    return seekIndex;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
+import androidx.media3.common.util.UnstableApi;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Implemented by an {@link Extractor} whose container format starts with a signature at a fixed
+ * position, so that the signature can be matched against a prefix of a stream that's been peeked
+ * once for all extractors.
+ *
+ * <p>When choosing between many extractors, the prefix of the stream can be matched against the
+ * signatures of all of them first. Extractors whose signature matches are then sniffed before
+ * others, and extractors whose signature doesn't match don't need to be sniffed. Matching a
+ * signature doesn't replace {@link Extractor#sniff}, which must still be called to confirm that the
+ * extractor can read the stream.
+ */
+@UnstableApi
+public interface SignatureSniffer {
+
+  /**
+   * The length of the prefix passed to {@link #sniffSignature}, unless the stream is shorter.
+   * Signatures must be contained in this many bytes.
+   */
+  int PREFIX_LENGTH = 16;
+
+  /**
+   * Result of {@link #sniffSignature}. One of {@link #SIGNATURE_MISMATCH}, {@link
+   * #SIGNATURE_MATCH} or {@link #SIGNATURE_UNKNOWN}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @Target(TYPE_USE)
+  @IntDef(value = {SIGNATURE_MISMATCH, SIGNATURE_MATCH, SIGNATURE_UNKNOWN})
+  @interface SignatureResult {}
+
+  /** The prefix doesn't match the signature, so {@link Extractor#sniff} would return false. */
+  int SIGNATURE_MISMATCH = 0;
+
+  /** The prefix matches the signature. */
+  int SIGNATURE_MATCH = 1;
+
+  /** Whether the prefix matches can't be determined, for example because it's too short. */
+  int SIGNATURE_UNKNOWN = 2;
+
+  /**
+   * Matches the signature of the container format against a prefix of a stream.
+   *
+   * <p>Implementations must only return {@link #SIGNATURE_MISMATCH} if {@link Extractor#sniff}
+   * would return false for the stream.
+   *
+   * @param prefix The prefix of the stream.
+   * @param prefixLength The length of the prefix, which is {@link #PREFIX_LENGTH} unless the stream
+   *     is shorter.
+   * @return The {@link SignatureResult}.
+   */
+  @SignatureResult
+  int sniffSignature(byte[] prefix, int prefixLength);
+}
@@ -31,9 +31,11 @@ import androidx.media3.extractor.ConstantBitrateSeekMap;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.TrackOutput;
 import java.io.EOFException;
 import java.io.IOException;
@@ -53,7 +55,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
  * <p>This extractor only supports single-channel AMR container formats.
  */
 @UnstableApi
-public final class AmrExtractor implements Extractor {
+public final class AmrExtractor implements Extractor, SignatureSniffer {
 
   /** Factory for {@link AmrExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new AmrExtractor()};
@@ -193,6 +195,22 @@ public final class AmrExtractor implements Extractor {
     return readAmrHeader(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    @SignatureResult
+    int narrowBandResult =
+        ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, amrSignatureNb);
+    @SignatureResult
+    int wideBandResult =
+        ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, amrSignatureWb);
+    if (narrowBandResult == SIGNATURE_MATCH || wideBandResult == SIGNATURE_MATCH) {
+      return SIGNATURE_MATCH;
+    }
+    return narrowBandResult == SIGNATURE_MISMATCH && wideBandResult == SIGNATURE_MISMATCH
+        ? SIGNATURE_MISMATCH
+        : SIGNATURE_UNKNOWN;
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     this.extractorOutput = output;
@@ -30,9 +30,11 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.NoOpExtractorOutput;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.extractor.text.SubtitleParser;
 import androidx.media3.extractor.text.SubtitleTranscodingExtractorOutput;
@@ -50,7 +52,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>Spec: https://docs.microsoft.com/en-us/windows/win32/directshow/avi-riff-file-reference.
  */
 @UnstableApi
-public final class AviExtractor implements Extractor {
+public final class AviExtractor implements Extractor, SignatureSniffer {
 
   private static final String TAG = "AviExtractor";
 
@@ -117,6 +119,8 @@ public final class AviExtractor implements Extractor {
   private static final int STATE_READING_SAMPLES = 6;
 
   private static final int AVIIF_KEYFRAME = 16;
+  private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+  private static final byte[] AVI_SIGNATURE = {'A', 'V', 'I', ' '};
 
   /**
    * Flags controlling the behavior of the extractor. Possible flag value is {@link
@@ -212,6 +216,15 @@ public final class AviExtractor implements Extractor {
     return scratch.readLittleEndianInt() == FOURCC_AVI_;
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    if (ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, RIFF_SIGNATURE)
+        == SIGNATURE_MISMATCH) {
+      return SIGNATURE_MISMATCH;
+    }
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 8, AVI_SIGNATURE);
+  }
+
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
     if (resolvePendingReposition(input, seekPosition)) {
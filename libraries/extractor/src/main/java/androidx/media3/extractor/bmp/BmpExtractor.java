@@ -20,15 +20,18 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.SingleSampleExtractor;
 import java.io.IOException;
 
 /** Extracts data from the BMP container format. */
 @UnstableApi
-public final class BmpExtractor implements Extractor {
+public final class BmpExtractor implements Extractor, SignatureSniffer {
   private static final int BMP_FILE_SIGNATURE_LENGTH = 2;
   private static final int BMP_FILE_SIGNATURE = 0x424D;
+  private static final byte[] BMP_SIGNATURE = {'B', 'M'};
 
   private final SingleSampleExtractor imageExtractor;
 
@@ -44,6 +47,11 @@ public final class BmpExtractor implements Extractor {
     return imageExtractor.sniff(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, BMP_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     imageExtractor.init(output);
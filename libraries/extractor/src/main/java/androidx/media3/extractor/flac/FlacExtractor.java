@@ -30,6 +30,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.FlacFrameReader;
 import androidx.media3.extractor.FlacFrameReader.SampleNumberHolder;
@@ -38,6 +39,7 @@ import androidx.media3.extractor.FlacSeekTableSeekMap;
 import androidx.media3.extractor.FlacStreamMetadata;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.TrackOutput;
 import java.io.IOException;
 import java.lang.annotation.Documented;
@@ -52,7 +54,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>The format specification can be found at https://xiph.org/flac/format.html.
  */
 @UnstableApi
-public final class FlacExtractor implements Extractor {
+public final class FlacExtractor implements Extractor, SignatureSniffer {
 
   /** Factory for {@link FlacExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new FlacExtractor()};
@@ -79,6 +81,9 @@ public final class FlacExtractor implements Extractor {
    */
   public static final int FLAG_DISABLE_ID3_METADATA = 1;
 
+  private static final byte[] ID3_SIGNATURE = {'I', 'D', '3'};
+  private static final byte[] STREAM_MARKER_SIGNATURE = {'f', 'L', 'a', 'C'};
+
   /** Parser state. */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
@@ -150,6 +155,17 @@ public final class FlacExtractor implements Extractor {
     return FlacMetadataReader.checkAndPeekStreamMarker(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    if (ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, ID3_SIGNATURE)
+        != SIGNATURE_MISMATCH) {
+      // The stream marker follows the ID3 metadata, whose length may exceed the prefix.
+      return SIGNATURE_UNKNOWN;
+    }
+    return ExtractorUtil.matchSignature(
+        prefix, prefixLength, /* offset= */ 0, STREAM_MARKER_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     extractorOutput = output;
@@ -324,6 +340,7 @@ public final class FlacExtractor implements Extractor {
       binarySearchSeeker =
           new FlacBinarySearchSeeker(
               flacStreamMetadata, frameStartMarker, firstFramePosition, streamLength);
+      binarySearchSeeker.setSeekIndex(castNonNull(extractorOutput).getSeekIndex());
       return binarySearchSeeker.getSeekMap();
     } else {
       return new SeekMap.Unseekable(flacStreamMetadata.getDurationUs());
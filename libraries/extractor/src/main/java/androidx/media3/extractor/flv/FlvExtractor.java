@@ -26,10 +26,12 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.IndexSeekMap;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SignatureSniffer;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
@@ -40,7 +42,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
 /** Extracts data from the FLV container format. */
 @UnstableApi
-public final class FlvExtractor implements Extractor {
+public final class FlvExtractor implements Extractor, SignatureSniffer {
 
   /** Factory for {@link FlvExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new FlvExtractor()};
@@ -73,6 +75,7 @@ public final class FlvExtractor implements Extractor {
 
   // FLV container identifier.
   private static final int FLV_TAG = 0x00464c56;
+  private static final byte[] FLV_SIGNATURE = {'F', 'L', 'V'};
 
   private final ParsableByteArray scratch;
   private final ParsableByteArray headerBuffer;
@@ -132,6 +135,11 @@ public final class FlvExtractor implements Extractor {
     return scratch.readInt() == 0;
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, FLV_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     this.extractorOutput = output;
@@ -23,7 +23,9 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.SingleSampleExtractor;
 import java.io.IOException;
 import java.lang.annotation.Documented;
@@ -33,7 +35,7 @@ import java.lang.annotation.Target;
 
 /** Extracts data from the JPEG container format. */
 @UnstableApi
-public final class JpegExtractor implements Extractor {
+public final class JpegExtractor implements Extractor, SignatureSniffer {
   /**
    * Flags controlling the behavior of the extractor. Possible flag value is {@link
    * #FLAG_READ_IMAGE}.
@@ -54,6 +56,7 @@ public final class JpegExtractor implements Extractor {
   // Specification reference: ITU-T.81 (1992) subsection B.1.1.3
   private static final int JPEG_FILE_SIGNATURE = 0xFFD8; // Start of image marker
   private static final int JPEG_FILE_SIGNATURE_LENGTH = 2;
+  private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8};
 
   private final Extractor extractor;
 
@@ -82,6 +85,11 @@ public final class JpegExtractor implements Extractor {
     return extractor.sniff(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, JPEG_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     extractor.init(output);
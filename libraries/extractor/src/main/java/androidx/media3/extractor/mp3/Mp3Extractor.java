@@ -40,6 +40,7 @@ import androidx.media3.extractor.GaplessInfoHolder;
 import androidx.media3.extractor.Id3Peeker;
 import androidx.media3.extractor.MpegAudioUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndex;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.extractor.metadata.id3.Id3Decoder;
 import androidx.media3.extractor.metadata.id3.Id3Decoder.FramePredicate;
@@ -148,6 +149,11 @@ public final class Mp3Extractor implements Extractor {
   /** Mask that includes the audio header values that must match between frames. */
   private static final int MPEG_AUDIO_HEADER_MASK = 0xFFFE0C00;
 
+  /** The minimum time between seek points stored in a {@link SeekIndex}, in microseconds. */
+  private static final long MIN_TIME_BETWEEN_SEEK_INDEX_POINTS_US = C.MICROS_PER_SECOND;
+
+  private static final String KEY_DURATION_US = "Mp3Extractor.durationUs";
+
   @Documented
   @Target(TYPE_USE)
   @Retention(SOURCE)
@@ -259,6 +265,10 @@ public final class Mp3Extractor implements Extractor {
         ((IndexSeeker) seeker).setDurationUs(durationUs);
         extractorOutput.seekMap(seeker);
       }
+      @Nullable SeekIndex seekIndex = extractorOutput.getSeekIndex();
+      if (seekIndex != null) {
+        seekIndex.setValue(KEY_DURATION_US, durationUs);
+      }
     }
     return readResult;
   }
@@ -310,7 +320,7 @@ public final class Mp3Extractor implements Extractor {
     return readSample(input);
   }
 
-  @RequiresNonNull({"realTrackOutput", "seeker"})
+  @RequiresNonNull({"extractorOutput", "realTrackOutput", "seeker"})
   private int readSample(ExtractorInput extractorInput) throws IOException {
     if (sampleBytesRemaining == 0) {
       extractorInput.resetPeekPosition();
@@ -339,9 +349,10 @@ public final class Mp3Extractor implements Extractor {
         IndexSeeker indexSeeker = (IndexSeeker) seeker;
         // Add seek point corresponding to the next frame instead of the current one to be able to
         // start writing to the realTrackOutput on time when a seek is in progress.
-        indexSeeker.maybeAddSeekPoint(
-            computeTimeUs(samplesRead + synchronizedHeader.samplesPerFrame),
-            extractorInput.getPosition() + synchronizedHeader.frameSize);
+        long nextFrameTimeUs = computeTimeUs(samplesRead + synchronizedHeader.samplesPerFrame);
+        long nextFramePosition = extractorInput.getPosition() + synchronizedHeader.frameSize;
+        indexSeeker.maybeAddSeekPoint(nextFrameTimeUs, nextFramePosition);
+        maybeAddSeekIndexPoint(extractorOutput.getSeekIndex(), nextFrameTimeUs, nextFramePosition);
         if (isSeekInProgress && indexSeeker.isTimeUsInIndex(seekTimeUs)) {
           isSeekInProgress = false;
           currentTrackOutput = realTrackOutput;
@@ -367,6 +378,24 @@ public final class Mp3Extractor implements Extractor {
     return basisTimeUs + samplesRead * C.MICROS_PER_SECOND / synchronizedHeader.sampleRate;
   }
 
+  private static void maybeAddSeekIndexPoint(
+      @Nullable SeekIndex seekIndex, long timeUs, long position) {
+    if (seekIndex == null) {
+      return;
+    }
+    int floorIndex = seekIndex.getFloorSeekPointIndex(timeUs);
+    if (floorIndex != C.INDEX_UNSET
+        && timeUs - seekIndex.getTimestamp(floorIndex) < MIN_TIME_BETWEEN_SEEK_INDEX_POINTS_US) {
+      return;
+    }
+    int ceilingIndex = floorIndex + 1;
+    if (ceilingIndex < seekIndex.getSeekPointCount()
+        && seekIndex.getTimestamp(ceilingIndex) - timeUs < MIN_TIME_BETWEEN_SEEK_INDEX_POINTS_US) {
+      return;
+    }
+    seekIndex.addSeekPoint(timeUs, position);
+  }
+
   private boolean synchronize(ExtractorInput input, boolean sniffing) throws IOException {
     int validFrameCount = 0;
     int candidateSynchronizedHeaderData = 0;
@@ -484,9 +513,22 @@ public final class Mp3Extractor implements Extractor {
       } else {
         durationUs = getId3TlenUs(metadata);
       }
-      resultSeeker =
+      @Nullable SeekIndex seekIndex = Util.castNonNull(extractorOutput).getSeekIndex();
+      if (seekIndex != null && durationUs == C.TIME_UNSET) {
+        durationUs = seekIndex.getValue(KEY_DURATION_US, C.TIME_UNSET);
+      }
+      IndexSeeker indexSeeker =
           new IndexSeeker(
               durationUs, /* dataStartPosition= */ input.getPosition(), dataEndPosition);
+      if (seekIndex != null) {
+        // Restore the seek points found when the stream was previously read, so that seeking to
+        // them doesn't require reading the stream up to the seek position again.
+        int seekPointCount = seekIndex.getSeekPointCount();
+        for (int i = 0; i < seekPointCount; i++) {
+          indexSeeker.maybeAddSeekPoint(seekIndex.getTimestamp(i), seekIndex.getPosition(i));
+        }
+      }
+      resultSeeker = indexSeeker;
     } else if (metadataSeeker != null) {
       resultSeeker = metadataSeeker;
     } else if (seekFrameSeeker != null) {
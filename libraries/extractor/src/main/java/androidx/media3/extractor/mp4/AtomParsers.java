@@ -19,6 +19,7 @@ import static androidx.media3.common.MimeTypes.getMimeTypeFromMp4ObjectType;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.util.Pair;
 import androidx.annotation.Nullable;
@@ -50,6 +51,7 @@ import androidx.media3.extractor.VorbisUtil;
 import androidx.media3.extractor.mp4.Atom.LeafAtom;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
 import com.google.common.primitives.Ints;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -407,14 +409,7 @@ import java.util.Objects;
 
     int sampleCount = sampleSizeBox.getSampleCount();
     if (sampleCount == 0) {
-      return new TrackSampleTable(
-          track,
-          /* offsets= */ new long[0],
-          /* sizes= */ new int[0],
-          /* maximumSize= */ 0,
-          /* timestampsUs= */ new long[0],
-          /* flags= */ new int[0],
-          /* durationUs= */ 0);
+      return TrackSampleTable.createEmpty(track);
     }
 
     // Entries are byte offsets of chunks.
@@ -479,11 +474,8 @@ import java.util.Objects;
             && remainingTimestampOffsetChanges == 0
             && remainingSynchronizationSamples == 0;
 
-    long[] offsets;
-    int[] sizes;
+    CompactSampleData sampleData;
     int maximumSize = 0;
-    long[] timestamps;
-    int[] flags;
     long timestampTimeUnits = 0;
     long duration;
 
@@ -497,73 +489,75 @@ import java.util.Objects;
       FixedSampleSizeRechunker.Results rechunkedResults =
           FixedSampleSizeRechunker.rechunk(
               fixedSampleSize, chunkOffsetsBytes, chunkSampleCounts, timestampDeltaInTimeUnits);
-      offsets = rechunkedResults.offsets;
-      sizes = rechunkedResults.sizes;
+      int rechunkedSampleCount = rechunkedResults.offsets.length;
+      CompactSampleData.Builder sampleDataBuilder =
+          new CompactSampleData.Builder()
+              .setSampleCount(rechunkedSampleCount)
+              .setSampleSizes(rechunkedResults.sizes);
+      for (int i = 0; i < rechunkedSampleCount; i++) {
+        sampleDataBuilder.addOffsetRun(i, rechunkedResults.offsets[i]);
+        sampleDataBuilder.addDecodingTimeRun(i, rechunkedResults.timestamps[i], /* delta= */ 0);
+      }
+      sampleData = sampleDataBuilder.build();
       maximumSize = rechunkedResults.maximumSize;
-      timestamps = rechunkedResults.timestamps;
-      flags = rechunkedResults.flags;
       duration = rechunkedResults.duration;
     } else {
-      offsets = new long[sampleCount];
-      sizes = new int[sampleCount];
-      timestamps = new long[sampleCount];
-      flags = new int[sampleCount];
-      long offset = 0;
-      int remainingSamplesInChunk = 0;
+      // Each box is read a run of samples at a time rather than a sample at a time, so that the
+      // sample data can be stored without allocating arrays with an element per sample where
+      // possible. The entries read from each box are the same as if the samples were iterated.
+      CompactSampleData.Builder sampleDataBuilder = new CompactSampleData.Builder();
 
-      for (int i = 0; i < sampleCount; i++) {
-        // Advance to the next chunk if necessary.
-        boolean chunkDataComplete = true;
-        while (remainingSamplesInChunk == 0 && (chunkDataComplete = chunkIterator.moveNext())) {
-          offset = chunkIterator.offset;
-          remainingSamplesInChunk = chunkIterator.numSamples;
-        }
-        if (!chunkDataComplete) {
+      // Read the chunks that contain the samples.
+      int remainingSamplesInChunk = 0;
+      int sampleIndex = 0;
+      while (sampleIndex < sampleCount) {
+        if (!chunkIterator.moveNext()) {
           Log.w(TAG, "Unexpected end of chunk data");
-          sampleCount = i;
-          offsets = Arrays.copyOf(offsets, sampleCount);
-          sizes = Arrays.copyOf(sizes, sampleCount);
-          timestamps = Arrays.copyOf(timestamps, sampleCount);
-          flags = Arrays.copyOf(flags, sampleCount);
+          sampleCount = sampleIndex;
           break;
         }
-
-        // Add on the timestamp offset if ctts is present.
-        if (ctts != null) {
-          while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
-            remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
-            // The BMFF spec (ISO/IEC 14496-12) states that sample offsets should be unsigned
-            // integers in version 0 ctts boxes, however some streams violate the spec and use
-            // signed integers instead. It's safe to always decode sample offsets as signed integers
-            // here, because unsigned integers will still be parsed correctly (unless their top bit
-            // is set, which is never true in practice because sample offsets are always small).
-            timestampOffset = ctts.readInt();
-            remainingTimestampOffsetChanges--;
-          }
-          remainingSamplesAtTimestampOffset--;
+        if (chunkIterator.numSamples > 0) {
+          sampleDataBuilder.addOffsetRun(sampleIndex, chunkIterator.offset);
+          int chunkSampleCount = min(chunkIterator.numSamples, sampleCount - sampleIndex);
+          sampleIndex += chunkSampleCount;
+          remainingSamplesInChunk = chunkIterator.numSamples - chunkSampleCount;
         }
+      }
+      sampleDataBuilder.setSampleCount(sampleCount);
 
-        offsets[i] = offset;
-        sizes[i] = sampleSizeBox.readNextSampleSize();
-        if (sizes[i] > maximumSize) {
-          maximumSize = sizes[i];
-        }
-        timestamps[i] = timestampTimeUnits + timestampOffset;
-
-        // All samples are synchronization samples if the stss is not present.
-        flags[i] = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
-        if (i == nextSynchronizationSampleIndex) {
-          flags[i] = C.BUFFER_FLAG_KEY_FRAME;
-          remainingSynchronizationSamples--;
-          if (remainingSynchronizationSamples > 0) {
-            nextSynchronizationSampleIndex = checkNotNull(stss).readUnsignedIntToInt() - 1;
+      // Read the sample sizes.
+      if (fixedSampleSize != C.LENGTH_UNSET) {
+        sampleDataBuilder.setFixedSampleSize(fixedSampleSize);
+        maximumSize = sampleCount > 0 ? fixedSampleSize : 0;
+      } else {
+        int[] sizes = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+          sizes[i] = sampleSizeBox.readNextSampleSize();
+          if (sizes[i] > maximumSize) {
+            maximumSize = sizes[i];
           }
         }
+        sampleDataBuilder.setSampleSizes(sizes);
+      }
 
-        // Add on the duration of this sample.
-        timestampTimeUnits += timestampDeltaInTimeUnits;
-        remainingSamplesAtTimestampDelta--;
-        if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
+      // Read the sample timestamps, as runs of samples with the same duration.
+      sampleIndex = 0;
+      while (sampleIndex < sampleCount) {
+        sampleDataBuilder.addDecodingTimeRun(
+            sampleIndex, timestampTimeUnits, timestampDeltaInTimeUnits);
+        int runSampleCount = sampleCount - sampleIndex;
+        boolean readNextTimestampDelta = false;
+        if (remainingSamplesAtTimestampDelta > 0
+            && remainingTimestampDeltaChanges > 0
+            && remainingSamplesAtTimestampDelta <= runSampleCount) {
+          runSampleCount = remainingSamplesAtTimestampDelta;
+          readNextTimestampDelta = true;
+        }
+        // Add on the duration of the samples in the run.
+        timestampTimeUnits += (long) runSampleCount * timestampDeltaInTimeUnits;
+        remainingSamplesAtTimestampDelta -= runSampleCount;
+        sampleIndex += runSampleCount;
+        if (readNextTimestampDelta) {
           remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
           // The BMFF spec (ISO/IEC 14496-12) states that sample deltas should be unsigned integers
           // in stts boxes, however some streams violate the spec and use signed integers instead.
@@ -574,10 +568,54 @@ import java.util.Objects;
           timestampDeltaInTimeUnits = stts.readInt();
           remainingTimestampDeltaChanges--;
         }
+      }
 
-        offset += sizes[i];
-        remainingSamplesInChunk--;
+      // Add on the timestamp offsets if ctts is present, as runs of samples with the same offset.
+      if (ctts != null) {
+        sampleIndex = 0;
+        while (sampleIndex < sampleCount) {
+          int previousTimestampOffset = timestampOffset;
+          while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
+            remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
+            // The BMFF spec (ISO/IEC 14496-12) states that sample offsets should be unsigned
+            // integers in version 0 ctts boxes, however some streams violate the spec and use
+            // signed integers instead. It's safe to always decode sample offsets as signed integers
+            // here, because unsigned integers will still be parsed correctly (unless their top bit
+            // is set, which is never true in practice because sample offsets are always small).
+            timestampOffset = ctts.readInt();
+            remainingTimestampOffsetChanges--;
+          }
+          if (sampleIndex == 0 || timestampOffset != previousTimestampOffset) {
+            sampleDataBuilder.addCompositionOffsetRun(sampleIndex, timestampOffset);
+          }
+          int runSampleCount = sampleCount - sampleIndex;
+          if (remainingSamplesAtTimestampOffset > 0) {
+            runSampleCount = min(runSampleCount, remainingSamplesAtTimestampOffset);
+          }
+          remainingSamplesAtTimestampOffset -= runSampleCount;
+          sampleIndex += runSampleCount;
+        }
+      }
+
+      // All samples are synchronization samples if the stss is not present.
+      if (stss != null) {
+        ImmutableIntArray.Builder synchronizationSampleIndices =
+            ImmutableIntArray.builder(min(remainingSynchronizationSamples, sampleCount));
+        int minimumSynchronizationSampleIndex = 0;
+        while (nextSynchronizationSampleIndex >= minimumSynchronizationSampleIndex
+            && nextSynchronizationSampleIndex < sampleCount) {
+          synchronizationSampleIndices.add(nextSynchronizationSampleIndex);
+          remainingSynchronizationSamples--;
+          if (remainingSynchronizationSamples == 0) {
+            break;
+          }
+          minimumSynchronizationSampleIndex = nextSynchronizationSampleIndex + 1;
+          nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        }
+        sampleDataBuilder.setSynchronizationSampleIndices(
+            synchronizationSampleIndices.build().toArray());
       }
+      sampleData = sampleDataBuilder.build();
       duration = timestampTimeUnits + timestampOffset;
 
       // If the stbl's child boxes are not consistent the container is malformed, but the stream may
@@ -619,9 +657,7 @@ import java.util.Objects;
     long durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
 
     if (track.editListDurations == null) {
-      Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
-          track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
+      return new TrackSampleTable(track, sampleData, maximumSize, durationUs);
     }
 
     // See the BMFF spec (ISO/IEC 14496-12) subsection 8.6.6. Edit lists that require prerolling
@@ -633,17 +669,19 @@ import java.util.Objects;
 
     if (track.editListDurations.length == 1
         && track.type == C.TRACK_TYPE_AUDIO
-        && timestamps.length >= 2) {
+        && sampleData.sampleCount >= 2) {
       long editStartTime = checkNotNull(track.editListMediaTimes)[0];
       long editEndTime =
           editStartTime
               + Util.scaleLargeTimestamp(
                   track.editListDurations[0], track.timescale, track.movieTimescale);
-      if (canApplyEditWithGaplessInfo(timestamps, duration, editStartTime, editEndTime)) {
+      if (canApplyEditWithGaplessInfo(sampleData, duration, editStartTime, editEndTime)) {
         long paddingTimeUnits = duration - editEndTime;
         long encoderDelay =
             Util.scaleLargeTimestamp(
-                editStartTime - timestamps[0], track.format.sampleRate, track.timescale);
+                editStartTime - sampleData.getTimestamp(0),
+                track.format.sampleRate,
+                track.timescale);
         long encoderPadding =
             Util.scaleLargeTimestamp(paddingTimeUnits, track.format.sampleRate, track.timescale);
         if ((encoderDelay != 0 || encoderPadding != 0)
@@ -651,12 +689,10 @@ import java.util.Objects;
             && encoderPadding <= Integer.MAX_VALUE) {
           gaplessInfoHolder.encoderDelay = (int) encoderDelay;
           gaplessInfoHolder.encoderPadding = (int) encoderPadding;
-          Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
           long editedDurationUs =
               Util.scaleLargeTimestamp(
                   track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
-          return new TrackSampleTable(
-              track, offsets, sizes, maximumSize, timestamps, flags, editedDurationUs);
+          return new TrackSampleTable(track, sampleData, maximumSize, editedDurationUs);
         }
       }
     }
@@ -666,15 +702,19 @@ import java.util.Objects;
       // unfragmented files open to interpretation. We handle this as a special case and include all
       // samples in the edit.
       long editStartTime = checkNotNull(track.editListMediaTimes)[0];
-      for (int i = 0; i < timestamps.length; i++) {
-        timestamps[i] =
-            Util.scaleLargeTimestamp(
-                timestamps[i] - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      }
       durationUs =
           Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
       return new TrackSampleTable(
-          track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
+          track,
+          sampleData,
+          sampleData.sampleCount,
+          maximumSize,
+          durationUs,
+          /* editStartIndices= */ new int[] {0},
+          /* editSampleDataIndices= */ new int[] {0},
+          /* editMediaTimes= */ new long[] {editStartTime},
+          /* editPresentationTimesUs= */ new long[] {0},
+          /* clampTimestampsToEditStart= */ false);
     }
 
     // When applying edit lists, we need to include any partial clipped samples at the end to ensure
@@ -696,29 +736,38 @@ import java.util.Objects;
         long editDuration =
             Util.scaleLargeTimestamp(
                 track.editListDurations[i], track.timescale, track.movieTimescale);
-        // The timestamps array is in the order read from the media, which might not be strictly
+        // The timestamps are in the order read from the media, which might not be strictly
         // sorted, but will ensure that a) all sync frames are in-order and b) any out-of-order
         // frames are after their respective sync frames. This means that although the result of
-        // this binary search might be slightly incorrect (due to out-of-order timestamps), the loop
-        // below that walks forward to find the next sync frame will result in a correct start
-        // index. The start index would also be correct if we walk backwards to the previous sync
-        // frame (https://github.com/google/ExoPlayer/issues/1659).
+        // this binary search might be slightly incorrect (due to out-of-order timestamps), the
+        // search below for the next sync frame will result in a correct start index. The start
+        // index would also be correct if we walk backwards to the previous sync frame
+        // (https://github.com/google/ExoPlayer/issues/1659).
         startIndices[i] =
-            Util.binarySearchFloor(
-                timestamps, editMediaTime, /* inclusive= */ true, /* stayInBounds= */ true);
+            TrackSampleTable.binarySearchFloor(
+                sampleData::getTimestamp,
+                sampleData.sampleCount,
+                editMediaTime,
+                /* inclusive= */ true,
+                /* stayInBounds= */ true);
         endIndices[i] =
-            Util.binarySearchCeil(
-                timestamps,
+            TrackSampleTable.binarySearchCeil(
+                sampleData::getTimestamp,
+                sampleData.sampleCount,
                 editMediaTime + editDuration,
                 /* inclusive= */ omitZeroDurationClippedSample,
                 /* stayInBounds= */ false);
-        while (startIndices[i] < endIndices[i]
-            && (flags[startIndices[i]] & C.BUFFER_FLAG_KEY_FRAME) == 0) {
+        if (startIndices[i] < endIndices[i]) {
           // Applying the edit correctly would require prerolling from the previous sync sample. In
           // the current implementation we advance to the next sync sample instead. Only other
           // tracks (i.e. audio) will be rendered until the time of the first sync sample.
           // See https://github.com/google/ExoPlayer/issues/1659.
-          startIndices[i]++;
+          int synchronizationSampleIndex =
+              sampleData.getSynchronizationSampleIndexAtOrAfter(startIndices[i]);
+          startIndices[i] =
+              synchronizationSampleIndex == C.INDEX_UNSET
+                  ? endIndices[i]
+                  : min(synchronizationSampleIndex, endIndices[i]);
         }
         editedSampleCount += endIndices[i] - startIndices[i];
         copyMetadata |= nextSampleIndex != startIndices[i];
@@ -727,50 +776,49 @@ import java.util.Objects;
     }
     copyMetadata |= editedSampleCount != sampleCount;
 
-    // Calculate edited sample timestamps and update the corresponding metadata arrays.
-    long[] editedOffsets = copyMetadata ? new long[editedSampleCount] : offsets;
-    int[] editedSizes = copyMetadata ? new int[editedSampleCount] : sizes;
+    // Map each edit that contains samples onto the range of samples it contains.
+    int editCount = 0;
+    int[] editStartIndices = new int[track.editListDurations.length];
+    int[] editSampleDataIndices = new int[track.editListDurations.length];
+    long[] editMediaTimes = new long[track.editListDurations.length];
+    long[] editPresentationTimesUs = new long[track.editListDurations.length];
     int editedMaximumSize = copyMetadata ? 0 : maximumSize;
-    int[] editedFlags = copyMetadata ? new int[editedSampleCount] : flags;
-    long[] editedTimestamps = new long[editedSampleCount];
     long pts = 0;
     int sampleIndex = 0;
     for (int i = 0; i < track.editListDurations.length; i++) {
-      long editMediaTime = track.editListMediaTimes[i];
       int startIndex = startIndices[i];
       int endIndex = endIndices[i];
-      if (copyMetadata) {
-        int count = endIndex - startIndex;
-        System.arraycopy(offsets, startIndex, editedOffsets, sampleIndex, count);
-        System.arraycopy(sizes, startIndex, editedSizes, sampleIndex, count);
-        System.arraycopy(flags, startIndex, editedFlags, sampleIndex, count);
-      }
-      for (int j = startIndex; j < endIndex; j++) {
-        long ptsUs = Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
-        long timeInSegmentUs =
-            Util.scaleLargeTimestamp(
-                timestamps[j] - editMediaTime, C.MICROS_PER_SECOND, track.timescale);
-        if (canTrimSamplesWithTimestampChange(track.type)) {
-          timeInSegmentUs = max(0, timeInSegmentUs);
-        }
-        editedTimestamps[sampleIndex] = ptsUs + timeInSegmentUs;
-        if (copyMetadata && editedSizes[sampleIndex] > editedMaximumSize) {
-          editedMaximumSize = sizes[j];
+      if (startIndex < endIndex) {
+        editStartIndices[editCount] = sampleIndex;
+        editSampleDataIndices[editCount] = startIndex;
+        editMediaTimes[editCount] = editListMediaTimes[i];
+        editPresentationTimesUs[editCount] =
+            Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
+        editCount++;
+        if (copyMetadata) {
+          for (int j = startIndex; j < endIndex; j++) {
+            editedMaximumSize = max(editedMaximumSize, sampleData.getSize(j));
+          }
         }
-        sampleIndex++;
+        sampleIndex += endIndex - startIndex;
       }
       pts += track.editListDurations[i];
     }
     long editedDurationUs =
         Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
+    // A sample table has at least one edit, even if it contains no samples.
+    editCount = max(editCount, 1);
     return new TrackSampleTable(
         track,
-        editedOffsets,
-        editedSizes,
+        sampleData,
+        sampleIndex,
         editedMaximumSize,
-        editedTimestamps,
-        editedFlags,
-        editedDurationUs);
+        editedDurationUs,
+        Arrays.copyOf(editStartIndices, editCount),
+        Arrays.copyOf(editSampleDataIndices, editCount),
+        Arrays.copyOf(editMediaTimes, editCount),
+        Arrays.copyOf(editPresentationTimesUs, editCount),
+        /* clampTimestampsToEditStart= */ canTrimSamplesWithTimestampChange(track.type));
   }
 
   private static boolean canTrimSamplesWithTimestampChange(@C.TrackType int trackType) {
@@ -2119,14 +2167,15 @@ import java.util.Objects;
 
   /** Returns whether it's possible to apply the specified edit using gapless playback info. */
   private static boolean canApplyEditWithGaplessInfo(
-      long[] timestamps, long duration, long editStartTime, long editEndTime) {
-    int lastIndex = timestamps.length - 1;
+      CompactSampleData sampleData, long duration, long editStartTime, long editEndTime) {
+    int lastIndex = sampleData.sampleCount - 1;
     int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
     int earliestPaddingIndex =
-        Util.constrainValue(timestamps.length - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
-    return timestamps[0] <= editStartTime
-        && editStartTime < timestamps[latestDelayIndex]
-        && timestamps[earliestPaddingIndex] < editEndTime
+        Util.constrainValue(
+            sampleData.sampleCount - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return sampleData.getTimestamp(0) <= editStartTime
+        && editStartTime < sampleData.getTimestamp(latestDelayIndex)
+        && sampleData.getTimestamp(earliestPaddingIndex) < editEndTime
         && editEndTime <= duration;
   }
 
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
+
+/**
+ * The samples described by an stbl box, in a compact form from which the offset, size, timestamp
+ * and synchronization status of each sample are computed on demand.
+ *
+ * <p>Offsets are stored once per run of consecutive samples in a chunk, decoding times once per
+ * run of samples with the same duration, and composition offsets once per run of samples with the
+ * same offset, as they are in the stsc, stco, stts and ctts boxes. Where there are so many runs
+ * that this would take more memory than storing one value per sample, one value per sample is
+ * stored instead.
+ */
+/* package */ final class CompactSampleData {
+
+  /**
+   * The maximum number of samples in a run of offsets when sample sizes vary, which bounds the
+   * number of sizes summed to compute an offset.
+   */
+  private static final int MAX_SAMPLES_PER_OFFSET_RUN = 32;
+
+  /** Builds {@link CompactSampleData} instances. */
+  public static final class Builder {
+
+    private final ImmutableIntArray.Builder offsetRunStartIndices;
+    private final ImmutableLongArray.Builder offsetRunOffsets;
+    private final ImmutableIntArray.Builder decodingTimeRunStartIndices;
+    private final ImmutableLongArray.Builder decodingTimeRunStartTimes;
+    private final ImmutableIntArray.Builder decodingTimeRunDeltas;
+    private final ImmutableIntArray.Builder compositionOffsetRunStartIndices;
+    private final ImmutableIntArray.Builder compositionOffsetRunOffsets;
+
+    private int sampleCount;
+    private int fixedSampleSize;
+    @Nullable private int[] sampleSizes;
+    @Nullable private int[] synchronizationSampleIndices;
+
+    /** Creates an instance. */
+    public Builder() {
+      offsetRunStartIndices = ImmutableIntArray.builder();
+      offsetRunOffsets = ImmutableLongArray.builder();
+      decodingTimeRunStartIndices = ImmutableIntArray.builder();
+      decodingTimeRunStartTimes = ImmutableLongArray.builder();
+      decodingTimeRunDeltas = ImmutableIntArray.builder();
+      compositionOffsetRunStartIndices = ImmutableIntArray.builder();
+      compositionOffsetRunOffsets = ImmutableIntArray.builder();
+      fixedSampleSize = C.LENGTH_UNSET;
+    }
+
+    /** Sets the number of samples. The default value is zero. */
+    public Builder setSampleCount(int sampleCount) {
+      this.sampleCount = sampleCount;
+      return this;
+    }
+
+    /** Sets the size of every sample, in bytes. */
+    public Builder setFixedSampleSize(int fixedSampleSize) {
+      this.fixedSampleSize = fixedSampleSize;
+      this.sampleSizes = null;
+      return this;
+    }
+
+    /** Sets the size of each sample, in bytes. */
+    public Builder setSampleSizes(int[] sampleSizes) {
+      this.sampleSizes = sampleSizes;
+      this.fixedSampleSize = C.LENGTH_UNSET;
+      return this;
+    }
+
+    /**
+     * Adds a run of samples that are stored consecutively, starting at {@code offset}. The run
+     * continues until the start of the next run.
+     */
+    public Builder addOffsetRun(int firstSampleIndex, long offset) {
+      offsetRunStartIndices.add(firstSampleIndex);
+      offsetRunOffsets.add(offset);
+      return this;
+    }
+
+    /**
+     * Adds a run of samples whose decoding times increase by {@code delta}, starting at {@code
+     * decodingTime}. The run continues until the start of the next run.
+     */
+    public Builder addDecodingTimeRun(int firstSampleIndex, long decodingTime, int delta) {
+      decodingTimeRunStartIndices.add(firstSampleIndex);
+      decodingTimeRunStartTimes.add(decodingTime);
+      decodingTimeRunDeltas.add(delta);
+      return this;
+    }
+
+    /**
+     * Adds a run of samples whose presentation times are {@code compositionOffset} after their
+     * decoding times. The run continues until the start of the next run. If no runs are added, the
+     * composition offset of every sample is zero.
+     */
+    public Builder addCompositionOffsetRun(int firstSampleIndex, int compositionOffset) {
+      compositionOffsetRunStartIndices.add(firstSampleIndex);
+      compositionOffsetRunOffsets.add(compositionOffset);
+      return this;
+    }
+
+    /**
+     * Sets the indices of the synchronization samples in ascending order, or null if every sample
+     * is a synchronization sample.
+     */
+    public Builder setSynchronizationSampleIndices(@Nullable int[] synchronizationSampleIndices) {
+      this.synchronizationSampleIndices = synchronizationSampleIndices;
+      return this;
+    }
+
+    /** Builds the {@link CompactSampleData}. */
+    public CompactSampleData build() {
+      return new CompactSampleData(this);
+    }
+  }
+
+  /** The number of samples. */
+  public final int sampleCount;
+
+  private final int fixedSampleSize;
+  @Nullable private final int[] sampleSizes;
+
+  @Nullable private final long[] sampleOffsets;
+  private final int[] offsetRunStartIndices;
+  private final long[] offsetRunOffsets;
+
+  @Nullable private final long[] sampleDecodingTimes;
+  private final int[] decodingTimeRunStartIndices;
+  private final long[] decodingTimeRunStartTimes;
+  private final int[] decodingTimeRunDeltas;
+
+  @Nullable private final int[] sampleCompositionOffsets;
+  private final int[] compositionOffsetRunStartIndices;
+  private final int[] compositionOffsetRunOffsets;
+
+  @Nullable private final int[] synchronizationSampleIndices;
+
+  private CompactSampleData(Builder builder) {
+    sampleCount = builder.sampleCount;
+    fixedSampleSize = builder.fixedSampleSize;
+    sampleSizes = builder.sampleSizes;
+    checkArgument(sampleSizes == null || sampleSizes.length == sampleCount);
+    synchronizationSampleIndices = builder.synchronizationSampleIndices;
+
+    int[] offsetRunStartIndices = builder.offsetRunStartIndices.build().toArray();
+    long[] offsetRunOffsets = builder.offsetRunOffsets.build().toArray();
+    if (sampleSizes != null) {
+      ImmutableIntArray.Builder splitRunStartIndices = ImmutableIntArray.builder();
+      ImmutableLongArray.Builder splitRunOffsets = ImmutableLongArray.builder();
+      for (int run = 0; run < offsetRunStartIndices.length; run++) {
+        int runEndIndex = getRunEndIndex(offsetRunStartIndices, run, sampleCount);
+        long offset = offsetRunOffsets[run];
+        for (int i = offsetRunStartIndices[run]; i < runEndIndex; i++) {
+          if ((i - offsetRunStartIndices[run]) % MAX_SAMPLES_PER_OFFSET_RUN == 0) {
+            splitRunStartIndices.add(i);
+            splitRunOffsets.add(offset);
+          }
+          offset += sampleSizes[i];
+        }
+      }
+      offsetRunStartIndices = splitRunStartIndices.build().toArray();
+      offsetRunOffsets = splitRunOffsets.build().toArray();
+    }
+    // A run takes 12 bytes, compared to 8 bytes for the offset of a single sample.
+    if (3L * offsetRunStartIndices.length >= 2L * sampleCount) {
+      long[] sampleOffsets = new long[sampleCount];
+      for (int run = 0; run < offsetRunStartIndices.length; run++) {
+        int runEndIndex = getRunEndIndex(offsetRunStartIndices, run, sampleCount);
+        long offset = offsetRunOffsets[run];
+        for (int i = offsetRunStartIndices[run]; i < runEndIndex; i++) {
+          sampleOffsets[i] = offset;
+          offset += sampleSizes != null ? sampleSizes[i] : fixedSampleSize;
+        }
+      }
+      this.sampleOffsets = sampleOffsets;
+      this.offsetRunStartIndices = new int[0];
+      this.offsetRunOffsets = new long[0];
+    } else {
+      this.sampleOffsets = null;
+      this.offsetRunStartIndices = offsetRunStartIndices;
+      this.offsetRunOffsets = offsetRunOffsets;
+    }
+
+    int[] decodingTimeRunStartIndices = builder.decodingTimeRunStartIndices.build().toArray();
+    long[] decodingTimeRunStartTimes = builder.decodingTimeRunStartTimes.build().toArray();
+    int[] decodingTimeRunDeltas = builder.decodingTimeRunDeltas.build().toArray();
+    // A run takes 16 bytes, compared to 8 bytes for the decoding time of a single sample.
+    if (2L * decodingTimeRunStartIndices.length >= sampleCount) {
+      long[] sampleDecodingTimes = new long[sampleCount];
+      for (int run = 0; run < decodingTimeRunStartIndices.length; run++) {
+        int runStartIndex = decodingTimeRunStartIndices[run];
+        int runEndIndex = getRunEndIndex(decodingTimeRunStartIndices, run, sampleCount);
+        for (int i = runStartIndex; i < runEndIndex; i++) {
+          sampleDecodingTimes[i] =
+              decodingTimeRunStartTimes[run]
+                  + (long) (i - runStartIndex) * decodingTimeRunDeltas[run];
+        }
+      }
+      this.sampleDecodingTimes = sampleDecodingTimes;
+      this.decodingTimeRunStartIndices = new int[0];
+      this.decodingTimeRunStartTimes = new long[0];
+      this.decodingTimeRunDeltas = new int[0];
+    } else {
+      this.sampleDecodingTimes = null;
+      this.decodingTimeRunStartIndices = decodingTimeRunStartIndices;
+      this.decodingTimeRunStartTimes = decodingTimeRunStartTimes;
+      this.decodingTimeRunDeltas = decodingTimeRunDeltas;
+    }
+
+    int[] compositionOffsetRunStartIndices =
+        builder.compositionOffsetRunStartIndices.build().toArray();
+    int[] compositionOffsetRunOffsets = builder.compositionOffsetRunOffsets.build().toArray();
+    // A run takes 8 bytes, compared to 4 bytes for the composition offset of a single sample.
+    if (2L * compositionOffsetRunStartIndices.length >= sampleCount) {
+      int[] sampleCompositionOffsets = new int[sampleCount];
+      for (int run = 0; run < compositionOffsetRunStartIndices.length; run++) {
+        int runEndIndex = getRunEndIndex(compositionOffsetRunStartIndices, run, sampleCount);
+        for (int i = compositionOffsetRunStartIndices[run]; i < runEndIndex; i++) {
+          sampleCompositionOffsets[i] = compositionOffsetRunOffsets[run];
+        }
+      }
+      this.sampleCompositionOffsets = sampleCompositionOffsets;
+      this.compositionOffsetRunStartIndices = new int[0];
+      this.compositionOffsetRunOffsets = new int[0];
+    } else {
+      this.sampleCompositionOffsets = null;
+      this.compositionOffsetRunStartIndices = compositionOffsetRunStartIndices;
+      this.compositionOffsetRunOffsets = compositionOffsetRunOffsets;
+    }
+  }
+
+  /** Returns the offset of the sample at {@code index}, in bytes. */
+  public long getOffset(int index) {
+    if (sampleOffsets != null) {
+      return sampleOffsets[index];
+    }
+    int run = getRunIndex(offsetRunStartIndices, index);
+    int runStartIndex = offsetRunStartIndices[run];
+    long offset = offsetRunOffsets[run];
+    if (sampleSizes == null) {
+      return offset + (long) (index - runStartIndex) * fixedSampleSize;
+    }
+    for (int i = runStartIndex; i < index; i++) {
+      offset += sampleSizes[i];
+    }
+    return offset;
+  }
+
+  /** Returns the size of the sample at {@code index}, in bytes. */
+  public int getSize(int index) {
+    return sampleSizes != null ? sampleSizes[index] : fixedSampleSize;
+  }
+
+  /**
+   * Returns the presentation timestamp of the sample at {@code index}, in the timescale of the
+   * track and before any edit list is applied.
+   */
+  public long getTimestamp(int index) {
+    long decodingTime;
+    if (sampleDecodingTimes != null) {
+      decodingTime = sampleDecodingTimes[index];
+    } else {
+      int run = getRunIndex(decodingTimeRunStartIndices, index);
+      decodingTime =
+          decodingTimeRunStartTimes[run]
+              + (long) (index - decodingTimeRunStartIndices[run]) * decodingTimeRunDeltas[run];
+    }
+    int compositionOffset;
+    if (sampleCompositionOffsets != null) {
+      compositionOffset = sampleCompositionOffsets[index];
+    } else if (compositionOffsetRunStartIndices.length == 0) {
+      compositionOffset = 0;
+    } else {
+      compositionOffset =
+          compositionOffsetRunOffsets[getRunIndex(compositionOffsetRunStartIndices, index)];
+    }
+    return decodingTime + compositionOffset;
+  }
+
+  /** Returns whether the sample at {@code index} is a synchronization sample. */
+  public boolean isSynchronizationSample(int index) {
+    return getSynchronizationSampleIndexAtOrBefore(index) == index;
+  }
+
+  /**
+   * Returns the index of the last synchronization sample at or before {@code index}, or {@link
+   * C#INDEX_UNSET} if there isn't one.
+   */
+  public int getSynchronizationSampleIndexAtOrBefore(int index) {
+    if (synchronizationSampleIndices == null) {
+      return index;
+    }
+    int i =
+        Util.binarySearchFloor(
+            synchronizationSampleIndices, index, /* inclusive= */ true, /* stayInBounds= */ false);
+    return i >= 0 ? synchronizationSampleIndices[i] : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the first synchronization sample at or after {@code index}, or {@link
+   * C#INDEX_UNSET} if there isn't one.
+   */
+  public int getSynchronizationSampleIndexAtOrAfter(int index) {
+    if (synchronizationSampleIndices == null) {
+      return index < sampleCount ? index : C.INDEX_UNSET;
+    }
+    int i =
+        Util.binarySearchCeil(
+            synchronizationSampleIndices, index, /* inclusive= */ true, /* stayInBounds= */ false);
+    return i < synchronizationSampleIndices.length
+        ? synchronizationSampleIndices[i]
+        : C.INDEX_UNSET;
+  }
+
+  private static int getRunIndex(int[] runStartIndices, int index) {
+    return runStartIndices.length == 1
+        ? 0
+        : Util.binarySearchFloor(
+            runStartIndices, index, /* inclusive= */ true, /* stayInBounds= */ false);
+  }
+
+  private static int getRunEndIndex(int[] runStartIndices, int run, int sampleCount) {
+    return run + 1 < runStartIndices.length ? runStartIndices[run + 1] : sampleCount;
+  }
+}
@@ -418,14 +418,7 @@ public class FragmentedMp4Extractor implements Extractor {
       TrackBundle bundle =
           new TrackBundle(
               output.track(0, sideloadedTrack.type),
-              new TrackSampleTable(
-                  sideloadedTrack,
-                  /* offsets= */ new long[0],
-                  /* sizes= */ new int[0],
-                  /* maximumSize= */ 0,
-                  /* timestampsUs= */ new long[0],
-                  /* flags= */ new int[0],
-                  /* durationUs= */ 0),
+              TrackSampleTable.createEmpty(sideloadedTrack),
               new DefaultSampleValues(
                   /* sampleDescriptionIndex= */ 0,
                   /* duration= */ 0,
@@ -1845,21 +1838,21 @@ public class FragmentedMp4Extractor implements Extractor {
     /** Returns the presentation time of the current sample in microseconds. */
     public long getCurrentSamplePresentationTimeUs() {
       return !currentlyInFragment
-          ? moovSampleTable.timestampsUs[currentSampleIndex]
+          ? moovSampleTable.getTimestampUs(currentSampleIndex)
           : fragment.getSamplePresentationTimeUs(currentSampleIndex);
     }
 
     /** Returns the byte offset of the current sample. */
     public long getCurrentSampleOffset() {
       return !currentlyInFragment
-          ? moovSampleTable.offsets[currentSampleIndex]
+          ? moovSampleTable.getOffset(currentSampleIndex)
           : fragment.trunDataPosition[currentTrackRunIndex];
     }
 
     /** Returns the size of the current sample in bytes. */
     public int getCurrentSampleSize() {
       return !currentlyInFragment
-          ? moovSampleTable.sizes[currentSampleIndex]
+          ? moovSampleTable.getSize(currentSampleIndex)
           : fragment.sampleSizeTable[currentSampleIndex];
     }
 
@@ -1867,7 +1860,7 @@ public class FragmentedMp4Extractor implements Extractor {
     public @C.BufferFlags int getCurrentSampleFlags() {
       int flags =
           !currentlyInFragment
-              ? moovSampleTable.flags[currentSampleIndex]
+              ? moovSampleTable.getFlags(currentSampleIndex)
               : (fragment.sampleIsSyncFrameTable[currentSampleIndex] ? C.BUFFER_FLAG_KEY_FRAME : 0);
       if (getEncryptionBoxIfEncrypted() != null) {
         flags |= C.BUFFER_FLAG_ENCRYPTED;
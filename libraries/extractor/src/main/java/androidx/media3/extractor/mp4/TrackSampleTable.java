@@ -15,60 +15,156 @@
  */
 package androidx.media3.extractor.mp4;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Util;
 
-/** Sample table for a track in an MP4 file. */
+/**
+ * Sample table for a track in an MP4 file.
+ *
+ * <p>Sample offsets, sizes, timestamps and flags are computed on demand from the {@link
+ * CompactSampleData} parsed from the stbl box, to which the track's edit list is applied as a list
+ * of edits that each map a range of samples in this table onto a range of samples in the data.
+ */
 /* package */ final class TrackSampleTable {
 
+  /** Provides the timestamp of a sample, given its index. */
+  /* package */ interface TimestampProvider {
+
+    /** Returns the timestamp of the sample at {@code index}. */
+    long getTimestamp(int index);
+  }
+
   /** The track corresponding to this sample table. */
   public final Track track;
 
   /** Number of samples. */
   public final int sampleCount;
 
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
-
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
-
-  /** Maximum sample size in {@link #sizes}. */
+  /** Maximum sample size in bytes. */
   public final int maximumSize;
 
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
-
-  /** Sample flags. */
-  public final int[] flags;
-
   /** The duration of the track sample table in microseconds. */
   public final long durationUs;
 
+  private final CompactSampleData sampleData;
+  private final int[] editStartIndices;
+  private final int[] editSampleDataIndices;
+  private final long[] editMediaTimes;
+  private final long[] editPresentationTimesUs;
+  private final boolean clampTimestampsToEditStart;
+
+  /** Returns a sample table with no samples. */
+  public static TrackSampleTable createEmpty(Track track) {
+    return new TrackSampleTable(
+        track,
+        new CompactSampleData.Builder().build(),
+        /* maximumSize= */ 0,
+        /* durationUs= */ 0);
+  }
+
+  /**
+   * Creates a sample table containing all the samples in {@code sampleData}, with timestamps
+   * converted from the track's timescale to microseconds.
+   */
+  public TrackSampleTable(
+      Track track, CompactSampleData sampleData, int maximumSize, long durationUs) {
+    this(
+        track,
+        sampleData,
+        sampleData.sampleCount,
+        maximumSize,
+        durationUs,
+        /* editStartIndices= */ new int[] {0},
+        /* editSampleDataIndices= */ new int[] {0},
+        /* editMediaTimes= */ new long[] {0},
+        /* editPresentationTimesUs= */ new long[] {0},
+        /* clampTimestampsToEditStart= */ false);
+  }
+
+  /**
+   * Creates a sample table containing ranges of the samples in {@code sampleData}.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param sampleData The samples described by the track's stbl box.
+   * @param sampleCount The number of samples in this table.
+   * @param maximumSize The maximum sample size in this table, in bytes.
+   * @param durationUs The duration of this table, in microseconds.
+   * @param editStartIndices The index in this table of the first sample of each edit, in
+   *     ascending order. The first element must be zero.
+   * @param editSampleDataIndices The index in {@code sampleData} of the first sample of each edit.
+   * @param editMediaTimes The media time at which each edit starts, in the track's timescale.
+   * @param editPresentationTimesUs The presentation time at which each edit starts, in
+   *     microseconds.
+   * @param clampTimestampsToEditStart Whether samples that start before the media time of their
+   *     edit are given the edit's presentation time.
+   */
   public TrackSampleTable(
       Track track,
-      long[] offsets,
-      int[] sizes,
+      CompactSampleData sampleData,
+      int sampleCount,
       int maximumSize,
-      long[] timestampsUs,
-      int[] flags,
-      long durationUs) {
-    Assertions.checkArgument(sizes.length == timestampsUs.length);
-    Assertions.checkArgument(offsets.length == timestampsUs.length);
-    Assertions.checkArgument(flags.length == timestampsUs.length);
+      long durationUs,
+      int[] editStartIndices,
+      int[] editSampleDataIndices,
+      long[] editMediaTimes,
+      long[] editPresentationTimesUs,
+      boolean clampTimestampsToEditStart) {
+    Assertions.checkArgument(editStartIndices.length > 0 && editStartIndices[0] == 0);
+    Assertions.checkArgument(editSampleDataIndices.length == editStartIndices.length);
+    Assertions.checkArgument(editMediaTimes.length == editStartIndices.length);
+    Assertions.checkArgument(editPresentationTimesUs.length == editStartIndices.length);
 
     this.track = track;
-    this.offsets = offsets;
-    this.sizes = sizes;
+    this.sampleData = sampleData;
+    this.sampleCount = sampleCount;
     this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
     this.durationUs = durationUs;
-    sampleCount = offsets.length;
-    if (flags.length > 0) {
-      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+    this.editStartIndices = editStartIndices;
+    this.editSampleDataIndices = editSampleDataIndices;
+    this.editMediaTimes = editMediaTimes;
+    this.editPresentationTimesUs = editPresentationTimesUs;
+    this.clampTimestampsToEditStart = clampTimestampsToEditStart;
+  }
+
+  /** Returns the offset of the sample at {@code index}, in bytes. */
+  public long getOffset(int index) {
+    return sampleData.getOffset(getSampleDataIndex(getEditIndex(index), index));
+  }
+
+  /** Returns the size of the sample at {@code index}, in bytes. */
+  public int getSize(int index) {
+    return sampleData.getSize(getSampleDataIndex(getEditIndex(index), index));
+  }
+
+  /** Returns the timestamp of the sample at {@code index}, in microseconds. */
+  public long getTimestampUs(int index) {
+    int editIndex = getEditIndex(index);
+    long timeInEditUs =
+        Util.scaleLargeTimestamp(
+            sampleData.getTimestamp(getSampleDataIndex(editIndex, index))
+                - editMediaTimes[editIndex],
+            C.MICROS_PER_SECOND,
+            track.timescale);
+    if (clampTimestampsToEditStart) {
+      timeInEditUs = max(0, timeInEditUs);
     }
+    return editPresentationTimesUs[editIndex] + timeInEditUs;
+  }
+
+  /** Returns the {@link C.BufferFlags} of the sample at {@code index}. */
+  public @C.BufferFlags int getFlags(int index) {
+    @C.BufferFlags int flags = 0;
+    if (sampleData.isSynchronizationSample(getSampleDataIndex(getEditIndex(index), index))) {
+      flags |= C.BUFFER_FLAG_KEY_FRAME;
+    }
+    if (index == sampleCount - 1) {
+      flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return flags;
   }
 
   /**
@@ -81,11 +177,23 @@ import androidx.media3.common.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int index =
+        binarySearchFloor(
+            this::getTimestampUs,
+            sampleCount,
+            timeUs,
+            /* inclusive= */ true,
+            /* stayInBounds= */ false);
+    while (index >= 0) {
+      int editIndex = getEditIndex(index);
+      int synchronizationSampleDataIndex =
+          sampleData.getSynchronizationSampleIndexAtOrBefore(getSampleDataIndex(editIndex, index));
+      if (synchronizationSampleDataIndex != C.INDEX_UNSET
+          && synchronizationSampleDataIndex >= editSampleDataIndices[editIndex]) {
+        return editStartIndices[editIndex]
+            + (synchronizationSampleDataIndex - editSampleDataIndices[editIndex]);
       }
+      index = editStartIndices[editIndex] - 1;
     }
     return C.INDEX_UNSET;
   }
@@ -98,12 +206,103 @@ import androidx.media3.common.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int index =
+        binarySearchCeil(
+            this::getTimestampUs,
+            sampleCount,
+            timeUs,
+            /* inclusive= */ true,
+            /* stayInBounds= */ false);
+    while (index < sampleCount) {
+      int editIndex = getEditIndex(index);
+      int editEndIndex =
+          editIndex + 1 < editStartIndices.length ? editStartIndices[editIndex + 1] : sampleCount;
+      int synchronizationSampleDataIndex =
+          sampleData.getSynchronizationSampleIndexAtOrAfter(getSampleDataIndex(editIndex, index));
+      if (synchronizationSampleDataIndex != C.INDEX_UNSET
+          && synchronizationSampleDataIndex
+              < editSampleDataIndices[editIndex] + (editEndIndex - editStartIndices[editIndex])) {
+        return editStartIndices[editIndex]
+            + (synchronizationSampleDataIndex - editSampleDataIndices[editIndex]);
       }
+      index = editEndIndex;
     }
     return C.INDEX_UNSET;
   }
+
+  /**
+   * Equivalent to {@link Util#binarySearchFloor(long[], long, boolean, boolean)}, for the {@code
+   * count} timestamps provided by {@code timestamps}.
+   */
+  /* package */ static int binarySearchFloor(
+      TimestampProvider timestamps,
+      int count,
+      long value,
+      boolean inclusive,
+      boolean stayInBounds) {
+    int index = binarySearch(timestamps, count, value);
+    if (index < 0) {
+      index = -(index + 2);
+    } else {
+      while (--index >= 0 && timestamps.getTimestamp(index) == value) {}
+      if (inclusive) {
+        index++;
+      }
+    }
+    return stayInBounds ? max(0, index) : index;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchCeil(long[], long, boolean, boolean)}, for the {@code
+   * count} timestamps provided by {@code timestamps}.
+   */
+  /* package */ static int binarySearchCeil(
+      TimestampProvider timestamps,
+      int count,
+      long value,
+      boolean inclusive,
+      boolean stayInBounds) {
+    int index = binarySearch(timestamps, count, value);
+    if (index < 0) {
+      index = ~index;
+    } else {
+      while (++index < count && timestamps.getTimestamp(index) == value) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? min(count - 1, index) : index;
+  }
+
+  /**
+   * Equivalent to {@link java.util.Arrays#binarySearch(long[], long)}. The same indices are probed,
+   * so the result is the same even if the timestamps aren't sorted.
+   */
+  private static int binarySearch(TimestampProvider timestamps, int count, long value) {
+    int lowIndex = 0;
+    int highIndex = count - 1;
+    while (lowIndex <= highIndex) {
+      int midIndex = (lowIndex + highIndex) >>> 1;
+      long midValue = timestamps.getTimestamp(midIndex);
+      if (midValue < value) {
+        lowIndex = midIndex + 1;
+      } else if (midValue > value) {
+        highIndex = midIndex - 1;
+      } else {
+        return midIndex;
+      }
+    }
+    return -(lowIndex + 1);
+  }
+
+  private int getEditIndex(int index) {
+    return editStartIndices.length == 1
+        ? 0
+        : Util.binarySearchFloor(
+            editStartIndices, index, /* inclusive= */ true, /* stayInBounds= */ false);
+  }
+
+  private int getSampleDataIndex(int editIndex, int index) {
+    return editSampleDataIndices[editIndex] + (index - editStartIndices[editIndex]);
+  }
 }
@@ -25,8 +25,10 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.TrackOutput;
 import java.io.IOException;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNullIf;
@@ -34,12 +36,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** Extracts data from the Ogg container format. */
 @UnstableApi
-public class OggExtractor implements Extractor {
+public class OggExtractor implements Extractor, SignatureSniffer {
 
   /** Factory for {@link OggExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new OggExtractor()};
 
   private static final int MAX_VERIFICATION_BYTES = 8;
+  private static final byte[] CAPTURE_PATTERN_SIGNATURE = {'O', 'g', 'g', 'S'};
 
   private @MonotonicNonNull ExtractorOutput output;
   private @MonotonicNonNull StreamReader streamReader;
@@ -54,6 +57,12 @@ public class OggExtractor implements Extractor {
     }
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(
+        prefix, prefixLength, /* offset= */ 0, CAPTURE_PATTERN_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     this.output = output;
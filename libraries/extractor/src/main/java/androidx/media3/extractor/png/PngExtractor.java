@@ -20,17 +20,20 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.SingleSampleExtractor;
 import java.io.IOException;
 
 /** Extracts data from the PNG container format. */
 @UnstableApi
-public final class PngExtractor implements Extractor {
+public final class PngExtractor implements Extractor, SignatureSniffer {
 
   // See PNG (Portable Network Graphics) Specification, Version 1.2, Section 12.12 and Section 3.1.
   private static final int PNG_FILE_SIGNATURE = 0x8950;
   private static final int PNG_FILE_SIGNATURE_LENGTH = 2;
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P'};
 
   private final SingleSampleExtractor imageExtractor;
 
@@ -46,6 +49,11 @@ public final class PngExtractor implements Extractor {
     return imageExtractor.sniff(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, PNG_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     imageExtractor.init(output);
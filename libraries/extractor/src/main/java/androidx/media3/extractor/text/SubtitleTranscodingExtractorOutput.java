@@ -17,11 +17,13 @@
 package androidx.media3.extractor.text;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.SeekIndex;
 import androidx.media3.extractor.SeekMap;
 import androidx.media3.extractor.TrackOutput;
 
@@ -85,4 +87,10 @@ public final class SubtitleTranscodingExtractorOutput implements ExtractorOutput
   public void seekMap(SeekMap seekMap) {
     delegate.seekMap(seekMap);
   }
+
+  @Override
+  @Nullable
+  public SeekIndex getSeekIndex() {
+    return delegate.getSeekIndex();
+  }
 }
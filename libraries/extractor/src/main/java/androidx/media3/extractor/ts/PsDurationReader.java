@@ -17,6 +17,7 @@ package androidx.media3.extractor.ts;
 
 import static java.lang.Math.min;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.TimestampAdjuster;
@@ -24,6 +25,7 @@ import androidx.media3.common.util.Util;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndex;
 import java.io.IOException;
 
 /**
@@ -45,6 +47,9 @@ import java.io.IOException;
 
   private static final int TIMESTAMP_SEARCH_BYTES = 20_000;
 
+  private static final String KEY_FIRST_SCR_VALUE = "PsDurationReader.firstScrValue";
+  private static final String KEY_LAST_SCR_VALUE = "PsDurationReader.lastScrValue";
+
   private final TimestampAdjuster scrTimestampAdjuster;
   private final ParsableByteArray packetBuffer;
 
@@ -73,6 +78,41 @@ import java.io.IOException;
     return scrTimestampAdjuster;
   }
 
+  /**
+   * Reads a PS duration as {@link #readDuration(ExtractorInput, PositionHolder)} does, but uses
+   * the SCR values stored in the {@link SeekIndex} when the same stream was previously read,
+   * avoiding reading the end of the stream. SCR values read from the input are stored in the
+   * {@link SeekIndex}.
+   *
+   * @param input The {@link ExtractorInput} from which data should be read.
+   * @param seekPositionHolder If {@link Extractor#RESULT_SEEK} is returned, this holder is updated
+   *     to hold the position of the required seek.
+   * @param seekIndex The {@link SeekIndex} of the stream, or {@code null}.
+   * @return One of the {@code RESULT_} values defined in {@link Extractor}.
+   * @throws IOException If an error occurred reading from the input.
+   */
+  public @Extractor.ReadResult int readDuration(
+      ExtractorInput input, PositionHolder seekPositionHolder, @Nullable SeekIndex seekIndex)
+      throws IOException {
+    if (seekIndex == null) {
+      return readDuration(input, seekPositionHolder);
+    }
+    if (!isFirstScrValueRead
+        && !isLastScrValueRead
+        && seekIndex.getValue(KEY_LAST_SCR_VALUE, C.INDEX_UNSET) != C.INDEX_UNSET) {
+      firstScrValue = seekIndex.getValue(KEY_FIRST_SCR_VALUE, C.TIME_UNSET);
+      lastScrValue = seekIndex.getValue(KEY_LAST_SCR_VALUE, C.TIME_UNSET);
+      isFirstScrValueRead = true;
+      isLastScrValueRead = true;
+    }
+    @Extractor.ReadResult int result = readDuration(input, seekPositionHolder);
+    if (isDurationRead) {
+      seekIndex.setValue(KEY_FIRST_SCR_VALUE, firstScrValue);
+      seekIndex.setValue(KEY_LAST_SCR_VALUE, lastScrValue);
+    }
+    return result;
+  }
+
   /**
    * Reads a PS duration from the input.
    *
@@ -27,9 +27,11 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.ts.TsPayloadReader.TrackIdGenerator;
 import java.io.IOException;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -37,7 +39,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
 /** Extracts data from the MPEG-2 PS container format. */
 @UnstableApi
-public final class PsExtractor implements Extractor {
+public final class PsExtractor implements Extractor, SignatureSniffer {
 
   /** Factory for {@link PsExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new PsExtractor()};
@@ -46,6 +48,7 @@ public final class PsExtractor implements Extractor {
   /* package */ static final int SYSTEM_HEADER_START_CODE = 0x000001BB;
   /* package */ static final int PACKET_START_CODE_PREFIX = 0x000001;
   /* package */ static final int MPEG_PROGRAM_END_CODE = 0x000001B9;
+  private static final byte[] PACK_START_CODE_SIGNATURE = {0x00, 0x00, 0x01, (byte) 0xBA};
   private static final int MAX_STREAM_ID_PLUS_ONE = 0x100;
 
   // Max search length for first audio and video track in input data.
@@ -130,6 +133,12 @@ public final class PsExtractor implements Extractor {
         == (((scratch[0] & 0xFF) << 16) | ((scratch[1] & 0xFF) << 8) | (scratch[2] & 0xFF)));
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    return ExtractorUtil.matchSignature(
+        prefix, prefixLength, /* offset= */ 0, PACK_START_CODE_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     this.output = output;
@@ -177,7 +186,7 @@ public final class PsExtractor implements Extractor {
     long inputLength = input.getLength();
     boolean canReadDuration = inputLength != C.LENGTH_UNSET;
     if (canReadDuration && !durationReader.isDurationReadFinished()) {
-      return durationReader.readDuration(input, seekPosition);
+      return durationReader.readDuration(input, seekPosition, output.getSeekIndex());
     }
     maybeOutputSeekMap(inputLength);
     if (psBinarySearchSeeker != null && psBinarySearchSeeker.isSeeking()) {
@@ -301,6 +310,7 @@ public final class PsExtractor implements Extractor {
                 durationReader.getScrTimestampAdjuster(),
                 durationReader.getDurationUs(),
                 inputLength);
+        psBinarySearchSeeker.setSeekIndex(output.getSeekIndex());
         output.seekMap(psBinarySearchSeeker.getSeekMap());
       } else {
         output.seekMap(new SeekMap.Unseekable(durationReader.getDurationUs()));
@@ -17,6 +17,7 @@ package androidx.media3.extractor.ts;
 
 import static java.lang.Math.min;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.TimestampAdjuster;
@@ -24,6 +25,7 @@ import androidx.media3.common.util.Util;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndex;
 import java.io.IOException;
 
 /**
@@ -40,6 +42,10 @@ import java.io.IOException;
 
   private static final String TAG = "TsDurationReader";
 
+  private static final String KEY_PCR_PID = "TsDurationReader.pcrPid";
+  private static final String KEY_FIRST_PCR_VALUE = "TsDurationReader.firstPcrValue";
+  private static final String KEY_LAST_PCR_VALUE = "TsDurationReader.lastPcrValue";
+
   private final int timestampSearchBytes;
   private final TimestampAdjuster pcrTimestampAdjuster;
   private final ParsableByteArray packetBuffer;
@@ -66,6 +72,46 @@ import java.io.IOException;
     return isDurationRead;
   }
 
+  /**
+   * Reads a TS duration as {@link #readDuration(ExtractorInput, PositionHolder, int)} does, but
+   * uses the PCR values stored in the {@link SeekIndex} when the same stream was previously read,
+   * avoiding reading the end of the stream. PCR values read from the input are stored in the
+   * {@link SeekIndex}.
+   *
+   * @param input The {@link ExtractorInput} from which data should be read.
+   * @param seekPositionHolder If {@link Extractor#RESULT_SEEK} is returned, this holder is updated
+   *     to hold the position of the required seek.
+   * @param pcrPid The PID of the packet stream within this TS stream that contains PCR values.
+   * @param seekIndex The {@link SeekIndex} of the stream, or {@code null}.
+   * @return One of the {@code RESULT_} values defined in {@link Extractor}.
+   * @throws IOException If an error occurred reading from the input.
+   */
+  public @Extractor.ReadResult int readDuration(
+      ExtractorInput input,
+      PositionHolder seekPositionHolder,
+      int pcrPid,
+      @Nullable SeekIndex seekIndex)
+      throws IOException {
+    if (seekIndex == null || pcrPid <= 0) {
+      return readDuration(input, seekPositionHolder, pcrPid);
+    }
+    if (!isFirstPcrValueRead
+        && !isLastPcrValueRead
+        && seekIndex.getValue(KEY_PCR_PID, C.INDEX_UNSET) == pcrPid) {
+      firstPcrValue = seekIndex.getValue(KEY_FIRST_PCR_VALUE, C.TIME_UNSET);
+      lastPcrValue = seekIndex.getValue(KEY_LAST_PCR_VALUE, C.TIME_UNSET);
+      isFirstPcrValueRead = true;
+      isLastPcrValueRead = true;
+    }
+    @Extractor.ReadResult int result = readDuration(input, seekPositionHolder, pcrPid);
+    if (isDurationRead) {
+      seekIndex.setValue(KEY_PCR_PID, pcrPid);
+      seekIndex.setValue(KEY_FIRST_PCR_VALUE, firstPcrValue);
+      seekIndex.setValue(KEY_LAST_PCR_VALUE, lastPcrValue);
+    }
+    return result;
+  }
+
   /**
    * Reads a TS duration from the input, using the given PCR PID.
    *
@@ -429,7 +429,7 @@ public final class TsExtractor implements Extractor {
     if (tracksEnded) {
       boolean canReadDuration = inputLength != C.LENGTH_UNSET && !isModeHls;
       if (canReadDuration && !durationReader.isDurationReadFinished()) {
-        return durationReader.readDuration(input, seekPosition, pcrPid);
+        return durationReader.readDuration(input, seekPosition, pcrPid, output.getSeekIndex());
       }
       maybeOutputSeekMap(inputLength);
 
@@ -547,6 +547,7 @@ public final class TsExtractor implements Extractor {
                 inputLength,
                 pcrPid,
                 timestampSearchBytes);
+        tsBinarySearchSeeker.setSeekIndex(output.getSeekIndex());
         output.seekMap(tsBinarySearchSeeker.getSeekMap());
       } else {
         output.seekMap(new SeekMap.Unseekable(durationReader.getDurationUs()));
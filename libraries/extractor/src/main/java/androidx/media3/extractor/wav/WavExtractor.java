@@ -33,8 +33,10 @@ import androidx.media3.common.util.Util;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.extractor.WavUtil;
 import java.io.IOException;
@@ -48,7 +50,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
 /** Extracts data from WAV byte streams. */
 @UnstableApi
-public final class WavExtractor implements Extractor {
+public final class WavExtractor implements Extractor, SignatureSniffer {
 
   private static final String TAG = "WavExtractor";
 
@@ -59,6 +61,10 @@ public final class WavExtractor implements Extractor {
    */
   private static final int TARGET_SAMPLES_PER_SECOND = 10;
 
+  private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+  private static final byte[] RF64_SIGNATURE = {'R', 'F', '6', '4'};
+  private static final byte[] WAVE_SIGNATURE = {'W', 'A', 'V', 'E'};
+
   /** Factory for {@link WavExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new WavExtractor()};
 
@@ -101,6 +107,17 @@ public final class WavExtractor implements Extractor {
     return WavHeaderReader.checkFileType(input);
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    if (ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, RIFF_SIGNATURE)
+            == SIGNATURE_MISMATCH
+        && ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, RF64_SIGNATURE)
+            == SIGNATURE_MISMATCH) {
+      return SIGNATURE_MISMATCH;
+    }
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 8, WAVE_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     extractorOutput = output;
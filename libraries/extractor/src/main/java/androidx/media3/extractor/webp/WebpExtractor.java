@@ -22,19 +22,23 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SignatureSniffer;
 import androidx.media3.extractor.SingleSampleExtractor;
 import java.io.IOException;
 
 /** Extracts data from the WEBP container format. */
 @UnstableApi
-public final class WebpExtractor implements Extractor {
+public final class WebpExtractor implements Extractor, SignatureSniffer {
 
   // Documentation reference:
   // https://developers.google.com/speed/webp/docs/riff_container#webp_file_header
   private static final int FILE_SIGNATURE_SEGMENT_LENGTH = 4;
   private static final int RIFF_FILE_SIGNATURE = 0x52494646;
   private static final int WEBP_FILE_SIGNATURE = 0x57454250;
+  private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+  private static final byte[] WEBP_SIGNATURE = {'W', 'E', 'B', 'P'};
 
   private final ParsableByteArray scratch;
   private final SingleSampleExtractor imageExtractor;
@@ -61,6 +65,15 @@ public final class WebpExtractor implements Extractor {
     return scratch.readUnsignedInt() == WEBP_FILE_SIGNATURE;
   }
 
+  @Override
+  public @SignatureResult int sniffSignature(byte[] prefix, int prefixLength) {
+    if (ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 0, RIFF_SIGNATURE)
+        == SIGNATURE_MISMATCH) {
+      return SIGNATURE_MISMATCH;
+    }
+    return ExtractorUtil.matchSignature(prefix, prefixLength, /* offset= */ 8, WEBP_SIGNATURE);
+  }
+
   @Override
   public void init(ExtractorOutput output) {
     imageExtractor.init(output);
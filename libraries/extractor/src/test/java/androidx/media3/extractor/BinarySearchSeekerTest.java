@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link BinarySearchSeeker}. */
+@RunWith(AndroidJUnit4.class)
+public final class BinarySearchSeekerTest {
+
+  private static final int FRAME_SIZE = 100;
+  private static final int FRAME_COUNT = 100_000;
+  private static final int SEARCH_WINDOW_FRAMES = 20;
+
+  /**
+   * The timestamps of the frames of the stream. Frame durations vary, so that the bitrate varies
+   * along the stream and the initial estimates of the search are inaccurate.
+   */
+  private static final long[] FRAME_TIMES_US = createFrameTimesUs();
+
+  @Test
+  public void seek_findsFrameContainingTarget() throws IOException {
+    FakeTimestampSeeker timestampSeeker = new FakeTimestampSeeker();
+    FakeBinarySearchSeeker seeker = new FakeBinarySearchSeeker(timestampSeeker);
+    FakeExtractorInput input = createInput();
+
+    long position = seek(seeker, input, getFrameTimeUs(12_345) + 1);
+
+    assertThat(position).isEqualTo(12_345L * FRAME_SIZE);
+  }
+
+  @Test
+  public void seek_withSeekIndex_findsSamePositionsAsWithoutIndex() throws IOException {
+    FakeBinarySearchSeeker seeker = new FakeBinarySearchSeeker(new FakeTimestampSeeker());
+    FakeBinarySearchSeeker indexedSeeker = new FakeBinarySearchSeeker(new FakeTimestampSeeker());
+    indexedSeeker.setSeekIndex(new SeekIndex());
+    FakeExtractorInput input = createInput();
+    Random random = new Random(/* seed= */ 0);
+
+    for (int i = 0; i < 200; i++) {
+      long timeUs = (long) (random.nextDouble() * getFrameTimeUs(FRAME_COUNT - 1));
+
+      assertThat(seek(indexedSeeker, input, timeUs)).isEqualTo(seek(seeker, input, timeUs));
+    }
+  }
+
+  /**
+   * Seeks to the same random targets when a stream is first played, and when it's played again
+   * with the {@link SeekIndex} learned the first time, and compares the searches and bytes peeked.
+   */
+  @Test
+  public void seek_withLearnedSeekIndex_readsLessPerSeek() throws IOException {
+    long[] seekTimesUs = new long[100];
+    Random random = new Random(/* seed= */ 0);
+    for (int i = 0; i < seekTimesUs.length; i++) {
+      seekTimesUs[i] = (long) (random.nextDouble() * getFrameTimeUs(FRAME_COUNT - 1));
+    }
+    FakeExtractorInput input = createInput();
+    SeekIndex seekIndex = new SeekIndex();
+    FakeTimestampSeeker firstPlaybackTimestampSeeker = new FakeTimestampSeeker();
+    FakeBinarySearchSeeker firstPlaybackSeeker =
+        new FakeBinarySearchSeeker(firstPlaybackTimestampSeeker);
+    firstPlaybackSeeker.setSeekIndex(seekIndex);
+    for (long seekTimeUs : seekTimesUs) {
+      seek(firstPlaybackSeeker, input, seekTimeUs);
+    }
+
+    FakeTimestampSeeker secondPlaybackTimestampSeeker = new FakeTimestampSeeker();
+    FakeBinarySearchSeeker secondPlaybackSeeker =
+        new FakeBinarySearchSeeker(secondPlaybackTimestampSeeker);
+    secondPlaybackSeeker.setSeekIndex(SeekIndex.fromByteArray(seekIndex.toByteArray()));
+    for (long seekTimeUs : seekTimesUs) {
+      seek(secondPlaybackSeeker, input, seekTimeUs);
+    }
+
+    // Seeks take more than two searches on average without the index, and a single search with it.
+    assertThat(firstPlaybackTimestampSeeker.searchCount).isGreaterThan(2 * seekTimesUs.length);
+    assertThat(secondPlaybackTimestampSeeker.searchCount).isAtMost(seekTimesUs.length);
+    assertThat(secondPlaybackTimestampSeeker.bytesPeeked)
+        .isLessThan(firstPlaybackTimestampSeeker.bytesPeeked / 2);
+  }
+
+  private static long seek(BinarySearchSeeker seeker, FakeExtractorInput input, long timeUs)
+      throws IOException {
+    PositionHolder positionHolder = new PositionHolder();
+    seeker.setSeekTargetUs(timeUs);
+    while (seeker.isSeeking()) {
+      if (seeker.handlePendingSeek(input, positionHolder) == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+    return input.getPosition();
+  }
+
+  private static FakeExtractorInput createInput() {
+    return new FakeExtractorInput.Builder().setData(new byte[FRAME_SIZE * FRAME_COUNT]).build();
+  }
+
+  private static long getFrameTimeUs(int frameIndex) {
+    return FRAME_TIMES_US[frameIndex];
+  }
+
+  private static long[] createFrameTimesUs() {
+    Random random = new Random(/* seed= */ 0);
+    long[] frameTimesUs = new long[FRAME_COUNT + 1];
+    long frameDurationUs = 0;
+    for (int i = 1; i <= FRAME_COUNT; i++) {
+      if (random.nextInt(1000) == 0) {
+        // Change the bitrate.
+        frameDurationUs = 1_000 + random.nextInt(100_000);
+      }
+      frameTimesUs[i] = frameTimesUs[i - 1] + frameDurationUs + 1_000;
+    }
+    return frameTimesUs;
+  }
+
+  private static final class FakeBinarySearchSeeker extends BinarySearchSeeker {
+
+    public FakeBinarySearchSeeker(TimestampSeeker timestampSeeker) {
+      super(
+          new DefaultSeekTimestampConverter(),
+          timestampSeeker,
+          /* durationUs= */ getFrameTimeUs(FRAME_COUNT),
+          /* floorTimePosition= */ 0,
+          /* ceilingTimePosition= */ getFrameTimeUs(FRAME_COUNT),
+          /* floorBytePosition= */ 0,
+          /* ceilingBytePosition= */ (long) FRAME_SIZE * FRAME_COUNT,
+          /* approxBytesPerFrame= */ FRAME_SIZE,
+          /* minimumSearchRange= */ FRAME_SIZE);
+    }
+  }
+
+  /** Peeks a window of frames and compares their timestamps, which are given by the position. */
+  private static final class FakeTimestampSeeker implements BinarySearchSeeker.TimestampSeeker {
+
+    public int searchCount;
+    public long bytesPeeked;
+
+    @Override
+    public BinarySearchSeeker.TimestampSearchResult searchForTimestamp(
+        ExtractorInput input, long targetTimestamp) throws IOException {
+      searchCount++;
+      int firstFrameIndex = (int) ((input.getPosition() + FRAME_SIZE - 1) / FRAME_SIZE);
+      int frameCount = min(SEARCH_WINDOW_FRAMES, FRAME_COUNT - firstFrameIndex);
+      long windowLength = (long) (firstFrameIndex + frameCount) * FRAME_SIZE - input.getPosition();
+      input.advancePeekPosition((int) windowLength);
+      bytesPeeked += windowLength;
+      if (frameCount == 0) {
+        return BinarySearchSeeker.TimestampSearchResult.NO_TIMESTAMP_IN_RANGE_RESULT;
+      }
+      for (int i = 0; i < frameCount; i++) {
+        int frameIndex = firstFrameIndex + i;
+        long frameTimeUs = getFrameTimeUs(frameIndex);
+        if (frameTimeUs > targetTimestamp) {
+          return i == 0
+              ? BinarySearchSeeker.TimestampSearchResult.overestimatedResult(
+                  frameTimeUs, input.getPosition())
+              : BinarySearchSeeker.TimestampSearchResult.targetFoundResult(
+                  (long) (frameIndex - 1) * FRAME_SIZE);
+        }
+      }
+      int lastFrameIndex = firstFrameIndex + frameCount - 1;
+      return BinarySearchSeeker.TimestampSearchResult.underestimatedResult(
+          getFrameTimeUs(lastFrameIndex), (long) lastFrameIndex * FRAME_SIZE);
+    }
+  }
+}
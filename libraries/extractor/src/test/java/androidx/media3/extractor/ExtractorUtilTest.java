@@ -210,4 +210,34 @@ public class ExtractorUtilTest {
                 input, target, offset, length, /* allowEndOfInput= */ false));
     assertThat(input.getPeekPosition()).isEqualTo(0);
   }
+
+  @Test
+  public void matchSignature_signatureInPrefix_isMatch() {
+    byte[] prefix = {0, 'R', 'I', 'F', 'F', 0};
+
+    assertThat(
+            ExtractorUtil.matchSignature(
+                prefix, prefix.length, /* offset= */ 1, new byte[] {'R', 'I', 'F', 'F'}))
+        .isEqualTo(SignatureSniffer.SIGNATURE_MATCH);
+  }
+
+  @Test
+  public void matchSignature_differentByteInPrefix_isMismatch() {
+    byte[] prefix = {'R', 'I', 'F', 'X'};
+
+    assertThat(
+            ExtractorUtil.matchSignature(
+                prefix, /* prefixLength= */ 3, /* offset= */ 0, new byte[] {'R', 'X', 'F', 'F'}))
+        .isEqualTo(SignatureSniffer.SIGNATURE_MISMATCH);
+  }
+
+  @Test
+  public void matchSignature_prefixTooShort_isUnknown() {
+    byte[] prefix = {'R', 'I', 'F', 'F'};
+
+    assertThat(
+            ExtractorUtil.matchSignature(
+                prefix, /* prefixLength= */ 3, /* offset= */ 0, new byte[] {'R', 'I', 'F', 'F'}))
+        .isEqualTo(SignatureSniffer.SIGNATURE_UNKNOWN);
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.common.C;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SeekIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class SeekIndexTest {
+
+  @Test
+  public void addSeekPoint_keepsSeekPointsInTimestampOrder() {
+    SeekIndex seekIndex = new SeekIndex();
+
+    seekIndex.addSeekPoint(/* timestamp= */ 300, /* position= */ 3000);
+    seekIndex.addSeekPoint(/* timestamp= */ 100, /* position= */ 1000);
+    seekIndex.addSeekPoint(/* timestamp= */ 200, /* position= */ 2000);
+
+    assertThat(seekIndex.getSeekPointCount()).isEqualTo(3);
+    assertThat(seekIndex.getTimestamp(0)).isEqualTo(100);
+    assertThat(seekIndex.getPosition(0)).isEqualTo(1000);
+    assertThat(seekIndex.getTimestamp(1)).isEqualTo(200);
+    assertThat(seekIndex.getPosition(1)).isEqualTo(2000);
+    assertThat(seekIndex.getTimestamp(2)).isEqualTo(300);
+    assertThat(seekIndex.getPosition(2)).isEqualTo(3000);
+  }
+
+  @Test
+  public void addSeekPoint_withExistingTimestamp_isIgnored() {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndex.addSeekPoint(/* timestamp= */ 100, /* position= */ 1000);
+    int modificationCount = seekIndex.getModificationCount();
+
+    seekIndex.addSeekPoint(/* timestamp= */ 100, /* position= */ 1500);
+
+    assertThat(seekIndex.getSeekPointCount()).isEqualTo(1);
+    assertThat(seekIndex.getPosition(0)).isEqualTo(1000);
+    assertThat(seekIndex.getModificationCount()).isEqualTo(modificationCount);
+  }
+
+  @Test
+  public void addSeekPoint_whenFull_isIgnored() {
+    SeekIndex seekIndex = new SeekIndex();
+    for (int i = 0; i < SeekIndex.MAX_SEEK_POINT_COUNT; i++) {
+      seekIndex.addSeekPoint(/* timestamp= */ i, /* position= */ i);
+    }
+
+    seekIndex.addSeekPoint(/* timestamp= */ -1, /* position= */ 0);
+
+    assertThat(seekIndex.getSeekPointCount()).isEqualTo(SeekIndex.MAX_SEEK_POINT_COUNT);
+    assertThat(seekIndex.getTimestamp(0)).isEqualTo(0);
+  }
+
+  @Test
+  public void getFloorSeekPointIndex_returnsIndexOfLargestTimestampNotGreaterThanTarget() {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndex.addSeekPoint(/* timestamp= */ 100, /* position= */ 1000);
+    seekIndex.addSeekPoint(/* timestamp= */ 200, /* position= */ 2000);
+
+    assertThat(seekIndex.getFloorSeekPointIndex(/* timestamp= */ 99)).isEqualTo(C.INDEX_UNSET);
+    assertThat(seekIndex.getFloorSeekPointIndex(/* timestamp= */ 100)).isEqualTo(0);
+    assertThat(seekIndex.getFloorSeekPointIndex(/* timestamp= */ 199)).isEqualTo(0);
+    assertThat(seekIndex.getFloorSeekPointIndex(/* timestamp= */ 200)).isEqualTo(1);
+    assertThat(seekIndex.getFloorSeekPointIndex(/* timestamp= */ 1000)).isEqualTo(1);
+  }
+
+  @Test
+  public void setValue_onlyCountsChangesAsModifications() {
+    SeekIndex seekIndex = new SeekIndex();
+
+    seekIndex.setValue("name", /* value= */ 1);
+    seekIndex.setValue("name", /* value= */ 1);
+
+    assertThat(seekIndex.getValue("name", /* defaultValue= */ C.TIME_UNSET)).isEqualTo(1);
+    assertThat(seekIndex.getValue("other", /* defaultValue= */ C.TIME_UNSET))
+        .isEqualTo(C.TIME_UNSET);
+    assertThat(seekIndex.getModificationCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void fromByteArray_restoresSerializedIndex() throws IOException {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndex.setValue("first", /* value= */ 12);
+    seekIndex.setValue("second", /* value= */ -34);
+    for (int i = 0; i < 100; i++) {
+      seekIndex.addSeekPoint(/* timestamp= */ i * 1000L, /* position= */ i * 188L);
+    }
+
+    SeekIndex restoredSeekIndex = SeekIndex.fromByteArray(seekIndex.toByteArray());
+
+    assertThat(restoredSeekIndex.getValue("first", /* defaultValue= */ 0)).isEqualTo(12);
+    assertThat(restoredSeekIndex.getValue("second", /* defaultValue= */ 0)).isEqualTo(-34);
+    assertThat(restoredSeekIndex.getSeekPointCount()).isEqualTo(100);
+    for (int i = 0; i < 100; i++) {
+      assertThat(restoredSeekIndex.getTimestamp(i)).isEqualTo(i * 1000L);
+      assertThat(restoredSeekIndex.getPosition(i)).isEqualTo(i * 188L);
+    }
+    assertThat(restoredSeekIndex.getModificationCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void fromByteArray_withTruncatedData_throwsIOException() {
+    SeekIndex seekIndex = new SeekIndex();
+    seekIndex.addSeekPoint(/* timestamp= */ 100, /* position= */ 1000);
+    byte[] data = seekIndex.toByteArray();
+
+    assertThrows(
+        IOException.class, () -> SeekIndex.fromByteArray(Arrays.copyOf(data, data.length - 1)));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link CompactSampleData}. */
+@RunWith(AndroidJUnit4.class)
+public final class CompactSampleDataTest {
+
+  @Test
+  public void getOffset_withVariableSampleSizes_returnsOffsetsWithinChunks() {
+    int[] sizes = new int[100];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = 10 + i;
+    }
+    CompactSampleData sampleData =
+        new CompactSampleData.Builder()
+            .setSampleCount(100)
+            .setSampleSizes(sizes)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 1000)
+            .addOffsetRun(/* firstSampleIndex= */ 70, /* offset= */ 50_000)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 1)
+            .build();
+
+    long expectedOffset = 1000;
+    for (int i = 0; i < 70; i++) {
+      assertThat(sampleData.getOffset(i)).isEqualTo(expectedOffset);
+      assertThat(sampleData.getSize(i)).isEqualTo(sizes[i]);
+      expectedOffset += sizes[i];
+    }
+    expectedOffset = 50_000;
+    for (int i = 70; i < 100; i++) {
+      assertThat(sampleData.getOffset(i)).isEqualTo(expectedOffset);
+      expectedOffset += sizes[i];
+    }
+  }
+
+  @Test
+  public void getOffset_withFixedSampleSize_returnsOffsetsWithinChunks() {
+    CompactSampleData sampleData =
+        new CompactSampleData.Builder()
+            .setSampleCount(10)
+            .setFixedSampleSize(4)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 100)
+            .addOffsetRun(/* firstSampleIndex= */ 6, /* offset= */ 5_000_000_000L)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 1)
+            .build();
+
+    assertThat(sampleData.getOffset(0)).isEqualTo(100);
+    assertThat(sampleData.getOffset(5)).isEqualTo(120);
+    assertThat(sampleData.getOffset(6)).isEqualTo(5_000_000_000L);
+    assertThat(sampleData.getOffset(9)).isEqualTo(5_000_000_012L);
+    assertThat(sampleData.getSize(9)).isEqualTo(4);
+  }
+
+  @Test
+  public void getTimestamp_addsCompositionOffsetsToDecodingTimes() {
+    CompactSampleData sampleData =
+        new CompactSampleData.Builder()
+            .setSampleCount(6)
+            .setFixedSampleSize(1)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 0)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 10)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 4, /* decodingTime= */ 40, /* delta= */ 20)
+            .addCompositionOffsetRun(/* firstSampleIndex= */ 0, /* compositionOffset= */ 5)
+            .addCompositionOffsetRun(/* firstSampleIndex= */ 3, /* compositionOffset= */ 0)
+            .build();
+
+    assertThat(sampleData.getTimestamp(0)).isEqualTo(5);
+    assertThat(sampleData.getTimestamp(2)).isEqualTo(25);
+    assertThat(sampleData.getTimestamp(3)).isEqualTo(30);
+    assertThat(sampleData.getTimestamp(4)).isEqualTo(40);
+    assertThat(sampleData.getTimestamp(5)).isEqualTo(60);
+  }
+
+  @Test
+  public void getTimestamp_withRunPerSample_returnsSameTimestamps() {
+    CompactSampleData.Builder builder =
+        new CompactSampleData.Builder()
+            .setSampleCount(9)
+            .setFixedSampleSize(1)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 0);
+    for (int i = 0; i < 9; i++) {
+      builder.addDecodingTimeRun(i, /* decodingTime= */ 100L * i, /* delta= */ 0);
+      builder.addCompositionOffsetRun(i, /* compositionOffset= */ i % 3 == 1 ? 200 : 0);
+    }
+    CompactSampleData sampleData = builder.build();
+
+    for (int i = 0; i < 9; i++) {
+      assertThat(sampleData.getTimestamp(i)).isEqualTo(100L * i + (i % 3 == 1 ? 200 : 0));
+    }
+  }
+
+  @Test
+  public void synchronizationSamples_withIndices_returnsAdjacentSynchronizationSamples() {
+    CompactSampleData sampleData =
+        new CompactSampleData.Builder()
+            .setSampleCount(10)
+            .setFixedSampleSize(1)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 0)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 1)
+            .setSynchronizationSampleIndices(new int[] {2, 6})
+            .build();
+
+    assertThat(sampleData.isSynchronizationSample(2)).isTrue();
+    assertThat(sampleData.isSynchronizationSample(3)).isFalse();
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrBefore(1)).isEqualTo(C.INDEX_UNSET);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrBefore(5)).isEqualTo(2);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrBefore(6)).isEqualTo(6);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrAfter(3)).isEqualTo(6);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrAfter(7)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void synchronizationSamples_withoutIndices_treatsAllSamplesAsSynchronizationSamples() {
+    CompactSampleData sampleData =
+        new CompactSampleData.Builder()
+            .setSampleCount(3)
+            .setFixedSampleSize(1)
+            .addOffsetRun(/* firstSampleIndex= */ 0, /* offset= */ 0)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 1)
+            .build();
+
+    assertThat(sampleData.isSynchronizationSample(1)).isTrue();
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrBefore(1)).isEqualTo(1);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrAfter(2)).isEqualTo(2);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrAfter(3)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void build_withTenHoursOfVideo_computesLastSampleFromRuns() {
+    // 10 hours at 30 fps, with 15 samples per chunk and a synchronization sample every second.
+    int sampleCount = 10 * 60 * 60 * 30;
+    int[] sizes = new int[sampleCount];
+    int[] synchronizationSampleIndices = new int[sampleCount / 30];
+    CompactSampleData.Builder builder = new CompactSampleData.Builder();
+    long chunkOffset = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      sizes[i] = i % 30 == 0 ? 50_000 : 10_000;
+      if (i % 15 == 0) {
+        builder.addOffsetRun(i, chunkOffset);
+      }
+      if (i % 30 == 0) {
+        synchronizationSampleIndices[i / 30] = i;
+      }
+      chunkOffset += sizes[i];
+    }
+    CompactSampleData sampleData =
+        builder
+            .setSampleCount(sampleCount)
+            .setSampleSizes(sizes)
+            .addDecodingTimeRun(/* firstSampleIndex= */ 0, /* decodingTime= */ 0, /* delta= */ 3000)
+            .setSynchronizationSampleIndices(synchronizationSampleIndices)
+            .build();
+
+    int lastIndex = sampleCount - 1;
+    assertThat(sampleData.getOffset(lastIndex)).isEqualTo(chunkOffset - 10_000);
+    assertThat(sampleData.getTimestamp(lastIndex)).isEqualTo(3000L * lastIndex);
+    assertThat(sampleData.getSynchronizationSampleIndexAtOrBefore(lastIndex))
+        .isEqualTo(sampleCount - 30);
+  }
+}